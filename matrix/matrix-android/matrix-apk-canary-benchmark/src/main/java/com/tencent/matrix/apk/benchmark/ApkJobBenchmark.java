@@ -0,0 +1,123 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.benchmark;
+
+import com.tencent.matrix.apk.model.job.ApkJob;
+import com.tencent.matrix.apk.model.job.JobConstants;
+import com.tencent.matrix.apk.model.result.TaskResultFactory;
+import com.tencent.matrix.apk.model.task.TaskFactory;
+import com.tencent.matrix.javalib.util.FileUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a whole ApkJob with every option on a synthesized apk, the way the command line does.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ApkJobBenchmark {
+
+    private static final int TIMEOUT_SECONDS = 600;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param("2")
+    public int dexCount;
+
+    @Param("500")
+    public int classesPerDex;
+
+    @Param("900")
+    public int resourceCount;
+
+    @Param("100")
+    public int assetCount;
+
+    @Param("4")
+    public int libCount;
+
+    private File workDir;
+    private String[] args;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("apk-job-bench").toFile();
+        ApkSynthesizer synthesizer = new ApkSynthesizer();
+        synthesizer.setDexCount(dexCount);
+        synthesizer.setClassesPerDex(classesPerDex);
+        synthesizer.setResourceCount(resourceCount);
+        synthesizer.setAssetCount(assetCount);
+        synthesizer.setLibCount(libCount);
+        File apkFile = synthesizer.synthesize(workDir);
+
+        List<String> argList = new ArrayList<>();
+        argList.add(JobConstants.PARAM_APK);
+        argList.add(apkFile.getAbsolutePath());
+        argList.add(JobConstants.PARAM_UNZIP);
+        argList.add(new File(workDir, "unzip").getAbsolutePath());
+        argList.add(JobConstants.PARAM_OUTPUT);
+        argList.add(new File(workDir, "result").getAbsolutePath());
+        argList.add(JobConstants.PARAM_FORMAT);
+        argList.add(TaskResultFactory.TASK_RESULT_TYPE_JSON);
+        for (String option : TaskFactory.TaskOptionName) {
+            if (option.isEmpty()) {
+                continue;
+            }
+            argList.add(option);
+            if (JobConstants.OPTION_UNUSED_RESOURCES.equals(option)) {
+                argList.add(JobConstants.PARAM_R_TXT);
+                argList.add(new File(workDir, ApkSynthesizer.R_TXT_FILE_NAME).getAbsolutePath());
+            }
+        }
+        args = argList.toArray(new String[argList.size()]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtil.deleteDir(workDir);
+    }
+
+    @Benchmark
+    public void runJob() throws Exception {
+        new ApkJob(args, TIMEOUT_SECONDS, threads).run();
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Builds an apk offline to benchmark the tasks on, along with its R.txt.
+ *
+ * The apk holds N dex files, M resources split between drawables (png files), layouts (binary xml) and strings,
+ * K assets and J native libraries for two ABIs. The content is derived from a fixed seed, so the same sizes
+ * always give the same apk. Half of the resources are referenced by the layouts and the manifest, a tenth of
+ * the assets are copies of others, every other library is unstripped, and assets and libraries are stored
+ * uncompressed one time in two.
+ */
+
+public final class ApkSynthesizer {
+
+    public static final String PACKAGE_NAME = "com.tencent.matrix.bench";
+    public static final String R_TXT_FILE_NAME = "R.txt";
+
+    private static final String[] ABIS = {"armeabi-v7a", "arm64-v8a"};
+    private static final int ATTR_LABEL = 0x01010001;
+    private static final int ATTR_ICON = 0x01010002;
+    private static final int ATTR_NAME = 0x01010003;
+    private static final int ATTR_BACKGROUND = 0x010100d4;
+    private static final int ATTR_TEXT = 0x0101014f;
+    private static final int PNG_SIZE = 48;
+    private static final long SEED = 0x6d617472L;
+
+    private int dexCount = 2;
+    private int classesPerDex = 500;
+    private int methodsPerClass = 10;
+    private int resourceCount = 900;
+    private int assetCount = 100;
+    private int assetSize = 16 * 1024;
+    private int libCount = 4;
+    private int libSize = 256 * 1024;
+
+    public void setDexCount(int dexCount) {
+        this.dexCount = dexCount;
+    }
+
+    public void setClassesPerDex(int classesPerDex) {
+        this.classesPerDex = classesPerDex;
+    }
+
+    public void setMethodsPerClass(int methodsPerClass) {
+        this.methodsPerClass = methodsPerClass;
+    }
+
+    public void setResourceCount(int resourceCount) {
+        this.resourceCount = resourceCount;
+    }
+
+    public void setAssetCount(int assetCount) {
+        this.assetCount = assetCount;
+    }
+
+    public void setAssetSize(int assetSize) {
+        this.assetSize = assetSize;
+    }
+
+    public void setLibCount(int libCount) {
+        this.libCount = libCount;
+    }
+
+    public void setLibSize(int libSize) {
+        this.libSize = libSize;
+    }
+
+    /**
+     * Writes 'bench.apk' and 'R.txt' into the directory.
+     *
+     * @return the apk file
+     */
+    public File synthesize(File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("create dir " + dir.getAbsolutePath() + " failed!");
+        }
+        Random random = new Random(SEED);
+        File apkFile = new File(dir, "bench.apk");
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(apkFile));
+        try {
+            ResourceTableWriter table = new ResourceTableWriter(PACKAGE_NAME);
+            int drawables = resourceCount / 3;
+            int layouts = resourceCount / 3;
+            int strings = resourceCount - drawables - layouts;
+            for (int i = 0; i < drawables; i++) {
+                String path = "res/drawable/d" + i + ".png";
+                table.add("drawable", "d" + i, path);
+                putEntry(zip, path, png(random, i % 2 == 0), ZipEntry.STORED);
+            }
+            for (int i = 0; i < layouts; i++) {
+                table.add("layout", "l" + i, "res/layout/l" + i + ".xml");
+            }
+            for (int i = 0; i < strings; i++) {
+                table.add("string", "s" + i, "string value " + i);
+            }
+            // layout i uses drawable i and string i of the first half, the second half is left unused
+            for (int i = 0; i < layouts; i++) {
+                AxmlWriter layout = new AxmlWriter("LinearLayout");
+                if (i < drawables / 2) {
+                    layout.reference("background", ATTR_BACKGROUND, table.resId("drawable", i));
+                }
+                layout.start("TextView");
+                if (i < strings / 2) {
+                    layout.reference("text", ATTR_TEXT, table.resId("string", i));
+                }
+                layout.end();
+                putEntry(zip, "res/layout/l" + i + ".xml", layout.toByteArray(), ZipEntry.DEFLATED);
+            }
+            putEntry(zip, "AndroidManifest.xml", manifest(table, drawables, strings), ZipEntry.DEFLATED);
+            putEntry(zip, "resources.arsc", table.toByteArray(), ZipEntry.STORED);
+            writeRTxt(new File(dir, R_TXT_FILE_NAME), table);
+
+            for (int i = 0; i < dexCount; i++) {
+                DexWriter dex = new DexWriter(methodsPerClass);
+                for (int j = 0; j < classesPerDex; j++) {
+                    dex.addClass("com.tencent.matrix.bench.p" + (j % 16) + ".Dex" + i + "Class" + j);
+                }
+                putEntry(zip, i == 0 ? "classes.dex" : "classes" + (i + 1) + ".dex", dex.toByteArray(), ZipEntry.DEFLATED);
+            }
+
+            byte[][] assets = new byte[assetCount][];
+            for (int i = 0; i < assetCount; i++) {
+                assets[i] = i % 10 == 9 ? assets[i - 1] : asset(random, i);
+                putEntry(zip, "assets/a" + i + ".bin", assets[i], i % 2 == 0 ? ZipEntry.DEFLATED : ZipEntry.STORED);
+            }
+
+            for (String abi : ABIS) {
+                for (int i = 0; i < libCount; i++) {
+                    ElfWriter elf = new ElfWriter(libSize, i % 2 == 0);
+                    elf.addFunction("Java_com_tencent_matrix_bench_Native" + i + "_call");
+                    elf.addFunction("_ZNSt6__ndk112basic_stringIcNS_11char_traitsIcEENS_9allocatorIcEEE6appendEPKc");
+                    putEntry(zip, "lib/" + abi + "/libbench" + i + ".so", elf.toByteArray(), i % 2 == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED);
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        return apkFile;
+    }
+
+    private static byte[] manifest(ResourceTableWriter table, int drawables, int strings) {
+        AxmlWriter manifest = new AxmlWriter("manifest");
+        manifest.plain("package", PACKAGE_NAME);
+        manifest.start("uses-permission").string("name", ATTR_NAME, "android.permission.INTERNET").end();
+        manifest.start("uses-permission").string("name", ATTR_NAME, "android.permission.ACCESS_NETWORK_STATE").end();
+        manifest.start("application");
+        if (drawables > 0) {
+            manifest.reference("icon", ATTR_ICON, table.resId("drawable", 0));
+        }
+        if (strings > 0) {
+            manifest.reference("label", ATTR_LABEL, table.resId("string", 0));
+        }
+        manifest.start("activity").string("name", ATTR_NAME, PACKAGE_NAME + ".MainActivity").end();
+        manifest.start("service").string("name", ATTR_NAME, PACKAGE_NAME + ".BenchService").end();
+        manifest.start("receiver").string("name", ATTR_NAME, PACKAGE_NAME + ".BenchReceiver").end();
+        manifest.start("provider").string("name", ATTR_NAME, PACKAGE_NAME + ".BenchProvider").end();
+        manifest.end();
+        return manifest.toByteArray();
+    }
+
+    private static void writeRTxt(File file, ResourceTableWriter table) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            for (String type : table.getTypes().keySet()) {
+                int count = table.getTypes().get(type).size();
+                for (int i = 0; i < count; i++) {
+                    writer.write("int " + type + " " + table.getTypes().get(type).get(i)[0] + " 0x" + Integer.toHexString(table.resId(type, i)) + "\n");
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /*
+     *  half random bytes, half a repeated pattern, so deflating gains something but not everything
+     */
+    private byte[] asset(Random random, int index) {
+        byte[] data = new byte[assetSize];
+        int half = assetSize / 2;
+        byte[] noise = new byte[half];
+        random.nextBytes(noise);
+        System.arraycopy(noise, 0, data, 0, half);
+        for (int i = half; i < assetSize; i++) {
+            data[i] = (byte) (i % (index % 64 + 2));
+        }
+        return data;
+    }
+
+    private static byte[] png(Random random, boolean alpha) throws IOException {
+        BufferedImage image = new BufferedImage(PNG_SIZE, PNG_SIZE, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int color = random.nextInt(0xffffff);
+        for (int y = 0; y < PNG_SIZE; y++) {
+            for (int x = 0; x < PNG_SIZE; x++) {
+                int opacity = alpha && x == y ? 0x80 : 0xff;
+                image.setRGB(x, y, opacity << 24 | color);
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    private static void putEntry(ZipOutputStream zip, String name, byte[] data, int method) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.benchmark;
+
+import com.tencent.matrix.apk.model.job.JobConfig;
+import com.tencent.matrix.apk.model.job.JobConstants;
+import com.tencent.matrix.apk.model.result.TaskResult;
+import com.tencent.matrix.apk.model.result.TaskResultFactory;
+import com.tencent.matrix.apk.model.task.ApkTask;
+import com.tencent.matrix.apk.model.task.TaskFactory;
+import com.tencent.matrix.javalib.util.FileUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a single task on a synthesized apk, the apk is unzipped once per trial and every invocation gets
+ * a fresh job config, so nothing a task caches in the config is shared between invocations.
+ *
+ * 'unzip' benchmarks the UnzipTask itself, into a directory of its own.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ApkTaskBenchmark {
+
+    private static final String UNZIP = "unzip";
+
+    @Param({UNZIP,
+        JobConstants.OPTION_MANIFEST,
+        JobConstants.OPTION_FILE_SIZE,
+        JobConstants.OPTION_COUNT_METHOD,
+        JobConstants.OPTION_CHECK_RES_PROGUARD,
+        JobConstants.OPTION_FIND_NON_ALPHA_PNG,
+        JobConstants.OPTION_CHECK_MULTILIB,
+        JobConstants.OPTION_UNCOMPRESSED_FILE,
+        JobConstants.OPTION_COUNT_R_CLASS,
+        JobConstants.OPTION_DUPLICATE_RESOURCES,
+        JobConstants.OPTION_CHECK_MULTISTL,
+        JobConstants.OPTION_UNUSED_RESOURCES,
+        JobConstants.OPTION_UNUSED_ASSETS,
+        JobConstants.OPTION_UNSTRIPPED_SO,
+        JobConstants.OPTION_COUNT_CLASS})
+    public String task;
+
+    @Param("2")
+    public int dexCount;
+
+    @Param("500")
+    public int classesPerDex;
+
+    @Param("900")
+    public int resourceCount;
+
+    @Param("100")
+    public int assetCount;
+
+    @Param("4")
+    public int libCount;
+
+    private File workDir;
+    private JobConfig template;
+    private int taskType;
+    private Map<String, String> params;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("apk-task-bench").toFile();
+        ApkSynthesizer synthesizer = new ApkSynthesizer();
+        synthesizer.setDexCount(dexCount);
+        synthesizer.setClassesPerDex(classesPerDex);
+        synthesizer.setResourceCount(resourceCount);
+        synthesizer.setAssetCount(assetCount);
+        synthesizer.setLibCount(libCount);
+        File apkFile = synthesizer.synthesize(workDir);
+
+        template = new JobConfig();
+        template.setApkPath(apkFile.getAbsolutePath());
+        template.setUnzipPath(new File(workDir, "unzip").getAbsolutePath());
+        template.setOutputPath(new File(workDir, "result").getAbsolutePath());
+        template.setOutputFormatList(Collections.singletonList(TaskResultFactory.TASK_RESULT_TYPE_JSON));
+        ApkTask unzipTask = TaskFactory.factory(TaskFactory.TASK_TYPE_UNZIP, template, new HashMap<String, String>());
+        unzipTask.init();
+        unzipTask.call();
+
+        params = new HashMap<>();
+        if (UNZIP.equals(task)) {
+            taskType = TaskFactory.TASK_TYPE_UNZIP;
+        } else {
+            taskType = TaskFactory.TaskOptionName.indexOf(task);
+            if (JobConstants.OPTION_UNUSED_RESOURCES.equals(task)) {
+                params.put(JobConstants.PARAM_R_TXT, new File(workDir, ApkSynthesizer.R_TXT_FILE_NAME).getAbsolutePath());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtil.deleteDir(workDir);
+    }
+
+    @Benchmark
+    public TaskResult runTask() throws Exception {
+        JobConfig config = copyOf(template);
+        if (taskType == TaskFactory.TASK_TYPE_UNZIP) {
+            config.setUnzipPath(new File(workDir, "unzip-bench").getAbsolutePath());
+        }
+        ApkTask apkTask = TaskFactory.factory(taskType, config, params);
+        apkTask.init();
+        return apkTask.call();
+    }
+
+    private static JobConfig copyOf(JobConfig template) {
+        JobConfig config = new JobConfig();
+        config.setApkPath(template.getApkPath());
+        config.setUnzipPath(template.getUnzipPath());
+        config.setOutputPath(template.getOutputPath());
+        config.setOutputFormatList(template.getOutputFormatList());
+        config.setProguardClassMap(template.getProguardClassMap());
+        config.setResguardMap(template.getResguardMap());
+        config.setEntrySizeMap(template.getEntrySizeMap());
+        config.setEntryNameMap(template.getEntryNameMap());
+        return config;
+    }
+}
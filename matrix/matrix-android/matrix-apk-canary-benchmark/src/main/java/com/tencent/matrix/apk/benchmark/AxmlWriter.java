@@ -0,0 +1,220 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a binary xml (AXML) whose attributes are all in the android namespace.
+ *
+ * Attribute names carry their framework resource id in the resource map, and values are either raw strings
+ * or typed references to resources.
+ */
+
+final class AxmlWriter {
+
+    static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+
+    private static final int RES_XML_TYPE = 0x0003;
+    private static final int RES_XML_START_NAMESPACE_TYPE = 0x0100;
+    private static final int RES_XML_END_NAMESPACE_TYPE = 0x0101;
+    private static final int RES_XML_START_ELEMENT_TYPE = 0x0102;
+    private static final int RES_XML_END_ELEMENT_TYPE = 0x0103;
+    private static final int RES_XML_RESOURCE_MAP_TYPE = 0x0180;
+    private static final int TYPE_REFERENCE = 0x01;
+    private static final int TYPE_STRING = 0x03;
+    private static final int NODE_HEADER_SIZE = 16;
+    private static final int ATTRIBUTE_SIZE = 20;
+
+    private static final class Attribute {
+        String name;
+        int resId;
+        boolean android;
+        String value;
+        int reference;
+    }
+
+    private static final class Element {
+        String tag;
+        final List<Attribute> attributes = new ArrayList<>();
+        final List<Element> children = new ArrayList<>();
+    }
+
+    private final Element root;
+    private final List<Element> stack = new ArrayList<>();
+
+    AxmlWriter(String rootTag) {
+        root = new Element();
+        root.tag = rootTag;
+        stack.add(root);
+    }
+
+    AxmlWriter start(String tag) {
+        Element element = new Element();
+        element.tag = tag;
+        stack.get(stack.size() - 1).children.add(element);
+        stack.add(element);
+        return this;
+    }
+
+    AxmlWriter end() {
+        stack.remove(stack.size() - 1);
+        return this;
+    }
+
+    /**
+     * An attribute without namespace, like the 'package' of the manifest.
+     */
+    AxmlWriter plain(String name, String value) {
+        Attribute attribute = new Attribute();
+        attribute.name = name;
+        attribute.value = value;
+        stack.get(stack.size() - 1).attributes.add(attribute);
+        return this;
+    }
+
+    AxmlWriter string(String name, int resId, String value) {
+        Attribute attribute = new Attribute();
+        attribute.name = name;
+        attribute.resId = resId;
+        attribute.android = true;
+        attribute.value = value;
+        stack.get(stack.size() - 1).attributes.add(attribute);
+        return this;
+    }
+
+    AxmlWriter reference(String name, int resId, int reference) {
+        Attribute attribute = new Attribute();
+        attribute.name = name;
+        attribute.resId = resId;
+        attribute.android = true;
+        attribute.reference = reference;
+        stack.get(stack.size() - 1).attributes.add(attribute);
+        return this;
+    }
+
+    byte[] toByteArray() {
+        // the attribute names with a resource id come first, their index is their slot in the resource map
+        List<String> strings = new ArrayList<>();
+        List<Integer> resIds = new ArrayList<>();
+        Map<String, Integer> stringIndex = new HashMap<>();
+        collectAttributeNames(root, strings, resIds, stringIndex);
+        index(ANDROID_NAMESPACE, strings, stringIndex);
+        index("android", strings, stringIndex);
+        collectStrings(root, strings, stringIndex);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] pool = StringPoolWriter.write(strings);
+        body.write(pool, 0, pool.length);
+        ByteBuffer resourceMap = chunk(RES_XML_RESOURCE_MAP_TYPE, 8, 8 + resIds.size() * 4);
+        for (int resId : resIds) {
+            resourceMap.putInt(resId);
+        }
+        body.write(resourceMap.array(), 0, resourceMap.capacity());
+        writeNamespace(body, RES_XML_START_NAMESPACE_TYPE, stringIndex);
+        writeElement(body, root, stringIndex);
+        writeNamespace(body, RES_XML_END_NAMESPACE_TYPE, stringIndex);
+
+        ByteBuffer header = chunk(RES_XML_TYPE, 8, 8 + body.size());
+        ByteArrayOutputStream output = new ByteArrayOutputStream(8 + body.size());
+        output.write(header.array(), 0, 8);
+        output.write(body.toByteArray(), 0, body.size());
+        return output.toByteArray();
+    }
+
+    private static void collectAttributeNames(Element element, List<String> strings, List<Integer> resIds, Map<String, Integer> stringIndex) {
+        for (Attribute attribute : element.attributes) {
+            if (attribute.resId != 0 && !stringIndex.containsKey(attribute.name)) {
+                stringIndex.put(attribute.name, strings.size());
+                strings.add(attribute.name);
+                resIds.add(attribute.resId);
+            }
+        }
+        for (Element child : element.children) {
+            collectAttributeNames(child, strings, resIds, stringIndex);
+        }
+    }
+
+    private static void collectStrings(Element element, List<String> strings, Map<String, Integer> stringIndex) {
+        index(element.tag, strings, stringIndex);
+        for (Attribute attribute : element.attributes) {
+            index(attribute.name, strings, stringIndex);
+            if (attribute.value != null) {
+                index(attribute.value, strings, stringIndex);
+            }
+        }
+        for (Element child : element.children) {
+            collectStrings(child, strings, stringIndex);
+        }
+    }
+
+    private static void index(String value, List<String> strings, Map<String, Integer> stringIndex) {
+        if (!stringIndex.containsKey(value)) {
+            stringIndex.put(value, strings.size());
+            strings.add(value);
+        }
+    }
+
+    private static void writeNamespace(ByteArrayOutputStream output, int type, Map<String, Integer> stringIndex) {
+        ByteBuffer node = chunk(type, NODE_HEADER_SIZE, NODE_HEADER_SIZE + 8);
+        node.putInt(1).putInt(-1);
+        node.putInt(stringIndex.get("android")).putInt(stringIndex.get(ANDROID_NAMESPACE));
+        output.write(node.array(), 0, node.capacity());
+    }
+
+    private static void writeElement(ByteArrayOutputStream output, Element element, Map<String, Integer> stringIndex) {
+        int namespace = stringIndex.get(ANDROID_NAMESPACE);
+        ByteBuffer start = chunk(RES_XML_START_ELEMENT_TYPE, NODE_HEADER_SIZE, NODE_HEADER_SIZE + 20 + element.attributes.size() * ATTRIBUTE_SIZE);
+        start.putInt(1).putInt(-1);
+        start.putInt(-1).putInt(stringIndex.get(element.tag));
+        start.putShort((short) 20).putShort((short) ATTRIBUTE_SIZE).putShort((short) element.attributes.size());
+        start.putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        for (Attribute attribute : element.attributes) {
+            start.putInt(attribute.android ? namespace : -1).putInt(stringIndex.get(attribute.name));
+            if (attribute.value != null) {
+                int value = stringIndex.get(attribute.value);
+                start.putInt(value).putShort((short) 8).put((byte) 0).put((byte) TYPE_STRING).putInt(value);
+            } else {
+                start.putInt(-1).putShort((short) 8).put((byte) 0).put((byte) TYPE_REFERENCE).putInt(attribute.reference);
+            }
+        }
+        output.write(start.array(), 0, start.capacity());
+        for (Element child : element.children) {
+            writeElement(output, child, stringIndex);
+        }
+        ByteBuffer end = chunk(RES_XML_END_ELEMENT_TYPE, NODE_HEADER_SIZE, NODE_HEADER_SIZE + 8);
+        end.putInt(1).putInt(-1);
+        end.putInt(-1).putInt(stringIndex.get(element.tag));
+        output.write(end.array(), 0, end.capacity());
+    }
+
+    /**
+     * @return a buffer of the chunk size, positioned after the common chunk header
+     */
+    static ByteBuffer chunk(int type, int headerSize, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) type).putShort((short) headerSize).putInt(size);
+        return buffer;
+    }
+}
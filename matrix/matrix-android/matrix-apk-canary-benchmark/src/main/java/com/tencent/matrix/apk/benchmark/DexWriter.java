@@ -0,0 +1,213 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.Adler32;
+
+/**
+ * Writes a dex file of classes declaring empty methods, enough for the dex parsers of the tasks.
+ *
+ * Every class extends java.lang.Object and references its constructor, so Object shows up as an external class.
+ * The classes have no class_data, i.e. no code, the method ids alone drive the method and class counts.
+ */
+
+final class DexWriter {
+
+    private static final byte[] DEX_MAGIC = {'d', 'e', 'x', '\n', '0', '3', '5', 0};
+    private static final int HEADER_SIZE = 0x70;
+    private static final int ENDIAN_CONSTANT = 0x12345678;
+    private static final int NO_INDEX = -1;
+    private static final int ACC_PUBLIC = 0x1;
+
+    private static final int TYPE_HEADER_ITEM = 0x0000;
+    private static final int TYPE_STRING_ID_ITEM = 0x0001;
+    private static final int TYPE_TYPE_ID_ITEM = 0x0002;
+    private static final int TYPE_PROTO_ID_ITEM = 0x0003;
+    private static final int TYPE_METHOD_ID_ITEM = 0x0005;
+    private static final int TYPE_CLASS_DEF_ITEM = 0x0006;
+    private static final int TYPE_MAP_LIST = 0x1000;
+    private static final int TYPE_STRING_DATA_ITEM = 0x2002;
+
+    private static final String OBJECT_TYPE = "Ljava/lang/Object;";
+    private static final String CONSTRUCTOR = "<init>";
+    private static final String VOID_TYPE = "V";
+
+    private final List<String> classTypes = new ArrayList<>();
+    private final int methodsPerClass;
+
+    DexWriter(int methodsPerClass) {
+        this.methodsPerClass = methodsPerClass;
+    }
+
+    /**
+     * @param className a class name like 'com.example.Foo'
+     */
+    void addClass(String className) {
+        classTypes.add('L' + className.replace('.', '/') + ';');
+    }
+
+    byte[] toByteArray() {
+        TreeSet<String> stringSet = new TreeSet<>();
+        stringSet.add(OBJECT_TYPE);
+        stringSet.add(CONSTRUCTOR);
+        stringSet.add(VOID_TYPE);
+        stringSet.addAll(classTypes);
+        for (int i = 0; i < methodsPerClass; i++) {
+            stringSet.add(methodName(i));
+        }
+        List<String> strings = new ArrayList<>(stringSet);
+        Map<String, Integer> stringIndex = new HashMap<>();
+        for (int i = 0; i < strings.size(); i++) {
+            stringIndex.put(strings.get(i), i);
+        }
+
+        // the type ids are sorted by string index, so sorting the descriptors is enough
+        TreeSet<String> typeSet = new TreeSet<>(classTypes);
+        typeSet.add(OBJECT_TYPE);
+        typeSet.add(VOID_TYPE);
+        List<String> types = new ArrayList<>(typeSet);
+        Map<String, Integer> typeIndex = new HashMap<>();
+        for (int i = 0; i < types.size(); i++) {
+            typeIndex.put(types.get(i), i);
+        }
+
+        // method ids sorted by class, then name, the only proto is ()V
+        List<int[]> methods = new ArrayList<>();
+        for (String type : types) {
+            if (OBJECT_TYPE.equals(type)) {
+                methods.add(new int[] {typeIndex.get(type), stringIndex.get(CONSTRUCTOR)});
+            } else if (!VOID_TYPE.equals(type)) {
+                TreeSet<String> names = new TreeSet<>();
+                for (int i = 0; i < methodsPerClass; i++) {
+                    names.add(methodName(i));
+                }
+                for (String name : names) {
+                    methods.add(new int[] {typeIndex.get(type), stringIndex.get(name)});
+                }
+            }
+        }
+
+        ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+        int[] stringDataOffsets = new int[strings.size()];
+        int stringIdsOffset = HEADER_SIZE;
+        int typeIdsOffset = stringIdsOffset + strings.size() * 4;
+        int protoIdsOffset = typeIdsOffset + types.size() * 4;
+        int methodIdsOffset = protoIdsOffset + 12;
+        int classDefsOffset = methodIdsOffset + methods.size() * 8;
+        int dataOffset = classDefsOffset + classTypes.size() * 32;
+        for (int i = 0; i < strings.size(); i++) {
+            stringDataOffsets[i] = dataOffset + stringData.size();
+            byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            writeUleb128(stringData, strings.get(i).length());
+            stringData.write(bytes, 0, bytes.length);
+            stringData.write(0);
+        }
+        int mapOffset = align4(dataOffset + stringData.size());
+        int mapItemCount = 8;
+        int fileSize = mapOffset + 4 + mapItemCount * 12;
+
+        ByteBuffer buffer = ByteBuffer.allocate(fileSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(DEX_MAGIC);
+        buffer.position(32);
+        buffer.putInt(fileSize);
+        buffer.putInt(HEADER_SIZE);
+        buffer.putInt(ENDIAN_CONSTANT);
+        buffer.putInt(0).putInt(0);                                 // link
+        buffer.putInt(mapOffset);
+        buffer.putInt(strings.size()).putInt(stringIdsOffset);
+        buffer.putInt(types.size()).putInt(typeIdsOffset);
+        buffer.putInt(1).putInt(protoIdsOffset);
+        buffer.putInt(0).putInt(0);                                 // field ids
+        buffer.putInt(methods.size()).putInt(methodIdsOffset);
+        buffer.putInt(classTypes.size()).putInt(classDefsOffset);
+        buffer.putInt(fileSize - dataOffset).putInt(dataOffset);
+
+        buffer.position(stringIdsOffset);
+        for (int offset : stringDataOffsets) {
+            buffer.putInt(offset);
+        }
+        for (String type : types) {
+            buffer.putInt(stringIndex.get(type));
+        }
+        buffer.putInt(stringIndex.get(VOID_TYPE)).putInt(typeIndex.get(VOID_TYPE)).putInt(0);
+        for (int[] method : methods) {
+            buffer.putShort((short) method[0]).putShort((short) 0).putInt(method[1]);
+        }
+        int superclass = typeIndex.get(OBJECT_TYPE);
+        for (String type : classTypes) {
+            buffer.putInt(typeIndex.get(type)).putInt(ACC_PUBLIC).putInt(superclass).putInt(0);
+            buffer.putInt(NO_INDEX).putInt(0).putInt(0).putInt(0);
+        }
+        buffer.put(stringData.toByteArray());
+
+        buffer.position(mapOffset);
+        buffer.putInt(mapItemCount);
+        putMapItem(buffer, TYPE_HEADER_ITEM, 1, 0);
+        putMapItem(buffer, TYPE_STRING_ID_ITEM, strings.size(), stringIdsOffset);
+        putMapItem(buffer, TYPE_TYPE_ID_ITEM, types.size(), typeIdsOffset);
+        putMapItem(buffer, TYPE_PROTO_ID_ITEM, 1, protoIdsOffset);
+        putMapItem(buffer, TYPE_METHOD_ID_ITEM, methods.size(), methodIdsOffset);
+        putMapItem(buffer, TYPE_CLASS_DEF_ITEM, classTypes.size(), classDefsOffset);
+        putMapItem(buffer, TYPE_STRING_DATA_ITEM, strings.size(), dataOffset);
+        putMapItem(buffer, TYPE_MAP_LIST, 1, mapOffset);
+
+        byte[] dex = buffer.array();
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            sha1.update(dex, 32, dex.length - 32);
+            System.arraycopy(sha1.digest(), 0, dex, 12, 20);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        Adler32 adler32 = new Adler32();
+        adler32.update(dex, 12, dex.length - 12);
+        ByteBuffer.wrap(dex).order(ByteOrder.LITTLE_ENDIAN).putInt(8, (int) adler32.getValue());
+        return dex;
+    }
+
+    private static String methodName(int index) {
+        return "m" + index;
+    }
+
+    private static void putMapItem(ByteBuffer buffer, int type, int size, int offset) {
+        buffer.putShort((short) type).putShort((short) 0).putInt(size).putInt(offset);
+    }
+
+    private static int align4(int value) {
+        return (value + 3) & ~3;
+    }
+
+    private static void writeUleb128(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7f) != 0) {
+            output.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+}
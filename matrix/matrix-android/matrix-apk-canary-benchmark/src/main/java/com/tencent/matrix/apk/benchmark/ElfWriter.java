@@ -0,0 +1,147 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a 32-bit little-endian ARM shared library: a '.text' of filler bytes, exported functions in '.dynsym',
+ * and the same functions in '.symtab' unless it is stripped.
+ */
+
+final class ElfWriter {
+
+    private static final int ELF_HEADER_SIZE = 52;
+    private static final int SECTION_HEADER_SIZE = 40;
+    private static final int SYMBOL_SIZE = 16;
+    private static final int ET_DYN = 3;
+    private static final int EM_ARM = 40;
+    private static final int SHT_PROGBITS = 1;
+    private static final int SHT_SYMTAB = 2;
+    private static final int SHT_STRTAB = 3;
+    private static final int SHT_DYNSYM = 11;
+    private static final int SHF_ALLOC = 0x2;
+    private static final int SHF_EXECINSTR = 0x4;
+    private static final int STB_GLOBAL = 1;
+    private static final int STT_FUNC = 2;
+    private static final int TEXT_SECTION_INDEX = 1;
+
+    private final List<String> symbols = new ArrayList<>();
+    private final int textSize;
+    private final boolean stripped;
+
+    ElfWriter(int textSize, boolean stripped) {
+        this.textSize = textSize;
+        this.stripped = stripped;
+    }
+
+    void addFunction(String name) {
+        symbols.add(name);
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream strtab = new ByteArrayOutputStream();
+        strtab.write(0);
+        int[] nameOffsets = new int[symbols.size()];
+        for (int i = 0; i < symbols.size(); i++) {
+            nameOffsets[i] = strtab.size();
+            byte[] bytes = symbols.get(i).getBytes(StandardCharsets.UTF_8);
+            strtab.write(bytes, 0, bytes.length);
+            strtab.write(0);
+        }
+        ByteBuffer symtab = ByteBuffer.allocate((symbols.size() + 1) * SYMBOL_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        symtab.position(SYMBOL_SIZE);
+        for (int i = 0; i < symbols.size(); i++) {
+            int value = textSize == 0 ? 0 : (i * 16) % textSize;
+            symtab.putInt(nameOffsets[i]).putInt(value).putInt(16);
+            symtab.put((byte) (STB_GLOBAL << 4 | STT_FUNC)).put((byte) 0).putShort((short) TEXT_SECTION_INDEX);
+        }
+
+        List<String> sectionNames = new ArrayList<>();
+        sectionNames.add("");
+        sectionNames.add(".text");
+        sectionNames.add(".dynstr");
+        sectionNames.add(".dynsym");
+        if (!stripped) {
+            sectionNames.add(".strtab");
+            sectionNames.add(".symtab");
+        }
+        sectionNames.add(".shstrtab");
+        ByteArrayOutputStream shstrtab = new ByteArrayOutputStream();
+        int[] sectionNameOffsets = new int[sectionNames.size()];
+        for (int i = 0; i < sectionNames.size(); i++) {
+            sectionNameOffsets[i] = shstrtab.size();
+            byte[] bytes = sectionNames.get(i).getBytes(StandardCharsets.UTF_8);
+            shstrtab.write(bytes, 0, bytes.length);
+            shstrtab.write(0);
+        }
+
+        // [type, flags, offset, size, link, entry size] of every section, then the section data in the same order
+        List<int[]> sections = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        int offset = ELF_HEADER_SIZE;
+        sections.add(new int[] {0, 0, 0, 0, 0, 0});
+        contents.add(new byte[0]);
+        byte[] text = new byte[textSize];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) (i * 31);
+        }
+        offset = addSection(sections, contents, SHT_PROGBITS, SHF_ALLOC | SHF_EXECINSTR, offset, text, 0, 0);
+        offset = addSection(sections, contents, SHT_STRTAB, SHF_ALLOC, offset, strtab.toByteArray(), 0, 0);
+        offset = addSection(sections, contents, SHT_DYNSYM, SHF_ALLOC, offset, symtab.array(), 2, SYMBOL_SIZE);
+        if (!stripped) {
+            offset = addSection(sections, contents, SHT_STRTAB, 0, offset, strtab.toByteArray(), 0, 0);
+            offset = addSection(sections, contents, SHT_SYMTAB, 0, offset, symtab.array(), 4, SYMBOL_SIZE);
+        }
+        offset = addSection(sections, contents, SHT_STRTAB, 0, offset, shstrtab.toByteArray(), 0, 0);
+        int sectionHeaderOffset = (offset + 3) & ~3;
+
+        ByteBuffer elf = ByteBuffer.allocate(sectionHeaderOffset + sections.size() * SECTION_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        elf.put(new byte[] {0x7f, 'E', 'L', 'F', 1, 1, 1, 0});
+        elf.position(16);
+        elf.putShort((short) ET_DYN).putShort((short) EM_ARM).putInt(1);
+        elf.putInt(0).putInt(0).putInt(sectionHeaderOffset).putInt(0);
+        elf.putShort((short) ELF_HEADER_SIZE).putShort((short) 32).putShort((short) 0);
+        elf.putShort((short) SECTION_HEADER_SIZE).putShort((short) sections.size()).putShort((short) (sections.size() - 1));
+        for (int i = 0; i < sections.size(); i++) {
+            int[] section = sections.get(i);
+            elf.position(section[2]);
+            elf.put(contents.get(i));
+        }
+        elf.position(sectionHeaderOffset);
+        for (int i = 0; i < sections.size(); i++) {
+            int[] section = sections.get(i);
+            elf.putInt(sectionNameOffsets[i]).putInt(section[0]).putInt(section[1]).putInt(0);
+            elf.putInt(section[2]).putInt(section[3]).putInt(section[4]).putInt(0);
+            elf.putInt(1).putInt(section[5]);
+        }
+        return elf.array();
+    }
+
+    private static int addSection(List<int[]> sections, List<byte[]> contents, int type, int flags, int offset, byte[] content, int link, int entrySize) {
+        offset = (offset + 3) & ~3;
+        sections.add(new int[] {type, flags, offset, content.length, link, entrySize});
+        contents.add(content);
+        return offset + content.length;
+    }
+}
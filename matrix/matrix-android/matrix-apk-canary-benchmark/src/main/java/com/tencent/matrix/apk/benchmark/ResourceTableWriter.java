@@ -0,0 +1,137 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a resources.arsc of a single package with one default configuration per type.
+ *
+ * Every entry is a simple value: a string, or the path of a file for drawables and layouts.
+ */
+
+final class ResourceTableWriter {
+
+    static final int PACKAGE_ID = 0x7f;
+
+    private static final int RES_TABLE_TYPE = 0x0002;
+    private static final int RES_TABLE_PACKAGE_TYPE = 0x0200;
+    private static final int RES_TABLE_TYPE_TYPE = 0x0201;
+    private static final int RES_TABLE_TYPE_SPEC_TYPE = 0x0202;
+    private static final int TYPE_STRING = 0x03;
+    private static final int PACKAGE_HEADER_SIZE = 288;
+    private static final int PACKAGE_NAME_LENGTH = 128;
+    private static final int CONFIG_SIZE = 64;
+    private static final int TYPE_HEADER_SIZE = 20 + CONFIG_SIZE;
+    private static final int ENTRY_SIZE = 16;
+
+    private final String packageName;
+    private final Map<String, List<String[]>> types = new LinkedHashMap<>();
+
+    ResourceTableWriter(String packageName) {
+        this.packageName = packageName;
+    }
+
+    /**
+     * @return the resource id of the new entry
+     */
+    int add(String type, String name, String value) {
+        List<String[]> entries = types.get(type);
+        if (entries == null) {
+            entries = new ArrayList<>();
+            types.put(type, entries);
+        }
+        entries.add(new String[] {name, value});
+        return resId(type, entries.size() - 1);
+    }
+
+    int resId(String type, int entryIndex) {
+        int typeIndex = new ArrayList<>(types.keySet()).indexOf(type);
+        return PACKAGE_ID << 24 | (typeIndex + 1) << 16 | entryIndex;
+    }
+
+    Map<String, List<String[]>> getTypes() {
+        return types;
+    }
+
+    byte[] toByteArray() {
+        List<String> values = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (List<String[]> entries : types.values()) {
+            for (String[] entry : entries) {
+                keys.add(entry[0]);
+                values.add(entry[1]);
+            }
+        }
+        byte[] valuePool = StringPoolWriter.write(values);
+        byte[] typePool = StringPoolWriter.write(new ArrayList<>(types.keySet()));
+        byte[] keyPool = StringPoolWriter.write(keys);
+
+        ByteArrayOutputStream typeChunks = new ByteArrayOutputStream();
+        int typeId = 1;
+        int index = 0;
+        for (List<String[]> entries : types.values()) {
+            int count = entries.size();
+            ByteBuffer spec = AxmlWriter.chunk(RES_TABLE_TYPE_SPEC_TYPE, 16, 16 + count * 4);
+            spec.put((byte) typeId).put((byte) 0).putShort((short) 0).putInt(count);
+            typeChunks.write(spec.array(), 0, spec.capacity());
+
+            int entriesStart = TYPE_HEADER_SIZE + count * 4;
+            ByteBuffer type = AxmlWriter.chunk(RES_TABLE_TYPE_TYPE, TYPE_HEADER_SIZE, entriesStart + count * ENTRY_SIZE);
+            type.put((byte) typeId).put((byte) 0).putShort((short) 0).putInt(count).putInt(entriesStart);
+            type.putInt(CONFIG_SIZE);
+            type.position(TYPE_HEADER_SIZE);
+            for (int i = 0; i < count; i++) {
+                type.putInt(i * ENTRY_SIZE);
+            }
+            for (int i = 0; i < count; i++) {
+                type.putShort((short) 8).putShort((short) 0).putInt(index);
+                type.putShort((short) 8).put((byte) 0).put((byte) TYPE_STRING).putInt(index);
+                index++;
+            }
+            typeChunks.write(type.array(), 0, type.capacity());
+            typeId++;
+        }
+
+        int packageSize = PACKAGE_HEADER_SIZE + typePool.length + keyPool.length + typeChunks.size();
+        ByteBuffer header = AxmlWriter.chunk(RES_TABLE_PACKAGE_TYPE, PACKAGE_HEADER_SIZE, PACKAGE_HEADER_SIZE);
+        header.putInt(PACKAGE_ID);
+        for (int i = 0; i < PACKAGE_NAME_LENGTH; i++) {
+            header.putChar(i < packageName.length() ? packageName.charAt(i) : 0);
+        }
+        header.putInt(PACKAGE_HEADER_SIZE).putInt(types.size());
+        header.putInt(PACKAGE_HEADER_SIZE + typePool.length).putInt(keys.size());
+        header.putInt(0);
+        header.putInt(4, packageSize);
+
+        int tableSize = 12 + valuePool.length + packageSize;
+        ByteBuffer table = AxmlWriter.chunk(RES_TABLE_TYPE, 12, tableSize);
+        table.putInt(1);
+        table.put(valuePool);
+        table.put(header.array());
+        table.put(typePool);
+        table.put(keyPool);
+        table.put(typeChunks.toByteArray());
+        return table.array();
+    }
+}
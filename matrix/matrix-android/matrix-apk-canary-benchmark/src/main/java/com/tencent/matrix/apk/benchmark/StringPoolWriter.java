@@ -0,0 +1,70 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes a UTF-8 string pool chunk, the format shared by resources.arsc and binary xml.
+ */
+
+final class StringPoolWriter {
+
+    private static final int RES_STRING_POOL_TYPE = 0x0001;
+    private static final int HEADER_SIZE = 28;
+    private static final int UTF8_FLAG = 0x0100;
+
+    private StringPoolWriter() {
+    }
+
+    static byte[] write(List<String> strings) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] offsets = new int[strings.size()];
+        for (int i = 0; i < strings.size(); i++) {
+            offsets[i] = data.size();
+            byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            writeLength(data, strings.get(i).length());
+            writeLength(data, bytes.length);
+            data.write(bytes, 0, bytes.length);
+            data.write(0);
+        }
+        while (data.size() % 4 != 0) {
+            data.write(0);
+        }
+        int stringsStart = HEADER_SIZE + offsets.length * 4;
+        ByteBuffer buffer = ByteBuffer.allocate(stringsStart + data.size()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) RES_STRING_POOL_TYPE).putShort((short) HEADER_SIZE).putInt(buffer.capacity());
+        buffer.putInt(strings.size()).putInt(0).putInt(UTF8_FLAG).putInt(stringsStart).putInt(0);
+        for (int offset : offsets) {
+            buffer.putInt(offset);
+        }
+        buffer.put(data.toByteArray());
+        return buffer.array();
+    }
+
+    private static void writeLength(ByteArrayOutputStream output, int length) {
+        if (length > 0x7f) {
+            output.write(0x80 | (length >> 8) & 0x7f);
+        }
+        output.write(length & 0xff);
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.tencent.matrix.apk;
 
+import com.tencent.matrix.apk.model.job.ApkBatchJob;
+import com.tencent.matrix.apk.model.job.ApkDiffJob;
 import com.tencent.matrix.apk.model.job.ApkJob;
 import com.tencent.matrix.apk.model.job.JobConstants;
 
@@ -39,13 +41,18 @@ public final class ApkChecker {
         "Usages:\n\n"
             + JobConstants.PARAM_CONFIG + " CONFIG-FILE-PATH\n\n"
             + "or\n\n"
-            + "[" + JobConstants.PARAM_INPUT + " INPUT-DIR-PATH] [" + JobConstants.PARAM_APK + " APK-FILE-PATH] [" + JobConstants.PARAM_UNZIP + " APK-UNZIP-PATH] [" + JobConstants.PARAM_MAPPING_TXT + " MAPPING-FILE-PATH] [" + JobConstants.PARAM_RES_MAPPING_TXT + " RESGUARD-MAPPING-FILE-PATH] [" + JobConstants.PARAM_OUTPUT + " OUTPUT-PATH] [" + JobConstants.PARAM_FORMAT + " OUTPUT-FORMAT] [" + JobConstants.PARAM_FORMAT_JAR + " OUTPUT-FORMAT-JAR] [" + JobConstants.PARAM_FORMAT_CONFIG + " OUTPUT-FORMAT-CONFIG (json-array format)] [Options]\n\n"
+            + JobConstants.PARAM_DIFF_OLD + " OLD-APK-OR-JSON-PATH " + JobConstants.PARAM_DIFF_NEW + " NEW-APK-OR-JSON-PATH [" + JobConstants.PARAM_OUTPUT + " OUTPUT-PATH] [Options]\n\n"
+            + "or\n\n"
+            + JobConstants.PARAM_BATCH + " APK-OR-DIR-LIST (split by ',') [" + JobConstants.PARAM_OUTPUT + " OUTPUT-DIR-PATH] [" + JobConstants.PARAM_THREADS + " THREAD-NUM] [" + JobConstants.PARAM_MEMORY_BUDGET_IN_MB + " MEMORY-BUDGET (MB)] [" + JobConstants.PARAM_FORMAT + " OUTPUT-FORMAT] [" + JobConstants.PARAM_CACHE_DIR + " CACHE-DIR-PATH] [" + JobConstants.PARAM_CACHE_SIZE_IN_MB + " CACHE-SIZE (MB)] [Options]\n\n"
+            + "or\n\n"
+            + "[" + JobConstants.PARAM_INPUT + " INPUT-DIR-PATH] [" + JobConstants.PARAM_APK + " APK-FILE-PATH] [" + JobConstants.PARAM_UNZIP + " APK-UNZIP-PATH] [" + JobConstants.PARAM_MAPPING_TXT + " MAPPING-FILE-PATH] [" + JobConstants.PARAM_RES_MAPPING_TXT + " RESGUARD-MAPPING-FILE-PATH] [" + JobConstants.PARAM_OUTPUT + " OUTPUT-PATH] [" + JobConstants.PARAM_FORMAT + " OUTPUT-FORMAT] [" + JobConstants.PARAM_FORMAT_JAR + " OUTPUT-FORMAT-JAR] [" + JobConstants.PARAM_FORMAT_CONFIG + " OUTPUT-FORMAT-CONFIG (json-array format)] [" + JobConstants.PARAM_CACHE_DIR + " CACHE-DIR-PATH] [" + JobConstants.PARAM_CACHE_SIZE_IN_MB + " CACHE-SIZE (MB)] [Options]\n\n"
             + "Options:\n"
                 + JobConstants.OPTION_MANIFEST + "\n"
-                + "     Read package info from the AndroidManifest.xml.\n"
-                + JobConstants.OPTION_FILE_SIZE + " [" + JobConstants.PARAM_MIN_SIZE_IN_KB + " DOWN-LIMIT-SIZE (KB)] [" + JobConstants.PARAM_ORDER + " ORDER-BY ('" + JobConstants.ORDER_ASC + "'|'" + JobConstants.ORDER_DESC + "')] [" + JobConstants.PARAM_SUFFIX + " FILTER-SUFFIX-LIST (split by ',')]\n"
-                + "     Show files whose size exceed limit size in order.\n"
-                + JobConstants.OPTION_COUNT_METHOD + " [" + JobConstants.PARAM_GROUP + " GROUP-BY ('" + JobConstants.GROUP_CLASS + "'|'" + JobConstants.GROUP_PACKAGE + "')]\n"
+                + "     Read package info, components and permissions from the AndroidManifest.xml.\n"
+                + JobConstants.OPTION_FILE_SIZE + " [" + JobConstants.PARAM_MIN_SIZE_IN_KB + " DOWN-LIMIT-SIZE (KB)] [" + JobConstants.PARAM_ORDER + " ORDER-BY ('" + JobConstants.ORDER_ASC + "'|'" + JobConstants.ORDER_DESC + "')] [" + JobConstants.PARAM_SUFFIX + " FILTER-SUFFIX-LIST (split by ',')] [" + JobConstants.PARAM_TOP + " TOP-N]\n"
+                + "     Show files whose size exceed limit size in order, and the total size of every directory\n"
+                + "     over all the files of the suffixes, including those under the limit size.\n"
+                + JobConstants.OPTION_COUNT_METHOD + " [" + JobConstants.PARAM_GROUP + " GROUP-BY ('" + JobConstants.GROUP_CLASS + "'|'" + JobConstants.GROUP_PACKAGE + "')] [" + JobConstants.PARAM_TOP + " TOP-N]\n"
                 + "     Count methods in dex file, output results group by class name or package name.\n"
                 + JobConstants.OPTION_CHECK_RES_PROGUARD + "\n"
                 + "     Check if the resguard was applied.\n"
@@ -54,18 +61,18 @@ public final class ApkChecker {
                 + JobConstants.OPTION_CHECK_MULTILIB + "\n"
                 + "     Check if there are more than one library dir in the 'lib'.\n"
                 + JobConstants.OPTION_UNCOMPRESSED_FILE + " [" + JobConstants.PARAM_SUFFIX + " FILTER-SUFFIX-LIST (split by ',')]\n"
-                + "     Show uncompressed file types.\n"
+                + "     Show uncompressed file types and the compression methods of every file type.\n"
                 + JobConstants.OPTION_COUNT_R_CLASS + "\n"
                 + "     Count the R class.\n"
-                + JobConstants.OPTION_DUPLICATE_RESOURCES + "\n"
+                + JobConstants.OPTION_DUPLICATE_RESOURCES + " [" + JobConstants.PARAM_READ_ZIP + " READ-FROM-APK ('true'|'false')]\n"
                 + "     Find out the duplicated resource files in desc order.\n"
-                + JobConstants.OPTION_CHECK_MULTISTL + "  " + JobConstants.PARAM_TOOL_NM + " TOOL-NM-PATH\n"
+                + JobConstants.OPTION_CHECK_MULTISTL + "\n"
                 + "     Check if there are more than one shared library statically linked the STL.\n"
-                + JobConstants.OPTION_UNUSED_RESOURCES + " " + JobConstants.PARAM_R_TXT  + " R-TXT-FILE-PATH [" + JobConstants.PARAM_IGNORE_RESOURCES_LIST + " IGNORE-RESOURCES-LIST (split by ',')]\n"
+                + JobConstants.OPTION_UNUSED_RESOURCES + " " + JobConstants.PARAM_R_TXT  + " R-TXT-FILE-PATH [" + JobConstants.PARAM_IGNORE_RESOURCES_LIST + " IGNORE-RESOURCES-LIST (split by ',')] [" + JobConstants.PARAM_RES_DECODER + " RES-DECODER ('" + JobConstants.RES_DECODER_APKTOOL + "'|'" + JobConstants.RES_DECODER_BINARY + "'|'" + JobConstants.RES_DECODER_CHECK + "')]\n"
                 + "     Find out the unused resources.\n"
                 + JobConstants.OPTION_UNUSED_ASSETS  + " [" + JobConstants.PARAM_IGNORE_ASSETS_LIST + " IGNORE-ASSETS-LIST (split by ',')]\n"
                 + "     Find out the unused assets file.\n"
-                + JobConstants.OPTION_UNSTRIPPED_SO + "  " + JobConstants.PARAM_TOOL_NM + " TOOL-NM-PATH\n"
+                + JobConstants.OPTION_UNSTRIPPED_SO + "\n"
                 + "     Find out the unstripped shared library file.\n"
                 + JobConstants.OPTION_COUNT_CLASS + " [" + JobConstants.PARAM_GROUP + " GROUP-BY ('" + JobConstants.GROUP_PACKAGE + "')]\n"
                 + "     Count classes in dex file, output results group by package name.";
@@ -85,9 +92,14 @@ public final class ApkChecker {
     }
 
     private void run(String[] args) {
-      ApkJob job = new ApkJob(args);
       try {
-          job.run();
+          if (ApkDiffJob.isDiffArgs(args)) {
+              new ApkDiffJob(args).run();
+          } else if (ApkBatchJob.isBatchArgs(args)) {
+              new ApkBatchJob(args).run();
+          } else {
+              new ApkJob(args).run();
+          }
       } catch (Exception e) {
           e.printStackTrace();
           System.exit(-1);
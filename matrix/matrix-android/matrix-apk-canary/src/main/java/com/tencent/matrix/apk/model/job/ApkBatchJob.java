@@ -0,0 +1,306 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.model.job;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.tencent.matrix.apk.ApkChecker;
+import com.tencent.matrix.apk.model.result.TaskResultFactory;
+import com.tencent.matrix.apk.model.task.util.ApkConstants;
+import com.tencent.matrix.apk.model.task.util.EntryCache;
+import com.tencent.matrix.javalib.util.Log;
+import com.tencent.matrix.javalib.util.Util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Checks many apks in one process, e.g. the flavours and ABI splits of a build, so the JIT, the static caches
+ * and the entry cache are warmed once for all of them.
+ *
+ * Every apk is checked by an ApkJob with the same options, the tasks of all the jobs share one thread pool and
+ * the work they split shares another. Only the apktool decodes are taken one at a time, see
+ * {@link com.tencent.matrix.apk.model.task.util.ApkResourceDecoder#APKTOOL_LOCK}.
+ * The jobs run at the same time as long as their estimated memory fits in the budget, a job estimated above
+ * the budget runs alone. Besides the result of every apk, a 'summary.json' lists how each of them went.
+ */
+
+public final class ApkBatchJob {
+
+    private static final String TAG = "Matrix.ApkBatchJob";
+
+    private static final String DEFAULT_OUTPUT_DIR = "apk-checker-batch";
+    private static final String SUMMARY_FILE_NAME = "summary";
+    private static final String UNZIP_SUFFIX = "_unzip";
+    private static final String STATUS_SUCCESS = "success";
+    private static final String STATUS_FAILED = "failed";
+
+    /*
+     *  a rough estimate of the heap a job needs: a fixed part, and a multiple of the apk size for the
+     *  tables, names and results of the tasks
+     */
+    private static final long BASE_MEMORY_IN_MB = 64;
+    private static final long MEMORY_PER_APK_BYTE = 4;
+
+    private static final Set<String> BATCH_PARAMS = new HashSet<>(Arrays.asList(
+        JobConstants.PARAM_BATCH, JobConstants.PARAM_MEMORY_BUDGET_IN_MB, JobConstants.PARAM_THREADS,
+        JobConstants.PARAM_OUTPUT, JobConstants.PARAM_CACHE_DIR, JobConstants.PARAM_CACHE_SIZE_IN_MB,
+        JobConstants.PARAM_APK, JobConstants.PARAM_UNZIP, JobConstants.PARAM_INPUT, JobConstants.PARAM_CONFIG));
+
+    private final String[] args;
+
+    public ApkBatchJob(String[] args) {
+        this.args = args;
+    }
+
+    public static boolean isBatchArgs(String[] args) {
+        if (args != null) {
+            for (String arg : args) {
+                if (JobConstants.PARAM_BATCH.equals(arg)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public void run() throws Exception {
+        Map<String, String> globalParams = new LinkedHashMap<>();
+        List<String> taskArgs = new ArrayList<>();
+        String key = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("-") && !args[i].startsWith("--")) {
+                taskArgs.addAll(Arrays.asList(args).subList(i, args.length));
+                break;
+            } else if (args[i].startsWith("--")) {
+                key = args[i];
+            } else if (key != null) {
+                globalParams.put(key, args[i]);
+            }
+        }
+
+        List<File> apkFiles = listApks(globalParams.get(JobConstants.PARAM_BATCH));
+        if (apkFiles.isEmpty()) {
+            ApkChecker.printError("No apk found in '" + globalParams.get(JobConstants.PARAM_BATCH) + "'!");
+        }
+        File outputDir;
+        if (!Util.isNullOrNil(globalParams.get(JobConstants.PARAM_OUTPUT))) {
+            outputDir = new File(globalParams.get(JobConstants.PARAM_OUTPUT));
+        } else {
+            outputDir = new File(apkFiles.get(0).getAbsoluteFile().getParentFile(), DEFAULT_OUTPUT_DIR);
+        }
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            ApkChecker.printError("Create output dir '" + outputDir.getAbsolutePath() + "' failed!");
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        long budgetInMb = Runtime.getRuntime().maxMemory() / ApkConstants.K1024 / ApkConstants.K1024 * 3 / 4;
+        try {
+            if (!Util.isNullOrNil(globalParams.get(JobConstants.PARAM_THREADS))) {
+                threads = Math.max(1, Integer.parseInt(globalParams.get(JobConstants.PARAM_THREADS)));
+            }
+            if (!Util.isNullOrNil(globalParams.get(JobConstants.PARAM_MEMORY_BUDGET_IN_MB))) {
+                budgetInMb = Math.max(1, Long.parseLong(globalParams.get(JobConstants.PARAM_MEMORY_BUDGET_IN_MB)));
+            }
+        } catch (NumberFormatException e) {
+            ApkChecker.printError("'" + JobConstants.PARAM_THREADS + "' and '" + JobConstants.PARAM_MEMORY_BUDGET_IN_MB + "' must be numbers!");
+        }
+        final int budget = (int) Math.min(Integer.MAX_VALUE, budgetInMb);
+
+        EntryCache entryCache = null;
+        if (!Util.isNullOrNil(globalParams.get(JobConstants.PARAM_CACHE_DIR))) {
+            long sizeInMb = EntryCache.DEFAULT_MAX_SIZE_IN_MB;
+            if (!Util.isNullOrNil(globalParams.get(JobConstants.PARAM_CACHE_SIZE_IN_MB))) {
+                try {
+                    sizeInMb = Long.parseLong(globalParams.get(JobConstants.PARAM_CACHE_SIZE_IN_MB));
+                } catch (NumberFormatException e) {
+                    Log.e(TAG, "CACHE-SIZE '" + globalParams.get(JobConstants.PARAM_CACHE_SIZE_IN_MB) + "' is not number format!");
+                }
+            }
+            entryCache = EntryCache.open(new File(globalParams.get(JobConstants.PARAM_CACHE_DIR)), sizeInMb * ApkConstants.K1024 * ApkConstants.K1024);
+        }
+
+        List<String> sharedArgs = new ArrayList<>();
+        for (Map.Entry<String, String> param : globalParams.entrySet()) {
+            if (!BATCH_PARAMS.contains(param.getKey())) {
+                sharedArgs.add(param.getKey());
+                sharedArgs.add(param.getValue());
+            }
+        }
+        sharedArgs.addAll(taskArgs);
+        final String format = globalParams.containsKey(JobConstants.PARAM_FORMAT) ? globalParams.get(JobConstants.PARAM_FORMAT) : TaskResultFactory.TASK_RESULT_TYPE_HTML;
+
+        Log.i(TAG, "check %d apks with %d threads in %d MB", apkFiles.size(), threads, budget);
+        long startTime = System.currentTimeMillis();
+        final Semaphore memory = new Semaphore(budget, true);
+        final ExecutorService taskExecutor = Executors.newFixedThreadPool(threads);
+        final ExecutorService workerExecutor = Executors.newFixedThreadPool(threads);
+        // a job only waits for its tasks, so the jobs get threads of their own and never starve the task pool,
+        // no more jobs than task threads are started as they could not run their tasks anyway
+        ExecutorService jobExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(apkFiles.size(), threads)));
+        final EntryCache sharedCache = entryCache;
+        List<Future<JsonObject>> futures = new ArrayList<>();
+        Set<String> outputNames = new HashSet<>();
+        try {
+            for (final File apkFile : apkFiles) {
+                final String outputPath = new File(outputDir, outputName(apkFile, outputNames)).getAbsolutePath();
+                final List<String> jobArgs = new ArrayList<>();
+                jobArgs.add(JobConstants.PARAM_APK);
+                jobArgs.add(apkFile.getAbsolutePath());
+                jobArgs.add(JobConstants.PARAM_UNZIP);
+                jobArgs.add(outputPath + UNZIP_SUFFIX);
+                jobArgs.add(JobConstants.PARAM_OUTPUT);
+                jobArgs.add(outputPath);
+                jobArgs.addAll(sharedArgs);
+                final int cost = (int) Math.min(budget, estimateMemoryInMb(apkFile));
+                futures.add(jobExecutor.submit(new Callable<JsonObject>() {
+                    @Override
+                    public JsonObject call() throws Exception {
+                        JsonObject item = new JsonObject();
+                        item.addProperty("apk", apkFile.getAbsolutePath());
+                        item.addProperty("size", apkFile.length());
+                        item.addProperty("memory-estimate", cost);
+                        memory.acquire(cost);
+                        long jobStartTime = System.currentTimeMillis();
+                        try {
+                            ApkJob job = new ApkJob(jobArgs.toArray(new String[0]), 0, taskExecutor);
+                            job.setWorkerExecutor(workerExecutor);
+                            if (sharedCache != null) {
+                                job.setEntryCache(sharedCache);
+                            }
+                            job.run();
+                            item.addProperty("status", STATUS_SUCCESS);
+                        } catch (Exception e) {
+                            Log.e(TAG, "check %s failed: %s", apkFile.getName(), e.getMessage());
+                            item.addProperty("status", STATUS_FAILED);
+                            item.addProperty("error", String.valueOf(e.getMessage()));
+                        } finally {
+                            memory.release(cost);
+                        }
+                        item.addProperty("time", System.currentTimeMillis() - jobStartTime);
+                        JsonArray outputs = new JsonArray();
+                        for (String name : format.split(",")) {
+                            if (!Util.isNullOrNil(name.trim())) {
+                                outputs.add(outputPath + "." + name.trim());
+                            }
+                        }
+                        item.add("outputs", outputs);
+                        return item;
+                    }
+                }));
+            }
+
+            JsonArray apks = new JsonArray();
+            int failed = 0;
+            for (Future<JsonObject> future : futures) {
+                JsonObject item = future.get();
+                if (STATUS_FAILED.equals(item.get("status").getAsString())) {
+                    failed++;
+                }
+                apks.add(item);
+            }
+            if (sharedCache != null) {
+                sharedCache.trim();
+            }
+
+            JsonObject summary = new JsonObject();
+            summary.addProperty("apk-count", apkFiles.size());
+            summary.addProperty("failed-count", failed);
+            summary.addProperty("threads", threads);
+            summary.addProperty("memory-budget", budget);
+            summary.addProperty("time", System.currentTimeMillis() - startTime);
+            summary.add("apks", apks);
+            File summaryFile = new File(outputDir, SUMMARY_FILE_NAME + "." + TaskResultFactory.TASK_RESULT_TYPE_JSON);
+            Writer writer = new OutputStreamWriter(new FileOutputStream(summaryFile), StandardCharsets.UTF_8);
+            try {
+                new GsonBuilder().setPrettyPrinting().create().toJson(summary, writer);
+            } finally {
+                writer.close();
+            }
+            Log.i(TAG, "%d of %d apks failed, write summary to %s", failed, apkFiles.size(), summaryFile.getAbsolutePath());
+        } finally {
+            jobExecutor.shutdownNow();
+            taskExecutor.shutdownNow();
+            workerExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param batch apk files and directories of apks split by ','
+     */
+    private static List<File> listApks(String batch) {
+        List<File> apkFiles = new ArrayList<>();
+        if (Util.isNullOrNil(batch)) {
+            return apkFiles;
+        }
+        for (String path : batch.split(",")) {
+            File file = new File(path.trim());
+            if (file.isDirectory()) {
+                File[] files = file.listFiles();
+                if (files != null) {
+                    Arrays.sort(files);
+                    for (File child : files) {
+                        if (child.isFile() && child.getName().endsWith(ApkConstants.APK_FILE_SUFFIX)) {
+                            apkFiles.add(child);
+                        }
+                    }
+                }
+            } else if (file.isFile()) {
+                apkFiles.add(file);
+            } else {
+                Log.w(TAG, "%s is not an apk or a directory, skip it", path);
+            }
+        }
+        return apkFiles;
+    }
+
+    /*
+     *  the apk name without its suffixes, numbered if two apks of different directories share it
+     */
+    private static String outputName(File apkFile, Set<String> outputNames) {
+        String name = apkFile.getName();
+        if (name.endsWith(ApkConstants.APK_FILE_SUFFIX)) {
+            name = name.substring(0, name.length() - ApkConstants.APK_FILE_SUFFIX.length());
+        }
+        String outputName = name;
+        for (int i = 1; !outputNames.add(outputName); i++) {
+            outputName = name + "_" + i;
+        }
+        return outputName;
+    }
+
+    private static long estimateMemoryInMb(File apkFile) {
+        return BASE_MEMORY_IN_MB + apkFile.length() * MEMORY_PER_APK_BYTE / ApkConstants.K1024 / ApkConstants.K1024;
+    }
+}
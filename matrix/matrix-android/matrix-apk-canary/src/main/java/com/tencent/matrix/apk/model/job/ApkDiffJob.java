@@ -0,0 +1,487 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.job;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.tencent.matrix.apk.ApkChecker;
+import com.tencent.matrix.apk.model.result.TaskResultFactory;
+import com.tencent.matrix.apk.model.task.TaskFactory;
+import com.tencent.matrix.apk.model.task.util.ApkConstants;
+import com.tencent.matrix.javalib.util.FileUtil;
+import com.tencent.matrix.javalib.util.Log;
+import com.tencent.matrix.javalib.util.Util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Compares two apks, or two json results produced by ApkChecker, and reports the delta of every task
+ * found in both: entry and directory sizes, added or removed libraries, method and class counts per package,
+ * unused resources and assets, and uncompressed file types.
+ */
+
+public final class ApkDiffJob {
+
+    private static final String TAG = "Matrix.ApkDiffJob";
+
+    private static final String OLD_SUFFIX = "_old";
+    private static final String NEW_SUFFIX = "_new";
+    private static final String DIFF_SUFFIX = "_diff";
+    private static final String UNZIP_SUFFIX = "_unzip";
+
+    private final String[] args;
+
+    public ApkDiffJob(String[] args) {
+        this.args = args;
+    }
+
+    public static boolean isDiffArgs(String[] args) {
+        if (args != null) {
+            for (String arg : args) {
+                if (JobConstants.PARAM_DIFF_OLD.equals(arg) || JobConstants.PARAM_DIFF_NEW.equals(arg)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public void run() throws Exception {
+        Map<String, String> globalParams = new HashMap<>();
+        List<String> taskArgs = new ArrayList<>();
+        String key = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("-") && !args[i].startsWith("--")) {
+                taskArgs.addAll(Arrays.asList(args).subList(i, args.length));
+                break;
+            } else if (args[i].startsWith("--")) {
+                key = args[i];
+            } else if (key != null) {
+                globalParams.put(key, args[i]);
+            }
+        }
+
+        String oldPath = globalParams.get(JobConstants.PARAM_DIFF_OLD);
+        String newPath = globalParams.get(JobConstants.PARAM_DIFF_NEW);
+        if (!FileUtil.isLegalFile(oldPath)) {
+            ApkChecker.printError("Input old path '" + oldPath + "' is illegal!");
+        }
+        if (!FileUtil.isLegalFile(newPath)) {
+            ApkChecker.printError("Input new path '" + newPath + "' is illegal!");
+        }
+        File oldFile = new File(oldPath);
+        File newFile = new File(newPath);
+
+        String outputPath = globalParams.get(JobConstants.PARAM_OUTPUT);
+        if (Util.isNullOrNil(outputPath)) {
+            String name = newFile.getName();
+            int index = name.indexOf('.');
+            outputPath = newFile.getAbsoluteFile().getParent() + File.separator + (index > 0 ? name.substring(0, index) : name) + DIFF_SUFFIX;
+        }
+
+        JsonArray oldResult = loadResult(oldFile, outputPath + OLD_SUFFIX, taskArgs);
+        JsonArray newResult;
+        if (isSameContent(oldFile, newFile)) {
+            Log.i(TAG, "%s and %s are identical, reuse the result", oldFile.getName(), newFile.getName());
+            newResult = oldResult;
+        } else {
+            newResult = loadResult(newFile, outputPath + NEW_SUFFIX, taskArgs);
+        }
+
+        JsonArray diff = diff(oldResult, newResult);
+        File outputFile = new File(outputPath + "." + TaskResultFactory.TASK_RESULT_TYPE_JSON);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8);
+        try {
+            new GsonBuilder().setPrettyPrinting().create().toJson(diff, writer);
+        } finally {
+            writer.close();
+        }
+        Log.i(TAG, "write diff result to %s", outputFile.getAbsolutePath());
+    }
+
+    /**
+     * A json input is read as it is, an apk is checked by an ApkJob first.
+     */
+    private static JsonArray loadResult(File input, String outputPath, List<String> taskArgs) throws Exception {
+        if (!input.getName().endsWith(ApkConstants.APK_FILE_SUFFIX)) {
+            return readJsonArray(input);
+        }
+        List<String> jobArgs = new ArrayList<>();
+        jobArgs.add(JobConstants.PARAM_APK);
+        jobArgs.add(input.getAbsolutePath());
+        jobArgs.add(JobConstants.PARAM_UNZIP);
+        jobArgs.add(outputPath + UNZIP_SUFFIX);
+        jobArgs.add(JobConstants.PARAM_OUTPUT);
+        jobArgs.add(outputPath);
+        jobArgs.add(JobConstants.PARAM_FORMAT);
+        jobArgs.add(TaskResultFactory.TASK_RESULT_TYPE_JSON);
+        jobArgs.addAll(taskArgs);
+        new ApkJob(jobArgs.toArray(new String[0])).run();
+        return readJsonArray(new File(outputPath + "." + TaskResultFactory.TASK_RESULT_TYPE_JSON));
+    }
+
+    private static JsonArray readJsonArray(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        try {
+            JsonElement element = new JsonParser().parse(reader);
+            if (!element.isJsonArray()) {
+                throw new IOException("The content of " + file.getName() + " is not a json array!");
+            }
+            return element.getAsJsonArray();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean isSameContent(File left, File right) throws IOException {
+        if (left.getCanonicalPath().equals(right.getCanonicalPath())) {
+            return true;
+        }
+        if (left.length() != right.length()) {
+            return false;
+        }
+        return Arrays.equals(digest(left), digest(right));
+    }
+
+    private static byte[] digest(File file) throws IOException {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+            InputStream inputStream = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[256 * 1024];
+                int len;
+                while ((len = inputStream.read(buffer)) > 0) {
+                    messageDigest.update(buffer, 0, len);
+                }
+            } finally {
+                inputStream.close();
+            }
+            return messageDigest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public static JsonArray diff(JsonArray oldResult, JsonArray newResult) {
+        Map<Integer, JsonObject> oldTasks = groupByTaskType(oldResult);
+        Map<Integer, JsonObject> newTasks = groupByTaskType(newResult);
+        JsonArray result = new JsonArray();
+        for (Map.Entry<Integer, JsonObject> entry : oldTasks.entrySet()) {
+            int taskType = entry.getKey();
+            JsonObject newTask = newTasks.get(taskType);
+            if (newTask == null) {
+                continue;
+            }
+            JsonObject taskDiff = diffTask(taskType, entry.getValue(), newTask);
+            if (taskDiff != null) {
+                JsonObject item = new JsonObject();
+                item.addProperty("taskType", taskType);
+                item.addProperty("taskDescription", TaskFactory.TaskDescription.get(taskType));
+                for (Map.Entry<String, JsonElement> field : taskDiff.entrySet()) {
+                    item.add(field.getKey(), field.getValue());
+                }
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    private static Map<Integer, JsonObject> groupByTaskType(JsonArray results) {
+        Map<Integer, JsonObject> tasks = new TreeMap<>();
+        for (JsonElement element : results) {
+            if (element.isJsonObject() && element.getAsJsonObject().has("taskType")) {
+                tasks.put(element.getAsJsonObject().get("taskType").getAsInt(), element.getAsJsonObject());
+            }
+        }
+        return tasks;
+    }
+
+    private static JsonObject diffTask(int taskType, JsonObject oldTask, JsonObject newTask) {
+        JsonObject result = new JsonObject();
+        switch (taskType) {
+            case TaskFactory.TASK_TYPE_UNZIP:
+                Map<String, Long> oldEntries = readEntrySizes(oldTask.getAsJsonArray("entries"));
+                Map<String, Long> newEntries = readEntrySizes(newTask.getAsJsonArray("entries"));
+                result.add("total-size", diffValue(getLong(oldTask, "total-size"), getLong(newTask, "total-size")));
+                result.add("entries", diffSizes(oldEntries, newEntries, "entry-name"));
+                result.add("dirs", diffSizes(rollUpDirs(oldEntries), rollUpDirs(newEntries), "dir-name"));
+                result.add("libs", diffNames(filterSuffix(oldEntries.keySet(), ApkConstants.DYNAMIC_LIB_FILE_SUFFIX),
+                    filterSuffix(newEntries.keySet(), ApkConstants.DYNAMIC_LIB_FILE_SUFFIX)));
+                return result;
+            case TaskFactory.TASK_TYPE_SHOW_FILE_SIZE:
+                result.add("files", diffSizes(readEntrySizes(oldTask.getAsJsonArray("files")), readEntrySizes(newTask.getAsJsonArray("files")), "entry-name"));
+                return result;
+            case TaskFactory.TASK_TYPE_COUNT_METHOD:
+                if (oldTask.has("groups") || newTask.has("groups")) {
+                    result.add("groups", diffSizes(readCounts(oldTask.getAsJsonArray("groups"), "name", "method-count"),
+                        readCounts(newTask.getAsJsonArray("groups"), "name", "method-count"), "name"));
+                } else {
+                    result.add("internal", diffSizes(readMethodCounts(oldTask, "internal"), readMethodCounts(newTask, "internal"), "name"));
+                    result.add("external", diffSizes(readMethodCounts(oldTask, "external"), readMethodCounts(newTask, "external"), "name"));
+                }
+                return result;
+            case TaskFactory.TASK_TYPE_COUNT_CLASS:
+                if (oldTask.has("groups") || newTask.has("groups")) {
+                    result.add("groups", diffSizes(readCounts(oldTask.getAsJsonArray("groups"), "name", "class-count"),
+                        readCounts(newTask.getAsJsonArray("groups"), "name", "class-count"), "name"));
+                } else {
+                    result.add("packages", diffSizes(readClassCounts(oldTask), readClassCounts(newTask), "package"));
+                }
+                return result;
+            case TaskFactory.TASK_TYPE_UNCOMPRESSED_FILE:
+                Map<String, Long> oldFiles = readCounts(oldTask.getAsJsonArray("files"), "suffix", "total-size");
+                Map<String, Long> newFiles = readCounts(newTask.getAsJsonArray("files"), "suffix", "total-size");
+                result.add("suffixes", diffNames(oldFiles.keySet(), newFiles.keySet()));
+                result.add("files", diffSizes(oldFiles, newFiles, "suffix"));
+                return result;
+            case TaskFactory.TASK_TYPE_UNUSED_RESOURCES:
+                result.add("unused-resources", diffNames(readNames(oldTask.getAsJsonArray("unused-resources")), readNames(newTask.getAsJsonArray("unused-resources"))));
+                return result;
+            case TaskFactory.TASK_TYPE_UNUSED_ASSETS:
+                result.add("unused-assets", diffNames(readNames(oldTask.getAsJsonArray("unused-assets")), readNames(newTask.getAsJsonArray("unused-assets"))));
+                return result;
+            case TaskFactory.TASK_TYPE_UNSTRIPPED_SO:
+                result.add("unstripped-lib", diffNames(readNames(oldTask.getAsJsonArray("unstripped-lib")), readNames(newTask.getAsJsonArray("unstripped-lib"))));
+                return result;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Reads "entry-name"/"entry-size" items, either flat or grouped by suffix as the mm.json format does.
+     */
+    private static Map<String, Long> readEntrySizes(JsonArray entries) {
+        Map<String, Long> sizes = new HashMap<>();
+        if (entries == null) {
+            return sizes;
+        }
+        for (JsonElement element : entries) {
+            JsonObject entry = element.getAsJsonObject();
+            if (entry.has("files")) {
+                sizes.putAll(readEntrySizes(entry.getAsJsonArray("files")));
+            } else if (entry.has("entry-name")) {
+                sizes.put(entry.get("entry-name").getAsString(), getLong(entry, "entry-size"));
+            }
+        }
+        return sizes;
+    }
+
+    private static Map<String, Long> rollUpDirs(Map<String, Long> entries) {
+        Map<String, Long> dirs = new HashMap<>();
+        for (Map.Entry<String, Long> entry : entries.entrySet()) {
+            String name = entry.getKey();
+            int index = name.lastIndexOf('/');
+            while (index > 0) {
+                name = name.substring(0, index);
+                Long size = dirs.get(name);
+                dirs.put(name, size == null ? entry.getValue() : size + entry.getValue());
+                index = name.lastIndexOf('/');
+            }
+        }
+        return dirs;
+    }
+
+    private static Map<String, Long> readCounts(JsonArray items, String nameKey, String countKey) {
+        Map<String, Long> counts = new HashMap<>();
+        if (items == null) {
+            return counts;
+        }
+        for (JsonElement element : items) {
+            JsonObject item = element.getAsJsonObject();
+            addCount(counts, item.get(nameKey).getAsString(), getLong(item, countKey));
+        }
+        return counts;
+    }
+
+    private static Map<String, Long> readMethodCounts(JsonObject task, String prefix) {
+        Map<String, Long> counts = new HashMap<>();
+        JsonArray dexFiles = task.getAsJsonArray("dex-files");
+        if (dexFiles == null) {
+            return counts;
+        }
+        for (JsonElement element : dexFiles) {
+            JsonObject dexFile = element.getAsJsonObject();
+            JsonArray groups = dexFile.has(prefix + "-packages") ? dexFile.getAsJsonArray(prefix + "-packages") : dexFile.getAsJsonArray(prefix + "-classes");
+            for (Map.Entry<String, Long> count : readCounts(groups, "name", "methods").entrySet()) {
+                addCount(counts, count.getKey(), count.getValue());
+            }
+        }
+        return counts;
+    }
+
+    private static Map<String, Long> readClassCounts(JsonObject task) {
+        Map<String, Set<String>> classes = new HashMap<>();
+        JsonArray dexFiles = task.getAsJsonArray("dex-files");
+        if (dexFiles != null) {
+            for (JsonElement element : dexFiles) {
+                JsonArray packages = element.getAsJsonObject().getAsJsonArray("packages");
+                if (packages == null) {
+                    continue;
+                }
+                for (JsonElement pkg : packages) {
+                    String name = pkg.getAsJsonObject().get("package").getAsString();
+                    if (!classes.containsKey(name)) {
+                        classes.put(name, new HashSet<String>());
+                    }
+                    classes.get(name).addAll(readNames(pkg.getAsJsonObject().getAsJsonArray("classes")));
+                }
+            }
+        }
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : classes.entrySet()) {
+            counts.put(entry.getKey(), (long) entry.getValue().size());
+        }
+        return counts;
+    }
+
+    private static Set<String> readNames(JsonArray items) {
+        Set<String> names = new HashSet<>();
+        if (items != null) {
+            for (JsonElement item : items) {
+                names.add(item.getAsString());
+            }
+        }
+        return names;
+    }
+
+    private static Set<String> filterSuffix(Set<String> names, String suffix) {
+        Set<String> result = new HashSet<>();
+        for (String name : names) {
+            if (name.endsWith(suffix)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    private static void addCount(Map<String, Long> counts, String name, long count) {
+        Long old = counts.get(name);
+        counts.put(name, old == null ? count : old + count);
+    }
+
+    private static long getLong(JsonObject object, String key) {
+        return object.has(key) ? object.get(key).getAsLong() : 0;
+    }
+
+    private static JsonObject diffValue(long oldValue, long newValue) {
+        return diffValue(new JsonObject(), oldValue, newValue);
+    }
+
+    private static JsonObject diffValue(JsonObject value, long oldValue, long newValue) {
+        value.addProperty("old", oldValue);
+        value.addProperty("new", newValue);
+        value.addProperty("delta", newValue - oldValue);
+        return value;
+    }
+
+    /**
+     * An item whose value differs between the two apks, a missing side counts as 0.
+     */
+    private static final class SizeChange {
+        final String name;
+        final long oldValue;
+        final long newValue;
+
+        SizeChange(String name, long oldValue, long newValue) {
+            this.name = name;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        long absDelta() {
+            return Math.abs(newValue - oldValue);
+        }
+    }
+
+    private static final Comparator<SizeChange> BY_ABS_DELTA_DESC = new Comparator<SizeChange>() {
+        @Override
+        public int compare(SizeChange left, SizeChange right) {
+            long leftDelta = left.absDelta();
+            long rightDelta = right.absDelta();
+            return leftDelta > rightDelta ? -1 : (leftDelta < rightDelta ? 1 : 0);
+        }
+    };
+
+    /**
+     * @return the changed items ordered by the absolute delta in desc order, a missing side counts as 0
+     */
+    private static JsonArray diffSizes(Map<String, Long> oldSizes, Map<String, Long> newSizes, String nameKey) {
+        Set<String> names = new TreeSet<>(oldSizes.keySet());
+        names.addAll(newSizes.keySet());
+        List<SizeChange> changes = new ArrayList<>();
+        for (String name : names) {
+            long oldValue = oldSizes.containsKey(name) ? oldSizes.get(name) : 0;
+            long newValue = newSizes.containsKey(name) ? newSizes.get(name) : 0;
+            if (oldValue != newValue || oldSizes.containsKey(name) != newSizes.containsKey(name)) {
+                changes.add(new SizeChange(name, oldValue, newValue));
+            }
+        }
+        Collections.sort(changes, BY_ABS_DELTA_DESC);
+        JsonArray result = new JsonArray();
+        for (SizeChange change : changes) {
+            JsonObject item = new JsonObject();
+            item.addProperty(nameKey, change.name);
+            result.add(diffValue(item, change.oldValue, change.newValue));
+        }
+        return result;
+    }
+
+    private static JsonObject diffNames(Set<String> oldNames, Set<String> newNames) {
+        JsonArray added = new JsonArray();
+        for (String name : new TreeSet<>(newNames)) {
+            if (!oldNames.contains(name)) {
+                added.add(name);
+            }
+        }
+        JsonArray removed = new JsonArray();
+        for (String name : new TreeSet<>(oldNames)) {
+            if (!newNames.contains(name)) {
+                removed.add(name);
+            }
+        }
+        JsonObject result = new JsonObject();
+        result.add("added", added);
+        result.add("removed", removed);
+        return result;
+    }
+}
@@ -30,6 +30,7 @@ import com.tencent.matrix.apk.model.result.TaskResultRegistry;
 import com.tencent.matrix.apk.model.task.ApkTask;
 import com.tencent.matrix.apk.model.task.TaskFactory;
 import com.tencent.matrix.apk.model.task.util.ApkConstants;
+import com.tencent.matrix.apk.model.task.util.EntryCache;
 import com.tencent.matrix.javalib.util.FileUtil;
 import com.tencent.matrix.javalib.util.Log;
 import com.tencent.matrix.javalib.util.Util;
@@ -46,10 +47,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -66,10 +71,12 @@ public final class ApkJob {
     private JobConfig jobConfig;
 
     private ExecutorService executor;
+    private boolean ownExecutor;
+    private boolean sharedEntryCache;
+    private boolean sharedWorkerExecutor;
     private static final int TIMEOUT_SECONDS = 600;
     private              int timeoutSeconds  = TIMEOUT_SECONDS;
     private static final int THREAD_NUM      = 1;
-    private              int threadNum       = THREAD_NUM;
 
     private List<ApkTask> preTasks;
     private List<ApkTask> taskList;
@@ -80,20 +87,45 @@ public final class ApkJob {
     }
 
     public ApkJob(String[] args, int timeoutSeconds, int threadNum) {
+        this(args, timeoutSeconds, Executors.newFixedThreadPool(threadNum > 0 ? threadNum : THREAD_NUM), true);
+    }
+
+    /**
+     * Runs the tasks on a pool shared with other jobs, the job does not shut it down.
+     */
+    public ApkJob(String[] args, int timeoutSeconds, ExecutorService executor) {
+        this(args, timeoutSeconds, executor, false);
+    }
+
+    private ApkJob(String[] args, int timeoutSeconds, ExecutorService executor, boolean ownExecutor) {
         this.args = args;
         jobConfig = new JobConfig();
         if (timeoutSeconds > 0) {
             this.timeoutSeconds = timeoutSeconds;
         }
-        if (threadNum > 0) {
-            this.threadNum = threadNum;
-        }
-        executor = Executors.newFixedThreadPool(this.threadNum);
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
         this.preTasks = new ArrayList<>();
         this.taskList = new ArrayList<>();
         this.jobResults = new ArrayList<>();
     }
 
+    /**
+     * Uses a cache shared with other jobs instead of '--cacheDir', it is trimmed by its owner.
+     */
+    public void setEntryCache(EntryCache entryCache) {
+        jobConfig.setEntryCache(entryCache);
+        sharedEntryCache = true;
+    }
+
+    /**
+     * Uses a worker pool shared with other jobs for the work the tasks split, it is shut down by its owner.
+     */
+    public void setWorkerExecutor(ExecutorService workerExecutor) {
+        jobConfig.setWorkerExecutor(workerExecutor);
+        sharedWorkerExecutor = true;
+    }
+
     private int parseParams(int start, String[] params, Map<String, String> result) {
         int end = params.length;
         String key = "";
@@ -157,6 +189,18 @@ public final class ApkJob {
         return task;
     }
 
+    private void openEntryCache(String cacheDir, String cacheSize) throws IOException {
+        long sizeInMb = EntryCache.DEFAULT_MAX_SIZE_IN_MB;
+        if (!Util.isNullOrNil(cacheSize)) {
+            try {
+                sizeInMb = Long.parseLong(cacheSize);
+            } catch (NumberFormatException e) {
+                Log.e(TAG, "CACHE-SIZE '" + cacheSize + "' is not number format!");
+            }
+        }
+        jobConfig.setEntryCache(EntryCache.open(new File(cacheDir), sizeInMb * ApkConstants.K1024 * ApkConstants.K1024));
+    }
+
     private void readConfigFile(String configPath) throws IOException, ClassNotFoundException, IllegalAccessException, InstantiationException {
         StringBuilder jsonStr = new StringBuilder();
         File configFile = new File(configPath);
@@ -262,6 +306,11 @@ public final class ApkJob {
                 jobConfig.setResMappingFilePath(config.get(JobConstants.PARAM_RES_MAPPING_TXT).getAsString());
             }
 
+            if (config.has(JobConstants.PARAM_CACHE_DIR) && !Util.isNullOrNil(config.get(JobConstants.PARAM_CACHE_DIR).getAsString())) {
+                openEntryCache(config.get(JobConstants.PARAM_CACHE_DIR).getAsString(),
+                    config.has(JobConstants.PARAM_CACHE_SIZE_IN_MB) ? config.get(JobConstants.PARAM_CACHE_SIZE_IN_MB).getAsString() : null);
+            }
+
             JsonArray options = config.getAsJsonArray("options");
             for (JsonElement option : options) {
                 if (option.isJsonObject()) {
@@ -375,6 +424,10 @@ public final class ApkJob {
                 }
                 jobConfig.setResMappingFilePath(resMappingFilePath);
 
+                if (!Util.isNullOrNil(globalParams.get(JobConstants.PARAM_CACHE_DIR))) {
+                    openEntryCache(globalParams.get(JobConstants.PARAM_CACHE_DIR), globalParams.get(JobConstants.PARAM_CACHE_SIZE_IN_MB));
+                }
+
 
                 String value = "";
                 if (globalParams.containsKey(JobConstants.PARAM_FORMAT) && !Util.isNullOrNil(globalParams.get(JobConstants.PARAM_FORMAT))) {
@@ -472,49 +525,97 @@ public final class ApkJob {
         }
     }
 
+    private void transferTaskResult(int taskType, TaskResult taskResult) {
+        for (JobResult jobResult : jobResults) {
+            TaskResult formatResult = null;
+            if (taskResult != null) {
+                formatResult = TaskResultFactory.transferTaskResult(taskResult.taskType, taskResult, jobResult.getFormat(), jobConfig);
+            }
+            if (formatResult != null) {
+                jobResult.addTaskResult(formatResult);
+            } else {
+                jobResult.skipTaskResult(taskType);
+            }
+        }
+    }
+
     private void execute() throws Exception {
         try {
 
+            for (JobResult jobResult : jobResults) {
+                for (ApkTask task : preTasks) {
+                    jobResult.expectTaskResult(task.getType());
+                }
+                for (ApkTask task : taskList) {
+                    jobResult.expectTaskResult(task.getType());
+                }
+            }
             for (ApkTask preTask : preTasks) {
                 preTask.init();
-                TaskResult taskResult = preTask.call();
-                if (taskResult != null) {
-                    TaskResult formatResult = null;
-                    for (JobResult jobResult : jobResults) {
-                        formatResult = TaskResultFactory.transferTaskResult(taskResult.taskType, taskResult, jobResult.getFormat(), jobConfig);
-                        if (formatResult != null) {
-                            jobResult.addTaskResult(formatResult);
-                        }
-                    }
-                }
+                transferTaskResult(preTask.getType(), preTask.call());
             }
             for (ApkTask task : taskList) {
                 task.init();
             }
-            List<Future<TaskResult>> futures = executor.invokeAll(taskList, timeoutSeconds, TimeUnit.SECONDS);
-            for (Future<TaskResult> future : futures) {
-                TaskResult taskResult = future.get();
-                if (taskResult != null) {
-                    TaskResult formatResult = null;
-                    for (JobResult jobResult : jobResults) {
-                        formatResult = TaskResultFactory.transferTaskResult(taskResult.taskType, taskResult, jobResult.getFormat(), jobConfig);
-                        if (formatResult != null) {
-                            jobResult.addTaskResult(formatResult);
+            if (jobConfig.getWorkerExecutor() == null) {
+                jobConfig.setWorkerExecutor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
+            }
+            // the timeout counts from the first task to start, the tasks may wait behind the tasks of other jobs,
+            // but no longer than the timeout itself
+            final CountDownLatch started = new CountDownLatch(1);
+            final AtomicLong startTime = new AtomicLong();
+            List<Future<TaskResult>> futures = new ArrayList<>();
+            for (final ApkTask task : taskList) {
+                futures.add(executor.submit(new Callable<TaskResult>() {
+                    @Override
+                    public TaskResult call() throws Exception {
+                        if (startTime.compareAndSet(0, System.currentTimeMillis())) {
+                            started.countDown();
                         }
+                        return task.call();
+                    }
+                }));
+            }
+            try {
+                if (!futures.isEmpty() && !started.await(timeoutSeconds, TimeUnit.SECONDS)) {
+                    throw new TimeoutException("no task started in " + timeoutSeconds + " seconds");
+                }
+                long deadline = startTime.get() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+                for (int i = 0; i < futures.size(); i++) {
+                    // results are handed to the job results as soon as they are done, in the order of the tasks
+                    TaskResult taskResult;
+                    try {
+                        taskResult = futures.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        throw new TimeoutException("task " + TaskFactory.TaskOptionName.get(taskList.get(i).getType()) + " not done in " + timeoutSeconds + " seconds");
                     }
+                    transferTaskResult(taskList.get(i).getType(), taskResult);
                 }
+            } finally {
+                for (Future<TaskResult> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            if (ownExecutor) {
+                executor.shutdown();
             }
-            executor.shutdown();
 
             for (JobResult jobResult : jobResults) {
                 jobResult.output();
             }
+            if (jobConfig.getEntryCache() != null && !sharedEntryCache) {
+                jobConfig.getEntryCache().trim();
+            }
             Log.d(TAG, "parse apk end, try to delete tmp un zip files");
             FileUtils.deleteDirectory(new File(jobConfig.getUnzipPath()));
 
         } catch (Exception e) {
             Log.e(TAG, "Task executor execute with error:" + e.getMessage());
             throw e;
+        } finally {
+            if (jobConfig.getWorkerExecutor() != null && !sharedWorkerExecutor) {
+                jobConfig.getWorkerExecutor().shutdownNow();
+            }
         }
     }
 }
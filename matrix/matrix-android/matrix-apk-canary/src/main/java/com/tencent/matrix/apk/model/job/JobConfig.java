@@ -19,9 +19,14 @@ package com.tencent.matrix.apk.model.job;
 import com.google.gson.JsonArray;
 
 import com.android.utils.Pair;
+import com.tencent.matrix.apk.model.task.util.ApkIndex;
+import com.tencent.matrix.apk.model.task.util.EntryCache;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by jinqiuchen on 17/6/15.
@@ -42,6 +47,9 @@ public final class JobConfig {
     private Map<String, String> resguardMap;
     private Map<String, Pair<Long, Long>> entrySizeMap;
     private Map<String, String> entryNameMap;
+    private EntryCache entryCache;
+    private ExecutorService workerExecutor;
+    private ApkIndex apkIndex;
 
     public String getInputDir() {
         return inputDir;
@@ -131,6 +139,36 @@ public final class JobConfig {
         this.entryNameMap = entryNameMap;
     }
 
+    public EntryCache getEntryCache() {
+        return entryCache;
+    }
+
+    public void setEntryCache(EntryCache entryCache) {
+        this.entryCache = entryCache;
+    }
+
+    /**
+     * The pool the tasks split their own work on, e.g. one file per worker. It is not the pool the tasks run on,
+     * so a task waiting for its workers never holds a thread they need.
+     */
+    public ExecutorService getWorkerExecutor() {
+        return workerExecutor;
+    }
+
+    public void setWorkerExecutor(ExecutorService workerExecutor) {
+        this.workerExecutor = workerExecutor;
+    }
+
+    /**
+     * Builds the index on first use, the tasks running in parallel share a single pass over the apk.
+     */
+    public synchronized ApkIndex getApkIndex() throws IOException {
+        if (apkIndex == null) {
+            apkIndex = ApkIndex.build(new File(apkPath), entryNameMap);
+        }
+        return apkIndex;
+    }
+
     public JsonArray getOutputConfig() {
         return outputConfig;
     }
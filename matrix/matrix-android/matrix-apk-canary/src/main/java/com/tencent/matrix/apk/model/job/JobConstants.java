@@ -31,6 +31,10 @@ public final class JobConstants {
     public static final String PARAM_FORMAT = "--format";
     public static final String PARAM_FORMAT_JAR = "--formatJar";
     public static final String PARAM_FORMAT_CONFIG = "--formatConfig";
+    /**
+     * @deprecated the libraries are parsed in process, the value is ignored with a warning.
+     */
+    @Deprecated
     public static final String PARAM_TOOL_NM = "--toolnm";
     public static final String PARAM_MIN_SIZE_IN_KB = "--min";
     public static final String PARAM_ORDER = "--order";
@@ -41,6 +45,16 @@ public final class JobConstants {
     public static final String PARAM_MAPPING_TXT = "--mappingTxt";
     public static final String PARAM_RES_MAPPING_TXT = "--resMappingTxt";
     public static final String PARAM_IGNORE_ASSETS_LIST = "--ignoreAssets";
+    public static final String PARAM_READ_ZIP = "--readZip";
+    public static final String PARAM_DIFF_OLD = "--old";
+    public static final String PARAM_DIFF_NEW = "--new";
+    public static final String PARAM_CACHE_DIR = "--cacheDir";
+    public static final String PARAM_CACHE_SIZE_IN_MB = "--cacheSize";
+    public static final String PARAM_TOP = "--top";
+    public static final String PARAM_RES_DECODER = "--resDecoder";
+    public static final String PARAM_BATCH = "--batch";
+    public static final String PARAM_MEMORY_BUDGET_IN_MB = "--memoryBudget";
+    public static final String PARAM_THREADS = "--threads";
 
     public static final String OPTION_MANIFEST = "-manifest";
     public static final String OPTION_FILE_SIZE = "-fileSize";
@@ -61,6 +75,9 @@ public final class JobConstants {
     public static final String ORDER_DESC = "desc";
     public static final String GROUP_PACKAGE = "package";
     public static final String GROUP_CLASS = "class";
+    public static final String RES_DECODER_BINARY = "binary";
+    public static final String RES_DECODER_APKTOOL = "apktool";
+    public static final String RES_DECODER_CHECK = "check";
 
 
     public static final String TASK_RESULT_REGISTRY = "TaskResult-Registry";
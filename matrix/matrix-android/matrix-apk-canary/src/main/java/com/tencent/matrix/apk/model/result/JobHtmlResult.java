@@ -20,15 +20,16 @@ import com.tencent.matrix.javalib.util.Log;
 
 import org.w3c.dom.Document;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
 
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
@@ -42,6 +43,9 @@ public class JobHtmlResult extends JobResult {
     private static final String TAG = "JobHtmlResult";
 
     private final File outputFile;
+    private Writer writer;
+    private Transformer transformer;
+    private boolean opened;
 
     public JobHtmlResult(String format, String outputPath) {
         this.format = format;
@@ -50,74 +54,49 @@ public class JobHtmlResult extends JobResult {
     }
 
     private void writeHtmlStart() throws IOException {
-        PrintWriter printWriter = null;
-        try {
-            if (outputFile.exists() && !outputFile.delete()) {
-                Log.e(TAG, "file " + outputFile.getName() + " is already exists and delete it failed!");
-                return;
-            }
-            if (!outputFile.createNewFile()) {
-                Log.e(TAG, "create output file " + outputFile.getName() + " failed!");
-                return;
-            }
-            printWriter = new PrintWriter(outputFile, "UTF-8");
-            printWriter.append("<html>");
-            printWriter.append("<body>");
-        } finally {
-            if (printWriter != null) {
-                printWriter.close();
-            }
+        opened = true;
+        if (outputFile.exists() && !outputFile.delete()) {
+            Log.e(TAG, "file " + outputFile.getName() + " is already exists and delete it failed!");
+            return;
         }
+        if (!outputFile.createNewFile()) {
+            Log.e(TAG, "create output file " + outputFile.getName() + " failed!");
+            return;
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8));
+        writer.append("<html>");
+        writer.append("<body>");
     }
 
-    private void writeDocument(DOMSource domSource) throws Exception {
-        Transformer transformer = null;
-        try {
+    @Override
+    protected void writeTaskResult(TaskResult taskResult) throws Exception {
+        if (!opened) {
+            writeHtmlStart();
+        }
+        if (writer == null || !(taskResult.getResult() instanceof Document)) {
+            return;
+        }
+        if (transformer == null) {
             transformer = TransformerFactory.newInstance().newTransformer();
-            if (outputFile.isFile() && outputFile.exists()) {
-                FileWriter writer = new FileWriter(outputFile, true);
-                writer.append("<br/>");
-                StreamResult result = new StreamResult(outputFile);
-                result.setWriter(writer);
-                transformer.transform(domSource, result);
-            }
-        } catch (TransformerException | IOException e) {
-            throw e;
         }
+        writer.append("<br/>");
+        transformer.transform(new DOMSource((Document) taskResult.getResult()), new StreamResult(writer));
+        writer.flush();
     }
 
-    private void writeHtmlEnd() throws IOException {
-        try {
-            FileWriter writer = null;
+    @Override
+    protected void closeOutput() throws IOException {
+        if (!opened) {
+            writeHtmlStart();
+        }
+        if (writer != null) {
             try {
-                writer = new FileWriter(outputFile, true);
                 writer.append("</body>");
                 writer.append("</html>");
             } finally {
-                if (writer != null) {
-                    writer.close();
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    @Override
-    public void output() {
-        try {
-            writeHtmlStart();
-            if (!resultList.isEmpty()) {
-                Collections.sort(resultList, new TaskResultComparator());
-                for (TaskResult taskResult : resultList) {
-                    if (taskResult.getResult() != null && taskResult.getResult() instanceof Document) {
-                        writeDocument(new DOMSource((Document) taskResult.getResult()));
-                    }
-                }
+                writer.close();
+                writer = null;
             }
-            writeHtmlEnd();
-        } catch (Exception e) {
-            e.printStackTrace();
         }
     }
 }
@@ -18,16 +18,18 @@ package com.tencent.matrix.apk.model.result;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import com.tencent.matrix.javalib.util.Log;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
 
 /**
  * Created by jinqiuchen on 17/6/13.
@@ -38,6 +40,9 @@ public class JobJsonResult extends JobResult {
     private static final String TAG = "JobJsonResult";
 
     private final File outputFile;
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private Writer writer;
+    private boolean opened;
     private int elementCount;
 
     public JobJsonResult(String format, String outputPath) {
@@ -47,83 +52,50 @@ public class JobJsonResult extends JobResult {
     }
 
     private void writeJsonArrayStart() throws IOException {
-        PrintWriter printWriter = null;
-        try {
-            if (outputFile.exists() && !outputFile.delete()) {
-                Log.e(TAG, "file " + outputFile.getName() + " is already exists and delete it failed!");
-                return;
-            }
-            if (!outputFile.createNewFile()) {
-                Log.e(TAG, "create output file " + outputFile.getName() + " failed!");
-                return;
-            }
-            printWriter = new PrintWriter(outputFile, "UTF-8");
-            printWriter.append("[");
-        } finally {
-            if (printWriter != null) {
-                printWriter.close();
-            }
+        opened = true;
+        if (outputFile.exists() && !outputFile.delete()) {
+            Log.e(TAG, "file " + outputFile.getName() + " is already exists and delete it failed!");
+            return;
         }
-    }
-
-    private void writeJsonElement(JsonElement jsonElement) {
-        if (jsonElement != null) {
-            try {
-                FileWriter writer = null;
-                Gson gson = new GsonBuilder().setPrettyPrinting().create();
-                try {
-                    writer = new FileWriter(outputFile, true);
-                    if (elementCount > 0) {
-                        writer.append(",\n" + gson.toJson(jsonElement));
-                    } else {
-                        writer.append(gson.toJson(jsonElement));
-                    }
-                    elementCount++;
-                } finally {
-                    if (writer != null) {
-                        writer.close();
-                    }
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        if (!outputFile.createNewFile()) {
+            Log.e(TAG, "create output file " + outputFile.getName() + " failed!");
+            return;
         }
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8));
+        writer.append("[");
     }
 
-    private void writeJsonArrayEnd() {
-        try {
-            FileWriter writer = null;
-            try {
-                writer = new FileWriter(outputFile, true);
-                writer.append("]");
-            } finally {
-                if (writer != null) {
-                    writer.close();
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    @Override
+    protected void writeTaskResult(TaskResult taskResult) throws IOException {
+        if (!opened) {
+            writeJsonArrayStart();
+        }
+        if (writer == null || !(taskResult.getResult() instanceof JsonObject)) {
+            return;
         }
+        if (elementCount > 0) {
+            writer.append(",\n");
+        }
+        // the same pretty printing as Gson.toJson(JsonElement), straight into the file
+        JsonWriter jsonWriter = gson.newJsonWriter(writer);
+        gson.toJson((JsonObject) taskResult.getResult(), jsonWriter);
+        jsonWriter.flush();
+        elementCount++;
     }
 
     @Override
-    public void output() {
-        try {
+    protected void closeOutput() throws IOException {
+        if (!opened) {
             writeJsonArrayStart();
-            if (!resultList.isEmpty()) {
-                Collections.sort(resultList, new TaskResultComparator());
-                for (TaskResult taskResult : resultList) {
-                    if (taskResult.getResult() != null && taskResult.getResult() instanceof JsonObject) {
-                        writeJsonElement((JsonObject) taskResult.getResult());
-                    }
-                }
+        }
+        if (writer != null) {
+            try {
+                writer.append("]");
+            } finally {
+                writer.close();
+                writer = null;
             }
-            writeJsonArrayEnd();
-
-        } catch (Exception e) {
-            e.printStackTrace();
         }
     }
 
-
 }
@@ -17,7 +17,12 @@
 package com.tencent.matrix.apk.model.result;
 
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by jinqiuchen on 17/6/13.
@@ -29,16 +34,107 @@ public abstract class JobResult {
 
     protected List<TaskResult> resultList;
 
+    /*
+     *  task types whose results are still to come, known only if the job declared them by expectTaskResult()
+     */
+    private final Map<Integer, Integer> pendingTaskTypes = new HashMap<>();
+    private boolean streaming;
+    private final TaskResultComparator comparator = new TaskResultComparator();
+
     public String getFormat() {
         return format;
     }
 
+    /**
+     * Declares a task result that will be added or skipped later. Once every result that sorts before a
+     * finished one is known, it is written at once instead of waiting for {@link #output()}.
+     */
+    public void expectTaskResult(int taskType) {
+        streaming = true;
+        Integer count = pendingTaskTypes.get(taskType);
+        pendingTaskTypes.put(taskType, count == null ? 1 : count + 1);
+    }
+
     public void addTaskResult(TaskResult result) {
         if (resultList != null) {
             resultList.add(result);
         }
+        finishTask(result.taskType);
+    }
+
+    /**
+     * The expected task finished without a result in this format.
+     */
+    public void skipTaskResult(int taskType) {
+        finishTask(taskType);
+    }
+
+    private void finishTask(int taskType) {
+        Integer count = pendingTaskTypes.get(taskType);
+        if (count != null) {
+            if (count > 1) {
+                pendingTaskTypes.put(taskType, count - 1);
+            } else {
+                pendingTaskTypes.remove(taskType);
+            }
+        }
+        if (streaming) {
+            try {
+                writeReadyResults(false);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
     }
 
-    public abstract void output();
+    /*
+     *  results are written in the stable order of TaskResultComparator, the same order a full sort
+     *  at the end would give, so a result has to wait for every pending task of a lower level
+     */
+    private void writeReadyResults(boolean all) throws Exception {
+        if (resultList == null || resultList.isEmpty()) {
+            return;
+        }
+        Collections.sort(resultList, comparator);
+        int minPendingLevel = Integer.MAX_VALUE;
+        if (!all) {
+            for (Integer taskType : pendingTaskTypes.keySet()) {
+                minPendingLevel = Math.min(minPendingLevel, TaskResultComparator.getImportLevel(taskType));
+            }
+        }
+        Iterator<TaskResult> iterator = resultList.iterator();
+        while (iterator.hasNext()) {
+            TaskResult taskResult = iterator.next();
+            if (TaskResultComparator.getImportLevel(taskResult.taskType) > minPendingLevel) {
+                break;
+            }
+            writeTaskResult(taskResult);
+            iterator.remove();
+        }
+    }
+
+    public void output() {
+        try {
+            writeReadyResults(true);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                closeOutput();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Writes one result to the output, opening it on the first call.
+     */
+    protected abstract void writeTaskResult(TaskResult taskResult) throws Exception;
+
+    /**
+     * Finishes the output, opening it first if no result was written.
+     */
+    protected abstract void closeOutput() throws IOException;
 
 }
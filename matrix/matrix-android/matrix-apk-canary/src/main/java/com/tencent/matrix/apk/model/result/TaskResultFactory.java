@@ -27,8 +27,8 @@ import com.tencent.matrix.javalib.util.Log;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -42,8 +42,9 @@ public final class TaskResultFactory {
     public static final String TASK_RESULT_TYPE_JSON = "json";
     public static final String TASK_RESULT_TYPE_HTML = "html";
 
-    private static Map<String, Class<? extends TaskHtmlResult>> customHtmlResultMap = new HashMap<>();
-    private static Map<String, Class<? extends TaskJsonResult>> customJsonResultMap = new HashMap<>();
+    // registered by every job, several jobs of a batch may run at the same time
+    private static Map<String, Class<? extends TaskHtmlResult>> customHtmlResultMap = new ConcurrentHashMap<>();
+    private static Map<String, Class<? extends TaskJsonResult>> customJsonResultMap = new ConcurrentHashMap<>();
 
     public static TaskResult factory(int taskType, String resultType, JobConfig config) throws ParserConfigurationException, IllegalAccessException, InstantiationException, NoSuchMethodException, InvocationTargetException {
         TaskResult result = null;
@@ -30,15 +30,14 @@ import com.tencent.matrix.apk.model.result.TaskResult;
 import com.tencent.matrix.apk.model.result.TaskResultFactory;
 import com.tencent.matrix.apk.model.task.util.ApkConstants;
 import com.tencent.matrix.apk.model.task.util.ApkUtil;
+import com.tencent.matrix.apk.model.task.util.PackageTree;
 import com.tencent.matrix.javalib.util.Log;
 import com.tencent.matrix.javalib.util.Util;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -56,7 +55,7 @@ public class CountClassTask extends ApkTask {
     private File inputFile;
     private String group = JobConstants.GROUP_PACKAGE;
     private final List<String> dexFileNameList;
-    private final List<RandomAccessFile> dexFileList;
+    private final List<File> dexFileList;
 
     public CountClassTask(JobConfig config, Map<String, String> params) {
         super(config, params);
@@ -85,18 +84,13 @@ public class CountClassTask extends ApkTask {
         }
 
         File[] files = inputFile.listFiles();
-        try {
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile() && file.getName().endsWith(ApkConstants.DEX_FILE_SUFFIX)) {
-                        dexFileNameList.add(file.getName());
-                        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
-                        dexFileList.add(randomAccessFile);
-                    }
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && file.getName().endsWith(ApkConstants.DEX_FILE_SUFFIX)) {
+                    dexFileNameList.add(file.getName());
+                    dexFileList.add(file);
                 }
             }
-        } catch (FileNotFoundException e) {
-            throw new TaskInitException(e.getMessage(), e);
         }
 
         if (params.containsKey(JobConstants.PARAM_GROUP)) {
@@ -118,7 +112,7 @@ public class CountClassTask extends ApkTask {
             JsonArray dexFiles = new JsonArray();
 
             for (int i = 0; i < dexFileList.size(); i++) {
-                RandomAccessFile dexFile = dexFileList.get(i);
+                File dexFile = dexFileList.get(i);
                 DexData dexData = new DexData(dexFile);
                 dexData.load();
                 ClassRef[] defClassRefs = dexData.getInternalReferences();
@@ -137,24 +131,26 @@ public class CountClassTask extends ApkTask {
                 jsonObject.addProperty("dex-file", dexFileNameList.get(i));
                 //Log.d(TAG, "dex %s, classes %s", dexFileNameList.get(i), classNameSet.toString());
 
-                Map<String, Set<String>> packageClass = new HashMap<>();
                 if (JobConstants.GROUP_PACKAGE.equals(group)) {
-                    String packageName = "";
+                    PackageTree packageTree = new PackageTree();
+                    Map<PackageTree.Node, Set<String>> packageClass = new IdentityHashMap<>();
                     for (String clazzName : classNameSet) {
-                        packageName = ApkUtil.getPackageName(clazzName);
-                        if (!Util.isNullOrNil(packageName)) {
-                            if (!packageClass.containsKey(packageName)) {
-                                packageClass.put(packageName, new HashSet<String>());
+                        PackageTree.Node pkg = packageTree.add(clazzName, 1);
+                        if (pkg != null) {
+                            Set<String> classes = packageClass.get(pkg);
+                            if (classes == null) {
+                                classes = new HashSet<>();
+                                packageClass.put(pkg, classes);
                             }
-                            packageClass.get(packageName).add(clazzName);
+                            classes.add(clazzName);
                         }
                     }
                     JsonArray packages = new JsonArray();
-                    for (Map.Entry<String, Set<String>> pkg : packageClass.entrySet()) {
+                    for (PackageTree.Node pkg : packageTree.packages()) {
                         JsonObject pkgObj = new JsonObject();
-                        pkgObj.addProperty("package", pkg.getKey());
+                        pkgObj.addProperty("package", pkg.getName());
                         JsonArray classArray = new JsonArray();
-                        for (String clazz : pkg.getValue()) {
+                        for (String clazz : packageClass.get(pkg)) {
                             classArray.add(clazz);
                         }
                         pkgObj.add("classes", classArray);
@@ -31,8 +31,6 @@ import com.tencent.matrix.apk.model.task.util.ApkUtil;
 import com.tencent.matrix.javalib.util.Util;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -50,7 +48,7 @@ public class CountRTask extends ApkTask {
 
     private File inputFile;
     private final List<String> dexFileNameList;
-    private final List<RandomAccessFile> dexFileList;
+    private final List<File> dexFileList;
     private final Map<String, Integer> classesMap;
 
     public CountRTask(JobConfig config, Map<String, String> params) {
@@ -79,18 +77,13 @@ public class CountRTask extends ApkTask {
         }
 
         File[] files = inputFile.listFiles();
-        try {
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile() && file.getName().endsWith(ApkConstants.DEX_FILE_SUFFIX)) {
-                        dexFileNameList.add(file.getName());
-                        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
-                        dexFileList.add(randomAccessFile);
-                    }
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && file.getName().endsWith(ApkConstants.DEX_FILE_SUFFIX)) {
+                    dexFileNameList.add(file.getName());
+                    dexFileList.add(file);
                 }
             }
-        } catch (FileNotFoundException e) {
-            throw new TaskInitException(e.getMessage(), e);
         }
 
     }
@@ -111,7 +104,7 @@ public class CountRTask extends ApkTask {
             TaskResult taskResult = TaskResultFactory.factory(type, TaskResultFactory.TASK_RESULT_TYPE_JSON, config);
             long startTime = System.currentTimeMillis();
             Map<String, String> classProguardMap = config.getProguardClassMap();
-            for (RandomAccessFile dexFile : dexFileList) {
+            for (File dexFile : dexFileList) {
                 DexData dexData = new DexData(dexFile);
                 dexData.load();
                 ClassRef[] defClassRefs = dexData.getInternalReferences();
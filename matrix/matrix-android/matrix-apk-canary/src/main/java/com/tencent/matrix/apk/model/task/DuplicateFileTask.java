@@ -17,28 +17,38 @@
 package com.tencent.matrix.apk.model.task;
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import com.tencent.matrix.apk.model.exception.TaskExecuteException;
 import com.tencent.matrix.apk.model.exception.TaskInitException;
 import com.tencent.matrix.apk.model.job.JobConfig;
+import com.tencent.matrix.apk.model.job.JobConstants;
 import com.tencent.matrix.apk.model.result.TaskJsonResult;
 import com.tencent.matrix.apk.model.result.TaskResult;
 import com.tencent.matrix.apk.model.result.TaskResultFactory;
+import com.tencent.matrix.apk.model.task.util.ApkUtil;
+import com.tencent.matrix.apk.model.task.util.EntryCache;
 import com.android.utils.Pair;
 import com.tencent.matrix.javalib.util.Util;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * Created by jinqiuchen on 17/6/27.
@@ -48,12 +58,35 @@ public class DuplicateFileTask extends ApkTask {
 
     private static final String TAG = "Matrix.DuplicateFileTask";
 
+    private static final int HEAD_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
     private File inputFile;
-    private Map<String, List<String>> md5Map;
-    private List<Pair<String, Long>> fileSizeList;
+    private File apkFile;
+    private boolean readZip;
+    private ZipFile zipFile;
     private Map<String, Pair<Long, Long>> entrySizeMap;
     private Map<String, String> entryNameMap;
 
+    private final ThreadLocal<byte[]> readBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    /*
+     *  a regular file in the unzip dir, or an entry of the apk if reading from zip
+     */
+    private static final class FileItem {
+        String filename;
+        File file;
+        ZipEntry entry;
+        long size;
+        String headMd5;
+        String md5;
+    }
+
     public DuplicateFileTask(JobConfig config, Map<String, String> params) {
         super(config, params);
         type = TaskFactory.TASK_TYPE_DUPLICATE_FILE;
@@ -62,60 +95,195 @@ public class DuplicateFileTask extends ApkTask {
     @Override
     public void init() throws TaskInitException {
         super.init();
-        String inputPath = config.getUnzipPath();
-        if (Util.isNullOrNil(inputPath)) {
-            throw new TaskInitException(TAG + "---APK-UNZIP-PATH can not be null!");
-        }
-        inputFile = new File(inputPath);
-        if (!inputFile.exists()) {
-            throw new TaskInitException(TAG + "---APK-UNZIP-PATH '" + inputPath + "'is not exists!");
-        } else if (!inputFile.isDirectory()) {
-            throw new TaskInitException(TAG + "---APK-UNZIP-PATH '" + inputPath + "' is not directory!");
+        readZip = Boolean.parseBoolean(params.get(JobConstants.PARAM_READ_ZIP));
+        if (readZip) {
+            if (Util.isNullOrNil(config.getApkPath())) {
+                throw new TaskInitException(TAG + "---APK-FILE-PATH can not be null!");
+            }
+            apkFile = new File(config.getApkPath());
+            if (!apkFile.isFile()) {
+                throw new TaskInitException(TAG + "---APK-FILE-PATH '" + config.getApkPath() + "' is not exists!");
+            }
+        } else {
+            String inputPath = config.getUnzipPath();
+            if (Util.isNullOrNil(inputPath)) {
+                throw new TaskInitException(TAG + "---APK-UNZIP-PATH can not be null!");
+            }
+            inputFile = new File(inputPath);
+            if (!inputFile.exists()) {
+                throw new TaskInitException(TAG + "---APK-UNZIP-PATH '" + inputPath + "'is not exists!");
+            } else if (!inputFile.isDirectory()) {
+                throw new TaskInitException(TAG + "---APK-UNZIP-PATH '" + inputPath + "' is not directory!");
+            }
         }
-        md5Map = new HashMap<>();
-        fileSizeList = new ArrayList<>();
         entrySizeMap = config.getEntrySizeMap();
         entryNameMap = config.getEntryNameMap();
     }
 
-    private void computeMD5(File file) throws NoSuchAlgorithmException, IOException {
+    private String getEntryName(String name) {
+        if (entryNameMap.containsKey(name)) {
+            return entryNameMap.get(name);
+        }
+        return name;
+    }
+
+    private void collectFiles(File file, List<FileItem> items) {
         if (file != null) {
             if (file.isDirectory()) {
                 File[] files = file.listFiles();
                 for (File resFile : files) {
-                    computeMD5(resFile);
-                }
-            } else {
-                MessageDigest msgDigest = MessageDigest.getInstance("MD5");
-                BufferedInputStream inputStream = new BufferedInputStream(new FileInputStream(file));
-                byte[] buffer = new byte[512];
-                int readSize = 0;
-                long totalRead = 0;
-                while ((readSize = inputStream.read(buffer)) > 0) {
-                    msgDigest.update(buffer, 0, readSize);
-                    totalRead += readSize;
+                    collectFiles(resFile, items);
                 }
-                inputStream.close();
-                if (totalRead > 0) {
-                    final String md5 = Util.byteArrayToHex(msgDigest.digest());
-                    String filename = file.getAbsolutePath().substring(inputFile.getAbsolutePath().length() + 1);
-                    if (entryNameMap.containsKey(filename)) {
-                        filename = entryNameMap.get(filename);
+            } else if (file.length() > 0) {
+                FileItem item = new FileItem();
+                item.file = file;
+                item.size = file.length();
+                item.filename = getEntryName(file.getAbsolutePath().substring(inputFile.getAbsolutePath().length() + 1));
+                items.add(item);
+            }
+        }
+    }
+
+    private void collectZipEntries(List<FileItem> items) {
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && entry.getSize() > 0) {
+                FileItem item = new FileItem();
+                item.entry = entry;
+                item.size = entry.getSize();
+                item.filename = getEntryName(entry.getName());
+                items.add(item);
+            }
+        }
+    }
+
+    /*
+     *  only files sharing the same size (and CRC, if read from zip) can be duplicated
+     */
+    private List<FileItem> filterBySize(List<FileItem> items) {
+        Map<String, List<FileItem>> buckets = new LinkedHashMap<>();
+        for (FileItem item : items) {
+            String key = item.entry != null ? item.size + "/" + item.entry.getCrc() : String.valueOf(item.size);
+            List<FileItem> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                buckets.put(key, bucket);
+            }
+            bucket.add(item);
+        }
+        List<FileItem> candidates = new ArrayList<>();
+        for (FileItem item : items) {
+            String key = item.entry != null ? item.size + "/" + item.entry.getCrc() : String.valueOf(item.size);
+            if (buckets.get(key).size() > 1) {
+                candidates.add(item);
+            }
+        }
+        return candidates;
+    }
+
+    private String computeMD5(FileItem item, long limit) throws NoSuchAlgorithmException, IOException {
+        MessageDigest msgDigest = MessageDigest.getInstance("MD5");
+        InputStream inputStream = item.entry != null ? zipFile.getInputStream(item.entry) : new FileInputStream(item.file);
+        try {
+            byte[] buffer = readBuffer.get();
+            long totalRead = 0;
+            int readSize;
+            while (totalRead < limit && (readSize = inputStream.read(buffer, 0, (int) Math.min(buffer.length, limit - totalRead))) > 0) {
+                msgDigest.update(buffer, 0, readSize);
+                totalRead += readSize;
+            }
+        } finally {
+            inputStream.close();
+        }
+        return Util.byteArrayToHex(msgDigest.digest());
+    }
+
+    private void computeMD5(List<FileItem> items, final boolean headOnly) throws Exception {
+        List<Callable<String>> digests = new ArrayList<>(items.size());
+        for (final FileItem item : items) {
+            digests.add(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    EntryCache entryCache = config.getEntryCache();
+                    if (headOnly || item.file == null || entryCache == null) {
+                        return computeMD5(item, headOnly ? HEAD_SIZE : Long.MAX_VALUE);
                     }
-                    if (!md5Map.containsKey(md5)) {
-                        md5Map.put(md5, new ArrayList<String>());
-                        if (entrySizeMap.containsKey(filename)) {
-                            fileSizeList.add(Pair.of(md5, entrySizeMap.get(filename).getFirst()));
-                        } else {
-                            fileSizeList.add(Pair.of(md5, totalRead));
-                        }
+                    JsonElement cached = entryCache.get(EntryCache.NAMESPACE_MD5, item.file);
+                    if (cached != null) {
+                        return cached.getAsString();
                     }
-                    md5Map.get(md5).add(filename);
+                    String md5 = computeMD5(item, Long.MAX_VALUE);
+                    entryCache.put(EntryCache.NAMESPACE_MD5, item.file, new JsonPrimitive(md5));
+                    return md5;
                 }
+            });
+        }
+        List<Future<String>> futures = ApkUtil.invokeAll(config.getWorkerExecutor(), digests);
+        for (int i = 0; i < items.size(); i++) {
+            FileItem item = items.get(i);
+            if (headOnly) {
+                item.headMd5 = futures.get(i).get();
+                if (item.size <= HEAD_SIZE) {
+                    item.md5 = item.headMd5;
+                }
+            } else {
+                item.md5 = futures.get(i).get();
             }
         }
     }
 
+    /*
+     *  returns the groups of files with the same md5 in the order their first file was found
+     */
+    private List<List<FileItem>> findDuplicates(List<FileItem> items) throws Exception {
+        List<FileItem> candidates = filterBySize(items);
+        if (readZip) {
+            // the CRC from the central directory already did what the head hash does
+            computeMD5(candidates, false);
+        } else {
+            computeMD5(candidates, true);
+            Map<String, Integer> headCount = new LinkedHashMap<>();
+            for (FileItem item : candidates) {
+                String key = item.size + "/" + item.headMd5;
+                headCount.put(key, headCount.containsKey(key) ? headCount.get(key) + 1 : 1);
+            }
+            List<FileItem> fullCandidates = new ArrayList<>();
+            for (FileItem item : candidates) {
+                if (item.md5 == null && headCount.get(item.size + "/" + item.headMd5) > 1) {
+                    fullCandidates.add(item);
+                }
+            }
+            computeMD5(fullCandidates, false);
+        }
+        Map<String, List<FileItem>> md5Map = new LinkedHashMap<>();
+        for (FileItem item : candidates) {
+            if (item.md5 != null) {
+                List<FileItem> group = md5Map.get(item.md5);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    md5Map.put(item.md5, group);
+                }
+                group.add(item);
+            }
+        }
+        List<List<FileItem>> duplicates = new ArrayList<>();
+        for (List<FileItem> group : md5Map.values()) {
+            if (group.size() > 1) {
+                duplicates.add(group);
+            }
+        }
+        return duplicates;
+    }
+
+    private long getGroupSize(List<FileItem> group) {
+        FileItem first = group.get(0);
+        if (entrySizeMap.containsKey(first.filename)) {
+            return entrySizeMap.get(first.filename).getFirst();
+        }
+        return first.size;
+    }
+
     @Override
     public TaskResult call() throws TaskExecuteException {
         TaskResult taskResult = null;
@@ -124,13 +292,30 @@ public class DuplicateFileTask extends ApkTask {
             long startTime = System.currentTimeMillis();
             JsonArray jsonArray = new JsonArray();
 
-            computeMD5(inputFile);
+            List<FileItem> items = new ArrayList<>();
+            List<List<FileItem>> duplicates;
+            if (readZip) {
+                zipFile = new ZipFile(apkFile);
+                try {
+                    collectZipEntries(items);
+                    duplicates = findDuplicates(items);
+                } finally {
+                    zipFile.close();
+                }
+            } else {
+                collectFiles(inputFile, items);
+                duplicates = findDuplicates(items);
+            }
 
-            Collections.sort(fileSizeList, new Comparator<Pair<String, Long>>() {
+            final Map<List<FileItem>, Long> groupSize = new LinkedHashMap<>();
+            for (List<FileItem> group : duplicates) {
+                groupSize.put(group, getGroupSize(group));
+            }
+            Collections.sort(duplicates, new Comparator<List<FileItem>>() {
                 @Override
-                public int compare(Pair<String, Long> entry1, Pair<String, Long> entry2) {
-                    long file1Len = entry1.getSecond();
-                    long file2Len = entry2.getSecond();
+                public int compare(List<FileItem> group1, List<FileItem> group2) {
+                    long file1Len = groupSize.get(group1);
+                    long file2Len = groupSize.get(group2);
                     if (file1Len < file2Len) {
                         return 1;
                     } else if (file1Len > file2Len) {
@@ -141,18 +326,16 @@ public class DuplicateFileTask extends ApkTask {
                 }
             });
 
-            for (Pair<String, Long> entry : fileSizeList) {
-                if (md5Map.get(entry.getFirst()).size() > 1) {
-                    JsonObject jsonObject = new JsonObject();
-                    jsonObject.addProperty("md5", entry.getFirst());
-                    jsonObject.addProperty("size", entry.getSecond());
-                    JsonArray jsonFiles = new JsonArray();
-                    for (String filename : md5Map.get(entry.getFirst())) {
-                        jsonFiles.add(filename);
-                    }
-                    jsonObject.add("files", jsonFiles);
-                    jsonArray.add(jsonObject);
+            for (List<FileItem> group : duplicates) {
+                JsonObject jsonObject = new JsonObject();
+                jsonObject.addProperty("md5", group.get(0).md5);
+                jsonObject.addProperty("size", groupSize.get(group));
+                JsonArray jsonFiles = new JsonArray();
+                for (FileItem item : group) {
+                    jsonFiles.add(item.filename);
                 }
+                jsonObject.add("files", jsonFiles);
+                jsonArray.add(jsonObject);
             }
             ((TaskJsonResult) taskResult).add("files", jsonArray);
             taskResult.setStartTime(startTime);
@@ -18,8 +18,13 @@ package com.tencent.matrix.apk.model.task;
 
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import com.tencent.matrix.apk.model.task.util.ApkConstants;
+import com.tencent.matrix.apk.model.task.util.ApkUtil;
+import com.tencent.matrix.apk.model.task.util.EntryCache;
+import com.tencent.matrix.apk.model.task.util.PngParser;
 import com.tencent.matrix.apk.model.exception.TaskExecuteException;
 import com.tencent.matrix.apk.model.exception.TaskInitException;
 import com.tencent.matrix.apk.model.job.JobConfig;
@@ -30,7 +35,6 @@ import com.tencent.matrix.apk.model.result.TaskResultFactory;
 import com.tencent.matrix.javalib.util.Log;
 import com.tencent.matrix.javalib.util.Util;
 import com.android.utils.Pair;
-import java.awt.image.BufferedImage;
 
 import java.io.File;
 import java.io.IOException;
@@ -39,8 +43,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-
-import javax.imageio.ImageIO;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import static com.tencent.matrix.apk.model.task.TaskFactory.TASK_TYPE_FIND_NON_ALPHA_PNG;
 
@@ -88,27 +92,55 @@ public class FindNonAlphaPngTask extends ApkTask {
         entryNameMap = config.getEntryNameMap();
     }
 
-    private void findNonAlphaPng(File file) throws IOException {
+    private void collectPngFiles(File file, List<File> pngFiles) {
         if (file != null) {
             if (file.isDirectory()) {
                 File[] files = file.listFiles();
                 for (File tempFile : files) {
-                    findNonAlphaPng(tempFile);
+                    collectPngFiles(tempFile, pngFiles);
                 }
             } else if (file.isFile() && file.getName().endsWith(ApkConstants.PNG_FILE_SUFFIX) && !file.getName().endsWith(ApkConstants.NINE_PNG)) {
-                BufferedImage bufferedImage = ImageIO.read(file);
-                if (!bufferedImage.getColorModel().hasAlpha()) {
-                    String filename = file.getAbsolutePath().substring(inputFile.getAbsolutePath().length() + 1);
-                    if (entryNameMap.containsKey(filename)) {
-                        filename = entryNameMap.get(filename);
-                    }
-                    long size = file.length();
-                    if (entrySizeMap.containsKey(filename)) {
-                        size = entrySizeMap.get(filename).getFirst();
+                pngFiles.add(file);
+            }
+        }
+    }
+
+    private void findNonAlphaPng(File dir) throws Exception {
+        List<File> pngFiles = new ArrayList<>();
+        collectPngFiles(dir, pngFiles);
+        List<Callable<Boolean>> checks = new ArrayList<>(pngFiles.size());
+        for (final File file : pngFiles) {
+            checks.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    EntryCache entryCache = config.getEntryCache();
+                    if (entryCache == null) {
+                        return PngParser.hasAlpha(file);
                     }
-                    if (size >= downLimitSize * ApkConstants.K1024) {
-                        nonAlphaPngList.add(Pair.of(filename, file.length()));
+                    JsonElement cached = entryCache.get(EntryCache.NAMESPACE_PNG_ALPHA, file);
+                    if (cached != null) {
+                        return cached.getAsBoolean();
                     }
+                    boolean hasAlpha = PngParser.hasAlpha(file);
+                    entryCache.put(EntryCache.NAMESPACE_PNG_ALPHA, file, new JsonPrimitive(hasAlpha));
+                    return hasAlpha;
+                }
+            });
+        }
+        List<Future<Boolean>> futures = ApkUtil.invokeAll(config.getWorkerExecutor(), checks);
+        for (int i = 0; i < pngFiles.size(); i++) {
+            if (!futures.get(i).get()) {
+                File file = pngFiles.get(i);
+                String filename = file.getAbsolutePath().substring(inputFile.getAbsolutePath().length() + 1);
+                if (entryNameMap.containsKey(filename)) {
+                    filename = entryNameMap.get(filename);
+                }
+                long size = file.length();
+                if (entrySizeMap.containsKey(filename)) {
+                    size = entrySizeMap.get(filename).getFirst();
+                }
+                if (size >= downLimitSize * ApkConstants.K1024) {
+                    nonAlphaPngList.add(Pair.of(filename, file.length()));
                 }
             }
         }
@@ -16,6 +16,8 @@
 
 package com.tencent.matrix.apk.model.task;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.tencent.matrix.apk.model.task.util.ApkConstants;
 import com.tencent.matrix.apk.model.exception.TaskExecuteException;
@@ -24,6 +26,7 @@ import com.tencent.matrix.apk.model.job.JobConfig;
 import com.tencent.matrix.apk.model.result.TaskJsonResult;
 import com.tencent.matrix.apk.model.result.TaskResult;
 import com.tencent.matrix.apk.model.result.TaskResultFactory;
+import com.tencent.matrix.apk.model.task.util.ApkResourceDecoder;
 import com.tencent.matrix.apk.model.task.util.ManifestParser;
 import com.tencent.matrix.javalib.util.FileUtil;
 import com.tencent.matrix.javalib.util.Log;
@@ -43,6 +46,11 @@ public class ManifestAnalyzeTask extends ApkTask {
 
     private static final String TAG = "Matrix.ManifestAnalyzeTask";
 
+    private static final String ATTR_NAME = "android:name";
+    private static final String TAG_APPLICATION = "application";
+    private static final String[] COMPONENT_TAGS = {"activity", "activity-alias", "service", "receiver", "provider"};
+    private static final String[] PERMISSION_TAGS = {"uses-permission", "uses-permission-sdk-23", "uses-permission-sdk-m"};
+
     private File inputFile;
     private File arscFile;
 
@@ -67,23 +75,56 @@ public class ManifestAnalyzeTask extends ApkTask {
         arscFile = new File(inputPath, ApkConstants.ARSC_FILE_NAME);
     }
 
+    /*
+     *  the android:name of every child element with one of the tags
+     */
+    private static JsonArray collectNames(JsonObject parent, String... tags) {
+        JsonArray names = new JsonArray();
+        for (String tag : tags) {
+            if (parent == null || !parent.has(tag)) {
+                continue;
+            }
+            for (JsonElement child : parent.getAsJsonArray(tag)) {
+                JsonElement name = child.getAsJsonObject().get(ATTR_NAME);
+                if (name != null && !Util.isNullOrNil(name.getAsString())) {
+                    names.add(name.getAsString());
+                }
+            }
+        }
+        return names;
+    }
+
     @Override
     public TaskResult call() throws TaskExecuteException {
         try {
-            ManifestParser manifestParser = null;
-            if (!FileUtil.isLegalFile(arscFile)) {
-                manifestParser = new ManifestParser(inputFile);
-            } else {
-                manifestParser = new ManifestParser(inputFile, arscFile);
-            }
             TaskResult taskResult = TaskResultFactory.factory(getType(), TASK_RESULT_TYPE_JSON, config);
             if (taskResult == null) {
                 return null;
             }
             long startTime = System.currentTimeMillis();
-            JsonObject jsonObject = manifestParser.parse();
+            JsonObject jsonObject;
+            synchronized (ApkResourceDecoder.APKTOOL_LOCK) {
+                ManifestParser manifestParser = null;
+                if (!FileUtil.isLegalFile(arscFile)) {
+                    manifestParser = new ManifestParser(inputFile);
+                } else {
+                    manifestParser = new ManifestParser(inputFile, arscFile);
+                }
+                jsonObject = manifestParser.parse();
+            }
 //            Log.d(TAG, jsonObject.toString());
             ((TaskJsonResult) taskResult).add("manifest", jsonObject);
+
+            JsonObject application = null;                             //components and permissions are picked from the parsed tree.
+            if (jsonObject != null && jsonObject.has(TAG_APPLICATION) && jsonObject.getAsJsonArray(TAG_APPLICATION).size() > 0) {
+                application = jsonObject.getAsJsonArray(TAG_APPLICATION).get(0).getAsJsonObject();
+            }
+            JsonObject components = new JsonObject();
+            for (String tag : COMPONENT_TAGS) {
+                components.add(tag, collectNames(application, tag));
+            }
+            ((TaskJsonResult) taskResult).add("components", components);
+            ((TaskJsonResult) taskResult).add("permissions", collectNames(jsonObject, PERMISSION_TAGS));
             taskResult.setStartTime(startTime);
             taskResult.setEndTime(System.currentTimeMillis());
             return taskResult;
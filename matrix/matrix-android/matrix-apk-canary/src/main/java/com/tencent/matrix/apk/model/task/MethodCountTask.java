@@ -20,6 +20,7 @@ import com.android.dexdeps.ClassRef;
 import com.android.dexdeps.DexData;
 import com.android.dexdeps.MethodRef;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.tencent.matrix.apk.model.task.util.ApkConstants;
 import com.tencent.matrix.apk.model.exception.TaskExecuteException;
@@ -30,19 +31,15 @@ import com.tencent.matrix.apk.model.result.TaskJsonResult;
 import com.tencent.matrix.apk.model.result.TaskResult;
 import com.tencent.matrix.apk.model.result.TaskResultFactory;
 import com.tencent.matrix.apk.model.task.util.ApkUtil;
+import com.tencent.matrix.apk.model.task.util.CountTable;
+import com.tencent.matrix.apk.model.task.util.EntryCache;
+import com.tencent.matrix.apk.model.task.util.PackageTree;
 import com.tencent.matrix.javalib.util.Log;
 import com.tencent.matrix.javalib.util.Util;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -60,21 +57,18 @@ public class MethodCountTask extends ApkTask {
     private File inputFile;
     private String group = JobConstants.GROUP_PACKAGE;
     private final List<String>           dexFileNameList;
-    private final List<RandomAccessFile> dexFileList;
-    private final Map<String, Integer> classInternalMethod;
-    private final Map<String, Integer> classExternalMethod;
-    private final Map<String, Integer> pkgInternalRefMethod;
-    private final Map<String, Integer> pkgExternalMethod;
+    private final List<File>             dexFileList;
+    private int topLimit;
+    private final CountTable classInternalMethod;
+    private final CountTable classExternalMethod;
 
     public MethodCountTask(JobConfig config, Map<String, String> params) {
         super(config, params);
         type = TASK_TYPE_COUNT_METHOD;
         dexFileNameList = new ArrayList<String>();
-        dexFileList = new ArrayList<RandomAccessFile>();
-        classInternalMethod = new HashMap<String, Integer>();
-        classExternalMethod = new HashMap<String, Integer>();
-        pkgInternalRefMethod = new HashMap<String, Integer>();
-        pkgExternalMethod = new HashMap<String, Integer>();
+        dexFileList = new ArrayList<File>();
+        classInternalMethod = new CountTable();
+        classExternalMethod = new CountTable();
     }
 
     @Override
@@ -92,18 +86,13 @@ public class MethodCountTask extends ApkTask {
             throw new TaskInitException(TAG + "---APK-UNZIP-PATH '" + inputPath + "' is not directory!");
         }
         File[] files = inputFile.listFiles();
-        try {
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile() && file.getName().endsWith(ApkConstants.DEX_FILE_SUFFIX)) {
-                        dexFileNameList.add(file.getName());
-                        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
-                        dexFileList.add(randomAccessFile);
-                    }
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && file.getName().endsWith(ApkConstants.DEX_FILE_SUFFIX)) {
+                    dexFileNameList.add(file.getName());
+                    dexFileList.add(file);
                 }
             }
-        } catch (FileNotFoundException e) {
-            throw new TaskInitException(e.getMessage(), e);
         }
         if (params.containsKey(JobConstants.PARAM_GROUP)) {
             if (JobConstants.GROUP_PACKAGE.equals(params.get(JobConstants.PARAM_GROUP))) {
@@ -114,82 +103,123 @@ public class MethodCountTask extends ApkTask {
                 Log.e(TAG, "GROUP-BY '" + params.get(JobConstants.PARAM_GROUP) + "' is not correct!");
             }
         }
+        if (params.containsKey(JobConstants.PARAM_TOP)) {
+            try {
+                topLimit = Integer.parseInt(params.get(JobConstants.PARAM_TOP));
+            } catch (NumberFormatException e) {
+                Log.e(TAG, "TOP '" + params.get(JobConstants.PARAM_TOP) + "' is not a number!");
+            }
+        }
     }
 
-    private void countDex(RandomAccessFile dexFile) throws IOException {
-        classInternalMethod.clear();
-        classExternalMethod.clear();
-        pkgInternalRefMethod.clear();
-        pkgExternalMethod.clear();
+    /*
+     *  the raw class names of a dex: external classes, and the declaring class of every method
+     *  as [name, count] runs in the order of the method ids
+     */
+    private JsonObject readDexTable(File dexFile) throws IOException {
+        EntryCache entryCache = config.getEntryCache();
+        if (entryCache != null) {
+            JsonElement cached = entryCache.get(EntryCache.NAMESPACE_DEX_METHODS, dexFile);
+            if (cached != null && cached.isJsonObject()) {
+                return cached.getAsJsonObject();
+            }
+        }
         DexData dexData = new DexData(dexFile);
         dexData.load();
-        MethodRef[] methodRefs = dexData.getMethodRefs();
-        ClassRef[] externalClassRefs = dexData.getExternalReferences();
+        JsonArray externalClasses = new JsonArray();
+        for (ClassRef classRef : dexData.getExternalReferences()) {
+            externalClasses.add(classRef.getName());
+        }
+        JsonArray methodClasses = new JsonArray();
+        String lastClassName = null;
+        int count = 0;
+        for (MethodRef methodRef : dexData.getMethodRefs()) {
+            String className = methodRef.getDeclClassName();
+            if (!className.equals(lastClassName)) {
+                if (lastClassName != null) {
+                    methodClasses.add(methodRun(lastClassName, count));
+                }
+                lastClassName = className;
+                count = 0;
+            }
+            count++;
+        }
+        if (lastClassName != null) {
+            methodClasses.add(methodRun(lastClassName, count));
+        }
+        JsonObject table = new JsonObject();
+        table.add("external-classes", externalClasses);
+        table.add("method-classes", methodClasses);
+        if (entryCache != null) {
+            entryCache.put(EntryCache.NAMESPACE_DEX_METHODS, dexFile, table);
+        }
+        return table;
+    }
+
+    private static JsonArray methodRun(String className, int count) {
+        JsonArray run = new JsonArray();
+        run.add(className);
+        run.add(count);
+        return run;
+    }
+
+    private void countDex(File dexFile) throws IOException {
+        classInternalMethod.clear();
+        classExternalMethod.clear();
+        JsonObject dexTable = readDexTable(dexFile);
         Map<String, String> proguardClassMap = config.getProguardClassMap();
         String className = null;
-        for (ClassRef classRef : externalClassRefs) {
-            className = ApkUtil.getNormalClassName(classRef.getName());
+        for (JsonElement externalClass : dexTable.getAsJsonArray("external-classes")) {
+            className = ApkUtil.getNormalClassName(externalClass.getAsString());
             if (proguardClassMap.containsKey(className)) {
                 className = proguardClassMap.get(className);
             }
             if (className.indexOf('.') == -1) {
                 continue;
             }
-            classExternalMethod.put(className, 0);
+            classExternalMethod.add(className, 0);
         }
-        for (MethodRef methodRef : methodRefs) {
-            className = ApkUtil.getNormalClassName(methodRef.getDeclClassName());
+        for (JsonElement methodClass : dexTable.getAsJsonArray("method-classes")) {
+            JsonArray run = methodClass.getAsJsonArray();
+            className = ApkUtil.getNormalClassName(run.get(0).getAsString());
             if (proguardClassMap.containsKey(className)) {
                 className = proguardClassMap.get(className);
             }
+            int count = run.get(1).getAsInt();
             if (!Util.isNullOrNil(className)) {
                 if (className.indexOf('.') == -1) {
                     continue;
                 }
-                if (classExternalMethod.containsKey(className)) {
-                    classExternalMethod.put(className, classExternalMethod.get(className) + 1);
-                } else if (classInternalMethod.containsKey(className)) {
-                    classInternalMethod.put(className, classInternalMethod.get(className) + 1);
-                } else {
-                    classInternalMethod.put(className, 1);
+                if (!classExternalMethod.addIfPresent(className, count)) {
+                    classInternalMethod.add(className, count);
                 }
             }
         }
 
         //remove 0-method referenced class
-        Iterator<String> iterator = classExternalMethod.keySet().iterator();
-        while (iterator.hasNext()) {
-            if (classExternalMethod.get(iterator.next()) == 0) {
-                iterator.remove();
-            }
-        }
+        classExternalMethod.removeZero();
     }
 
-    private List<String> sortKeyByValue(final Map<String, Integer> map) {
-        List<String> list = new LinkedList<>();
-        list.addAll(map.keySet());
-        Collections.sort(list, new Comparator<String>() {
-            @Override
-            public int compare(String class1, String class2) {
-                if (map.get(class1) > map.get(class2)) {
-                    return -1;
-                } else if (map.get(class1) < map.get(class2)) {
-                    return 1;
-                } else {
-                    return 0;
-                }
-            }
-        });
-        return list;
+    private JsonArray rank(List<? extends CountTable.Entry> entries) {
+        JsonArray array = new JsonArray();
+        for (CountTable.Entry entry : entries) {
+            JsonObject entryObj = new JsonObject();
+            entryObj.addProperty("name", entry.getName());
+            entryObj.addProperty("methods", entry.getCount());
+            array.add(entryObj);
+        }
+        return array;
     }
 
-    private int sumOfValue(final Map<String, Integer> map) {
-        Iterator<Integer> iterator = map.values().iterator();
-        int sum = 0;
-        while (iterator.hasNext()) {
-            sum += iterator.next();
+    /*
+     *  the top '--top' packages in desc order, all of them are sorted only if there is no limit
+     */
+    private JsonArray rankPackages(CountTable classTable) {
+        PackageTree packageTree = new PackageTree();
+        for (CountTable.Entry entry : classTable.entries()) {
+            packageTree.add(entry.getName(), entry.getCount());
         }
-        return sum;
+        return rank(CountTable.top(packageTree.packages(), topLimit));
     }
 
     @Override
@@ -202,81 +232,25 @@ public class MethodCountTask extends ApkTask {
             long startTime = System.currentTimeMillis();
             JsonArray jsonArray = new JsonArray();
             for (int i = 0; i < dexFileList.size(); i++) {
-                RandomAccessFile dexFile = dexFileList.get(i);
+                File dexFile = dexFileList.get(i);
                 countDex(dexFile);
-                int totalInternalMethods = sumOfValue(classInternalMethod);
-                int totalExternalMethods = sumOfValue(classExternalMethod);
+                int totalInternalMethods = classInternalMethod.sum();
+                int totalExternalMethods = classExternalMethod.sum();
                 JsonObject jsonObject = new JsonObject();
                 jsonObject.addProperty("dex-file", dexFileNameList.get(i));
 
                 if (JobConstants.GROUP_CLASS.equals(group)) {
-                    List<String> sortList = sortKeyByValue(classInternalMethod);
-                    JsonArray classes = new JsonArray();
-                    for (String className : sortList) {
-                        JsonObject classObj = new JsonObject();
-                        classObj.addProperty("name", className);
-                        classObj.addProperty("methods", classInternalMethod.get(className));
-                        classes.add(classObj);
-                    }
-                    jsonObject.add("internal-classes", classes);
+                    jsonObject.add("internal-classes", rank(classInternalMethod.top(topLimit)));
                 } else if (JobConstants.GROUP_PACKAGE.equals(group)) {
-                    String packageName;
-                    for (Map.Entry<String, Integer> entry : classInternalMethod.entrySet()) {
-                        packageName = ApkUtil.getPackageName(entry.getKey());
-                        if (!Util.isNullOrNil(packageName)) {
-                            if (!pkgInternalRefMethod.containsKey(packageName)) {
-                                pkgInternalRefMethod.put(packageName, entry.getValue());
-                            } else {
-                                pkgInternalRefMethod.put(packageName, pkgInternalRefMethod.get(packageName) + entry.getValue());
-                            }
-                        }
-                    }
-                    List<String> sortList = sortKeyByValue(pkgInternalRefMethod);
-                    JsonArray packages = new JsonArray();
-                    for (String pkgName : sortList) {
-                        JsonObject pkgObj = new JsonObject();
-                        pkgObj.addProperty("name", pkgName);
-                        pkgObj.addProperty("methods", pkgInternalRefMethod.get(pkgName));
-                        packages.add(pkgObj);
-                    }
-                    jsonObject.add("internal-packages", packages);
+                    jsonObject.add("internal-packages", rankPackages(classInternalMethod));
                 }
                 jsonObject.addProperty("total-internal-classes", classInternalMethod.size());
                 jsonObject.addProperty("total-internal-methods", totalInternalMethods);
 
                 if (JobConstants.GROUP_CLASS.equals(group)) {
-                    List<String> sortList = sortKeyByValue(classExternalMethod);
-                    JsonArray classes = new JsonArray();
-                    for (String className : sortList) {
-                        JsonObject classObj = new JsonObject();
-                        classObj.addProperty("name", className);
-                        classObj.addProperty("methods", classExternalMethod.get(className));
-                        classes.add(classObj);
-                    }
-                    jsonObject.add("external-classes", classes);
-
+                    jsonObject.add("external-classes", rank(classExternalMethod.top(topLimit)));
                 } else if (JobConstants.GROUP_PACKAGE.equals(group)) {
-                    String packageName = "";
-                    for (Map.Entry<String, Integer> entry : classExternalMethod.entrySet()) {
-                        packageName = ApkUtil.getPackageName(entry.getKey());
-                        if (!Util.isNullOrNil(packageName)) {
-                            if (!pkgExternalMethod.containsKey(packageName)) {
-                                pkgExternalMethod.put(packageName, entry.getValue());
-                            } else {
-                                pkgExternalMethod.put(packageName, pkgExternalMethod.get(packageName) + entry.getValue());
-                            }
-                        }
-                    }
-                    List<String> sortList = sortKeyByValue(pkgExternalMethod);
-                    JsonArray packages = new JsonArray();
-                    for (String pkgName : sortList) {
-                        JsonObject pkgObj = new JsonObject();
-                        pkgObj.addProperty("name", pkgName);
-                        pkgObj.addProperty("methods", pkgExternalMethod.get(pkgName));
-                        packages.add(pkgObj);
-                    }
-                    jsonObject.add("external-packages", packages);
-
+                    jsonObject.add("external-packages", rankPackages(classExternalMethod));
                 }
                 jsonObject.addProperty("total-external-classes", classExternalMethod.size());
                 jsonObject.addProperty("total-external-methods", totalExternalMethods);
@@ -17,7 +17,13 @@
 package com.tencent.matrix.apk.model.task;
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import com.tencent.matrix.apk.model.task.util.ApkConstants;
+import com.tencent.matrix.apk.model.task.util.ApkUtil;
+import com.tencent.matrix.apk.model.task.util.ElfParser;
+import com.tencent.matrix.apk.model.task.util.EntryCache;
 import com.tencent.matrix.apk.model.exception.TaskExecuteException;
 import com.tencent.matrix.apk.model.exception.TaskInitException;
 import com.tencent.matrix.apk.model.job.JobConfig;
@@ -25,19 +31,17 @@ import com.tencent.matrix.apk.model.job.JobConstants;
 import com.tencent.matrix.apk.model.result.TaskJsonResult;
 import com.tencent.matrix.apk.model.result.TaskResult;
 import com.tencent.matrix.apk.model.result.TaskResultFactory;
-import com.tencent.matrix.javalib.util.FileUtil;
 import com.tencent.matrix.javalib.util.Log;
 import com.tencent.matrix.javalib.util.Util;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static com.tencent.matrix.apk.model.result.TaskResultFactory.TASK_RESULT_TYPE_JSON;
 import static com.tencent.matrix.apk.model.task.TaskFactory.TASK_TYPE_CHECK_MULTISTL;
@@ -51,7 +55,6 @@ public class MultiSTLCheckTask extends ApkTask {
     private static final String TAG = "Matrix.MultiSTLCheckTask";
 
     private File libDir;
-    private String toolnmPath;
 
     public MultiSTLCheckTask(JobConfig jobConfig, Map<String, String> params) {
         super(jobConfig, params);
@@ -62,50 +65,60 @@ public class MultiSTLCheckTask extends ApkTask {
     public void init() throws TaskInitException {
         super.init();
         final String inputPath = config.getUnzipPath();
-        toolnmPath = params.get(JobConstants.PARAM_TOOL_NM);
-        if (Util.isNullOrNil(toolnmPath)) {
-            throw new TaskInitException(TAG + "---The path of tool 'nm' is not given!");
-        } else {
-            Pattern envPattern = Pattern.compile("(\\$[a-zA-Z_-]+)");
-            Matcher matcher =  envPattern.matcher(toolnmPath);
-            while (matcher.find()) {
-                if (!Util.isNullOrNil(matcher.group())) {
-                    String env = System.getenv(matcher.group().substring(1));
-                    //Log.d(TAG, "%s -> %s", matcher.group().substring(1), env);
-                    if (!Util.isNullOrNil(env)) {
-                        toolnmPath = toolnmPath.replace(matcher.group(), env);
-                    }
-                }
-            }
-            Log.i(TAG, "toolnm pah is %s", toolnmPath);
-        }
-        if (!FileUtil.isLegalFile(toolnmPath)) {
-            throw new TaskInitException(TAG + "---Can not find the tool 'nm'!");
-        }
         if (!Util.isNullOrNil(inputPath)) {
             Log.d(TAG, "inputPath:%s", inputPath);
             libDir = new File(inputPath, "lib");
+            if (params.containsKey(JobConstants.PARAM_TOOL_NM)) {
+                Log.w(TAG, "'%s' is deprecated and ignored, the libraries are parsed in process", JobConstants.PARAM_TOOL_NM);
+            }
         } else {
             throw new TaskInitException(TAG + "---APK-UNZIP-PATH can not be null!");
         }
 
     }
 
-    private boolean isStlLinked(File libFile) throws IOException, InterruptedException {
-        ProcessBuilder processBuilder = new ProcessBuilder(toolnmPath, "-D", "-C", libFile.getAbsolutePath());
-        Process process = processBuilder.start();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-        String line = reader.readLine();
-        while (line != null) {
-            String[] columns = line.split(" ");
-//            Log.d(TAG, "%s", line);
-            if (columns.length >= 3 && columns[1].equals("T") && columns[2].startsWith("std::")) {
+    /*
+     *  matches the mangled names that 'nm -C' demangles to 'std::...',
+     *  e.g. _ZNSt6vectorIiSaIiEE9push_backERKi, _ZNKSt3__112basic_string..., _ZNSs4_Rep10_M_destroy...
+     */
+    static boolean isStdSymbol(String name) {
+        if (!name.startsWith("_Z")) {
+            return false;
+        }
+        int index = 2;
+        if (index < name.length() && name.charAt(index) == 'N') {
+            index++;
+            while (index < name.length() && "rVKRO".indexOf(name.charAt(index)) >= 0) {
+                index++;
+            }
+        }
+        if (index + 1 >= name.length() || name.charAt(index) != 'S') {
+            return false;
+        }
+        return "tabsiod".indexOf(name.charAt(index + 1)) >= 0;
+    }
+
+    private boolean isStlLinked(File libFile) throws IOException {
+        EntryCache entryCache = config.getEntryCache();
+        if (entryCache == null) {
+            return parseStlLinked(libFile);
+        }
+        JsonElement cached = entryCache.get(EntryCache.NAMESPACE_ELF_STL, libFile);
+        if (cached != null) {
+            return cached.getAsBoolean();
+        }
+        boolean stlLinked = parseStlLinked(libFile);
+        entryCache.put(EntryCache.NAMESPACE_ELF_STL, libFile, new JsonPrimitive(stlLinked));
+        return stlLinked;
+    }
+
+    private static boolean parseStlLinked(File libFile) throws IOException {
+        ElfParser elfParser = ElfParser.parse(libFile);
+        for (ElfParser.Symbol symbol : elfParser.getDynamicSymbols()) {
+            if (elfParser.isGlobalText(symbol) && isStdSymbol(symbol.name)) {
                 return true;
             }
-            line = reader.readLine();
         }
-        reader.close();
-        process.waitFor();
         return false;
     }
 
@@ -132,14 +145,34 @@ public class MultiSTLCheckTask extends ApkTask {
                     }
                 }
             }
-            for (File libFile : libFiles) {
-                if (isStlLinked(libFile)) {
-                    Log.d(TAG, "lib: %s has stl link", libFile.getName());
+            List<Callable<Boolean>> checks = new ArrayList<>(libFiles.size());
+            for (final File libFile : libFiles) {
+                checks.add(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws IOException {
+                        return isStlLinked(libFile);
+                    }
+                });
+            }
+            JsonArray failedArray = new JsonArray();
+            List<Future<Boolean>> futures = ApkUtil.invokeAll(config.getWorkerExecutor(), checks);
+            for (int i = 0; i < libFiles.size(); i++) {
+                try {
+                    if (futures.get(i).get()) {
+                        Log.d(TAG, "lib: %s has stl link", libFiles.get(i).getName());
 
-                    jsonArray.add(libFile.getName());
+                        jsonArray.add(libFiles.get(i).getName());
+                    }
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "parse %s failed: %s", libFiles.get(i).getName(), e.getCause().getMessage());
+                    JsonObject failed = new JsonObject();
+                    failed.addProperty("name", libFiles.get(i).getName());
+                    failed.addProperty("error", String.valueOf(e.getCause().getMessage()));
+                    failedArray.add(failed);
                 }
             }
             ((TaskJsonResult) taskResult).add("stl-lib", jsonArray);
+            ((TaskJsonResult) taskResult).add("parse-failed-lib", failedArray);
             if (jsonArray.size() > 1) {
                 ((TaskJsonResult) taskResult).add("multi-stl", true);
             } else {
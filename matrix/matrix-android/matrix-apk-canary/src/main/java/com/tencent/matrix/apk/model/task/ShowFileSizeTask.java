@@ -26,17 +26,23 @@ import com.tencent.matrix.apk.model.job.JobConstants;
 import com.tencent.matrix.apk.model.result.TaskJsonResult;
 import com.tencent.matrix.apk.model.result.TaskResult;
 import com.tencent.matrix.apk.model.result.TaskResultFactory;
+import com.tencent.matrix.apk.model.task.util.ZipCentralDirectory;
 import com.android.utils.Pair;
+import com.tencent.matrix.javalib.util.FileUtil;
 import com.tencent.matrix.javalib.util.Log;
 import com.tencent.matrix.javalib.util.Util;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import static com.tencent.matrix.apk.model.result.TaskResultFactory.TASK_RESULT_TYPE_JSON;
@@ -53,8 +59,39 @@ public class ShowFileSizeTask extends ApkTask {
     private File inputFile;
     private String order = JobConstants.ORDER_DESC;
     private long             downLimit;
+    private int topLimit;
     private Set<String> filterSuffix;
-    private List<Pair<String, Long>> entryList;
+    private long entrySequence;
+    private List<SizeEntry> entryList;
+    private PriorityQueue<SizeEntry> topEntries;
+    private Map<String, long[]> dirTotals;
+    private String lastDir;
+    private List<long[]> lastDirChain;
+
+    private static final class SizeEntry {
+        final String name;
+        final long size;
+        final long sequence;
+
+        SizeEntry(String name, long size, long sequence) {
+            this.name = name;
+            this.size = size;
+            this.sequence = sequence;
+        }
+    }
+
+    /*
+     *  the larger entry first, then the one met first
+     */
+    private static final Comparator<SizeEntry> SIZE_DESC = new Comparator<SizeEntry>() {
+        @Override
+        public int compare(SizeEntry entry1, SizeEntry entry2) {
+            if (entry1.size != entry2.size) {
+                return entry1.size > entry2.size ? -1 : 1;
+            }
+            return Long.compare(entry1.sequence, entry2.sequence);
+        }
+    };
 
 
     public ShowFileSizeTask(JobConfig jobConfig, Map<String, String> params) {
@@ -103,7 +140,102 @@ public class ShowFileSizeTask extends ApkTask {
             }
         }
 
-        entryList = new ArrayList<Pair<String, Long>>();
+        if (params.containsKey(JobConstants.PARAM_TOP)) {
+            try {
+                topLimit = Integer.parseInt(params.get(JobConstants.PARAM_TOP));
+            } catch (NumberFormatException e) {
+                Log.e(TAG, "TOP '" + params.get(JobConstants.PARAM_TOP) + "' is not a number!");
+            }
+        }
+
+        entryList = new ArrayList<>();
+        if (topLimit > 0) {
+            // the smallest of the kept entries on the head
+            topEntries = new PriorityQueue<>(topLimit + 1, Collections.reverseOrder(SIZE_DESC));
+        }
+        dirTotals = new HashMap<>();
+    }
+
+    /*
+     *  the suffix filter applies to both the files and the directory totals, the min size only to the files
+     *  listed, so a directory full of small files still shows its whole size
+     */
+    private void addEntry(String name, long size) {
+        final String suffix = getSuffix(name);
+        if (!filterSuffix.isEmpty() && !filterSuffix.contains(suffix)) {
+            return;
+        }
+        addToDirs(name, size);
+        if (size < downLimit * ApkConstants.K1024) {
+            return;
+        }
+        SizeEntry entry = new SizeEntry(name, size, entrySequence++);
+        if (topEntries == null) {
+            entryList.add(entry);
+        } else if (topEntries.size() < topLimit) {
+            topEntries.offer(entry);
+        } else if (SIZE_DESC.compare(entry, topEntries.peek()) < 0) {
+            topEntries.poll();
+            topEntries.offer(entry);
+        }
+    }
+
+    /*
+     *  add the size to the directory of the entry and all its parents
+     */
+    private void addToDirs(String name, long size) {
+        int index = name.lastIndexOf('/');
+        if (index <= 0) {
+            return;
+        }
+        String dir = name.substring(0, index);
+        if (!dir.equals(lastDir)) {
+            // entries of a directory are mostly consecutive, so the chain of counters is kept
+            lastDir = dir;
+            lastDirChain = new ArrayList<>();
+            while (index > 0) {
+                String parent = name.substring(0, index);
+                long[] totals = dirTotals.get(parent);
+                if (totals == null) {
+                    totals = new long[2];
+                    dirTotals.put(parent, totals);
+                }
+                lastDirChain.add(totals);
+                index = parent.lastIndexOf('/');
+            }
+        }
+        for (long[] totals : lastDirChain) {
+            totals[0] += size;
+            totals[1]++;
+        }
+    }
+
+    /*
+     *  the same entries as the entry size map of UnzipTask: those it skipped are left out and
+     *  the last of the entries sharing a name wins
+     */
+    private void readCentralDirectory(File apkFile) throws IOException {
+        final Map<String, String> entryNameMap = config.getEntryNameMap();
+        final Map<String, Long> entrySizes = new LinkedHashMap<>();
+        ZipCentralDirectory.scan(apkFile, new ZipCentralDirectory.Visitor() {
+            @Override
+            public void visitEntry(ZipCentralDirectory.Entry entry) {
+                if (entry.isDirectory()) {
+                    return;
+                }
+                String name = entry.getName();
+                if (entryNameMap != null) {
+                    name = entryNameMap.get(name);
+                    if (name == null) {
+                        return;
+                    }
+                }
+                entrySizes.put(name, entry.getSize());
+            }
+        });
+        for (Map.Entry<String, Long> entry : entrySizes.entrySet()) {
+            addEntry(entry.getKey(), entry.getValue());
+        }
     }
 
     @Override
@@ -116,54 +248,58 @@ public class ShowFileSizeTask extends ApkTask {
 
             long startTime = System.currentTimeMillis();
 
-            Map<String, Pair<Long, Long>> entrySizeMap = config.getEntrySizeMap();
-            if (!entrySizeMap.isEmpty()) {                                                          //take advantage of the result of UnzipTask.
-                for (Map.Entry<String, Pair<Long, Long>> entry : entrySizeMap.entrySet()) {
-                    final String suffix = getSuffix(entry.getKey());
-                    Pair<Long, Long> size = entry.getValue();
-                    if (size.getFirst() >= downLimit * ApkConstants.K1024) {
-                        if (filterSuffix.isEmpty() || filterSuffix.contains(suffix)) {
-                            entryList.add(Pair.of(entry.getKey(), size.getFirst()));
-                        } else {
-//                            Log.d(TAG, "file: %s, filter by suffix.", entry.getKey());
-                        }
-                    } else {
-//                        Log.d(TAG, "file:%s, size:%d B, downlimit:%d KB", entry.getKey(), size.getFirst(), downLimit);
-                    }
+            File apkFile = Util.isNullOrNil(config.getApkPath()) ? null : new File(config.getApkPath());
+            if (apkFile != null && FileUtil.isLegalFile(apkFile)) {
+                readCentralDirectory(apkFile);
+            } else {
+                Map<String, Pair<Long, Long>> entrySizeMap = config.getEntrySizeMap();
+                for (Map.Entry<String, Pair<Long, Long>> entry : entrySizeMap.entrySet()) {            //take advantage of the result of UnzipTask.
+                    addEntry(entry.getKey(), entry.getValue().getFirst());
                 }
             }
 
-            Collections.sort(entryList, new Comparator<Pair<String, Long>>() {
+            if (topEntries != null) {
+                entryList.addAll(topEntries);
+                topEntries.clear();
+            }
+            Collections.sort(entryList, new Comparator<SizeEntry>() {
                 @Override
-                public int compare(Pair<String, Long> entry1, Pair<String, Long> entry2) {
-                    long file1Len = entry1.getSecond();
-                    long file2Len = entry2.getSecond();
-                    if (file1Len < file2Len) {
-                        if (order.equals(JobConstants.ORDER_ASC)) {
-                            return -1;
-                        } else {
-                            return 1;
-                        }
-                    } else if (file1Len > file2Len) {
-                        if (order.equals(JobConstants.ORDER_DESC)) {
-                            return -1;
-                        } else {
-                            return 1;
-                        }
-                    } else {
-                        return 0;
+                public int compare(SizeEntry entry1, SizeEntry entry2) {
+                    if (entry1.size != entry2.size && order.equals(JobConstants.ORDER_ASC)) {
+                        return entry1.size < entry2.size ? -1 : 1;
                     }
+                    return SIZE_DESC.compare(entry1, entry2);
                 }
             });
 
             JsonArray jsonArray = new JsonArray();
-            for (Pair<String, Long> sortFile : entryList) {
+            for (SizeEntry sortFile : entryList) {
                 JsonObject fileItem = new JsonObject();
-                fileItem.addProperty("entry-name", sortFile.getFirst());
-                fileItem.addProperty("entry-size", sortFile.getSecond());
+                fileItem.addProperty("entry-name", sortFile.name);
+                fileItem.addProperty("entry-size", sortFile.size);
                 jsonArray.add(fileItem);
             }
             ((TaskJsonResult) taskResult).add("files", jsonArray);
+
+            List<Map.Entry<String, long[]>> dirs = new ArrayList<>(dirTotals.entrySet());
+            Collections.sort(dirs, new Comparator<Map.Entry<String, long[]>>() {
+                @Override
+                public int compare(Map.Entry<String, long[]> dir1, Map.Entry<String, long[]> dir2) {
+                    if (dir1.getValue()[0] != dir2.getValue()[0]) {
+                        return dir1.getValue()[0] > dir2.getValue()[0] ? -1 : 1;
+                    }
+                    return dir1.getKey().compareTo(dir2.getKey());
+                }
+            });
+            JsonArray dirArray = new JsonArray();
+            for (Map.Entry<String, long[]> dir : dirs) {
+                JsonObject dirItem = new JsonObject();
+                dirItem.addProperty("dir-name", dir.getKey());
+                dirItem.addProperty("total-size", dir.getValue()[0]);
+                dirItem.addProperty("entry-count", dir.getValue()[1]);
+                dirArray.add(dirItem);
+            }
+            ((TaskJsonResult) taskResult).add("dirs", dirArray);
             taskResult.setStartTime(startTime);
             taskResult.setEndTime(System.currentTimeMillis());
             return taskResult;
@@ -17,6 +17,9 @@
 package com.tencent.matrix.apk.model.task;
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import com.tencent.matrix.apk.model.exception.TaskExecuteException;
 import com.tencent.matrix.apk.model.exception.TaskInitException;
 import com.tencent.matrix.apk.model.job.JobConfig;
@@ -25,19 +28,20 @@ import com.tencent.matrix.apk.model.result.TaskJsonResult;
 import com.tencent.matrix.apk.model.result.TaskResult;
 import com.tencent.matrix.apk.model.result.TaskResultFactory;
 import com.tencent.matrix.apk.model.task.util.ApkConstants;
-import com.tencent.matrix.javalib.util.FileUtil;
+import com.tencent.matrix.apk.model.task.util.ApkUtil;
+import com.tencent.matrix.apk.model.task.util.ElfParser;
+import com.tencent.matrix.apk.model.task.util.EntryCache;
 import com.tencent.matrix.javalib.util.Log;
 import com.tencent.matrix.javalib.util.Util;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static com.tencent.matrix.apk.model.result.TaskResultFactory.TASK_RESULT_TYPE_JSON;
 import static com.tencent.matrix.apk.model.task.TaskFactory.TASK_TYPE_UNSTRIPPED_SO;
@@ -51,7 +55,6 @@ public class UnStrippedSoCheckTask extends ApkTask {
     private static final String TAG = "Matrix.UnStrippedSoCheckTask";
 
     private File libDir;
-    private String toolnmPath;
 
     public UnStrippedSoCheckTask(JobConfig jobConfig, Map<String, String> params) {
         super(jobConfig, params);
@@ -62,50 +65,30 @@ public class UnStrippedSoCheckTask extends ApkTask {
     public void init() throws TaskInitException {
         super.init();
         final String inputPath = config.getUnzipPath();
-        toolnmPath = params.get(JobConstants.PARAM_TOOL_NM);
-        if (Util.isNullOrNil(toolnmPath)) {
-            throw new TaskInitException(TAG + "---The path of tool 'nm' is not given!");
-        } else {
-            Pattern envPattern = Pattern.compile("(\\$[a-zA-Z_-]+)");
-            Matcher matcher =  envPattern.matcher(toolnmPath);
-            while (matcher.find()) {
-                if (!Util.isNullOrNil(matcher.group())) {
-                    String env = System.getenv(matcher.group().substring(1));
-                    //Log.d(TAG, "%s -> %s", matcher.group().substring(1), env);
-                    if (!Util.isNullOrNil(env)) {
-                        toolnmPath = toolnmPath.replace(matcher.group(), env);
-                    }
-                }
-            }
-            Log.i(TAG, "toolnm pah is %s", toolnmPath);
-        }
-        if (!FileUtil.isLegalFile(toolnmPath)) {
-            throw new TaskInitException(TAG + "---Can not find the tool 'nm'!");
-        }
         if (!Util.isNullOrNil(inputPath)) {
             Log.d(TAG, "inputPath:%s", inputPath);
             libDir = new File(inputPath, "lib");
+            if (params.containsKey(JobConstants.PARAM_TOOL_NM)) {
+                Log.w(TAG, "'%s' is deprecated and ignored, the libraries are parsed in process", JobConstants.PARAM_TOOL_NM);
+            }
         } else {
             throw new TaskInitException(TAG + "---APK-UNZIP-PATH can not be null!");
         }
 
     }
 
-    private boolean isSoStripped(File libFile) throws IOException, InterruptedException {
-        ProcessBuilder processBuilder = new ProcessBuilder(toolnmPath, libFile.getAbsolutePath());
-        Process process = processBuilder.start();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-        String line = reader.readLine();
-        if (!Util.isNullOrNil(line)) {
-            //Log.d(TAG, "%s", line);
-            String[] columns = line.split(":");
-            if (columns.length == 3 && columns[2].trim().equalsIgnoreCase("no symbols")) {
-                return true;
-            }
+    private boolean isSoStripped(File libFile) throws IOException {
+        EntryCache entryCache = config.getEntryCache();
+        if (entryCache == null) {
+            return ElfParser.parse(libFile).isStripped();
+        }
+        JsonElement cached = entryCache.get(EntryCache.NAMESPACE_ELF_STRIPPED, libFile);
+        if (cached != null) {
+            return cached.getAsBoolean();
         }
-        reader.close();
-        process.waitFor();
-        return false;
+        boolean stripped = ElfParser.parse(libFile).isStripped();
+        entryCache.put(EntryCache.NAMESPACE_ELF_STRIPPED, libFile, new JsonPrimitive(stripped));
+        return stripped;
     }
 
     @Override
@@ -131,14 +114,34 @@ public class UnStrippedSoCheckTask extends ApkTask {
                     }
                 }
             }
-            for (File libFile : libFiles) {
-                if (!isSoStripped(libFile)) {
-                    Log.d(TAG, "lib: %s is not stripped", libFile.getName());
+            List<Callable<Boolean>> checks = new ArrayList<>(libFiles.size());
+            for (final File libFile : libFiles) {
+                checks.add(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws IOException {
+                        return !isSoStripped(libFile);
+                    }
+                });
+            }
+            JsonArray failedArray = new JsonArray();
+            List<Future<Boolean>> futures = ApkUtil.invokeAll(config.getWorkerExecutor(), checks);
+            for (int i = 0; i < libFiles.size(); i++) {
+                try {
+                    if (futures.get(i).get()) {
+                        Log.d(TAG, "lib: %s is not stripped", libFiles.get(i).getName());
 
-                    jsonArray.add(libFile.getName());
+                        jsonArray.add(libFiles.get(i).getName());
+                    }
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "parse %s failed: %s", libFiles.get(i).getName(), e.getCause().getMessage());
+                    JsonObject failed = new JsonObject();
+                    failed.addProperty("name", libFiles.get(i).getName());
+                    failed.addProperty("error", String.valueOf(e.getCause().getMessage()));
+                    failedArray.add(failed);
                 }
             }
             ((TaskJsonResult) taskResult).add("unstripped-lib", jsonArray);
+            ((TaskJsonResult) taskResult).add("parse-failed-lib", failedArray);
             taskResult.setStartTime(startTime);
             taskResult.setEndTime(System.currentTimeMillis());
             return taskResult;
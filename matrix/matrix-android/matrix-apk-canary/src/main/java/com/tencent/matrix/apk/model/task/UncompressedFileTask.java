@@ -16,7 +16,6 @@
 
 package com.tencent.matrix.apk.model.task;
 
-
 import com.android.utils.Pair;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
@@ -27,10 +26,13 @@ import com.tencent.matrix.apk.model.job.JobConstants;
 import com.tencent.matrix.apk.model.result.TaskJsonResult;
 import com.tencent.matrix.apk.model.result.TaskResult;
 import com.tencent.matrix.apk.model.result.TaskResultFactory;
+import com.tencent.matrix.apk.model.task.util.ApkIndex;
 import com.tencent.matrix.javalib.util.FileUtil;
+import com.tencent.matrix.javalib.util.Log;
 import com.tencent.matrix.javalib.util.Util;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -82,14 +84,6 @@ public class UncompressedFileTask extends ApkTask {
         compressSizeMap = new HashMap<>();
     }
 
-    private String getSuffix(String name) {
-        int index = name.indexOf('.');
-        if (index >= 0 && index < name.length() - 1) {
-            return name.substring(index + 1);
-        }
-        return "";
-    }
-
     @Override
     public TaskResult call() throws TaskExecuteException {
         try {
@@ -99,10 +93,33 @@ public class UncompressedFileTask extends ApkTask {
             }
             long startTime = System.currentTimeMillis();
             JsonArray jsonArray = new JsonArray();
-            Map<String, Pair<Long, Long>> entrySizeMap = config.getEntrySizeMap();
-            if (!entrySizeMap.isEmpty()) {                                                          //take advantage of the result of UnzipTask.
-                for (Map.Entry<String, Pair<Long, Long>> entry : entrySizeMap.entrySet()) {
-                    final String suffix = getSuffix(entry.getKey());
+            JsonArray suffixArray = null;
+            ApkIndex apkIndex = null;
+            try {
+                apkIndex = config.getApkIndex();
+            } catch (IOException e) {
+                Log.w(TAG, "read the central directory failed, sum the sizes of the unzip task instead: %s", e.getMessage());
+            }
+            if (apkIndex != null) {
+                suffixArray = new JsonArray();
+                for (ApkIndex.SuffixStat stat : apkIndex.getSuffixStats()) {                        //one pass over the central directory shared with other tasks.
+                    final String suffix = stat.getSuffix();
+                    if (filterSuffix.isEmpty() || filterSuffix.contains(suffix)) {
+                        uncompressSizeMap.put(suffix, stat.getSize());
+                        compressSizeMap.put(suffix, stat.getCompressedSize());
+                        JsonObject suffixItem = new JsonObject();
+                        suffixItem.addProperty("suffix", suffix);
+                        suffixItem.addProperty("stored-count", stat.getStoredCount());
+                        suffixItem.addProperty("stored-size", stat.getStoredSize());
+                        suffixItem.addProperty("deflated-count", stat.getDeflatedCount());
+                        suffixItem.addProperty("total-size", stat.getSize());
+                        suffixItem.addProperty("compressed-size", stat.getCompressedSize());
+                        suffixArray.add(suffixItem);
+                    }
+                }
+            } else {
+                for (Map.Entry<String, Pair<Long, Long>> entry : config.getEntrySizeMap().entrySet()) {     //take advantage of the result of UnzipTask.
+                    final String suffix = ApkIndex.getSuffix(entry.getKey());
                     Pair<Long, Long> size = entry.getValue();
                     if (filterSuffix.isEmpty() || filterSuffix.contains(suffix)) {
                         if (!uncompressSizeMap.containsKey(suffix)) {
@@ -115,8 +132,6 @@ public class UncompressedFileTask extends ApkTask {
                         } else {
                             compressSizeMap.put(suffix, compressSizeMap.get(suffix) + size.getSecond());
                         }
-                    } else {
-//                        Log.d(TAG, "file: %s, filter by suffix.", entry.getKey());
                     }
                 }
             }
@@ -129,6 +144,9 @@ public class UncompressedFileTask extends ApkTask {
                     jsonArray.add(fileItem);
                 }
             }
+            if (suffixArray != null) {
+                ((TaskJsonResult) taskResult).add("suffixes", suffixArray);
+            }
             ((TaskJsonResult) taskResult).add("files", jsonArray);
             taskResult.setStartTime(startTime);
             taskResult.setEndTime(System.currentTimeMillis());
@@ -39,11 +39,15 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 
 /**
@@ -58,8 +62,10 @@ public class UnusedAssetsTask extends ApkTask {
     private final List<String> dexFileNameList;
     private final List<RandomAccessFile> dexFileList;
     private final Set<String> ignoreSet;
+    private Pattern ignorePattern;
     private final Set<String> assetsPathSet;
     private final Set<String> assetRefSet;
+    private AssetSuffixTrie assetTrie;
 
     public UnusedAssetsTask(JobConfig config, Map<String, String> params) {
         super(config, params);
@@ -91,6 +97,7 @@ public class UnusedAssetsTask extends ApkTask {
             for (String ignore : ignoreAssets) {
                 ignoreSet.add(Util.globToRegexp(ignore));
             }
+            ignorePattern = compileIgnorePattern(ignoreSet);
         }
 
         File[] files = inputFile.listFiles();
@@ -152,25 +159,29 @@ public class UnusedAssetsTask extends ApkTask {
                     String assetFileName = columns[1].trim();
                     assetFileName = assetFileName.substring(1, assetFileName.length() - 1);
                     if (!Util.isNullOrNil(assetFileName)) {
-                        for (String path : assetsPathSet) {
-                            if (path.endsWith(assetFileName)) {
-                                assetRefSet.add(path);
-                            }
-                        }
+                        assetTrie.collectEndsWith(assetFileName, assetRefSet);
                     }
                 }
             }
         }
     }
 
-    private boolean ignoreAsset(String name) {
-        for (String pattern : ignoreSet) {
-            //Log.d(TAG, "pattern %s", pattern);
-            if (name.matches(pattern)) {
-                return true;
+    private static Pattern compileIgnorePattern(Set<String> regexps) {
+        if (regexps.isEmpty()) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String regexp : regexps) {
+            if (builder.length() > 0) {
+                builder.append('|');
             }
+            builder.append("(?:").append(regexp).append(')');
         }
-        return false;
+        return Pattern.compile(builder.toString());
+    }
+
+    private boolean ignoreAsset(String name) {
+        return ignorePattern != null && ignorePattern.matcher(name).matches();
     }
 
     private void generateAssetsSet(String rootPath) {
@@ -189,6 +200,10 @@ public class UnusedAssetsTask extends ApkTask {
         }
         assetsPathSet.clear();
         assetsPathSet.addAll(relativeAssetsSet);
+        assetTrie = new AssetSuffixTrie();
+        for (String path : assetsPathSet) {
+            assetTrie.add(path);
+        }
     }
 
 
@@ -216,4 +231,77 @@ public class UnusedAssetsTask extends ApkTask {
             throw new TaskExecuteException(e.getMessage(), e);
         }
     }
+
+    /**
+     * Asset paths stored reversed, so that all paths ending with a string are found
+     * by walking the reversed string once instead of testing every path with endsWith.
+     */
+    private static final class AssetSuffixTrie {
+
+        private final Node root = new Node();
+
+        private static final class Node {
+            char[] keys = new char[0];
+            Node[] children = new Node[0];
+            String path;
+            boolean collected;
+
+            Node child(char c) {
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] == c) {
+                        return children[i];
+                    }
+                }
+                return null;
+            }
+
+            Node addChild(char c) {
+                Node node = child(c);
+                if (node == null) {
+                    node = new Node();
+                    keys = Arrays.copyOf(keys, keys.length + 1);
+                    children = Arrays.copyOf(children, children.length + 1);
+                    keys[keys.length - 1] = c;
+                    children[children.length - 1] = node;
+                }
+                return node;
+            }
+        }
+
+        void add(String path) {
+            Node node = root;
+            for (int i = path.length() - 1; i >= 0; i--) {
+                node = node.addChild(path.charAt(i));
+            }
+            node.path = path;
+        }
+
+        /**
+         * Adds every path ending with {@code suffix} to {@code result}. A subtree is only
+         * visited once, since everything below an already collected node is collected too.
+         */
+        void collectEndsWith(String suffix, Set<String> result) {
+            Node node = root;
+            for (int i = suffix.length() - 1; i >= 0 && node != null; i--) {
+                node = node.child(suffix.charAt(i));
+            }
+            if (node == null || node.collected) {
+                return;
+            }
+            Deque<Node> stack = new ArrayDeque<>();
+            stack.push(node);
+            while (!stack.isEmpty()) {
+                Node current = stack.pop();
+                current.collected = true;
+                if (current.path != null) {
+                    result.add(current.path);
+                }
+                for (Node child : current.children) {
+                    if (!child.collected) {
+                        stack.push(child);
+                    }
+                }
+            }
+        }
+    }
 }
@@ -66,6 +66,7 @@ public class UnusedResourcesTask extends ApkTask {
     private File resourceTxt;
     private File mappingTxt;
     private File resMappingTxt;
+    private String resDecoder = JobConstants.RES_DECODER_APKTOOL;
     private final List<String> dexFileNameList;
     private final List<RandomAccessFile> dexFileList;
     private final Map<String, String> rclassProguardMap;
@@ -123,6 +124,14 @@ public class UnusedResourcesTask extends ApkTask {
                 ignoreSet.add(Util.globToRegexp(ignore));
             }
         }
+        if (params.containsKey(JobConstants.PARAM_RES_DECODER)) {
+            String decoder = params.get(JobConstants.PARAM_RES_DECODER);
+            if (JobConstants.RES_DECODER_BINARY.equals(decoder) || JobConstants.RES_DECODER_APKTOOL.equals(decoder) || JobConstants.RES_DECODER_CHECK.equals(decoder)) {
+                resDecoder = decoder;
+            } else {
+                Log.e(TAG, "RES-DECODER '" + decoder + "' is not correct!");
+            }
+        }
         if (!Util.isNullOrNil(config.getResMappingFilePath())) {
             resMappingTxt = new File(config.getResMappingFilePath());
             if (!FileUtil.isLegalFile(resMappingTxt)) {
@@ -345,7 +354,14 @@ public class UnusedResourcesTask extends ApkTask {
         Map<String, Set<String>> fileResMap = new HashMap<>();
         Set<String> valuesReferences = new HashSet<>();
 
-        ApkResourceDecoder.decodeResourcesRef(manifestFile, arscFile, resDir, fileResMap, valuesReferences);
+        if (JobConstants.RES_DECODER_CHECK.equals(resDecoder)) {
+            if (!ApkResourceDecoder.checkResourcesRef(manifestFile, arscFile, resDir, fileResMap, valuesReferences, config.getWorkerExecutor())) {
+                Log.w(TAG, "the binary decoder differs from the apktool, use the apktool result");
+            }
+        } else {
+            ApkResourceDecoder.decodeResourcesRef(manifestFile, arscFile, resDir, fileResMap, valuesReferences,
+                JobConstants.RES_DECODER_APKTOOL.equals(resDecoder), config.getWorkerExecutor());
+        }
 
         Map<String, String> resguardMap = config.getResguardMap();
 
@@ -24,6 +24,7 @@ import com.tencent.matrix.apk.model.job.JobConfig;
 import com.tencent.matrix.apk.model.result.TaskJsonResult;
 import com.tencent.matrix.apk.model.result.TaskResult;
 import com.tencent.matrix.apk.model.result.TaskResultFactory;
+import com.tencent.matrix.apk.model.task.util.EntryCache;
 import com.android.utils.Pair;
 import com.tencent.matrix.javalib.util.FileUtil;
 import com.tencent.matrix.javalib.util.Log;
@@ -38,6 +39,7 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
@@ -264,8 +266,16 @@ public class UnzipTask extends ApkTask {
                 }
                 bufferedOutput = new BufferedOutputStream(new FileOutputStream(file));
                 zipInputStream = zipFile.getInputStream(entry);
+                EntryCache entryCache = config.getEntryCache();
+                MessageDigest digest = entryCache != null ? EntryCache.newDigest() : null;
                 while ((readSize = zipInputStream.read(readBuffer)) != -1) {
                     bufferedOutput.write(readBuffer, 0, readSize);
+                    if (digest != null) {
+                        digest.update(readBuffer, 0, readSize);
+                    }
+                }
+                if (digest != null) {
+                    entryCache.putKey(file, Util.byteArrayToHex(digest.digest()));
                 }
             } else {
                 return null;
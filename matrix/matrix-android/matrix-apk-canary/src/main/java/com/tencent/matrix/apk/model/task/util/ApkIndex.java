@@ -0,0 +1,131 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.model.task.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What several tasks need to know about an apk, gathered in a single pass and shared through the job config.
+ *
+ * The central directory is read once for the compression statistics per file suffix, no entry is inflated.
+ */
+
+public final class ApkIndex {
+
+    public static final class SuffixStat {
+        private final String suffix;
+        private int storedCount;
+        private int deflatedCount;
+        private long storedSize;
+        private long size;
+        private long compressedSize;
+
+        SuffixStat(String suffix) {
+            this.suffix = suffix;
+        }
+
+        public String getSuffix() {
+            return suffix;
+        }
+
+        public int getStoredCount() {
+            return storedCount;
+        }
+
+        public int getDeflatedCount() {
+            return deflatedCount;
+        }
+
+        public long getStoredSize() {
+            return storedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+    }
+
+    private final Map<String, SuffixStat> suffixStats = new LinkedHashMap<>();
+
+    private ApkIndex() {
+    }
+
+    /**
+     * @param entryNameMap   the entry names of the apk to the names shown in the results, may be null
+     */
+    public static ApkIndex build(File apkFile, final Map<String, String> entryNameMap) throws IOException {
+        final ApkIndex index = new ApkIndex();
+        ZipCentralDirectory.scan(apkFile, new ZipCentralDirectory.Visitor() {
+            @Override
+            public void visitEntry(ZipCentralDirectory.Entry entry) {
+                if (entry.isDirectory()) {
+                    return;
+                }
+                String name = entry.getName();
+                if (entryNameMap != null && entryNameMap.containsKey(name)) {
+                    name = entryNameMap.get(name);
+                }
+                index.addEntry(getSuffix(name), entry);
+            }
+        });
+        return index;
+    }
+
+    /**
+     * @return what follows the first '.' of the name, or "" if there is none
+     */
+    public static String getSuffix(String name) {
+        int index = name.indexOf('.');
+        if (index >= 0 && index < name.length() - 1) {
+            return name.substring(index + 1);
+        }
+        return "";
+    }
+
+    private void addEntry(String suffix, ZipCentralDirectory.Entry entry) {
+        SuffixStat stat = suffixStats.get(suffix);
+        if (stat == null) {
+            stat = new SuffixStat(suffix);
+            suffixStats.put(suffix, stat);
+        }
+        if (entry.getMethod() == ZipCentralDirectory.METHOD_STORED) {
+            stat.storedCount++;
+            stat.storedSize += entry.getSize();
+        } else {
+            stat.deflatedCount++;
+        }
+        stat.size += entry.getSize();
+        stat.compressedSize += entry.getCompressedSize();
+    }
+
+    /**
+     * @return the statistics in the order the suffixes first occur in the central directory
+     */
+    public Collection<SuffixStat> getSuffixStats() {
+        return Collections.unmodifiableCollection(suffixStats.values());
+    }
+}
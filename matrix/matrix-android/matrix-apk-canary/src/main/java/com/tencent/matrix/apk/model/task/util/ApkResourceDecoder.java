@@ -30,8 +30,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -66,6 +69,12 @@ public class ApkResourceDecoder {
     public static final String PROPERTY_SERIALIZER_LINE_SEPARATOR = "http://xmlpull.org/v1/doc/properties.html#serializer-line-separator";
     public static final String PROPERTY_DEFAULT_ENCNDING = "DEFAULT_ENCODING";
 
+    /**
+     * Held while the apktool decodes, it is not known to be safe for concurrent decodes and was only ever
+     * run for one apk per process, while the jobs of a batch run their tasks side by side in one process.
+     */
+    public static final Object APKTOOL_LOCK = new Object();
+
     public static AXmlResourceParser createAXmlParser() {
         AXmlResourceParser resourceParser = new AXmlResourceParser();
         ResTable resTable =  new ResTable();
@@ -215,6 +224,14 @@ public class ApkResourceDecoder {
     }
 
     public static void decodeResourcesRef(File manifestFile, File arscFile, File resDir, Map<String, Set<String>> nonValueReferences, Set<String> valueReferences) throws IOException, AndrolibException, XmlPullParserException {
+        decodeResourcesRef(manifestFile, arscFile, resDir, nonValueReferences, valueReferences, true, null);
+    }
+
+    /*
+     *  useApktool: decode with the apktool instead of reading the binary resources directly
+     *  executor: the pool the binary decoder splits the xml files on, may be null
+     */
+    public static void decodeResourcesRef(File manifestFile, File arscFile, File resDir, Map<String, Set<String>> nonValueReferences, Set<String> valueReferences, boolean useApktool, ExecutorService executor) throws IOException, AndrolibException, XmlPullParserException {
         if (!FileUtil.isLegalFile(manifestFile)) {
             Log.w(TAG, "File %s is illegal!", ApkConstants.MANIFEST_FILE_NAME);
             return;
@@ -224,34 +241,80 @@ public class ApkResourceDecoder {
             return;
         }
         if (resDir != null && resDir.exists() && resDir.isDirectory()) {
-            //decode arsc file
-            ResTable resTable = new ResTable();
-            decodeArscFile(arscFile, resTable);
-
-            AXmlResourceParser aXmlResourceParser = createAXmlParser(arscFile);
-            XmlPullParser xmlPullParser = XmlPullParserFactory.newInstance().newPullParser();
-            ExtMXSerializer serializer = createXmlSerializer();
-            for (ResPackage pkg : resTable.listMainPackages()) {
-                aXmlResourceParser.getAttrDecoder().setCurrentPackage(pkg);
-                for (ResResource resSource : pkg.listFiles()) {
-                    decodeResResource(resSource, resDir, aXmlResourceParser, nonValueReferences);
-                }
+            if (!useApktool) {
+                BinaryResourceRefDecoder.decodeResourcesRef(manifestFile, arscFile, resDir, nonValueReferences, valueReferences, executor);
+                return;
+            }
+            synchronized (APKTOOL_LOCK) {
+                //decode arsc file
+                ResTable resTable = new ResTable();
+                decodeArscFile(arscFile, resTable);
+
+                AXmlResourceParser aXmlResourceParser = createAXmlParser(arscFile);
+                XmlPullParser xmlPullParser = XmlPullParserFactory.newInstance().newPullParser();
+                ExtMXSerializer serializer = createXmlSerializer();
+                for (ResPackage pkg : resTable.listMainPackages()) {
+                    aXmlResourceParser.getAttrDecoder().setCurrentPackage(pkg);
+                    for (ResResource resSource : pkg.listFiles()) {
+                        decodeResResource(resSource, resDir, aXmlResourceParser, nonValueReferences);
+                    }
 
-                for (ResValuesFile valuesFile : pkg.listValuesFiles()) {
-                    decodeResValues(valuesFile, xmlPullParser, serializer, valueReferences);
+                    for (ResValuesFile valuesFile : pkg.listValuesFiles()) {
+                        decodeResValues(valuesFile, xmlPullParser, serializer, valueReferences);
+                    }
                 }
-            }
 
-            //decode manifest file
-            XmlPullResourceRefDecoder xmlDecoder = new XmlPullResourceRefDecoder(aXmlResourceParser);
-            InputStream inputStream = new FileInputStream(manifestFile);
-            xmlDecoder.decode(inputStream, null);
-            valueReferences.addAll(xmlDecoder.getResourceRefSet());
+                //decode manifest file
+                XmlPullResourceRefDecoder xmlDecoder = new XmlPullResourceRefDecoder(aXmlResourceParser);
+                InputStream inputStream = new FileInputStream(manifestFile);
+                xmlDecoder.decode(inputStream, null);
+                valueReferences.addAll(xmlDecoder.getResourceRefSet());
+            }
         } else {
             Log.w(TAG, "Res dir is illegal!");
         }
     }
 
+    /**
+     * Decodes the references both ways and logs the differences, the apktool references are kept in
+     * nonValueReferences and valueReferences like {@link #decodeResourcesRef} does.
+     *
+     * @return true if both decoders found the same references
+     */
+    public static boolean checkResourcesRef(File manifestFile, File arscFile, File resDir, Map<String, Set<String>> nonValueReferences, Set<String> valueReferences, ExecutorService executor) throws IOException, AndrolibException, XmlPullParserException {
+        long startTime = System.currentTimeMillis();
+        decodeResourcesRef(manifestFile, arscFile, resDir, nonValueReferences, valueReferences, true, null);
+        long apktoolTime = System.currentTimeMillis() - startTime;
+
+        Map<String, Set<String>> binaryNonValues = new HashMap<>();
+        Set<String> binaryValues = new HashSet<>();
+        startTime = System.currentTimeMillis();
+        decodeResourcesRef(manifestFile, arscFile, resDir, binaryNonValues, binaryValues, false, executor);
+        long binaryTime = System.currentTimeMillis() - startTime;
+        Log.i(TAG, "decode resource references, apktool %d ms, binary %d ms", apktoolTime, binaryTime);
+
+        boolean same = true;
+        Set<String> resources = new HashSet<>(nonValueReferences.keySet());
+        resources.addAll(binaryNonValues.keySet());
+        for (String resource : resources) {
+            Set<String> apktoolRefs = nonValueReferences.get(resource);
+            Set<String> binaryRefs = binaryNonValues.get(resource);
+            if (apktoolRefs == null || !apktoolRefs.equals(binaryRefs)) {
+                Log.w(TAG, "references of %s differ, apktool %s, binary %s", resource, apktoolRefs, binaryRefs);
+                same = false;
+            }
+        }
+        if (!valueReferences.equals(binaryValues)) {
+            Set<String> missing = new HashSet<>(valueReferences);
+            missing.removeAll(binaryValues);
+            Set<String> extra = new HashSet<>(binaryValues);
+            extra.removeAll(valueReferences);
+            Log.w(TAG, "value references differ, only by apktool %s, only by binary %s", missing, extra);
+            same = false;
+        }
+        return same;
+    }
+
     private static ExtMXSerializer createXmlSerializer() {
         ExtMXSerializer serializer = new ExtMXSerializer();
         serializer.setProperty(PROPERTY_SERIALIZER_INDENTATION, "   ");
@@ -29,6 +29,13 @@ import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Pattern;
 
 /**
@@ -144,4 +151,43 @@ public class ApkUtil {
             }
         }
     }
+
+    /*
+     *  add the reference written as '@type/name' or '?type/name' as 'R.type.name' or 'R.attr.name',
+     *  shared by the apktool and the binary resource decoders
+     */
+    public static void addResourceReference(String value, Set<String> references) {
+        if (Util.isNullOrNil(value)) {
+            return;
+        }
+        if (value.startsWith("@")) {
+            int index = value.indexOf('/');
+            if (index > 1) {
+                String type = value.substring(1, index);
+                references.add(ApkConstants.R_PREFIX + type + "." + value.substring(index + 1).replace('.', '_'));
+            }
+        } else if (value.startsWith("?")) {
+            int index = value.indexOf('/');
+            if (index > 1) {
+                references.add(ApkConstants.R_ATTR_PREFIX + "." + value.substring(index + 1).replace('.', '_'));
+            }
+        }
+    }
+
+    /*
+     *  run the callables on the executor and wait for all of them, or one by one on the calling thread if there
+     *  is no executor; the futures are done and in the order of the callables
+     */
+    public static <T> List<Future<T>> invokeAll(ExecutorService executor, List<? extends Callable<T>> callables) throws InterruptedException {
+        if (executor != null) {
+            return executor.invokeAll(callables);
+        }
+        List<Future<T>> futures = new ArrayList<>(callables.size());
+        for (Callable<T> callable : callables) {
+            FutureTask<T> future = new FutureTask<>(callable);
+            future.run();
+            futures.add(future);
+        }
+        return futures;
+    }
 }
@@ -0,0 +1,281 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * Walks the chunks of a resources.arsc in place and reports packages, types and entry names to a {@link Visitor},
+ * it is the table side of {@link BinaryResourceRefDecoder}.
+ *
+ * Nothing but the current chunk headers is kept: strings are decoded from the mapped file only when they are
+ * reported, and values are only read for a visitor that asks for them, so scanning a table of any size takes
+ * a few KB of heap.
+ */
+
+final class ArscScanner {
+
+    private static final int RES_TABLE_TYPE = 0x0002;
+    private static final int RES_TABLE_PACKAGE_TYPE = 0x0200;
+    private static final int RES_TABLE_TYPE_TYPE = 0x0201;
+    private static final int RES_TABLE_TYPE_SPEC_TYPE = 0x0202;
+
+    private static final int CHUNK_HEADER_SIZE = 8;
+    private static final int PACKAGE_NAME_LENGTH = 128;
+
+    private static final int TYPE_FLAG_SPARSE = 0x01;
+    private static final int TYPE_FLAG_OFFSET16 = 0x02;
+    private static final int ENTRY_FLAG_COMPLEX = 0x0001;
+    private static final int ENTRY_FLAG_COMPACT = 0x0008;
+    private static final int RES_TABLE_MAP_SIZE = 12;
+    private static final long NO_ENTRY = 0xffffffffL;
+    private static final int NO_ENTRY16 = 0xffff;
+
+    /**
+     * Receives the scan events, every method does nothing by default.
+     */
+    abstract static class Visitor {
+
+        private ArscScanner scanner;
+
+        /**
+         * @return false to skip the types of the package
+         */
+        public boolean visitPackage(int id, String name) {
+            return true;
+        }
+
+        /**
+         * Called once per type of a package, before its entries.
+         *
+         * @return false to skip the entries of the type
+         */
+        public boolean visitType(int id, String name, int entryCount) {
+            return true;
+        }
+
+        /**
+         * Called once per resource id, however many configurations define it.
+         *
+         * @return false to stop the scan
+         */
+        public boolean visitEntry(int resId, String name) {
+            return true;
+        }
+
+        /**
+         * @return true to have the values of every configuration reported
+         */
+        public boolean visitsValues() {
+            return false;
+        }
+
+        /**
+         * A simple value, a string value is the index of {@link #getGlobalString(int)}.
+         */
+        public void visitValue(int resId, int dataType, int data) {
+        }
+
+        /**
+         * A map value, followed by {@link #visitBagItem(int, int, int, int)} for every item.
+         */
+        public void visitBag(int resId, int parentId) {
+        }
+
+        public void visitBagItem(int resId, int nameId, int dataType, int data) {
+        }
+
+        /**
+         * The string of the global string pool, valid during the scan only.
+         */
+        protected String getGlobalString(int index) {
+            return scanner == null || scanner.globalStrings == null ? "" : scanner.globalStrings.get(index);
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final Visitor visitor;
+    private ResStringPool globalStrings;
+    private boolean stopped;
+
+    private ArscScanner(ByteBuffer buffer, Visitor visitor) {
+        this.buffer = buffer;
+        this.visitor = visitor;
+    }
+
+    /**
+     * Maps the file read-only and scans it.
+     */
+    static void scan(File arscFile, Visitor visitor) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(arscFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), visitor);
+        } finally {
+            raf.close();
+        }
+    }
+
+    static void scan(ByteBuffer buffer, Visitor visitor) throws IOException {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.order(ByteOrder.LITTLE_ENDIAN);
+        ArscScanner scanner = new ArscScanner(duplicate, visitor);
+        visitor.scanner = scanner;
+        try {
+            scanner.scanTable();
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("truncated resources.arsc", e);
+        } finally {
+            visitor.scanner = null;
+        }
+    }
+
+    private void scanTable() throws IOException {
+        if (u16(0) != RES_TABLE_TYPE) {
+            throw new IOException("not a resources.arsc");
+        }
+        int end = chunkEnd(0);
+        int offset = u16(2);
+        while (offset < end && !stopped) {
+            int chunkType = u16(offset);
+            if (chunkType == ResStringPool.RES_STRING_POOL_TYPE && globalStrings == null) {
+                globalStrings = new ResStringPool(buffer, offset);
+            } else if (chunkType == RES_TABLE_PACKAGE_TYPE) {
+                scanPackage(offset);
+            }
+            offset = chunkEnd(offset);
+        }
+    }
+
+    private void scanPackage(int start) throws IOException {
+        int packageId = buffer.getInt(start + 8);
+        char[] chars = new char[PACKAGE_NAME_LENGTH];
+        int length = 0;
+        while (length < PACKAGE_NAME_LENGTH) {
+            char c = buffer.getChar(start + 12 + length * 2);
+            if (c == 0) {
+                break;
+            }
+            chars[length++] = c;
+        }
+        if (!visitor.visitPackage(packageId, new String(chars, 0, length))) {
+            return;
+        }
+        int headerEnd = start + 12 + PACKAGE_NAME_LENGTH * 2;
+        ResStringPool typeStrings = new ResStringPool(buffer, start + buffer.getInt(headerEnd));
+        ResStringPool keyStrings = new ResStringPool(buffer, start + buffer.getInt(headerEnd + 8));
+
+        int end = chunkEnd(start);
+        int offset = start + u16(start + 2);
+        int currentType = -1;
+        boolean visitEntries = false;
+        boolean visitValues = visitor.visitsValues();
+        BitSet visited = null;
+        while (offset < end && !stopped) {
+            int chunkType = u16(offset);
+            if (chunkType == RES_TABLE_TYPE_SPEC_TYPE || chunkType == RES_TABLE_TYPE_TYPE) {
+                int typeId = buffer.get(offset + 8) & 0xff;
+                int entryCount = buffer.getInt(offset + 12);
+                if (typeId != currentType) {
+                    // the spec and the configurations of a type are consecutive
+                    currentType = typeId;
+                    visitEntries = visitor.visitType(typeId, typeStrings.get(typeId - 1), entryCount);
+                    visited = visitEntries ? new BitSet(entryCount) : null;
+                }
+                if (visitEntries && chunkType == RES_TABLE_TYPE_TYPE) {
+                    scanType(offset, (packageId & 0xff) << 24 | typeId << 16, keyStrings, visited, visitValues);
+                }
+            }
+            offset = chunkEnd(offset);
+        }
+    }
+
+    private void scanType(int start, int idPrefix, ResStringPool keyStrings, BitSet visited, boolean visitValues) throws IOException {
+        int headerSize = u16(start + 2);
+        int flags = buffer.get(start + 9) & 0xff;
+        int entryCount = buffer.getInt(start + 12);
+        int entriesStart = start + buffer.getInt(start + 16);
+        for (int i = 0; i < entryCount && !stopped; i++) {
+            int index;
+            long entryOffset;
+            if ((flags & TYPE_FLAG_SPARSE) != 0) {
+                index = u16(start + headerSize + i * 4);
+                entryOffset = u16(start + headerSize + i * 4 + 2) * 4L;
+            } else if ((flags & TYPE_FLAG_OFFSET16) != 0) {
+                index = i;
+                int offset16 = u16(start + headerSize + i * 2);
+                entryOffset = offset16 == NO_ENTRY16 ? NO_ENTRY : offset16 * 4L;
+            } else {
+                index = i;
+                entryOffset = buffer.getInt(start + headerSize + i * 4) & 0xffffffffL;
+            }
+            if (entryOffset == NO_ENTRY) {
+                continue;
+            }
+            int entry = entriesStart + (int) entryOffset;
+            int entryFlags = u16(entry + 2);
+            int resId = idPrefix | index;
+            if (!visited.get(index)) {
+                visited.set(index);
+                int key = (entryFlags & ENTRY_FLAG_COMPACT) != 0 ? u16(entry) : buffer.getInt(entry + 4);
+                if (!visitor.visitEntry(resId, keyStrings.get(key))) {
+                    stopped = true;
+                    return;
+                }
+            }
+            if (visitValues) {
+                scanValue(entry, entryFlags, resId);
+            }
+        }
+    }
+
+    private void scanValue(int entry, int entryFlags, int resId) {
+        if ((entryFlags & ENTRY_FLAG_COMPACT) != 0) {
+            // the data type is kept in the high byte of the flags
+            visitor.visitValue(resId, entryFlags >>> 8, buffer.getInt(entry + 4));
+        } else if ((entryFlags & ENTRY_FLAG_COMPLEX) != 0) {
+            int count = buffer.getInt(entry + 12);
+            visitor.visitBag(resId, buffer.getInt(entry + 8));
+            int item = entry + u16(entry);
+            for (int i = 0; i < count; i++, item += RES_TABLE_MAP_SIZE) {
+                visitor.visitBagItem(resId, buffer.getInt(item), buffer.get(item + 7) & 0xff, buffer.getInt(item + 8));
+            }
+        } else {
+            int value = entry + u16(entry);
+            visitor.visitValue(resId, buffer.get(value + 3) & 0xff, buffer.getInt(value + 4));
+        }
+    }
+
+    private int u16(int position) {
+        return buffer.getShort(position) & 0xffff;
+    }
+
+    private int chunkEnd(int start) throws IOException {
+        long size = buffer.getInt(start + 4) & 0xffffffffL;
+        if (size < CHUNK_HEADER_SIZE || start + size > buffer.limit()) {
+            throw new IOException("bad chunk size " + size + " at " + start);
+        }
+        return (int) (start + size);
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task.util;
+
+import com.tencent.matrix.javalib.util.FileUtil;
+import com.tencent.matrix.javalib.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Collects the resource references of an apk straight from its binary resources.
+ *
+ * The resources.arsc is walked by {@link ArscScanner} for the names, the file paths and the references of the
+ * values, then every binary xml (AXML) is walked for the references of its attributes and texts, several files
+ * at a time on the worker pool of the job. The references are named the way {@link XmlPullResourceRefDecoder} names what apktool decodes.
+ */
+
+public final class BinaryResourceRefDecoder {
+
+    private static final String TAG = "Matrix.BinaryResourceRefDecoder";
+
+    private static final int RES_XML_TYPE = 0x0003;
+    private static final int RES_XML_START_ELEMENT_TYPE = 0x0102;
+    private static final int RES_XML_CDATA_TYPE = 0x0104;
+
+    private static final int TYPE_REFERENCE = 0x01;
+    private static final int TYPE_ATTRIBUTE = 0x02;
+    private static final int TYPE_STRING = 0x03;
+    private static final int TYPE_DYNAMIC_REFERENCE = 0x07;
+    private static final int TYPE_DYNAMIC_ATTRIBUTE = 0x08;
+
+    private static final int FRAMEWORK_PACKAGE_ID = 0x01;
+    private static final String FRAMEWORK_JAR = "/android/android-framework.jar";
+
+    private static final String[] FILE_PATH_PREFIXES = {"res/", "r/", "R/"};
+
+    private static ResourceNames frameworkNames;
+
+    private BinaryResourceRefDecoder() {
+    }
+
+    /**
+     * The type/name of every resource id of one package.
+     */
+    private static final class ResourceNames {
+        final int packageId;
+        String packageName;
+        final String[] typeNames = new String[256];
+        final String[][] entryNames = new String[256][];
+
+        ResourceNames(int packageId) {
+            this.packageId = packageId;
+        }
+
+        String get(int resId) {
+            int typeId = (resId >>> 16) & 0xff;
+            int index = resId & 0xffff;
+            String[] names = entryNames[typeId];
+            if (names == null || index >= names.length || names[index] == null) {
+                return null;
+            }
+            return typeNames[typeId] + "/" + names[index];
+        }
+    }
+
+    private static final class IntArray {
+        int[] values = new int[64];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Reads the names of a package, and with collectValues the xml files and the value references as well.
+     */
+    private static final class TableVisitor extends ArscScanner.Visitor {
+        private final int packageId;
+        private final boolean collectValues;
+        final ResourceNames names;
+        final Map<String, String> xmlFiles = new LinkedHashMap<>();
+        final IntArray references = new IntArray();
+        final IntArray themeReferences = new IntArray();
+        private String currentType;
+
+        TableVisitor(int packageId, boolean collectValues) {
+            this.packageId = packageId;
+            this.collectValues = collectValues;
+            this.names = new ResourceNames(packageId);
+        }
+
+        @Override
+        public boolean visitPackage(int id, String name) {
+            if (id != packageId) {
+                return false;
+            }
+            names.packageName = name;
+            return true;
+        }
+
+        @Override
+        public boolean visitType(int id, String name, int entryCount) {
+            currentType = name;
+            names.typeNames[id] = name;
+            if (names.entryNames[id] == null) {
+                names.entryNames[id] = new String[entryCount];
+            }
+            return true;
+        }
+
+        @Override
+        public boolean visitEntry(int resId, String name) {
+            int typeId = (resId >>> 16) & 0xff;
+            int index = resId & 0xffff;
+            String[] entries = names.entryNames[typeId];
+            if (index >= entries.length) {
+                entries = Arrays.copyOf(entries, index + 1);
+                names.entryNames[typeId] = entries;
+            }
+            entries[index] = name;
+            return true;
+        }
+
+        @Override
+        public boolean visitsValues() {
+            return collectValues;
+        }
+
+        @Override
+        public void visitValue(int resId, int dataType, int data) {
+            if (dataType == TYPE_STRING) {
+                String path = getGlobalString(data);
+                if (isFilePath(path)) {
+                    xmlFiles.put(path, currentType);
+                }
+            } else {
+                addValueReference(dataType, data);
+            }
+        }
+
+        @Override
+        public void visitBag(int resId, int parentId) {
+            if (parentId != 0) {
+                references.add(parentId);
+            }
+        }
+
+        @Override
+        public void visitBagItem(int resId, int nameId, int dataType, int data) {
+            addValueReference(dataType, data);
+        }
+
+        private void addValueReference(int dataType, int data) {
+            if (data == 0) {
+                return;
+            }
+            if (dataType == TYPE_REFERENCE || dataType == TYPE_DYNAMIC_REFERENCE) {
+                references.add(data);
+            } else if (dataType == TYPE_ATTRIBUTE || dataType == TYPE_DYNAMIC_ATTRIBUTE) {
+                themeReferences.add(data);
+            }
+        }
+    }
+
+    /**
+     * The resolved names of the main package and the framework.
+     */
+    private static final class Resolver {
+        private final ResourceNames mainNames;
+
+        Resolver(ResourceNames mainNames) {
+            this.mainNames = mainNames;
+        }
+
+        /*
+         *  '@type/name', or '@package:type/name' for another package, the same as apktool encodes it
+         */
+        String resolve(char prefix, int resId) {
+            int packageId = resId >>> 24;
+            ResourceNames names;
+            if (packageId == mainNames.packageId) {
+                names = mainNames;
+            } else if (packageId == FRAMEWORK_PACKAGE_ID) {
+                names = getFrameworkNames();
+            } else {
+                return null;
+            }
+            String name = names == null ? null : names.get(resId);
+            if (name == null) {
+                return null;
+            }
+            return names == mainNames ? prefix + name : prefix + names.packageName + ":" + name;
+        }
+    }
+
+    private static boolean isFilePath(String path) {
+        for (String prefix : FILE_PATH_PREFIXES) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripFilePath(String path) {
+        for (String prefix : FILE_PATH_PREFIXES) {
+            if (path.startsWith(prefix)) {
+                return path.substring(prefix.length());
+            }
+        }
+        return path;
+    }
+
+    /*
+     *  the package with the most resources, but not the framework, as apktool takes it
+     */
+    private static int findMainPackage(File arscFile) throws IOException {
+        final List<int[]> packages = new ArrayList<>();
+        final List<String> packageNames = new ArrayList<>();
+        ArscScanner.scan(arscFile, new ArscScanner.Visitor() {
+            @Override
+            public boolean visitPackage(int id, String name) {
+                packages.add(new int[] {id, 0});
+                packageNames.add(name);
+                return true;
+            }
+
+            @Override
+            public boolean visitType(int id, String name, int entryCount) {
+                packages.get(packages.size() - 1)[1] += entryCount;
+                return false;
+            }
+        });
+        if (packages.isEmpty()) {
+            throw new IOException("no package in " + arscFile.getName());
+        }
+        int main = 0;
+        int maxCount = 0;
+        for (int i = 0; i < packages.size() && packages.size() > 1; i++) {
+            if (packages.get(i)[1] > maxCount && !"android".equalsIgnoreCase(packageNames.get(i))) {
+                maxCount = packages.get(i)[1];
+                main = i;
+            }
+        }
+        return packages.get(main)[0];
+    }
+
+    private static synchronized ResourceNames getFrameworkNames() {
+        if (frameworkNames == null) {
+            frameworkNames = new ResourceNames(FRAMEWORK_PACKAGE_ID);
+            try {
+                byte[] arsc = readFrameworkArsc();
+                if (arsc == null) {
+                    Log.w(TAG, "framework resources not found, references to them are ignored");
+                } else {
+                    TableVisitor visitor = new TableVisitor(FRAMEWORK_PACKAGE_ID, false);
+                    ArscScanner.scan(ByteBuffer.wrap(arsc), visitor);
+                    frameworkNames = visitor.names;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "read framework resources failed: %s", e.getMessage());
+            }
+        }
+        return frameworkNames;
+    }
+
+    private static byte[] readFrameworkArsc() throws IOException {
+        InputStream jarStream = BinaryResourceRefDecoder.class.getResourceAsStream(FRAMEWORK_JAR);
+        if (jarStream == null) {
+            return null;
+        }
+        ZipInputStream zipInputStream = new ZipInputStream(jarStream);
+        try {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                if (ApkConstants.ARSC_FILE_NAME.equals(entry.getName())) {
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[64 * 1024];
+                    int len;
+                    while ((len = zipInputStream.read(buffer)) > 0) {
+                        outputStream.write(buffer, 0, len);
+                    }
+                    return outputStream.toByteArray();
+                }
+            }
+            return null;
+        } finally {
+            zipInputStream.close();
+        }
+    }
+
+    /**
+     * @return the references in the binary xml, or null if it is not a binary xml
+     */
+    private static Set<String> decodeXmlRefs(File xmlFile, Resolver resolver) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(xmlFile.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < 8 || (buffer.getShort(0) & 0xffff) != RES_XML_TYPE) {
+            return null;
+        }
+        Set<String> references = new HashSet<>();
+        try {
+            int end = Math.min(buffer.limit(), buffer.getInt(4));
+            int offset = buffer.getShort(2) & 0xffff;
+            ResStringPool strings = null;
+            while (offset + 8 <= end) {
+                int chunkType = buffer.getShort(offset) & 0xffff;
+                int chunkSize = buffer.getInt(offset + 4);
+                if (chunkSize < 8) {
+                    throw new IOException("bad chunk size " + chunkSize + " at " + offset);
+                }
+                if (chunkType == ResStringPool.RES_STRING_POOL_TYPE && strings == null) {
+                    strings = new ResStringPool(buffer, offset);
+                } else if (chunkType == RES_XML_START_ELEMENT_TYPE) {
+                    int ext = offset + (buffer.getShort(offset + 2) & 0xffff);
+                    int attributeStart = buffer.getShort(ext + 8) & 0xffff;
+                    int attributeSize = buffer.getShort(ext + 10) & 0xffff;
+                    int attributeCount = buffer.getShort(ext + 12) & 0xffff;
+                    for (int i = 0; i < attributeCount; i++) {
+                        int attribute = ext + attributeStart + i * attributeSize;
+                        int dataType = buffer.get(attribute + 15) & 0xff;
+                        int data = buffer.getInt(attribute + 16);
+                        if (data == 0) {
+                            continue;
+                        }
+                        // apktool escapes string values starting with '@' or '?', so only typed references count
+                        if (dataType == TYPE_REFERENCE || dataType == TYPE_DYNAMIC_REFERENCE) {
+                            ApkUtil.addResourceReference(resolver.resolve('@', data), references);
+                        } else if (dataType == TYPE_ATTRIBUTE || dataType == TYPE_DYNAMIC_ATTRIBUTE) {
+                            ApkUtil.addResourceReference(resolver.resolve('?', data), references);
+                        }
+                    }
+                } else if (chunkType == RES_XML_CDATA_TYPE && strings != null) {
+                    int ext = offset + (buffer.getShort(offset + 2) & 0xffff);
+                    ApkUtil.addResourceReference(strings.get(buffer.getInt(ext)), references);
+                }
+                offset += chunkSize;
+            }
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("truncated binary xml " + xmlFile.getName(), e);
+        }
+        return references;
+    }
+
+    /**
+     * @param executor the pool to decode the xml files on, or null to decode them one by one on the calling thread
+     */
+    public static void decodeResourcesRef(File manifestFile, File arscFile, File resDir, Map<String, Set<String>> nonValueReferences, Set<String> valueReferences, ExecutorService executor) throws IOException {
+        TableVisitor table = new TableVisitor(findMainPackage(arscFile), true);
+        ArscScanner.scan(arscFile, table);
+        final Resolver resolver = new Resolver(table.names);
+
+        for (int i = 0; i < table.references.size; i++) {
+            ApkUtil.addResourceReference(resolver.resolve('@', table.references.values[i]), valueReferences);
+        }
+        for (int i = 0; i < table.themeReferences.size; i++) {
+            ApkUtil.addResourceReference(resolver.resolve('?', table.themeReferences.values[i]), valueReferences);
+        }
+
+        final List<File> xmlFiles = new ArrayList<>();
+        final List<String> resources = new ArrayList<>();
+        for (Map.Entry<String, String> entry : table.xmlFiles.entrySet()) {
+            String path = stripFilePath(entry.getKey());
+            File file = new File(resDir, path);
+            if (!path.endsWith(".xml") || !FileUtil.isLegalFile(file)) {
+                continue;
+            }
+            xmlFiles.add(file);
+            resources.add(ApkConstants.R_PREFIX + entry.getValue() + "." + file.getName().substring(0, file.getName().lastIndexOf('.')));
+        }
+
+        List<Callable<Set<String>>> decodes = new ArrayList<>(xmlFiles.size());
+        for (final File xmlFile : xmlFiles) {
+            decodes.add(new Callable<Set<String>>() {
+                @Override
+                public Set<String> call() throws IOException {
+                    return decodeXmlRefs(xmlFile, resolver);
+                }
+            });
+        }
+        try {
+            List<Future<Set<String>>> futures = ApkUtil.invokeAll(executor, decodes);
+            for (int i = 0; i < futures.size(); i++) {
+                Set<String> references;
+                try {
+                    references = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "decode %s failed: %s", xmlFiles.get(i).getName(), e.getCause().getMessage());
+                    continue;
+                }
+                if (references == null) {
+                    Log.e(TAG, "%s is not a binary xml", xmlFiles.get(i).getName());
+                    continue;
+                }
+                String resource = resources.get(i);
+                if (!nonValueReferences.containsKey(resource)) {
+                    nonValueReferences.put(resource, references);
+                } else {
+                    nonValueReferences.get(resource).addAll(references);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("decode resources interrupted", e);
+        }
+
+        Set<String> manifestReferences = decodeXmlRefs(manifestFile, resolver);
+        if (manifestReferences != null) {
+            valueReferences.addAll(manifestReferences);
+        } else {
+            Log.e(TAG, "%s is not a binary xml", manifestFile.getName());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Counts by name with mutable int counters instead of boxed values.
+ *
+ * Ranked lists are in descending count order, and equal counts keep the iteration order of the table,
+ * which is what a stable sort over the keys of a {@code HashMap<String, Integer>} used to give.
+ */
+
+public final class CountTable {
+
+    public static class Entry {
+        private final String name;
+        int count;
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public void add(String name, int delta) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            entry = new Entry(name);
+            entries.put(name, entry);
+        }
+        entry.count += delta;
+    }
+
+    /**
+     * Adds to an existing counter only.
+     *
+     * @return false if there is no counter of the name
+     */
+    public boolean addIfPresent(String name, int delta) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return false;
+        }
+        entry.count += delta;
+        return true;
+    }
+
+    public void removeZero() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().count == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int sum() {
+        int sum = 0;
+        for (Entry entry : entries.values()) {
+            sum += entry.count;
+        }
+        return sum;
+    }
+
+    public Collection<Entry> entries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public List<Entry> top(int limit) {
+        return top(entries.values(), limit);
+    }
+
+    /**
+     * @param limit the max number of entries returned, the whole collection is sorted if it is not positive
+     * @return the entries with the largest counts in descending order
+     */
+    public static <T extends Entry> List<T> top(Collection<T> entries, int limit) {
+        if (limit <= 0 || limit >= entries.size()) {
+            List<T> sorted = new ArrayList<>(entries);
+            Collections.sort(sorted, new Comparator<T>() {
+                @Override
+                public int compare(T left, T right) {
+                    return Integer.compare(right.count, left.count);
+                }
+            });
+            return sorted;
+        }
+        // min-heap of the best entries so far, the head is the first one to drop
+        PriorityQueue<Ranked<T>> heap = new PriorityQueue<>(limit + 1, new Comparator<Ranked<T>>() {
+            @Override
+            public int compare(Ranked<T> left, Ranked<T> right) {
+                if (left.entry.count != right.entry.count) {
+                    return Integer.compare(left.entry.count, right.entry.count);
+                }
+                return Integer.compare(right.order, left.order);
+            }
+        });
+        int order = 0;
+        for (T entry : entries) {
+            if (heap.size() < limit) {
+                heap.offer(new Ranked<>(entry, order));
+            } else if (entry.count > heap.peek().entry.count) {
+                heap.poll();
+                heap.offer(new Ranked<>(entry, order));
+            }
+            order++;
+        }
+        List<T> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            result.add(heap.poll().entry);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static final class Ranked<T> {
+        final T entry;
+        final int order;
+
+        Ranked(T entry, int order) {
+            this.entry = entry;
+            this.order = order;
+        }
+    }
+}
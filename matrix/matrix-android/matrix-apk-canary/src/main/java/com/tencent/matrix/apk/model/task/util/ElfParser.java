@@ -0,0 +1,339 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the section headers and symbol tables of an ELF32/ELF64 shared library,
+ * so that tasks don't have to fork the toolchain's 'nm' for every library.
+ */
+
+public final class ElfParser {
+
+    private static final byte[] ELF_MAGIC = {0x7f, 'E', 'L', 'F'};
+    private static final int ELF32_HEADER_SIZE = 0x34;
+    private static final int ELF32_SECTION_HEADER_SIZE = 0x28;
+    private static final int ELF64_SECTION_HEADER_SIZE = 0x40;
+
+    private static final int ELFCLASS32 = 1;
+    private static final int ELFCLASS64 = 2;
+    private static final int ELFDATA2LSB = 1;
+    private static final int ELFDATA2MSB = 2;
+
+    public static final int SHT_SYMTAB = 2;
+    public static final int SHT_STRTAB = 3;
+    public static final int SHT_NOBITS = 8;
+    public static final int SHT_DYNSYM = 11;
+
+    public static final long SHF_EXECINSTR = 0x4;
+
+    public static final int SHN_UNDEF = 0;
+    public static final int SHN_LORESERVE = 0xff00;
+
+    public static final int STB_LOCAL = 0;
+    public static final int STB_GLOBAL = 1;
+    public static final int STB_WEAK = 2;
+
+    public static final int STT_FUNC = 2;
+
+    private static final String DEBUG_SECTION_PREFIX = ".debug_";
+    private static final String ZDEBUG_SECTION_PREFIX = ".zdebug_";
+
+    private final ByteBuffer buffer;
+    private final boolean is64Bit;
+    private final List<Section> sections;
+
+    public static final class Section {
+        public String name;
+        public int type;
+        public long flags;
+        public long offset;
+        public long size;
+        public int link;
+        public long entrySize;
+    }
+
+    public static final class Symbol {
+        public String name;
+        public int bind;
+        public int type;
+        public int sectionIndex;
+    }
+
+    private ElfParser(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < ELF32_HEADER_SIZE) {
+            throw new IOException("not an ELF file");
+        }
+        byte[] magic = new byte[ELF_MAGIC.length];
+        getBytes(0, magic);
+        for (int i = 0; i < ELF_MAGIC.length; i++) {
+            if (magic[i] != ELF_MAGIC[i]) {
+                throw new IOException("not an ELF file");
+            }
+        }
+        int elfClass = buffer.get(4);
+        if (elfClass == ELFCLASS32) {
+            is64Bit = false;
+        } else if (elfClass == ELFCLASS64) {
+            is64Bit = true;
+        } else {
+            throw new IOException("unknown ELF class " + elfClass);
+        }
+        int elfData = buffer.get(5);
+        if (elfData == ELFDATA2LSB) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (elfData == ELFDATA2MSB) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            throw new IOException("unknown ELF data encoding " + elfData);
+        }
+        try {
+            sections = readSections();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("truncated ELF file", e);
+        }
+    }
+
+    /**
+     * Maps the file read-only and reads its section header table.
+     */
+    public static ElfParser parse(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new ElfParser(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    public static ElfParser parse(ByteBuffer buffer) throws IOException {
+        return new ElfParser(buffer.duplicate());
+    }
+
+    public boolean is64Bit() {
+        return is64Bit;
+    }
+
+    public List<Section> getSections() {
+        return Collections.unmodifiableList(sections);
+    }
+
+    public Section getSection(String name) {
+        for (Section section : sections) {
+            if (name.equals(section.name)) {
+                return section;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether there is a non-empty '.symtab', i.e. 'nm' would not report "no symbols".
+     */
+    public boolean hasSymbolTable() {
+        for (Section section : sections) {
+            if (section.type == SHT_SYMTAB && section.entrySize > 0 && section.size / section.entrySize > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasDebugInfo() {
+        for (Section section : sections) {
+            if (section.name.startsWith(DEBUG_SECTION_PREFIX) || section.name.startsWith(ZDEBUG_SECTION_PREFIX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether 'nm' would report "no symbols", debug sections alone do not make a library unstripped.
+     */
+    public boolean isStripped() {
+        return !hasSymbolTable();
+    }
+
+    public List<Symbol> getSymbols() throws IOException {
+        try {
+            return readSymbols(SHT_SYMTAB);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("truncated ELF file", e);
+        }
+    }
+
+    public List<Symbol> getDynamicSymbols() throws IOException {
+        try {
+            return readSymbols(SHT_DYNSYM);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("truncated ELF file", e);
+        }
+    }
+
+    /**
+     * Whether the symbol is what 'nm' prints as 'T': a global symbol defined in an executable section.
+     */
+    public boolean isGlobalText(Symbol symbol) {
+        if (symbol.bind != STB_GLOBAL || symbol.sectionIndex == SHN_UNDEF
+            || symbol.sectionIndex >= SHN_LORESERVE || symbol.sectionIndex >= sections.size()) {
+            return false;
+        }
+        return (sections.get(symbol.sectionIndex).flags & SHF_EXECINSTR) != 0;
+    }
+
+    private List<Section> readSections() throws IOException {
+        long shoff;
+        int shentsize;
+        int shnum;
+        int shstrndx;
+        if (is64Bit) {
+            shoff = buffer.getLong(0x28);
+            shentsize = buffer.getShort(0x3A) & 0xffff;
+            shnum = buffer.getShort(0x3C) & 0xffff;
+            shstrndx = buffer.getShort(0x3E) & 0xffff;
+        } else {
+            shoff = buffer.getInt(0x20) & 0xffffffffL;
+            shentsize = buffer.getShort(0x2E) & 0xffff;
+            shnum = buffer.getShort(0x30) & 0xffff;
+            shstrndx = buffer.getShort(0x32) & 0xffff;
+        }
+        List<Section> result = new ArrayList<>();
+        if (shoff == 0) {
+            return result;
+        }
+        int expectedEntrySize = is64Bit ? ELF64_SECTION_HEADER_SIZE : ELF32_SECTION_HEADER_SIZE;
+        if (shentsize != expectedEntrySize) {
+            throw new IOException("bad section header size " + shentsize);
+        }
+        long count = shnum;
+        if (count == 0) {
+            // the real number of sections is kept in the sh_size of section 0
+            if (shoff > buffer.limit() - expectedEntrySize) {
+                throw new IOException("section header table at " + shoff + " out of range");
+            }
+            count = is64Bit ? buffer.getLong(toIndex(shoff + 0x20)) : buffer.getInt(toIndex(shoff + 0x14)) & 0xffffffffL;
+        }
+        // checked before anything is allocated for the sections, a corrupt count must not size an array
+        if (count <= 0 || count > (buffer.limit() - shoff) / shentsize) {
+            throw new IOException("section header table of " + count + " entries at " + shoff + " out of range");
+        }
+        shnum = (int) count;
+        int[] nameOffsets = new int[shnum];
+        for (int i = 0; i < shnum; i++) {
+            int base = toIndex(shoff + (long) i * shentsize);
+            Section section = new Section();
+            nameOffsets[i] = buffer.getInt(base);
+            section.type = buffer.getInt(base + 0x4);
+            if (is64Bit) {
+                section.flags = buffer.getLong(base + 0x8);
+                section.offset = buffer.getLong(base + 0x18);
+                section.size = buffer.getLong(base + 0x20);
+                section.link = buffer.getInt(base + 0x28);
+                section.entrySize = buffer.getLong(base + 0x38);
+            } else {
+                section.flags = buffer.getInt(base + 0x8) & 0xffffffffL;
+                section.offset = buffer.getInt(base + 0x10) & 0xffffffffL;
+                section.size = buffer.getInt(base + 0x14) & 0xffffffffL;
+                section.link = buffer.getInt(base + 0x18);
+                section.entrySize = buffer.getInt(base + 0x24) & 0xffffffffL;
+            }
+            result.add(section);
+        }
+        Section shstrtab = shstrndx < shnum ? result.get(shstrndx) : null;
+        for (int i = 0; i < shnum; i++) {
+            result.get(i).name = shstrtab == null ? "" : readString(shstrtab, nameOffsets[i]);
+        }
+        return result;
+    }
+
+    private List<Symbol> readSymbols(int sectionType) throws IOException {
+        List<Symbol> symbols = new ArrayList<>();
+        for (Section section : sections) {
+            if (section.type != sectionType || section.entrySize == 0 || section.link >= sections.size()) {
+                continue;
+            }
+            Section strtab = sections.get(section.link);
+            long count = section.size / section.entrySize;
+            // entry 0 is always the undefined symbol
+            for (long i = 1; i < count; i++) {
+                int base = toIndex(section.offset + i * section.entrySize);
+                Symbol symbol = new Symbol();
+                int nameOffset = buffer.getInt(base);
+                int info;
+                if (is64Bit) {
+                    info = buffer.get(base + 0x4) & 0xff;
+                    symbol.sectionIndex = buffer.getShort(base + 0x6) & 0xffff;
+                } else {
+                    info = buffer.get(base + 0xC) & 0xff;
+                    symbol.sectionIndex = buffer.getShort(base + 0xE) & 0xffff;
+                }
+                symbol.bind = info >> 4;
+                symbol.type = info & 0xf;
+                symbol.name = readString(strtab, nameOffset);
+                symbols.add(symbol);
+            }
+        }
+        return symbols;
+    }
+
+    private String readString(Section strtab, int offset) throws IOException {
+        if (strtab.type == SHT_NOBITS || offset < 0 || offset >= strtab.size) {
+            return "";
+        }
+        int start = toIndex(strtab.offset + offset);
+        int end = start;
+        int limit = toIndex(Math.min(strtab.offset + strtab.size, buffer.limit()));
+        while (end < limit && buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] bytes = new byte[end - start];
+        getBytes(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void getBytes(int position, byte[] dst) throws IOException {
+        ByteBuffer slice = buffer.duplicate();
+        try {
+            slice.position(position);
+            slice.get(dst);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("truncated ELF file", e);
+        }
+    }
+
+    private int toIndex(long offset) throws IOException {
+        if (offset < 0 || offset > buffer.limit()) {
+            throw new IOException("offset " + offset + " out of range");
+        }
+        return (int) offset;
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task.util;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.tencent.matrix.javalib.util.FileUtil;
+import com.tencent.matrix.javalib.util.Log;
+import com.tencent.matrix.javalib.util.Util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent cache of per-entry results shared by consecutive runs.
+ *
+ * Values are json files stored under 'namespace/xx/sha1.json', keyed by the SHA-1 of the entry content,
+ * so an entry that did not change between two builds is not parsed again whatever its name is.
+ * The whole cache is dropped when its version stamp differs from {@link #VERSION}, and the least recently
+ * used values are evicted by {@link #trim()} once the total size exceeds the limit.
+ */
+
+public final class EntryCache {
+
+    private static final String TAG = "Matrix.EntryCache";
+
+    /*
+     *  bump it whenever the layout of a cached value changes
+     */
+    public static final int VERSION = 2;
+
+    public static final String NAMESPACE_DEX_METHODS = "dex-methods";
+    public static final String NAMESPACE_PNG_ALPHA = "png-alpha";
+    public static final String NAMESPACE_ELF_STRIPPED = "elf-stripped";
+    public static final String NAMESPACE_ELF_STL = "elf-stl";
+    public static final String NAMESPACE_MD5 = "md5";
+
+    public static final long DEFAULT_MAX_SIZE_IN_MB = 512;
+
+    private static final String VERSION_FILE = "version";
+    private static final String VALUE_SUFFIX = ".json";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File cacheDir;
+    private final long maxBytes;
+    private final Map<String, String> keyMap = new ConcurrentHashMap<>();
+
+    private EntryCache(File cacheDir, long maxBytes) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Opens the cache in the directory, wiping it if it was written by another version.
+     */
+    public static EntryCache open(File cacheDir, long maxBytes) throws IOException {
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            throw new IOException("create cache dir " + cacheDir.getAbsolutePath() + " failed!");
+        }
+        File versionFile = new File(cacheDir, VERSION_FILE);
+        String version = versionFile.exists() ? FileUtil.readFileAsString(versionFile.getAbsolutePath()).trim() : "";
+        if (!String.valueOf(VERSION).equals(version)) {
+            Log.i(TAG, "cache version '%s' mismatch %d, clear %s", version, VERSION, cacheDir.getAbsolutePath());
+            File[] files = cacheDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.isDirectory()) {
+                        FileUtil.deleteDir(file);
+                    } else {
+                        FileUtil.safeDeleteFile(file);
+                    }
+                }
+            }
+            Writer writer = new OutputStreamWriter(new FileOutputStream(versionFile), StandardCharsets.UTF_8);
+            try {
+                writer.write(String.valueOf(VERSION));
+            } finally {
+                writer.close();
+            }
+        }
+        return new EntryCache(cacheDir, maxBytes);
+    }
+
+    /**
+     * Records the content key of a file whose digest was already computed, e.g. while unzipping.
+     */
+    public void putKey(File file, String key) {
+        keyMap.put(file.getAbsolutePath(), key);
+    }
+
+    public String getKey(File file) throws IOException {
+        String key = keyMap.get(file.getAbsolutePath());
+        if (key == null) {
+            key = digest(file);
+            keyMap.put(file.getAbsolutePath(), key);
+        }
+        return key;
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String digest(File file) throws IOException {
+        MessageDigest messageDigest = newDigest();
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = inputStream.read(buffer)) > 0) {
+                messageDigest.update(buffer, 0, len);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return Util.byteArrayToHex(messageDigest.digest());
+    }
+
+    private File valueFile(String namespace, String key) {
+        return new File(new File(new File(cacheDir, namespace), key.substring(0, 2)), key + VALUE_SUFFIX);
+    }
+
+    /**
+     * @return the cached value of the file content, or null if there is none
+     */
+    public JsonElement get(String namespace, File file) {
+        try {
+            File valueFile = valueFile(namespace, getKey(file));
+            if (!valueFile.isFile()) {
+                return null;
+            }
+            Reader reader = new InputStreamReader(new FileInputStream(valueFile), StandardCharsets.UTF_8);
+            try {
+                JsonElement value = new JsonParser().parse(reader);
+                // the modified time is the access time of the LRU eviction
+                valueFile.setLastModified(System.currentTimeMillis());
+                return value;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | JsonParseException e) {
+            Log.w(TAG, "read cache of %s failed: %s", file.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(String namespace, File file, JsonElement value) {
+        try {
+            File valueFile = valueFile(namespace, getKey(file));
+            File dir = valueFile.getParentFile();
+            if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+                Log.w(TAG, "create cache dir %s failed!", dir.getAbsolutePath());
+                return;
+            }
+            // write aside and rename, readers never see a partial value
+            File tmpFile = new File(dir, valueFile.getName() + "." + Thread.currentThread().getId() + ".tmp");
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8);
+            try {
+                writer.write(value.toString());
+            } finally {
+                writer.close();
+            }
+            if (!tmpFile.renameTo(valueFile)) {
+                FileUtil.safeDeleteFile(tmpFile);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "write cache of %s failed: %s", file.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Evicts the least recently used values until the cache fits in its size limit.
+     */
+    public void trim() {
+        List<File> values = new ArrayList<>();
+        collectValues(cacheDir, values);
+        long totalBytes = 0;
+        final Map<File, Long> lastModified = new HashMap<>();
+        for (File value : values) {
+            totalBytes += value.length();
+            lastModified.put(value, value.lastModified());
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+        Collections.sort(values, new Comparator<File>() {
+            @Override
+            public int compare(File left, File right) {
+                return Long.compare(lastModified.get(left), lastModified.get(right));
+            }
+        });
+        int evicted = 0;
+        for (File value : values) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            totalBytes -= value.length();
+            FileUtil.safeDeleteFile(value);
+            evicted++;
+        }
+        Log.i(TAG, "evict %d cached values, %d bytes left", evicted, totalBytes);
+    }
+
+    private static void collectValues(File dir, List<File> values) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectValues(file, values);
+            } else if (file.getName().endsWith(VALUE_SUFFIX)) {
+                values.add(file);
+            }
+        }
+    }
+}
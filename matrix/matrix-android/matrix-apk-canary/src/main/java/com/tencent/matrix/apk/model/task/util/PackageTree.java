@@ -0,0 +1,94 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Aggregates counts by the package of dot-split class names.
+ *
+ * Every package segment is a node of the tree holding its full package name, so looking up the package of
+ * a class only cuts the segments out of the name instead of building every parent package string. Packages
+ * are iterated like the keys of a {@code HashMap<String, ?>} filled in the same order, see {@link CountTable}.
+ */
+
+public final class PackageTree {
+
+    public static final class Node extends CountTable.Entry {
+        private Map<String, Node> children;
+        private boolean registered;
+
+        Node(String name) {
+            super(name);
+        }
+    }
+
+    private final Node root = new Node("");
+    private final Map<String, Node> packages = new HashMap<>();
+
+    /**
+     * Adds to the counter of the package of the class, a class without package is ignored.
+     *
+     * @return the package node, or null if the class has no package
+     */
+    public Node add(String className, int delta) {
+        int end = className.lastIndexOf('.');
+        if (end <= 0) {
+            return null;
+        }
+        Node node = root;
+        int start = 0;
+        while (start <= end) {
+            int dot = className.indexOf('.', start);
+            node = child(node, className.substring(start, dot));
+            start = dot + 1;
+        }
+        if (!node.registered) {
+            node.registered = true;
+            packages.put(node.getName(), node);
+        }
+        node.count += delta;
+        return node;
+    }
+
+    public Node get(String packageName) {
+        return packages.get(packageName);
+    }
+
+    public Collection<Node> packages() {
+        return Collections.unmodifiableCollection(packages.values());
+    }
+
+    public int size() {
+        return packages.size();
+    }
+
+    private Node child(Node parent, String segment) {
+        if (parent.children == null) {
+            parent.children = new HashMap<>();
+        }
+        Node child = parent.children.get(segment);
+        if (child == null) {
+            child = new Node(parent == root ? segment : parent.getName() + '.' + segment);
+            parent.children.put(segment, child);
+        }
+        return child;
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task.util;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Decides whether a PNG really uses transparency.
+ *
+ * The IHDR colour type and the tRNS chunk settle most files without touching the image data.
+ * Otherwise the IDAT stream is inflated and unfiltered row by row, and the scan stops at the
+ * first pixel that is not fully opaque.
+ */
+
+public final class PngParser {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    private static final int CHUNK_IHDR = 0x49484452;
+    private static final int CHUNK_TRNS = 0x74524e53;
+    private static final int CHUNK_IDAT = 0x49444154;
+    private static final int CHUNK_IEND = 0x49454e44;
+
+    private static final int COLOR_TYPE_GRAY = 0;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_PALETTE = 3;
+    private static final int COLOR_TYPE_GRAY_ALPHA = 4;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private PngParser() {
+    }
+
+    /**
+     * @return true if at least one pixel of the image is not fully opaque
+     */
+    public static boolean hasAlpha(File file) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try {
+            byte[] signature = new byte[PNG_SIGNATURE.length];
+            input.readFully(signature);
+            if (!Arrays.equals(signature, PNG_SIGNATURE)) {
+                return hasAlphaByImageIO(file);
+            }
+            Header header = null;
+            byte[] trns = null;
+            while (true) {
+                int length = input.readInt();
+                int chunkType = input.readInt();
+                if (chunkType == CHUNK_IHDR) {
+                    header = new Header();
+                    header.width = input.readInt();
+                    header.height = input.readInt();
+                    header.bitDepth = input.readUnsignedByte();
+                    header.colorType = input.readUnsignedByte();
+                    skipFully(input, 2);        // compression method, filter method
+                    header.interlace = input.readUnsignedByte();
+                    skipFully(input, length - 13 + 4);
+                } else if (chunkType == CHUNK_TRNS) {
+                    trns = new byte[length];
+                    input.readFully(trns);
+                    skipFully(input, 4);
+                } else if (chunkType == CHUNK_IDAT) {
+                    if (header == null) {
+                        throw new IOException("IDAT before IHDR");
+                    }
+                    Boolean result = decideByHeader(header, trns);
+                    if (result != null) {
+                        return result;
+                    }
+                    if (header.interlace != 0) {
+                        return hasAlphaByImageIO(file);
+                    }
+                    return scanAlpha(new InflaterInputStream(new IdatInputStream(input, length), new Inflater(), BUFFER_SIZE), header, trns);
+                } else if (chunkType == CHUNK_IEND) {
+                    return false;
+                } else {
+                    skipFully(input, (length & 0xffffffffL) + 4);
+                }
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * @return the answer if the colour type and tRNS chunk are enough, otherwise null
+     */
+    private static Boolean decideByHeader(Header header, byte[] trns) {
+        switch (header.colorType) {
+            case COLOR_TYPE_GRAY:
+            case COLOR_TYPE_RGB:
+                return trns == null ? Boolean.FALSE : null;
+            case COLOR_TYPE_PALETTE:
+                if (trns != null) {
+                    for (byte alpha : trns) {
+                        if ((alpha & 0xff) != 0xff) {
+                            return null;
+                        }
+                    }
+                }
+                return Boolean.FALSE;
+            case COLOR_TYPE_GRAY_ALPHA:
+            case COLOR_TYPE_RGBA:
+            default:
+                return null;
+        }
+    }
+
+    private static boolean scanAlpha(InputStream data, Header header, byte[] trns) throws IOException {
+        int channels;
+        switch (header.colorType) {
+            case COLOR_TYPE_RGB:
+                channels = 3;
+                break;
+            case COLOR_TYPE_GRAY_ALPHA:
+                channels = 2;
+                break;
+            case COLOR_TYPE_RGBA:
+                channels = 4;
+                break;
+            default:
+                channels = 1;
+                break;
+        }
+        int bitsPerPixel = channels * header.bitDepth;
+        int filterUnit = Math.max(1, bitsPerPixel / 8);
+        int rowBytes = (int) (((long) header.width * bitsPerPixel + 7) / 8);
+        byte[] row = new byte[rowBytes];
+        byte[] prior = new byte[rowBytes];
+        DataInputStream rows = new DataInputStream(data);
+        for (int y = 0; y < header.height; y++) {
+            int filter = rows.readUnsignedByte();
+            rows.readFully(row);
+            unfilter(filter, row, prior, filterUnit);
+            if (rowHasAlpha(row, header, channels, trns)) {
+                return true;
+            }
+            byte[] tmp = prior;
+            prior = row;
+            row = tmp;
+        }
+        return false;
+    }
+
+    private static boolean rowHasAlpha(byte[] row, Header header, int channels, byte[] trns) {
+        int width = header.width;
+        int depth = header.bitDepth;
+        switch (header.colorType) {
+            case COLOR_TYPE_RGBA:
+            case COLOR_TYPE_GRAY_ALPHA:
+                if (depth == 8) {
+                    for (int i = channels - 1; i < row.length; i += channels) {
+                        if (row[i] != (byte) 0xff) {
+                            return true;
+                        }
+                    }
+                } else {
+                    for (int i = 2 * (channels - 1); i < row.length; i += 2 * channels) {
+                        if (row[i] != (byte) 0xff || row[i + 1] != (byte) 0xff) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            case COLOR_TYPE_PALETTE:
+                for (int x = 0; x < width; x++) {
+                    int index = sample(row, x, depth);
+                    if (index < trns.length && (trns[index] & 0xff) != 0xff) {
+                        return true;
+                    }
+                }
+                return false;
+            case COLOR_TYPE_GRAY:
+                if (trns.length < 2) {
+                    return false;
+                }
+                int key = ((trns[0] & 0xff) << 8 | (trns[1] & 0xff)) & ((1 << depth) - 1);
+                for (int x = 0; x < width; x++) {
+                    if (sample(row, x, depth) == key) {
+                        return true;
+                    }
+                }
+                return false;
+            case COLOR_TYPE_RGB:
+                if (trns.length < 6) {
+                    return false;
+                }
+                int bytesPerSample = depth / 8;
+                for (int i = 0; i + 3 * bytesPerSample <= row.length; i += 3 * bytesPerSample) {
+                    boolean match = true;
+                    for (int c = 0; c < 3 && match; c++) {
+                        if (bytesPerSample == 1) {
+                            match = row[i + c] == trns[2 * c + 1];
+                        } else {
+                            match = row[i + 2 * c] == trns[2 * c] && row[i + 2 * c + 1] == trns[2 * c + 1];
+                        }
+                    }
+                    if (match) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private static int sample(byte[] row, int x, int depth) {
+        switch (depth) {
+            case 16:
+                return (row[2 * x] & 0xff) << 8 | (row[2 * x + 1] & 0xff);
+            case 8:
+                return row[x] & 0xff;
+            default:
+                int bit = x * depth;
+                int shift = 8 - depth - (bit & 7);
+                return ((row[bit >> 3] & 0xff) >> shift) & ((1 << depth) - 1);
+        }
+    }
+
+    private static void unfilter(int filter, byte[] row, byte[] prior, int unit) throws IOException {
+        switch (filter) {
+            case 0:
+                break;
+            case 1:
+                for (int i = unit; i < row.length; i++) {
+                    row[i] += row[i - unit];
+                }
+                break;
+            case 2:
+                for (int i = 0; i < row.length; i++) {
+                    row[i] += prior[i];
+                }
+                break;
+            case 3:
+                for (int i = 0; i < row.length; i++) {
+                    int left = i >= unit ? row[i - unit] & 0xff : 0;
+                    row[i] += (left + (prior[i] & 0xff)) >> 1;
+                }
+                break;
+            case 4:
+                for (int i = 0; i < row.length; i++) {
+                    int left = i >= unit ? row[i - unit] & 0xff : 0;
+                    int up = prior[i] & 0xff;
+                    int upLeft = i >= unit ? prior[i - unit] & 0xff : 0;
+                    row[i] += paeth(left, up, upLeft);
+                }
+                break;
+            default:
+                throw new IOException("unknown filter type " + filter);
+        }
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int p = left + up - upLeft;
+        int pa = Math.abs(p - left);
+        int pb = Math.abs(p - up);
+        int pc = Math.abs(p - upLeft);
+        if (pa <= pb && pa <= pc) {
+            return left;
+        } else if (pb <= pc) {
+            return up;
+        }
+        return upLeft;
+    }
+
+    private static boolean hasAlphaByImageIO(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("can not decode " + file.getName());
+        }
+        if (!image.getColorModel().hasAlpha()) {
+            return false;
+        }
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if ((image.getRGB(x, y) >>> 24) != 0xff) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void skipFully(DataInputStream input, long count) throws IOException {
+        while (count > 0) {
+            long skipped = input.skip(count);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static final class Header {
+        int width;
+        int height;
+        int bitDepth;
+        int colorType;
+        int interlace;
+    }
+
+    /**
+     * The payload of consecutive IDAT chunks as one stream, chunk headers and CRCs skipped.
+     */
+    private static final class IdatInputStream extends InputStream {
+
+        private final DataInputStream input;
+        private long remaining;
+        private boolean finished;
+
+        IdatInputStream(DataInputStream input, int firstLength) {
+            this.input = input;
+            this.remaining = firstLength & 0xffffffffL;
+        }
+
+        private boolean nextChunk() throws IOException {
+            while (remaining == 0 && !finished) {
+                skipFully(input, 4);            // crc
+                int length = input.readInt();
+                if (input.readInt() != CHUNK_IDAT) {
+                    finished = true;
+                } else {
+                    remaining = length & 0xffffffffL;
+                }
+            }
+            return !finished;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            remaining--;
+            return input.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int count = input.read(buffer, offset, (int) Math.min(length, remaining));
+            if (count < 0) {
+                throw new EOFException();
+            }
+            remaining -= count;
+            return count;
+        }
+    }
+}
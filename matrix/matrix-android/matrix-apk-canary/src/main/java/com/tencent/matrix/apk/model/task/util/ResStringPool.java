@@ -0,0 +1,96 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A string pool chunk of a resources.arsc or a binary xml read in place, strings are decoded on every lookup.
+ */
+
+final class ResStringPool {
+
+    static final int RES_STRING_POOL_TYPE = 0x0001;
+
+    private static final int UTF8_FLAG = 0x0100;
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int count;
+    private final boolean utf8;
+    private final int offsetsStart;
+    private final int stringsStart;
+
+    /**
+     * @param buffer a little-endian buffer
+     */
+    ResStringPool(ByteBuffer buffer, int start) throws IOException {
+        if ((buffer.getShort(start) & 0xffff) != RES_STRING_POOL_TYPE) {
+            throw new IOException("no string pool at " + start);
+        }
+        this.buffer = buffer;
+        this.start = start;
+        this.count = buffer.getInt(start + 8);
+        this.utf8 = (buffer.getInt(start + 16) & UTF8_FLAG) != 0;
+        this.offsetsStart = start + (buffer.getShort(start + 2) & 0xffff);
+        this.stringsStart = start + buffer.getInt(start + 20);
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return the string, or "" if the index is out of range
+     */
+    String get(int index) {
+        if (index < 0 || index >= count) {
+            return "";
+        }
+        int position = stringsStart + buffer.getInt(offsetsStart + index * 4);
+        if (utf8) {
+            // the length in characters, then the length in bytes
+            position += (buffer.get(position) & 0x80) != 0 ? 2 : 1;
+            int length = buffer.get(position) & 0xff;
+            if ((length & 0x80) != 0) {
+                length = (length & 0x7f) << 8 | buffer.get(position + 1) & 0xff;
+                position += 2;
+            } else {
+                position += 1;
+            }
+            byte[] bytes = new byte[length];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(position);
+            slice.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        int length = buffer.getShort(position) & 0xffff;
+        if ((length & 0x8000) != 0) {
+            length = (length & 0x7fff) << 16 | buffer.getShort(position + 2) & 0xffff;
+            position += 4;
+        } else {
+            position += 2;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar(position + i * 2);
+        }
+        return new String(chars);
+    }
+}
@@ -82,40 +82,13 @@ public class XmlPullResourceRefDecoder implements ResStreamDecoder {
             for (int i = 0; i < mParser.getAttributeCount(); i++) {
                 String value = mParser.getAttributeValue(i);
                 //Log.d(TAG, "attribute %s, %s", name, value);
-                if (!Util.isNullOrNil(value)) {
-                    if (value.startsWith("@")) {
-                        int index = value.indexOf('/');
-                        if (index > 1) {
-                            String type = value.substring(1, index);
-                            resourceRefSet.add(ApkConstants.R_PREFIX + type + "." + value.substring(index + 1).replace('.', '_'));
-                        }
-                    } else if (value.startsWith("?")) {
-                        int index = value.indexOf('/');
-                        if (index > 1) {
-                            resourceRefSet.add(ApkConstants.R_ATTR_PREFIX + "." + value.substring(index + 1).replace('.', '_'));
-                        }
-                    }
-                }
+                ApkUtil.addResourceReference(value, resourceRefSet);
             }
         }
     }
 
     private void handleContent() {
-        String text = mParser.getText();
-        if (!Util.isNullOrNil(text)) {
-            if (text.startsWith("@")) {
-                int index = text.indexOf('/');
-                if (index > 1) {
-                    String type = text.substring(1, index);
-                    resourceRefSet.add(ApkConstants.R_PREFIX + type + "." + text.substring(index + 1).replace('.', '_'));
-                }
-            } else if (text.startsWith("?")) {
-                int index = text.indexOf('/');
-                if (index > 1) {
-                    resourceRefSet.add(ApkConstants.R_ATTR_PREFIX + "." + text.substring(index + 1).replace('.', '_'));
-                }
-            }
-        }
+        ApkUtil.addResourceReference(mParser.getText(), resourceRefSet);
     }
 
 
@@ -0,0 +1,218 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the entries of a zip from its central directory, without inflating or even touching the entry data.
+ *
+ * Only the central directory is mapped and the entries are reported one by one, so the memory used does not
+ * grow with the number of entries. Zip64 archives are supported.
+ */
+
+public final class ZipCentralDirectory {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int EOCD64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int EOCD64_LOCATOR_SIZE = 20;
+    private static final int EOCD64_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    /**
+     * An entry of the central directory, the same instance is reused for every entry of a scan.
+     */
+    public static final class Entry {
+        private String name;
+        private int method;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private long localHeaderOffset;
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    public interface Visitor {
+        void visitEntry(Entry entry) throws IOException;
+    }
+
+    private ZipCentralDirectory() {
+    }
+
+    public static void scan(File zipFile, Visitor visitor) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(zipFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long[] directory = locate(channel);
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, directory[0], directory[1]).order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                readEntries(buffer, directory[2], visitor);
+            } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+                throw new IOException("truncated central directory of " + zipFile.getName(), e);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /*
+     *  [offset, size, entry count] of the central directory
+     */
+    private static long[] locate(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < EOCD_SIZE) {
+            throw new IOException("not a zip file");
+        }
+        int tailSize = (int) Math.min(fileSize, EOCD_SIZE + MAX_COMMENT_SIZE + EOCD64_LOCATOR_SIZE);
+        ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, tail, fileSize - tailSize);
+        int eocd = -1;
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE && i + EOCD_SIZE + (tail.getShort(i + 20) & 0xffff) <= tailSize) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("end of central directory not found");
+        }
+        long count = tail.getShort(eocd + 10) & 0xffff;
+        long size = tail.getInt(eocd + 12) & 0xffffffffL;
+        long offset = tail.getInt(eocd + 16) & 0xffffffffL;
+        if ((count == 0xffff || size == ZIP64_MAGIC || offset == ZIP64_MAGIC)
+            && eocd >= EOCD64_LOCATOR_SIZE && tail.getInt(eocd - EOCD64_LOCATOR_SIZE) == EOCD64_LOCATOR_SIGNATURE) {
+            ByteBuffer eocd64 = ByteBuffer.allocate(56).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, eocd64, tail.getLong(eocd - EOCD64_LOCATOR_SIZE + 8));
+            if (eocd64.getInt(0) != EOCD64_SIGNATURE) {
+                throw new IOException("zip64 end of central directory not found");
+            }
+            count = eocd64.getLong(32);
+            size = eocd64.getLong(40);
+            offset = eocd64.getLong(48);
+        }
+        if (offset < 0 || size < 0 || offset + size > fileSize) {
+            throw new IOException("bad central directory offset " + offset + ", size " + size);
+        }
+        return new long[] {offset, size, count};
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("unexpected end of zip file");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void readEntries(ByteBuffer buffer, long count, Visitor visitor) throws IOException {
+        Entry entry = new Entry();
+        int position = 0;
+        for (long i = 0; i < count; i++) {
+            if (buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("bad central directory entry at " + position);
+            }
+            int nameLength = buffer.getShort(position + 28) & 0xffff;
+            int extraLength = buffer.getShort(position + 30) & 0xffff;
+            int commentLength = buffer.getShort(position + 32) & 0xffff;
+            entry.method = buffer.getShort(position + 10) & 0xffff;
+            entry.crc = buffer.getInt(position + 16) & 0xffffffffL;
+            entry.compressedSize = buffer.getInt(position + 20) & 0xffffffffL;
+            entry.size = buffer.getInt(position + 24) & 0xffffffffL;
+            entry.localHeaderOffset = buffer.getInt(position + 42) & 0xffffffffL;
+
+            byte[] name = new byte[nameLength];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(position + CENTRAL_HEADER_SIZE);
+            slice.get(name);
+            entry.name = new String(name, StandardCharsets.UTF_8);
+            if (entry.size == ZIP64_MAGIC || entry.compressedSize == ZIP64_MAGIC || entry.localHeaderOffset == ZIP64_MAGIC) {
+                readZip64Extra(buffer, position + CENTRAL_HEADER_SIZE + nameLength, extraLength, entry);
+            }
+            visitor.visitEntry(entry);
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private static void readZip64Extra(ByteBuffer buffer, int start, int length, Entry entry) {
+        int position = start;
+        while (position + 4 <= start + length) {
+            int id = buffer.getShort(position) & 0xffff;
+            int size = buffer.getShort(position + 2) & 0xffff;
+            if (id == ZIP64_EXTRA_ID) {
+                // only the fields overflowed in the header are present, in this order
+                int field = position + 4;
+                if (entry.size == ZIP64_MAGIC) {
+                    entry.size = buffer.getLong(field);
+                    field += 8;
+                }
+                if (entry.compressedSize == ZIP64_MAGIC) {
+                    entry.compressedSize = buffer.getLong(field);
+                    field += 8;
+                }
+                if (entry.localHeaderOffset == ZIP64_MAGIC) {
+                    entry.localHeaderOffset = buffer.getLong(field);
+                }
+                return;
+            }
+            position += 4 + size;
+        }
+    }
+}
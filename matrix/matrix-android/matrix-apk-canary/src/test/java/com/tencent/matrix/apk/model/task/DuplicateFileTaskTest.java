@@ -0,0 +1,93 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.model.task;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.tencent.matrix.apk.model.job.JobConfig;
+import com.tencent.matrix.apk.model.job.JobConstants;
+import com.tencent.matrix.javalib.util.FileUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateFileTaskTest {
+
+    private File unzipDir;
+
+    @Before
+    public void setUp() throws IOException {
+        unzipDir = File.createTempFile("duplicate", "");
+        assertTrue(unzipDir.delete() && unzipDir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDir(unzipDir);
+    }
+
+    @Test
+    public void sameAsGoldenFromUnzipDir() throws Exception {
+        JobConfig config = GoldenApk.unzip(unzipDir);
+        assertGolden(GoldenApk.run(new DuplicateFileTask(config, new HashMap<String, String>())));
+    }
+
+    @Test
+    public void sameAsGoldenFromZip() throws Exception {
+        JobConfig config = GoldenApk.unzip(unzipDir);
+        Map<String, String> params = new HashMap<>();
+        params.put(JobConstants.PARAM_READ_ZIP, "true");
+        assertGolden(GoldenApk.run(new DuplicateFileTask(config, params)));
+    }
+
+    @Test
+    public void sameAsGoldenOnWorkerPool() throws Exception {
+        JobConfig config = GoldenApk.unzip(unzipDir);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            config.setWorkerExecutor(executor);
+            assertGolden(GoldenApk.run(new DuplicateFileTask(config, new HashMap<String, String>())));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void assertGolden(JsonObject result) throws IOException {
+        assertEquals(GoldenApk.normalize(GoldenApk.golden("duplicatedFile")), GoldenApk.normalize(result));
+        // the groups stay ordered by size, largest first
+        long lastSize = Long.MAX_VALUE;
+        JsonArray groups = result.getAsJsonArray("files");
+        for (JsonElement group : groups) {
+            long size = group.getAsJsonObject().get("size").getAsLong();
+            assertTrue(size <= lastSize);
+            lastSize = size;
+        }
+    }
+}
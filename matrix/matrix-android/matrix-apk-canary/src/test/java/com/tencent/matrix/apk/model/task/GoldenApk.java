@@ -0,0 +1,158 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.model.task;
+
+import com.android.utils.Pair;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.tencent.matrix.apk.model.job.JobConfig;
+import com.tencent.matrix.apk.model.result.TaskJsonResult;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The synthesized 'golden/golden.apk' and the results recorded from it before the tasks were reworked.
+ *
+ * The apk holds two dex files with classes spread over nested packages, external references and a class
+ * without package, plus groups of duplicated files of various sizes, 70K files sharing their first 64K,
+ * empty files and same-size files of different content. Every 'golden/*.json' is the task result without
+ * its times and description.
+ */
+final class GoldenApk {
+
+    private GoldenApk() {
+    }
+
+    static File apkFile() throws URISyntaxException {
+        return new File(GoldenApk.class.getResource("/golden/golden.apk").toURI());
+    }
+
+    /**
+     * Unzips the apk into the directory and fills the entry maps of the config the way {@link UnzipTask} does.
+     */
+    static JobConfig unzip(File unzipDir) throws IOException, URISyntaxException {
+        return unzip(apkFile(), unzipDir);
+    }
+
+    static JobConfig unzip(File apkFile, File unzipDir) throws IOException {
+        Map<String, Pair<Long, Long>> entrySizeMap = new HashMap<>();
+        Map<String, String> entryNameMap = new HashMap<>();
+        ZipFile zipFile = new ZipFile(apkFile);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                File file = new File(unzipDir, entry.getName());
+                if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                    throw new IOException("create dir " + file.getParent() + " failed!");
+                }
+                InputStream inputStream = zipFile.getInputStream(entry);
+                OutputStream outputStream = new FileOutputStream(file);
+                try {
+                    byte[] buffer = new byte[8192];
+                    int len;
+                    while ((len = inputStream.read(buffer)) > 0) {
+                        outputStream.write(buffer, 0, len);
+                    }
+                } finally {
+                    outputStream.close();
+                    inputStream.close();
+                }
+                entrySizeMap.put(entry.getName(), Pair.of(entry.getSize(), entry.getCompressedSize()));
+                entryNameMap.put(entry.getName(), entry.getName());
+            }
+        } finally {
+            zipFile.close();
+        }
+        JobConfig config = new JobConfig();
+        config.setApkPath(apkFile.getAbsolutePath());
+        config.setUnzipPath(unzipDir.getAbsolutePath());
+        config.setProguardClassMap(new HashMap<String, String>());
+        config.setEntrySizeMap(entrySizeMap);
+        config.setEntryNameMap(entryNameMap);
+        return config;
+    }
+
+    static JsonObject run(ApkTask task) throws Exception {
+        task.init();
+        JsonObject result = ((TaskJsonResult) task.call()).getResult();
+        result.remove("taskType");
+        result.remove("taskDescription");
+        result.remove("start-time");
+        result.remove("end-time");
+        return result;
+    }
+
+    static JsonElement golden(String name) throws IOException {
+        Reader reader = new InputStreamReader(GoldenApk.class.getResourceAsStream("/golden/" + name + ".json"), StandardCharsets.UTF_8);
+        try {
+            return new JsonParser().parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Sorts every array, the order of files listed from a directory and of equal counts is not defined.
+     */
+    static JsonElement normalize(JsonElement element) {
+        if (element.isJsonArray()) {
+            List<JsonElement> items = new ArrayList<>();
+            for (JsonElement item : element.getAsJsonArray()) {
+                items.add(normalize(item));
+            }
+            Collections.sort(items, new Comparator<JsonElement>() {
+                @Override
+                public int compare(JsonElement left, JsonElement right) {
+                    return left.toString().compareTo(right.toString());
+                }
+            });
+            JsonArray array = new JsonArray();
+            for (JsonElement item : items) {
+                array.add(item);
+            }
+            return array;
+        } else if (element.isJsonObject()) {
+            JsonObject object = new JsonObject();
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                object.add(entry.getKey(), normalize(entry.getValue()));
+            }
+            return object;
+        }
+        return element;
+    }
+}
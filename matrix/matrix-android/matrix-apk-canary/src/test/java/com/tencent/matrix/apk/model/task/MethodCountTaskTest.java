@@ -0,0 +1,146 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.model.task;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.tencent.matrix.apk.model.job.JobConfig;
+import com.tencent.matrix.apk.model.job.JobConstants;
+import com.tencent.matrix.javalib.util.FileUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MethodCountTaskTest {
+
+    private static final int TOP = 3;
+
+    private File unzipDir;
+    private JobConfig config;
+
+    @Before
+    public void setUp() throws Exception {
+        unzipDir = File.createTempFile("countmethod", "");
+        assertTrue(unzipDir.delete() && unzipDir.mkdir());
+        config = GoldenApk.unzip(unzipDir);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDir(unzipDir);
+    }
+
+    @Test
+    public void groupByPackage() throws Exception {
+        JsonObject result = GoldenApk.run(new MethodCountTask(config, group(JobConstants.GROUP_PACKAGE)));
+        assertEquals(GoldenApk.normalize(GoldenApk.golden("countMethod-package")), GoldenApk.normalize(result));
+        assertRanked(result, "internal-packages", "external-packages");
+    }
+
+    @Test
+    public void groupByClass() throws Exception {
+        JsonObject result = GoldenApk.run(new MethodCountTask(config, group(JobConstants.GROUP_CLASS)));
+        assertEquals(GoldenApk.normalize(GoldenApk.golden("countMethod-class")), GoldenApk.normalize(result));
+        assertRanked(result, "internal-classes", "external-classes");
+    }
+
+    @Test
+    public void topOfPackages() throws Exception {
+        assertTop(JobConstants.GROUP_PACKAGE, "internal-packages", "external-packages");
+    }
+
+    @Test
+    public void topOfClasses() throws Exception {
+        assertTop(JobConstants.GROUP_CLASS, "internal-classes", "external-classes");
+    }
+
+    @Test
+    public void countClassByPackage() throws Exception {
+        JsonObject result = GoldenApk.run(new CountClassTask(config, group(JobConstants.GROUP_PACKAGE)));
+        assertEquals(GoldenApk.normalize(GoldenApk.golden("countClass-package")), GoldenApk.normalize(result));
+    }
+
+    private static Map<String, String> group(String group) {
+        Map<String, String> params = new HashMap<>();
+        params.put(JobConstants.PARAM_GROUP, group);
+        return params;
+    }
+
+    /*
+     *  '--top' keeps the head of every ranked list, the totals still count everything
+     */
+    private void assertTop(String group, String... lists) throws Exception {
+        JsonObject golden = GoldenApk.golden("countMethod-" + group).getAsJsonObject();
+        Map<String, String> params = group(group);
+        params.put(JobConstants.PARAM_TOP, String.valueOf(TOP));
+        JsonObject result = GoldenApk.run(new MethodCountTask(config, params));
+        assertRanked(result, lists);
+
+        Map<String, JsonObject> goldenDexes = new HashMap<>();
+        for (JsonElement dex : golden.getAsJsonArray("dex-files")) {
+            goldenDexes.put(dex.getAsJsonObject().get("dex-file").getAsString(), dex.getAsJsonObject());
+        }
+        JsonArray dexes = result.getAsJsonArray("dex-files");
+        assertEquals(goldenDexes.size(), dexes.size());
+        for (JsonElement element : dexes) {
+            JsonObject dex = element.getAsJsonObject();
+            JsonObject goldenDex = goldenDexes.get(dex.get("dex-file").getAsString());
+            for (Map.Entry<String, JsonElement> entry : goldenDex.entrySet()) {
+                if (!entry.getValue().isJsonArray()) {
+                    assertEquals(entry.getKey(), entry.getValue(), dex.get(entry.getKey()));
+                }
+            }
+            for (String list : lists) {
+                JsonArray top = dex.getAsJsonArray(list);
+                JsonArray all = goldenDex.getAsJsonArray(list);
+                assertEquals(list, Math.min(TOP, all.size()), top.size());
+                for (int i = 0; i < top.size(); i++) {
+                    // equal counts may be ranked either way
+                    assertEquals(list, methods(all.get(i)), methods(top.get(i)));
+                    assertTrue(list, all.contains(top.get(i)));
+                }
+            }
+        }
+    }
+
+    private static void assertRanked(JsonObject result, String... lists) {
+        for (JsonElement dex : result.getAsJsonArray("dex-files")) {
+            for (String list : lists) {
+                int last = Integer.MAX_VALUE;
+                for (JsonElement item : dex.getAsJsonObject().getAsJsonArray(list)) {
+                    assertTrue(list, methods(item) <= last);
+                    last = methods(item);
+                }
+            }
+        }
+    }
+
+    private static int methods(JsonElement item) {
+        return item.getAsJsonObject().get("methods").getAsInt();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MultiSTLCheckTaskTest {
+
+    @Test
+    public void stdSymbols() {
+        // std::vector<int>::push_back, gnustl / libstdc++
+        assertTrue(MultiSTLCheckTask.isStdSymbol("_ZNSt6vectorIiSaIiEE9push_backERKi"));
+        // std::__1::basic_string<char>::find(char const*, unsigned long) const, libc++
+        assertTrue(MultiSTLCheckTask.isStdSymbol("_ZNKSt3__112basic_stringIcNS_11char_traitsIcEENS_9allocatorIcEEE4findEPKcm"));
+        // std::string::_Rep::_M_destroy, the std:: abbreviations
+        assertTrue(MultiSTLCheckTask.isStdSymbol("_ZNSs4_Rep10_M_destroyERKSaIcE"));
+        assertTrue(MultiSTLCheckTask.isStdSymbol("_ZNSi4readEPci"));
+        assertTrue(MultiSTLCheckTask.isStdSymbol("_ZNSo5flushEv"));
+        assertTrue(MultiSTLCheckTask.isStdSymbol("_ZNSd4swapERSd"));
+        assertTrue(MultiSTLCheckTask.isStdSymbol("_ZSt9terminatev"));
+    }
+
+    @Test
+    public void otherSymbols() {
+        assertFalse(MultiSTLCheckTask.isStdSymbol("plain_global"));
+        assertFalse(MultiSTLCheckTask.isStdSymbol("JNI_OnLoad"));
+        // foo::bar(), not in std
+        assertFalse(MultiSTLCheckTask.isStdSymbol("_ZN3foo3barEv"));
+        // a function taking a std::string is not itself in std
+        assertFalse(MultiSTLCheckTask.isStdSymbol("_Z3fooRKSs"));
+        // std::allocator is a substitution, not a definition
+        assertFalse(MultiSTLCheckTask.isStdSymbol("_ZN3fooSa"));
+        assertFalse(MultiSTLCheckTask.isStdSymbol("_Z"));
+        assertFalse(MultiSTLCheckTask.isStdSymbol("_ZN"));
+        assertFalse(MultiSTLCheckTask.isStdSymbol(""));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.tencent.matrix.apk.model.job.JobConfig;
+import com.tencent.matrix.apk.model.job.JobConstants;
+import com.tencent.matrix.javalib.util.FileUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShowFileSizeTaskTest {
+
+    private File unzipDir;
+
+    @Before
+    public void setUp() throws IOException {
+        unzipDir = File.createTempFile("filesize", "");
+        assertTrue(unzipDir.delete() && unzipDir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDir(unzipDir);
+    }
+
+    /*
+     *  the central directory and the sizes recorded by the unzip task give the same files and directories,
+     *  an entry the unzip task skipped is left out of both
+     */
+    @Test
+    public void centralDirectoryMatchesUnzippedEntries() throws Exception {
+        JobConfig config = unzipSample();
+        config.getEntrySizeMap().remove("res/raw/skipped.ogg");
+        config.getEntryNameMap().remove("res/raw/skipped.ogg");
+        assertSameResult(config, params(null, null));
+        assertSameResult(config, params("2", null));
+        assertSameResult(config, params("2", "png,ogg"));
+    }
+
+    /*
+     *  the directories add up every file of the suffixes, those under the min size included
+     */
+    @Test
+    public void dirsIgnoreTheMinSize() throws Exception {
+        JobConfig config = unzipSample();
+        JsonObject result = GoldenApk.run(new ShowFileSizeTask(config, params("2", "png")));
+        assertEquals(1, result.getAsJsonArray("files").size());
+        assertEquals(3000 + 1000, dirSize(result, "res/drawable"));
+        assertEquals(3000 + 1000, dirSize(result, "res"));
+        assertEquals(-1, dirSize(result, "res/raw"));
+    }
+
+    private static void assertSameResult(JobConfig config, Map<String, String> params) throws Exception {
+        JsonObject expected = GoldenApk.run(new ShowFileSizeTask(withoutApk(config), params));
+        JsonObject result = GoldenApk.run(new ShowFileSizeTask(config, params));
+        assertEquals(params.toString(), expected, result);
+        assertEquals(params.toString(), -1, result.toString().indexOf("skipped"));
+    }
+
+    private JobConfig unzipSample() throws IOException {
+        File apkFile = new File(unzipDir, "sample.apk");
+        ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(apkFile));
+        try {
+            putEntry(zipOutputStream, "res/drawable/a.png", 3000);
+            putEntry(zipOutputStream, "res/drawable/b.png", 1000);
+            putEntry(zipOutputStream, "res/raw/c.ogg", 2500);
+            putEntry(zipOutputStream, "res/raw/skipped.ogg", 5000);
+            putEntry(zipOutputStream, "res/layout/e.xml", 4000);
+            putEntry(zipOutputStream, "classes.dex", 6000);
+        } finally {
+            zipOutputStream.close();
+        }
+        return GoldenApk.unzip(apkFile, new File(unzipDir, "out"));
+    }
+
+    private static JobConfig withoutApk(JobConfig config) {
+        JobConfig unzipOnly = new JobConfig();
+        unzipOnly.setUnzipPath(config.getUnzipPath());
+        unzipOnly.setEntrySizeMap(config.getEntrySizeMap());
+        unzipOnly.setEntryNameMap(config.getEntryNameMap());
+        return unzipOnly;
+    }
+
+    private static Map<String, String> params(String minSizeInKb, String suffix) {
+        Map<String, String> params = new HashMap<>();
+        if (minSizeInKb != null) {
+            params.put(JobConstants.PARAM_MIN_SIZE_IN_KB, minSizeInKb);
+        }
+        if (suffix != null) {
+            params.put(JobConstants.PARAM_SUFFIX, suffix);
+        }
+        return params;
+    }
+
+    private static long dirSize(JsonObject result, String dirName) {
+        for (JsonElement dir : result.getAsJsonArray("dirs")) {
+            if (dirName.equals(dir.getAsJsonObject().get("dir-name").getAsString())) {
+                return dir.getAsJsonObject().get("total-size").getAsLong();
+            }
+        }
+        return -1;
+    }
+
+    private static void putEntry(ZipOutputStream zipOutputStream, String name, int size) throws IOException {
+        zipOutputStream.putNextEntry(new ZipEntry(name));
+        zipOutputStream.write(new byte[size]);
+        zipOutputStream.closeEntry();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.apk.model.task;
+
+import com.google.gson.JsonObject;
+import com.tencent.matrix.apk.model.job.JobConfig;
+import com.tencent.matrix.javalib.util.FileUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UncompressedFileTaskTest {
+
+    private File unzipDir;
+
+    @Before
+    public void setUp() throws IOException {
+        unzipDir = File.createTempFile("uncompressed", "");
+        assertTrue(unzipDir.delete() && unzipDir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDir(unzipDir);
+    }
+
+    /*
+     *  an apk whose central directory can not be read falls back to the sizes recorded by the unzip task
+     */
+    @Test
+    public void unreadableCentralDirectory() throws Exception {
+        File apkFile = new File(unzipDir, "sample.apk");
+        ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(apkFile));
+        try {
+            putEntry(zipOutputStream, "res/drawable/a.png", 3000, ZipEntry.STORED);
+            putEntry(zipOutputStream, "res/drawable/b.png", 1000, ZipEntry.STORED);
+            putEntry(zipOutputStream, "res/raw/c.ogg", 2000, ZipEntry.STORED);
+            putEntry(zipOutputStream, "res/raw/d.ogg", 2000, ZipEntry.DEFLATED);
+            putEntry(zipOutputStream, "res/layout/e.xml", 4000, ZipEntry.DEFLATED);
+        } finally {
+            zipOutputStream.close();
+        }
+        File outDir = new File(unzipDir, "out");
+        JobConfig config = GoldenApk.unzip(apkFile, outDir);
+        JsonObject expected = GoldenApk.run(new UncompressedFileTask(config, new HashMap<String, String>()));
+        assertEquals(1, expected.getAsJsonArray("files").size());
+        assertEquals(3, expected.getAsJsonArray("suffixes").size());
+
+        File brokenApk = new File(unzipDir, "broken.apk");
+        OutputStream outputStream = new FileOutputStream(brokenApk);
+        try {
+            outputStream.write("not a zip file".getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+        config = GoldenApk.unzip(apkFile, outDir);
+        config.setApkPath(brokenApk.getAbsolutePath());
+        JsonObject result = GoldenApk.run(new UncompressedFileTask(config, new HashMap<String, String>()));
+        assertFalse(result.has("suffixes"));
+        assertEquals(expected.get("files"), result.get("files"));
+    }
+
+    private static void putEntry(ZipOutputStream zipOutputStream, String name, int size, int method) throws IOException {
+        byte[] data = new byte[size];
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setSize(size);
+            entry.setCompressedSize(size);
+            entry.setCrc(crc.getValue());
+        }
+        zipOutputStream.putNextEntry(entry);
+        zipOutputStream.write(data);
+        zipOutputStream.closeEntry();
+    }
+}
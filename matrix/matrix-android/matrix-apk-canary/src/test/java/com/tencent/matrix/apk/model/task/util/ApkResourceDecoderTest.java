@@ -0,0 +1,140 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task.util;
+
+import com.tencent.matrix.javalib.util.FileUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes the resource references of 'resref/sample.apk' with the apktool and with {@link BinaryResourceRefDecoder}.
+ *
+ * The apk was written by the ApkSynthesizer of the benchmarks with 12 resources: drawables d0-d3, layouts l0-l3
+ * and strings s0-s3. Layout i refers to drawable i and string i for i below 2, the manifest refers to d0 and s0.
+ */
+public class ApkResourceDecoderTest {
+
+    private File unzipDir;
+
+    @Before
+    public void setUp() throws Exception {
+        unzipDir = File.createTempFile("resref", "");
+        assertTrue(unzipDir.delete() && unzipDir.mkdir());
+        unzip(new File(ApkResourceDecoderTest.class.getResource("/resref/sample.apk").toURI()), unzipDir);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDir(unzipDir);
+    }
+
+    @Test
+    public void binaryDecoderFindsTheReferences() throws Exception {
+        Map<String, Set<String>> nonValueReferences = new HashMap<>();
+        Set<String> valueReferences = new HashSet<>();
+        decode(false, null, nonValueReferences, valueReferences);
+        Map<String, Set<String>> expected = new HashMap<>();
+        expected.put("R.layout.l0", references("R.drawable.d0", "R.string.s0"));
+        expected.put("R.layout.l1", references("R.drawable.d1", "R.string.s1"));
+        expected.put("R.layout.l2", Collections.<String>emptySet());
+        expected.put("R.layout.l3", Collections.<String>emptySet());
+        assertEquals(expected, nonValueReferences);
+        assertEquals(references("R.drawable.d0", "R.string.s0"), valueReferences);
+    }
+
+    @Test
+    public void binaryDecoderMatchesApktool() throws Exception {
+        Map<String, Set<String>> apktoolNonValues = new HashMap<>();
+        Set<String> apktoolValues = new HashSet<>();
+        decode(true, null, apktoolNonValues, apktoolValues);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Map<String, Set<String>> binaryNonValues = new HashMap<>();
+            Set<String> binaryValues = new HashSet<>();
+            decode(false, executor, binaryNonValues, binaryValues);
+            assertEquals(apktoolNonValues, binaryNonValues);
+            assertEquals(apktoolValues, binaryValues);
+
+            Map<String, Set<String>> checkedNonValues = new HashMap<>();
+            Set<String> checkedValues = new HashSet<>();
+            assertTrue(ApkResourceDecoder.checkResourcesRef(new File(unzipDir, ApkConstants.MANIFEST_FILE_NAME), new File(unzipDir, ApkConstants.ARSC_FILE_NAME),
+                    new File(unzipDir, ApkConstants.RESOURCE_DIR_NAME), checkedNonValues, checkedValues, executor));
+            assertEquals(apktoolNonValues, checkedNonValues);
+            assertEquals(apktoolValues, checkedValues);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void decode(boolean useApktool, ExecutorService executor, Map<String, Set<String>> nonValueReferences, Set<String> valueReferences) throws Exception {
+        ApkResourceDecoder.decodeResourcesRef(new File(unzipDir, ApkConstants.MANIFEST_FILE_NAME), new File(unzipDir, ApkConstants.ARSC_FILE_NAME),
+                new File(unzipDir, ApkConstants.RESOURCE_DIR_NAME), nonValueReferences, valueReferences, useApktool, executor);
+    }
+
+    private static Set<String> references(String... references) {
+        return new HashSet<>(Arrays.asList(references));
+    }
+
+    private static void unzip(File apkFile, File unzipDir) throws IOException {
+        ZipFile zipFile = new ZipFile(apkFile);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                File file = new File(unzipDir, entry.getName());
+                file.getParentFile().mkdirs();
+                InputStream inputStream = zipFile.getInputStream(entry);
+                OutputStream outputStream = new FileOutputStream(file);
+                try {
+                    byte[] buffer = new byte[8192];
+                    int len;
+                    while ((len = inputStream.read(buffer)) > 0) {
+                        outputStream.write(buffer, 0, len);
+                    }
+                } finally {
+                    outputStream.close();
+                    inputStream.close();
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+}
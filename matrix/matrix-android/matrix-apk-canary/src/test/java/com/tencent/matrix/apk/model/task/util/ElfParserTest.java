@@ -0,0 +1,212 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.apk.model.task.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads the libraries under 'elf/', built by gcc from one C file for x86 and x86_64 and then stripped:
+ *
+ * <pre>
+ * int plain_global(int x) { return x + 1; }
+ * static int local_helper(int x) { return x * 2; }
+ * int stl_push_back(int x) __asm__("_ZNSt6vectorIiSaIiEE9push_backERKi");
+ * int stl_push_back(int x) { return local_helper(x); }
+ * int data_value = 3;
+ * </pre>
+ *
+ * with 'gcc -m64|-m32 -shared -nostdlib -fPIC -g' and 'strip'.
+ */
+public class ElfParserTest {
+
+    private static final String STL_SYMBOL = "_ZNSt6vectorIiSaIiEE9push_backERKi";
+
+    private static File fixture(String name) throws URISyntaxException {
+        return new File(ElfParserTest.class.getResource("/elf/" + name).toURI());
+    }
+
+    @Test
+    public void unstrippedLibraries() throws Exception {
+        for (String name : new String[] {"libsample32.so", "libsample64.so"}) {
+            ElfParser elfParser = ElfParser.parse(fixture(name));
+            assertEquals(name, name.contains("64"), elfParser.is64Bit());
+            assertTrue(name, elfParser.hasSymbolTable());
+            assertTrue(name, elfParser.hasDebugInfo());
+            assertFalse(name, elfParser.isStripped());
+        }
+    }
+
+    @Test
+    public void strippedLibraries() throws Exception {
+        for (String name : new String[] {"libsample32_stripped.so", "libsample64_stripped.so"}) {
+            ElfParser elfParser = ElfParser.parse(fixture(name));
+            assertEquals(name, name.contains("64"), elfParser.is64Bit());
+            assertFalse(name, elfParser.hasSymbolTable());
+            assertFalse(name, elfParser.hasDebugInfo());
+            assertTrue(name, elfParser.isStripped());
+            assertTrue(name, elfParser.getSymbols().isEmpty());
+        }
+    }
+
+    @Test
+    public void globalTextOfSymbolTable() throws Exception {
+        for (String name : new String[] {"libsample32.so", "libsample64.so"}) {
+            ElfParser elfParser = ElfParser.parse(fixture(name));
+            Map<String, Boolean> globalText = globalText(elfParser, elfParser.getSymbols());
+            assertEquals(name, Boolean.TRUE, globalText.get("plain_global"));
+            assertEquals(name, Boolean.TRUE, globalText.get(STL_SYMBOL));
+            assertEquals(name, Boolean.FALSE, globalText.get("local_helper"));
+            assertEquals(name, Boolean.FALSE, globalText.get("data_value"));
+        }
+    }
+
+    @Test
+    public void globalTextOfDynamicSymbols() throws Exception {
+        for (String name : new String[] {"libsample32.so", "libsample64.so", "libsample32_stripped.so", "libsample64_stripped.so"}) {
+            ElfParser elfParser = ElfParser.parse(fixture(name));
+            Map<String, Boolean> globalText = globalText(elfParser, elfParser.getDynamicSymbols());
+            assertEquals(name, Boolean.TRUE, globalText.get("plain_global"));
+            assertEquals(name, Boolean.TRUE, globalText.get(STL_SYMBOL));
+            assertEquals(name, Boolean.FALSE, globalText.get("data_value"));
+            assertFalse(name, globalText.containsKey("local_helper"));
+        }
+    }
+
+    @Test
+    public void parseByteBuffer() throws Exception {
+        File file = fixture("libsample32.so");
+        ElfParser elfParser = ElfParser.parse(ByteBuffer.wrap(readFile(file)));
+        assertFalse(elfParser.is64Bit());
+        assertNotNull(elfParser.getSection(".symtab"));
+        assertEquals(ElfParser.parse(file).getSymbols().size(), elfParser.getSymbols().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void notAnElfFile() throws Exception {
+        ElfParser.parse(ByteBuffer.wrap("not an elf file".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedElfFile() throws Exception {
+        byte[] data = readFile(fixture("libsample64.so"));
+        ByteBuffer truncated = ByteBuffer.wrap(data, 0, data.length / 2).slice();
+        ElfParser.parse(truncated).getSymbols();
+    }
+
+    /*
+     *  'nm' prints "no symbols" for a library that keeps only its debug sections
+     */
+    @Test
+    public void debugSectionsOnlyAreStripped() throws Exception {
+        for (String name : new String[] {"libsample32.so", "libsample64.so"}) {
+            ByteBuffer data = ByteBuffer.wrap(readFile(fixture(name))).order(ByteOrder.LITTLE_ENDIAN);
+            List<ElfParser.Section> sections = ElfParser.parse(data).getSections();
+            boolean is64Bit = name.contains("64");
+            long shoff = is64Bit ? data.getLong(0x28) : data.getInt(0x20);
+            int shentsize = is64Bit ? 0x40 : 0x28;
+            for (int i = 0; i < sections.size(); i++) {
+                if (sections.get(i).type == ElfParser.SHT_SYMTAB) {
+                    data.putInt((int) (shoff + i * shentsize + 0x4), 1);      // SHT_PROGBITS
+                }
+            }
+            ElfParser elfParser = ElfParser.parse(data);
+            assertFalse(name, elfParser.hasSymbolTable());
+            assertTrue(name, elfParser.hasDebugInfo());
+            assertTrue(name, elfParser.isStripped());
+        }
+    }
+
+    @Test
+    public void badSectionHeaderSize() throws Exception {
+        ByteBuffer data = ByteBuffer.wrap(readFile(fixture("libsample64.so"))).order(ByteOrder.LITTLE_ENDIAN);
+        data.putShort(0x3A, (short) 0x28);
+        assertParseFails(data);
+        data = ByteBuffer.wrap(readFile(fixture("libsample32.so"))).order(ByteOrder.LITTLE_ENDIAN);
+        data.putShort(0x2E, (short) 0);
+        assertParseFails(data);
+    }
+
+    /*
+     *  shnum 0 takes the count from the sh_size of section 0, it must not size an array before it is checked
+     */
+    @Test
+    public void sectionCountOutOfRange() throws Exception {
+        ByteBuffer data = ByteBuffer.wrap(readFile(fixture("libsample64.so"))).order(ByteOrder.LITTLE_ENDIAN);
+        long shoff = data.getLong(0x28);
+        data.putShort(0x3C, (short) 0);
+        data.putLong((int) shoff + 0x20, 0x7fffffffL);
+        assertParseFails(data);
+        data.putLong((int) shoff + 0x20, -1L);
+        assertParseFails(data);
+
+        data = ByteBuffer.wrap(readFile(fixture("libsample32.so"))).order(ByteOrder.LITTLE_ENDIAN);
+        int shoff32 = data.getInt(0x20);
+        data.putShort(0x30, (short) 0);
+        data.putInt(shoff32 + 0x14, 0x80000000);
+        assertParseFails(data);
+
+        data = ByteBuffer.wrap(readFile(fixture("libsample32.so"))).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(0x20, data.limit() - 0x10);
+        assertParseFails(data);
+    }
+
+    private static void assertParseFails(ByteBuffer data) {
+        try {
+            ElfParser.parse(data);
+            fail("corrupt section header table accepted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static Map<String, Boolean> globalText(ElfParser elfParser, List<ElfParser.Symbol> symbols) {
+        Map<String, Boolean> result = new HashMap<>();
+        for (ElfParser.Symbol symbol : symbols) {
+            if (symbol.name != null && !symbol.name.isEmpty()) {
+                result.put(symbol.name, elfParser.isGlobalText(symbol));
+            }
+        }
+        return result;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+}
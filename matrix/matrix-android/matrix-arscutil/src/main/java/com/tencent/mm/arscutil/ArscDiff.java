@@ -0,0 +1,430 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.mm.arscutil;
+
+import com.tencent.mm.arscutil.data.ArscConstants;
+import com.tencent.mm.arscutil.data.ResChunk;
+import com.tencent.mm.arscutil.data.ResEntry;
+import com.tencent.mm.arscutil.data.ResPackage;
+import com.tencent.mm.arscutil.data.ResStringBlock;
+import com.tencent.mm.arscutil.data.ResTable;
+import com.tencent.mm.arscutil.data.ResType;
+import com.tencent.mm.arscutil.data.ResTypeSpec;
+import com.tencent.mm.arscutil.io.ArscReader;
+import com.tencent.mm.arscutil.io.ArscWriter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares two resource tables and attributes the growth to packages and types.
+ *
+ * Packages are matched by id, types by name and entries by key name, so a release which shifted
+ * the resource ids is still compared entry by entry. Every table is walked once, the cost is linear
+ * in the number of entries. The chunk sizes are measured from the content, neither table is modified.
+ */
+
+public class ArscDiff {
+
+    private final TableStat oldTable;
+    private final TableStat newTable;
+    private final List<PackageDiff> packages = new ArrayList<PackageDiff>();
+
+    private ArscDiff(TableStat oldTable, TableStat newTable) {
+        this.oldTable = oldTable;
+        this.newTable = newTable;
+    }
+
+    public static ArscDiff diff(ResTable oldResTable, ResTable newResTable) {
+        ArscDiff arscDiff = new ArscDiff(new TableStat(oldResTable), new TableStat(newResTable));
+        for (PackageStat newPackage : arscDiff.newTable.packages.values()) {
+            arscDiff.packages.add(new PackageDiff(arscDiff.oldTable.packages.get(newPackage.id), newPackage));
+        }
+        for (PackageStat oldPackage : arscDiff.oldTable.packages.values()) {
+            if (!arscDiff.newTable.packages.containsKey(oldPackage.id)) {
+                arscDiff.packages.add(new PackageDiff(oldPackage, null));
+            }
+        }
+        return arscDiff;
+    }
+
+    public int getOldSize() {
+        return oldTable.size;
+    }
+
+    public int getNewSize() {
+        return newTable.size;
+    }
+
+    public PoolStat getOldGlobalPool() {
+        return oldTable.globalPool;
+    }
+
+    public PoolStat getNewGlobalPool() {
+        return newTable.globalPool;
+    }
+
+    public List<PackageDiff> getPackages() {
+        return packages;
+    }
+
+    /**
+     * @param maxNames how many added or removed entry names are listed per type, all of them if negative
+     */
+    public String format(int maxNames) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("resources.arsc %s%n", sizeDelta(getOldSize(), getNewSize())));
+        builder.append(String.format("global string pool %s%n", getOldGlobalPool().formatDelta(getNewGlobalPool())));
+        for (PackageDiff packageDiff : packages) {
+            builder.append(String.format("package 0x%02x %s %s%n", packageDiff.getId(), packageDiff.getName(), sizeDelta(packageDiff.getOldSize(), packageDiff.getNewSize())));
+            builder.append(String.format("  type string pool %s%n", packageDiff.getOldTypePool().formatDelta(packageDiff.getNewTypePool())));
+            builder.append(String.format("  key string pool %s%n", packageDiff.getOldKeyPool().formatDelta(packageDiff.getNewKeyPool())));
+            List<TypeDiff> types = new ArrayList<TypeDiff>(packageDiff.getTypes());
+            Collections.sort(types, new Comparator<TypeDiff>() {
+                @Override
+                public int compare(TypeDiff left, TypeDiff right) {
+                    return Integer.compare(right.getNewSize() - right.getOldSize(), left.getNewSize() - left.getOldSize());
+                }
+            });
+            for (TypeDiff typeDiff : types) {
+                builder.append(String.format("  type %s %s, entries %d -> %d (+%d -%d), configs %d -> %d (+%d -%d)%n", typeDiff.getName(),
+                        sizeDelta(typeDiff.getOldSize(), typeDiff.getNewSize()),
+                        typeDiff.getOldEntryCount(), typeDiff.getNewEntryCount(), typeDiff.getAddedEntries().size(), typeDiff.getRemovedEntries().size(),
+                        typeDiff.getOldConfigCount(), typeDiff.getNewConfigCount(), typeDiff.getAddedConfigCount(), typeDiff.getRemovedConfigCount()));
+                appendNames(builder, "+", typeDiff.getAddedEntries(), maxNames);
+                appendNames(builder, "-", typeDiff.getRemovedEntries(), maxNames);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void appendNames(StringBuilder builder, String sign, List<String> names, int maxNames) {
+        int count = maxNames < 0 ? names.size() : Math.min(maxNames, names.size());
+        for (int i = 0; i < count; i++) {
+            builder.append("    ").append(sign).append(' ').append(names.get(i)).append(String.format("%n"));
+        }
+        if (count < names.size()) {
+            builder.append(String.format("    ... %d more%n", names.size() - count));
+        }
+    }
+
+    private static String sizeDelta(int oldSize, int newSize) {
+        return String.format("%d -> %d bytes (%+d)", oldSize, newSize, newSize - oldSize);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: ArscDiff <old resources.arsc> <new resources.arsc> [max names per type]");
+            return;
+        }
+        ResTable oldResTable = new ArscReader(args[0]).readResourceTable();
+        ResTable newResTable = new ArscReader(args[1]).readResourceTable();
+        int maxNames = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        System.out.print(diff(oldResTable, newResTable).format(maxNames));
+    }
+
+    public static class PoolStat {
+
+        private final int stringCount;
+        private final int size;
+
+        PoolStat(ResStringBlock stringBlock) {
+            stringCount = stringBlock == null ? 0 : stringBlock.getStringCount();
+            size = stringBlock == null ? 0 : ArscWriter.measureChunkSize(stringBlock);
+        }
+
+        public int getStringCount() {
+            return stringCount;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        String formatDelta(PoolStat newPool) {
+            return String.format("%d -> %d strings, %s", stringCount, newPool.stringCount, sizeDelta(size, newPool.size));
+        }
+    }
+
+    public static class PackageDiff {
+
+        private static final PackageStat EMPTY = new PackageStat();
+
+        private final int id;
+        private final String name;
+        private final PackageStat oldPackage;
+        private final PackageStat newPackage;
+        private final List<TypeDiff> types = new ArrayList<TypeDiff>();
+
+        PackageDiff(PackageStat oldPackage, PackageStat newPackage) {
+            this.oldPackage = oldPackage == null ? EMPTY : oldPackage;
+            this.newPackage = newPackage == null ? EMPTY : newPackage;
+            PackageStat present = newPackage != null ? newPackage : oldPackage;
+            id = present.id;
+            name = present.name;
+            for (TypeStat newType : this.newPackage.types.values()) {
+                types.add(new TypeDiff(this.oldPackage.types.get(newType.name), newType));
+            }
+            for (TypeStat oldType : this.oldPackage.types.values()) {
+                if (!this.newPackage.types.containsKey(oldType.name)) {
+                    types.add(new TypeDiff(oldType, null));
+                }
+            }
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getOldSize() {
+            return oldPackage.size;
+        }
+
+        public int getNewSize() {
+            return newPackage.size;
+        }
+
+        public PoolStat getOldTypePool() {
+            return oldPackage.typePool;
+        }
+
+        public PoolStat getNewTypePool() {
+            return newPackage.typePool;
+        }
+
+        public PoolStat getOldKeyPool() {
+            return oldPackage.keyPool;
+        }
+
+        public PoolStat getNewKeyPool() {
+            return newPackage.keyPool;
+        }
+
+        public List<TypeDiff> getTypes() {
+            return types;
+        }
+    }
+
+    public static class TypeDiff {
+
+        private static final TypeStat EMPTY = new TypeStat("");
+
+        private final String name;
+        private final TypeStat oldType;
+        private final TypeStat newType;
+        private final List<String> addedEntries = new ArrayList<String>();
+        private final List<String> removedEntries = new ArrayList<String>();
+        private int addedConfigCount;
+        private int removedConfigCount;
+
+        TypeDiff(TypeStat oldType, TypeStat newType) {
+            this.oldType = oldType == null ? EMPTY : oldType;
+            this.newType = newType == null ? EMPTY : newType;
+            name = newType != null ? newType.name : oldType.name;
+            for (String entry : this.newType.entries) {
+                if (!this.oldType.entries.contains(entry)) {
+                    addedEntries.add(entry);
+                }
+            }
+            for (String entry : this.oldType.entries) {
+                if (!this.newType.entries.contains(entry)) {
+                    removedEntries.add(entry);
+                }
+            }
+            for (ByteBuffer config : this.newType.configs) {
+                if (!this.oldType.configs.contains(config)) {
+                    addedConfigCount++;
+                }
+            }
+            for (ByteBuffer config : this.oldType.configs) {
+                if (!this.newType.configs.contains(config)) {
+                    removedConfigCount++;
+                }
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return bytes of the spec and every config chunk of the type
+         */
+        public int getOldSize() {
+            return oldType.size;
+        }
+
+        public int getNewSize() {
+            return newType.size;
+        }
+
+        public int getOldEntryCount() {
+            return oldType.entries.size();
+        }
+
+        public int getNewEntryCount() {
+            return newType.entries.size();
+        }
+
+        public int getOldConfigCount() {
+            return oldType.configCount;
+        }
+
+        public int getNewConfigCount() {
+            return newType.configCount;
+        }
+
+        public int getAddedConfigCount() {
+            return addedConfigCount;
+        }
+
+        public int getRemovedConfigCount() {
+            return removedConfigCount;
+        }
+
+        public List<String> getAddedEntries() {
+            return addedEntries;
+        }
+
+        public List<String> getRemovedEntries() {
+            return removedEntries;
+        }
+    }
+
+    private static final class TableStat {
+
+        final int size;
+        final PoolStat globalPool;
+        final Map<Integer, PackageStat> packages = new LinkedHashMap<Integer, PackageStat>();
+
+        TableStat(ResTable resTable) {
+            size = ArscWriter.measureChunkSize(resTable);
+            globalPool = new PoolStat(resTable.getGlobalStringPool());
+            if (resTable.getPackages() != null) {
+                for (ResPackage resPackage : resTable.getPackages()) {
+                    packages.put(resPackage.getId(), new PackageStat(resPackage));
+                }
+            }
+        }
+    }
+
+    private static final class PackageStat {
+
+        final int id;
+        final String name;
+        final int size;
+        final PoolStat typePool;
+        final PoolStat keyPool;
+        final Map<String, TypeStat> types = new LinkedHashMap<String, TypeStat>();
+
+        PackageStat() {
+            id = 0;
+            name = "";
+            size = 0;
+            typePool = new PoolStat(null);
+            keyPool = new PoolStat(null);
+        }
+
+        PackageStat(ResPackage resPackage) {
+            id = resPackage.getId();
+            name = ArscUtil.toUTF16String(resPackage.getName());
+            size = ArscWriter.measureChunkSize(resPackage);
+            typePool = new PoolStat(resPackage.getResTypePool());
+            keyPool = new PoolStat(resPackage.getResNamePool());
+            ResStringBlock typeNames = resPackage.getResTypePool();
+            ResStringBlock keyNames = resPackage.getResNamePool();
+            String[] keyCache = new String[keyNames == null ? 0 : keyNames.getStringCount()];
+            Map<Integer, TypeStat> typeById = new LinkedHashMap<Integer, TypeStat>();
+            if (resPackage.getResTypeArray() == null) {
+                return;
+            }
+            for (ResChunk resChunk : resPackage.getResTypeArray()) {
+                int typeId;
+                int chunkSize;
+                if (resChunk.getType() == ArscConstants.RES_TABLE_TYPE_SPEC_TYPE) {
+                    typeId = ((ResTypeSpec) resChunk).getId() & 0xFF;
+                    chunkSize = ArscWriter.measureChunkSize((ResTypeSpec) resChunk);
+                } else if (resChunk.getType() == ArscConstants.RES_TABLE_TYPE_TYPE) {
+                    typeId = ((ResType) resChunk).getId() & 0xFF;
+                    chunkSize = ArscWriter.measureChunkSize((ResType) resChunk);
+                } else {
+                    continue;
+                }
+                if (chunkSize <= 0) {
+                    continue;
+                }
+                TypeStat typeStat = typeById.get(typeId);
+                if (typeStat == null) {
+                    String typeName = typeNames != null && typeId - 1 < typeNames.getStringCount() ? typeNames.getString(typeId - 1) : String.valueOf(typeId);
+                    typeStat = new TypeStat(typeName);
+                    typeById.put(typeId, typeStat);
+                    types.put(typeName, typeStat);
+                }
+                typeStat.size += chunkSize;
+                if (resChunk.getType() != ArscConstants.RES_TABLE_TYPE_TYPE) {
+                    continue;
+                }
+                ResType resType = (ResType) resChunk;
+                typeStat.configCount++;
+                byte[] config = resType.getResConfigFlags() == null ? null : resType.getResConfigFlags().getContent();
+                typeStat.configs.add(ByteBuffer.wrap(config == null ? new byte[0] : config));
+                if (resType.getEntryTable() == null) {
+                    continue;
+                }
+                for (ResEntry entry : resType.getEntryTable()) {
+                    if (entry == null) {
+                        continue;
+                    }
+                    int keyIndex = entry.getStringPoolIndex();
+                    if (keyIndex < 0 || keyIndex >= keyCache.length) {
+                        continue;
+                    }
+                    if (keyCache[keyIndex] == null) {
+                        keyCache[keyIndex] = keyNames.getString(keyIndex);
+                    }
+                    typeStat.entries.add(keyCache[keyIndex]);
+                }
+            }
+        }
+    }
+
+    private static final class TypeStat {
+
+        final String name;
+        int size;
+        int configCount;
+        final Set<ByteBuffer> configs = new HashSet<ByteBuffer>();
+        final Set<String> entries = new LinkedHashSet<String>();
+
+        TypeStat(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -19,9 +19,13 @@ package com.tencent.mm.arscutil;
 import com.tencent.matrix.javalib.util.Log;
 import com.tencent.mm.arscutil.data.ArscConstants;
 import com.tencent.mm.arscutil.data.ResChunk;
+import com.tencent.mm.arscutil.data.ResEntry;
+import com.tencent.mm.arscutil.data.ResMapValue;
 import com.tencent.mm.arscutil.data.ResPackage;
+import com.tencent.mm.arscutil.data.ResStringBlock;
 import com.tencent.mm.arscutil.data.ResTable;
 import com.tencent.mm.arscutil.data.ResType;
+import com.tencent.mm.arscutil.data.ResValue;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -30,7 +34,12 @@ import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by jinqiuchen on 18/7/29.
@@ -124,17 +133,179 @@ public class ArscUtil {
     public static void removeResource(ResTable resTable, int resourceId, String resourceName) throws IOException {
         ResPackage resPackage = findResPackage(resTable, getPackageId(resourceId));
         if (resPackage != null) {
-            List<ResType> resTypeList = findResType(resPackage, resourceId);
-            for (ResType resType : resTypeList) {
-                int entryId = getResourceEntryId(resourceId);
-                Log.i(TAG, "try to remove %s (%H), find resource %s", resourceName, resourceId, ArscUtil.resolveStringPoolEntry(resPackage.getResNamePool().getStrings().get(resType.getEntryTable().get(entryId).getStringPoolIndex()).array(), resPackage.getResNamePool().getCharSet()));
-                resType.getEntryTable().set(entryId, null);
-                resType.getEntryOffsets().set(entryId, ArscConstants.NO_ENTRY_INDEX);
-                resType.refresh();
+            removeResource(resTable, resPackage, findResType(resPackage, resourceId), resourceId, resourceName);
+        }
+    }
+
+    /**
+     * Same as {@link #removeResource(ResTable, int, String)}, but looks the package and types up in the index.
+     */
+    public static void removeResource(ResTableIndex index, int resourceId, String resourceName) throws IOException {
+        ResPackage resPackage = index.getPackage(getPackageId(resourceId));
+        if (resPackage != null) {
+            removeResource(index.getResTable(), resPackage, index.findResType(resourceId), resourceId, resourceName);
+        }
+    }
+
+    private static void removeResource(ResTable resTable, ResPackage resPackage, List<ResType> resTypeList, int resourceId, String resourceName) throws IOException {
+        for (ResType resType : resTypeList) {
+            int entryId = getResourceEntryId(resourceId);
+            Log.i(TAG, "try to remove %s (%H), find resource %s", resourceName, resourceId, ArscUtil.resolveStringPoolEntry(resPackage.getResNamePool().getStrings().get(resType.getEntryTable().get(entryId).getStringPoolIndex()).array(), resPackage.getResNamePool().getCharSet()));
+            resType.getEntryTable().set(entryId, null);
+            resType.getEntryOffsets().set(entryId, ArscConstants.NO_ENTRY_INDEX);
+            resType.refresh();
+        }
+        resPackage.refresh();
+        resTable.refresh();
+    }
+
+    /**
+     * Removes all the resources in one pass, the result is the same as calling
+     * {@link #removeResource(ResTable, int, String)} for each of them.
+     *
+     * Entries are only marked while walking the types, every touched ResType, ResPackage and the
+     * ResTable are refreshed once at the end instead of once per resource.
+     */
+    public static void removeResources(ResTable resTable, Collection<Integer> resourceIds) throws IOException {
+        Map<Integer, Map<Integer, Set<Integer>>> packageMap = new HashMap<Integer, Map<Integer, Set<Integer>>>();
+        for (int resourceId : resourceIds) {
+            Map<Integer, Set<Integer>> typeMap = packageMap.get(getPackageId(resourceId));
+            if (typeMap == null) {
+                typeMap = new HashMap<Integer, Set<Integer>>();
+                packageMap.put(getPackageId(resourceId), typeMap);
+            }
+            Set<Integer> entryIds = typeMap.get(getResourceTypeId(resourceId));
+            if (entryIds == null) {
+                entryIds = new HashSet<Integer>();
+                typeMap.put(getResourceTypeId(resourceId), entryIds);
+            }
+            entryIds.add(getResourceEntryId(resourceId));
+        }
+        boolean packageFound = false;
+        for (Map.Entry<Integer, Map<Integer, Set<Integer>>> packageEntry : packageMap.entrySet()) {
+            ResPackage resPackage = findResPackage(resTable, packageEntry.getKey());
+            if (resPackage == null) {
+                continue;
+            }
+            packageFound = true;
+            List<ResChunk> resTypeArray = resPackage.getResTypeArray();
+            if (resTypeArray != null) {
+                for (ResChunk resChunk : resTypeArray) {
+                    if (resChunk.getType() != ArscConstants.RES_TABLE_TYPE_TYPE) {
+                        continue;
+                    }
+                    ResType resType = (ResType) resChunk;
+                    Set<Integer> entryIds = packageEntry.getValue().get(resType.getId() & 0xFF);
+                    if (entryIds == null) {
+                        continue;
+                    }
+                    boolean removed = false;
+                    for (int entryId : entryIds) {
+                        if (entryId < resType.getEntryCount() && resType.getEntryOffsets().get(entryId) != ArscConstants.NO_ENTRY_INDEX) {
+                            Log.i(TAG, "try to remove %H, find resource %s", ((packageEntry.getKey() & 0xFF) << 24) | ((resType.getId() & 0xFF) << 16) | entryId, ArscUtil.resolveStringPoolEntry(resPackage.getResNamePool().getStrings().get(resType.getEntryTable().get(entryId).getStringPoolIndex()).array(), resPackage.getResNamePool().getCharSet()));
+                            resType.getEntryTable().set(entryId, null);
+                            resType.getEntryOffsets().set(entryId, ArscConstants.NO_ENTRY_INDEX);
+                            removed = true;
+                        }
+                    }
+                    if (removed) {
+                        resType.refresh();
+                    }
+                }
             }
             resPackage.refresh();
+        }
+        if (packageFound) {
             resTable.refresh();
         }
     }
 
+    /**
+     * Drops the global and key strings no entry refers to any more and merges the duplicated ones,
+     * the type strings are left as they are since they are indexed by type id.
+     *
+     * @return the bytes saved
+     */
+    public static int compactStringPools(ResTable resTable) throws IOException {
+        int originalSize = resTable.getChunkSize();
+        ResStringBlock globalPool = resTable.getGlobalStringPool();
+        boolean[] globalReferenced = new boolean[globalPool == null ? 0 : globalPool.getStringCount()];
+        List<ResValue> stringValues = new ArrayList<ResValue>();
+        if (resTable.getPackages() != null) {
+            for (ResPackage resPackage : resTable.getPackages()) {
+                ResStringBlock keyPool = resPackage.getResNamePool();
+                boolean[] keyReferenced = new boolean[keyPool == null ? 0 : keyPool.getStringCount()];
+                List<ResEntry> entries = new ArrayList<ResEntry>();
+                if (resPackage.getResTypeArray() != null) {
+                    for (ResChunk resChunk : resPackage.getResTypeArray()) {
+                        if (resChunk.getType() != ArscConstants.RES_TABLE_TYPE_TYPE || ((ResType) resChunk).getEntryTable() == null) {
+                            continue;
+                        }
+                        for (ResEntry entry : ((ResType) resChunk).getEntryTable()) {
+                            if (entry == null) {
+                                continue;
+                            }
+                            entries.add(entry);
+                            markReferenced(keyReferenced, entry.getStringPoolIndex());
+                            if ((entry.getFlag() & ArscConstants.RES_TABLE_ENTRY_FLAG_COMPLEX) == 0) {
+                                collectStringValue(entry.getResValue(), globalReferenced, stringValues);
+                            } else if (entry.getResMapValues() != null) {
+                                for (ResMapValue mapValue : entry.getResMapValues()) {
+                                    collectStringValue(mapValue.getResValue(), globalReferenced, stringValues);
+                                }
+                            }
+                        }
+                    }
+                }
+                if (keyPool != null) {
+                    int[] keyMap = keyPool.compact(keyReferenced);
+                    for (ResEntry entry : entries) {
+                        if (entry.getStringPoolIndex() >= 0 && entry.getStringPoolIndex() < keyMap.length) {
+                            entry.setStringPoolIndex(keyMap[entry.getStringPoolIndex()]);
+                        }
+                    }
+                    if (resPackage.getResTypePoolOffset() > resPackage.getResNamePoolOffset()) {
+                        resPackage.setResTypePoolOffset(resPackage.getResNamePoolOffset() + keyPool.getChunkSize());
+                    }
+                }
+                resPackage.refresh();
+            }
+        }
+        if (globalPool != null) {
+            int[] globalMap = globalPool.compact(globalReferenced);
+            for (ResValue value : stringValues) {
+                ByteBuffer.wrap(value.getContent()).order(ByteOrder.LITTLE_ENDIAN).putInt(2, globalMap[getValueData(value)]);
+            }
+        }
+        resTable.refresh();
+        int savedSize = originalSize - resTable.getChunkSize();
+        Log.i(TAG, "compact string pools, %d bytes saved", savedSize);
+        return savedSize;
+    }
+
+    private static void markReferenced(boolean[] referenced, int index) {
+        if (index >= 0 && index < referenced.length) {
+            referenced[index] = true;
+        }
+    }
+
+    /*
+     *  the content of a ResValue is res0 (1 byte), dataType (1 byte) and data (4 bytes)
+     */
+    private static void collectStringValue(ResValue value, boolean[] globalReferenced, List<ResValue> stringValues) {
+        if (value == null || value.getContent() == null || value.getContent().length < 6
+                || value.getContent()[1] != ArscConstants.RES_VALUE_DATA_TYPE_STRING) {
+            return;
+        }
+        int index = getValueData(value);
+        if (index >= 0 && index < globalReferenced.length) {
+            globalReferenced[index] = true;
+            stringValues.add(value);
+        }
+    }
+
+    private static int getValueData(ResValue value) {
+        return ByteBuffer.wrap(value.getContent()).order(ByteOrder.LITTLE_ENDIAN).getInt(2);
+    }
+
 }
@@ -0,0 +1,164 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.mm.arscutil;
+
+import com.tencent.mm.arscutil.data.ArscConstants;
+import com.tencent.mm.arscutil.data.ResChunk;
+import com.tencent.mm.arscutil.data.ResPackage;
+import com.tencent.mm.arscutil.data.ResTable;
+import com.tencent.mm.arscutil.data.ResType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index over the packages and types of a ResTable, built once instead of scanning them per resource id.
+ *
+ * Removing entries does not change the structure, the entry offsets are always read from the live ResTypes.
+ * The index is rebuilt on the next lookup if the package array or a type list has been replaced or resized,
+ * {@link #invalidate()} forces it after any other structural change.
+ */
+
+public class ResTableIndex {
+
+    private final ResTable resTable;
+
+    private ResPackage[] indexedPackages;
+    private final Map<ResPackage, List<ResChunk>> indexedTypeArrays = new HashMap<ResPackage, List<ResChunk>>();
+    private final Map<ResPackage, Integer> indexedTypeCounts = new HashMap<ResPackage, Integer>();
+
+    private final Map<Integer, ResPackage> packageMap = new HashMap<Integer, ResPackage>();
+    private final Map<Integer, List<ResType>> typeMap = new HashMap<Integer, List<ResType>>();      // (packageId << 8 | typeId) -> ResTypes of all configs
+
+    private boolean valid;
+
+    public ResTableIndex(ResTable resTable) {
+        this.resTable = resTable;
+        build();
+    }
+
+    public void invalidate() {
+        valid = false;
+    }
+
+    public ResTable getResTable() {
+        return resTable;
+    }
+
+    public ResPackage getPackage(int packageId) {
+        ensureValid();
+        return packageMap.get(packageId);
+    }
+
+    /**
+     * @return the ResTypes of every config of the type, empty if there is none
+     */
+    public List<ResType> getTypes(int packageId, int typeId) {
+        ensureValid();
+        List<ResType> types = typeMap.get(typeKey(packageId, typeId));
+        return types == null ? Collections.<ResType>emptyList() : types;
+    }
+
+    /**
+     * @return the ResTypes holding an entry of the resource, same as {@link ArscUtil#findResType(ResPackage, int)}
+     */
+    public List<ResType> findResType(int resourceId) {
+        int entryId = ArscUtil.getResourceEntryId(resourceId);
+        List<ResType> resTypeList = new ArrayList<ResType>();
+        for (ResType resType : getTypes(ArscUtil.getPackageId(resourceId), ArscUtil.getResourceTypeId(resourceId))) {
+            if (getEntryOffset(resType, entryId) != ArscConstants.NO_ENTRY_INDEX) {
+                resTypeList.add(resType);
+            }
+        }
+        return resTypeList;
+    }
+
+    /**
+     * @return the offset of the entry in the entry table of the ResType, or NO_ENTRY_INDEX if it is absent
+     */
+    public static int getEntryOffset(ResType resType, int entryId) {
+        if (entryId >= resType.getEntryCount()) {
+            return ArscConstants.NO_ENTRY_INDEX;
+        }
+        return resType.getEntryOffsets().get(entryId);
+    }
+
+    private static int typeKey(int packageId, int typeId) {
+        return (packageId << 8) | typeId;
+    }
+
+    private void ensureValid() {
+        if (!valid || isStale()) {
+            build();
+        }
+    }
+
+    private boolean isStale() {
+        ResPackage[] packages = resTable.getPackages();
+        if (packages != indexedPackages) {
+            return true;
+        }
+        if (packages != null) {
+            for (ResPackage resPackage : packages) {
+                List<ResChunk> resTypeArray = resPackage.getResTypeArray();
+                if (resTypeArray != indexedTypeArrays.get(resPackage)
+                        || (resTypeArray != null && resTypeArray.size() != indexedTypeCounts.get(resPackage))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void build() {
+        packageMap.clear();
+        typeMap.clear();
+        indexedTypeArrays.clear();
+        indexedTypeCounts.clear();
+        indexedPackages = resTable.getPackages();
+        if (indexedPackages != null) {
+            for (ResPackage resPackage : indexedPackages) {
+                if (!packageMap.containsKey(resPackage.getId())) {
+                    packageMap.put(resPackage.getId(), resPackage);
+                }
+                List<ResChunk> resTypeArray = resPackage.getResTypeArray();
+                indexedTypeArrays.put(resPackage, resTypeArray);
+                indexedTypeCounts.put(resPackage, resTypeArray == null ? 0 : resTypeArray.size());
+                if (resTypeArray == null) {
+                    continue;
+                }
+                for (ResChunk resChunk : resTypeArray) {
+                    if (resChunk.getType() == ArscConstants.RES_TABLE_TYPE_TYPE) {
+                        ResType resType = (ResType) resChunk;
+                        int key = typeKey(resPackage.getId(), resType.getId() & 0xFF);
+                        List<ResType> types = typeMap.get(key);
+                        if (types == null) {
+                            types = new ArrayList<ResType>();
+                            typeMap.put(key, types);
+                        }
+                        types.add(resType);
+                    }
+                }
+            }
+        }
+        valid = true;
+    }
+}
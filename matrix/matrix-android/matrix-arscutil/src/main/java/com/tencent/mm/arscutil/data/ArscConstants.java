@@ -27,10 +27,15 @@ public class ArscConstants {
 
     public static final int NO_ENTRY_INDEX = 0xFFFFFFFF;
 
+    public static final byte RES_TABLE_TYPE_FLAG_SPARSE = 0x01;
+
     public static final int RES_STRING_POOL_UTF8_FLAG = 0x0100;
 
     public static final short RES_TABLE_ENTRY_FLAG_COMPLEX = 0x0001;
     public static final short RES_TABLE_ENTRY_FLAG_PUBLIC = 0x0002;
 
     public static final int RES_VALUE_DATA_TYPE_NULL = 0;
+    public static final int RES_VALUE_DATA_TYPE_STRING = 0x03;
+
+    public static final int RES_STRING_POOL_SPAN_END = 0xFFFFFFFF;
 }
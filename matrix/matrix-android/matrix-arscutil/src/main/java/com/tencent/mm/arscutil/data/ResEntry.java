@@ -40,6 +40,8 @@ public class ResEntry {
     private int pairCount;                        //4 bytes, pair数目
     private List<ResMapValue> resMapValues;    //紧跟在ResEntry后面，不计入ResEntry的大小
 
+    private ByteBuffer payload;                 //尚未解析的ResValue或者ResMapValues，little-endian
+
 
     public short getSize() {
         return size;
@@ -54,6 +56,7 @@ public class ResEntry {
     }
 
     public void setFlag(short flag) {
+        decodePayload();
         this.flag = flag;
     }
 
@@ -70,6 +73,7 @@ public class ResEntry {
     }
 
     public void setParent(int parent) {
+        decodePayload();
         this.parent = parent;
     }
 
@@ -78,26 +82,141 @@ public class ResEntry {
     }
 
     public void setPairCount(int pairCount) {
+        decodePayload();
         this.pairCount = pairCount;
     }
 
     public ResValue getResValue() {
+        decodePayload();
         return resValue;
     }
 
     public void setResValue(ResValue resValue) {
+        decodePayload();
         this.resValue = resValue;
     }
 
     public List<ResMapValue> getResMapValues() {
+        decodePayload();
         return resMapValues;
     }
 
     public void setResMapValues(List<ResMapValue> resMapValues) {
+        decodePayload();
         this.resMapValues = resMapValues;
     }
 
+    /**
+     * Keeps the value part as an undecoded slice, it is only decoded when accessed or modified.
+     */
+    public void setPayload(ByteBuffer payload) {
+        this.payload = payload;
+    }
+
+    private void decodePayload() {
+        if (payload == null) {
+            return;
+        }
+        ByteBuffer buffer = payload.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        payload = null;
+        if ((flag & ArscConstants.RES_TABLE_ENTRY_FLAG_COMPLEX) == 0) {
+            resValue = decodeResValue(buffer);
+        } else if (pairCount > 0) {
+            List<ResMapValue> mapValues = new ArrayList<ResMapValue>(pairCount);
+            for (int i = 0; i < pairCount; i++) {
+                ResMapValue mapValue = new ResMapValue();
+                mapValue.setName(buffer.getInt());
+                mapValue.setResValue(decodeResValue(buffer));
+                mapValues.add(mapValue);
+            }
+            resMapValues = mapValues;
+        }
+    }
+
+    private static ResValue decodeResValue(ByteBuffer buffer) {
+        ResValue resValue = new ResValue();
+        resValue.setSize(buffer.getShort());
+        if (resValue.getSize() > 2) {
+            byte[] content = new byte[resValue.getSize() - 2];
+            buffer.get(content);
+            resValue.setContent(content);
+        }
+        return resValue;
+    }
+
+    /**
+     * @return the length of {@link #toBytes()}, computed without encoding the entry
+     */
+    public int getEncodedSize() {
+        if (payload != null) {
+            return size + payload.remaining();
+        }
+        int totalSize = size;
+        if ((flag & ArscConstants.RES_TABLE_ENTRY_FLAG_COMPLEX) == 0) {
+            totalSize += resValue.getSize();
+        } else if (pairCount > 0) {
+            for (ResMapValue mapValue : resMapValues) {
+                totalSize += 4 + mapValue.getResValue().getSize();
+            }
+        }
+        return totalSize;
+    }
+
+    /**
+     * Writes the same bytes as {@link #toBytes()}, the buffer must have {@link #getEncodedSize()} bytes remaining.
+     */
+    public void writeTo(ByteBuffer byteBuffer) {
+        int start = byteBuffer.position();
+        byteBuffer.putShort(size);
+        byteBuffer.putShort(flag);
+        byteBuffer.putInt(stringPoolIndex);
+        if ((flag & ArscConstants.RES_TABLE_ENTRY_FLAG_COMPLEX) != 0) {
+            byteBuffer.putInt(parent);
+            byteBuffer.putInt(pairCount);
+        }
+        fillZero(byteBuffer, start + size);
+        if (payload != null) {
+            byteBuffer.put(payload.duplicate());
+        } else if ((flag & ArscConstants.RES_TABLE_ENTRY_FLAG_COMPLEX) == 0) {
+            writeResValue(byteBuffer, resValue);
+        } else if (pairCount > 0) {
+            for (ResMapValue mapValue : resMapValues) {
+                byteBuffer.putInt(mapValue.getName());
+                writeResValue(byteBuffer, mapValue.getResValue());
+            }
+        }
+    }
+
+    private static void writeResValue(ByteBuffer byteBuffer, ResValue value) {
+        int start = byteBuffer.position();
+        byteBuffer.putShort(value.getSize());
+        if (value.getContent() != null) {
+            byteBuffer.put(value.getContent());
+        }
+        fillZero(byteBuffer, start + value.getSize());
+    }
+
+    private static void fillZero(ByteBuffer byteBuffer, int end) {
+        while (byteBuffer.position() < end) {
+            byteBuffer.put((byte) 0);
+        }
+    }
+
     public byte[] toBytes() throws IOException {
+        if (payload != null) {
+            ByteBuffer byteBuffer = ByteBuffer.allocate(size + payload.remaining());
+            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+            byteBuffer.putShort(size);
+            byteBuffer.putShort(flag);
+            byteBuffer.putInt(stringPoolIndex);
+            if ((flag & ArscConstants.RES_TABLE_ENTRY_FLAG_COMPLEX) != 0) {
+                byteBuffer.putInt(parent);
+                byteBuffer.putInt(pairCount);
+            }
+            byteBuffer.position(size);
+            byteBuffer.put(payload.duplicate());
+            return byteBuffer.array();
+        }
         ByteBuffer headBuffer = ByteBuffer.allocate(size);
         headBuffer.order(ByteOrder.LITTLE_ENDIAN);
         headBuffer.clear();
@@ -21,7 +21,11 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by jinqiuchen on 18/7/29.
@@ -127,6 +131,146 @@ public class ResStringBlock extends ResChunk {
         recomputeChunkSize();
     }
 
+    /**
+     * Drops the strings which are not referenced and merges the identical ones, keeping their order.
+     *
+     * The styled strings keep their index and are never merged, and the strings named by a style span
+     * are always kept, the spans are rewritten to the new indexes.
+     *
+     * @param referenced whether each string is referenced from outside the pool
+     * @return the new index of every string, -1 for the dropped ones
+     */
+    public int[] compact(boolean[] referenced) {
+        int[] indexMap = new int[stringCount];
+        if (stringCount == 0) {
+            return indexMap;
+        }
+        boolean[] keep = Arrays.copyOf(referenced, stringCount);
+        for (int i = 0; i < styleCount; i++) {
+            keep[i] = true;
+        }
+        ByteBuffer styleBuffer = styles == null ? null : ByteBuffer.wrap(styles).order(ByteOrder.LITTLE_ENDIAN);
+        if (styleBuffer != null && styleOffsets != null) {
+            for (int styleOffset : styleOffsets) {
+                for (int pos = styleOffset; pos + 4 <= styles.length; pos += 12) {
+                    int name = styleBuffer.getInt(pos);
+                    if (name == ArscConstants.RES_STRING_POOL_SPAN_END) {
+                        break;
+                    }
+                    if (name >= 0 && name < stringCount) {
+                        keep[name] = true;
+                    }
+                }
+            }
+        }
+        List<ByteBuffer> compactStrings = new ArrayList<ByteBuffer>();
+        Map<ByteBuffer, Integer> uniqueStrings = new HashMap<ByteBuffer, Integer>();
+        int dataSize = 0;
+        for (int i = 0; i < stringCount; i++) {
+            if (!keep[i]) {
+                indexMap[i] = -1;
+                continue;
+            }
+            ByteBuffer string = ByteBuffer.wrap(strings.get(i).array(), 0, encodedLength(strings.get(i)));
+            if (i >= styleCount) {
+                Integer index = uniqueStrings.get(string);
+                if (index != null) {
+                    indexMap[i] = index;
+                    continue;
+                }
+                uniqueStrings.put(string, compactStrings.size());
+            }
+            indexMap[i] = compactStrings.size();
+            compactStrings.add(string);
+            dataSize += string.remaining();
+        }
+        // the string data is padded to 4 bytes with the last string, like the reader leaves it
+        int padding = (4 - dataSize % 4) % 4;
+        List<Integer> compactOffsets = new ArrayList<Integer>(compactStrings.size());
+        int offset = 0;
+        for (int i = 0; i < compactStrings.size(); i++) {
+            ByteBuffer string = compactStrings.get(i);
+            int length = string.remaining() + (i == compactStrings.size() - 1 ? padding : 0);
+            ByteBuffer copy = ByteBuffer.allocate(length);
+            copy.order(ByteOrder.LITTLE_ENDIAN);
+            copy.put(string);
+            copy.position(length);
+            compactStrings.set(i, copy);
+            compactOffsets.add(offset);
+            offset += length;
+        }
+        if (styleBuffer != null && styleOffsets != null) {
+            for (int styleOffset : styleOffsets) {
+                for (int pos = styleOffset; pos + 4 <= styles.length; pos += 12) {
+                    int name = styleBuffer.getInt(pos);
+                    if (name == ArscConstants.RES_STRING_POOL_SPAN_END) {
+                        break;
+                    }
+                    if (name >= 0 && name < stringCount) {
+                        styleBuffer.putInt(pos, indexMap[name]);
+                    }
+                }
+            }
+        }
+        strings = compactStrings;
+        stringOffsets = compactOffsets;
+        stringCount = compactStrings.size();
+        stringStart = headSize + (stringCount + styleCount) * 4;
+        styleStart = styleCount > 0 ? stringStart + offset : 0;
+        chunkPaddingSize = 0;
+        recomputeChunkSize();
+        return indexMap;
+    }
+
+    /**
+     * Decodes the string at the index, the length prefixes of both encodings are honoured.
+     */
+    public String getString(int index) {
+        ByteBuffer string = strings.get(index);
+        byte[] data = string.array();
+        int end = encodedLength(string);
+        if (end < 2) {
+            return "";
+        }
+        if ((flag & ArscConstants.RES_STRING_POOL_UTF8_FLAG) != 0) {
+            int pos = (data[0] & 0x80) != 0 ? 2 : 1;
+            pos += (data[pos] & 0x80) != 0 ? 2 : 1;
+            return new String(data, pos, Math.max(end - pos - 1, 0), StandardCharsets.UTF_8);
+        } else {
+            int pos = (data[1] & 0x80) != 0 ? 4 : 2;
+            return new String(data, pos, Math.max(end - pos - 2, 0), StandardCharsets.UTF_16LE);
+        }
+    }
+
+    /*
+     *  size of the length prefixes, characters and terminator of a string, without the padding after it
+     */
+    private int encodedLength(ByteBuffer string) {
+        byte[] data = string.array();
+        if (string.limit() < 2) {
+            return string.limit();
+        }
+        if ((flag & ArscConstants.RES_STRING_POOL_UTF8_FLAG) != 0) {
+            int pos = (data[0] & 0x80) != 0 ? 2 : 1;
+            int length = data[pos] & 0xFF;
+            if ((length & 0x80) != 0) {
+                length = ((length & 0x7F) << 8) | (data[pos + 1] & 0xFF);
+                pos += 2;
+            } else {
+                pos += 1;
+            }
+            return Math.min(pos + length + 1, string.limit());
+        } else {
+            int length = (data[0] & 0xFF) | ((data[1] & 0xFF) << 8);
+            int pos = 2;
+            if ((length & 0x8000) != 0) {
+                length = ((length & 0x7FFF) << 16) | (data[2] & 0xFF) | ((data[3] & 0xFF) << 8);
+                pos = 4;
+            }
+            return Math.min(pos + length * 2 + 2, string.limit());
+        }
+    }
+
     private void recomputeChunkSize() {
         chunkSize = 0;
         chunkSize += headSize;
@@ -108,7 +108,7 @@ public class ResType extends ResChunk {
         for (int i = 0; i < entryCount; i++) {
             if (entryOffsets.get(i) != ArscConstants.NO_ENTRY_INDEX) {
                 entryOffsets.set(i, lastOffset);
-                lastOffset += entryTable.get(i).toBytes().length;
+                lastOffset += entryTable.get(i).getEncodedSize();
             }
         }
         recomputeChunkSize();
@@ -125,7 +125,7 @@ public class ResType extends ResChunk {
             for (ResEntry entry : entryTable) {
                 if (entry != null) {
                     realEntryCount++;
-                    chunkSize += entry.toBytes().length;            //这里不要使用entry.size，ResEntry后面还紧跟了ResValue或者ResMapValues
+                    chunkSize += entry.getEncodedSize();            //这里不要使用entry.size，ResEntry后面还紧跟了ResValue或者ResMapValues
                 }
             }
         }
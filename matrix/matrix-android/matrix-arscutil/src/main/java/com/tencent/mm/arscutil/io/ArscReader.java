@@ -22,53 +22,60 @@ import com.tencent.mm.arscutil.data.ArscConstants;
 import com.tencent.mm.arscutil.data.ResChunk;
 import com.tencent.mm.arscutil.data.ResConfig;
 import com.tencent.mm.arscutil.data.ResEntry;
-import com.tencent.mm.arscutil.data.ResMapValue;
 import com.tencent.mm.arscutil.data.ResPackage;
 import com.tencent.mm.arscutil.data.ResStringBlock;
 import com.tencent.mm.arscutil.data.ResTable;
 import com.tencent.mm.arscutil.data.ResType;
 import com.tencent.mm.arscutil.data.ResTypeSpec;
-import com.tencent.mm.arscutil.data.ResValue;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Created by jinqiuchen on 18/7/29.
+ *
+ * The file is read into a heap buffer and every chunk header is read at its absolute position, the values
+ * of the entries are kept as slices of the buffer and decoded by {@link ResEntry} when accessed. Nothing
+ * keeps the file open, it can be deleted or rewritten while the table is still in use.
+ *
+ * A FLAG_SPARSE type is expanded to the dense model, the chunk sizes of the type and its parents grow
+ * accordingly, so the table is written back dense unless the writer is asked for the sparse encoding.
  */
 
 public class ArscReader {
 
     private static final String TAG = "ArscUtil.ArscReader";
 
-    LittleEndianInputStream dataInput;
+    private final ByteBuffer tableBuffer;
+    private int expandedSize;       // bytes added by expanding sparse types
 
-    public ArscReader(String arscFile) throws FileNotFoundException {
-        dataInput = new LittleEndianInputStream(arscFile);
+    public ArscReader(String arscFile) throws IOException {
+        tableBuffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(arscFile))).order(ByteOrder.LITTLE_ENDIAN);
         Log.i(TAG, "read From %s", arscFile);
     }
 
+    public ArscReader(ByteBuffer arscData) {
+        tableBuffer = arscData.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
     public ResTable readResourceTable() throws IOException {
-        Log.d(TAG, "===========================");
-        long headStart = 0;
+        int headStart = 0;
         ResTable resTable = new ResTable();
         resTable.setStart(headStart);
-        resTable.setType(dataInput.readShort());
-        Log.d(TAG, "table type %d", resTable.getType());
-        resTable.setHeadSize(dataInput.readShort());
-        Log.d(TAG, "head size %d", resTable.getHeadSize());
-        resTable.setChunkSize(dataInput.readInt());
-        Log.d(TAG, "chunk size %f KB", resTable.getChunkSize() / 1024.0f);
-        resTable.setPackageCount(dataInput.readInt());
-        Log.d(TAG, "package count %d", resTable.getPackageCount());
-        resTable.setHeadPaddingSize((int) (resTable.getHeadSize() + headStart - dataInput.getFilePointer()));
-        dataInput.seek(headStart + resTable.getHeadSize());
+        resTable.setType(tableBuffer.getShort(headStart));
+        resTable.setHeadSize(tableBuffer.getShort(headStart + 2));
+        resTable.setChunkSize(tableBuffer.getInt(headStart + 4));
+        resTable.setPackageCount(tableBuffer.getInt(headStart + 8));
+        resTable.setHeadPaddingSize(resTable.getHeadSize() - 12);
+        Log.d(TAG, "table type %d, head size %d, chunk size %f KB, package count %d", resTable.getType(), resTable.getHeadSize(), resTable.getChunkSize() / 1024.0f, resTable.getPackageCount());
+        tableBuffer.position(headStart + resTable.getHeadSize());
         resTable.setGlobalStringPool(readStringBlock());
-        Log.d(TAG, "global string pool pos %d", dataInput.getFilePointer());
+        Log.d(TAG, "global string pool pos %d", tableBuffer.position());
         if (resTable.getPackageCount() > 0) {
             ResPackage[] packages = new ResPackage[resTable.getPackageCount()];
             for (int i = 0; i < resTable.getPackageCount(); i++) {
@@ -76,266 +83,273 @@ public class ArscReader {
             }
             resTable.setPackages(packages);
         }
-        resTable.setChunkPaddingSize((int) (resTable.getChunkSize() + headStart - dataInput.getFilePointer()));
-        dataInput.close();
+        resTable.setChunkPaddingSize(resTable.getChunkSize() + headStart - tableBuffer.position());
+        resTable.setChunkSize(resTable.getChunkSize() + expandedSize);
         return resTable;
     }
 
     private ResPackage readPackage() throws IOException {
-        Log.d(TAG, "===========================");
-        long headStart = dataInput.getFilePointer();
-        Log.d(TAG, "package start %d", headStart);
+        int headStart = tableBuffer.position();
         ResPackage resPackage = new ResPackage();
         resPackage.setStart(headStart);
-        resPackage.setType(dataInput.readShort());
-        Log.d(TAG, "package type %d", resPackage.getType());
-        resPackage.setHeadSize(dataInput.readShort());
-        Log.d(TAG, "head size %d", resPackage.getHeadSize());
-        resPackage.setChunkSize(dataInput.readInt());
-        Log.d(TAG, "chunk size %d", resPackage.getChunkSize());
-        resPackage.setId(dataInput.readInt());
-        Log.d(TAG, "package id %d", resPackage.getId());
+        resPackage.setType(tableBuffer.getShort(headStart));
+        resPackage.setHeadSize(tableBuffer.getShort(headStart + 2));
+        resPackage.setChunkSize(tableBuffer.getInt(headStart + 4));
+        resPackage.setId(tableBuffer.getInt(headStart + 8));
         byte[] buffer = new byte[256];
-        dataInput.read(buffer);
+        tableBuffer.position(headStart + 12);
+        tableBuffer.get(buffer);
         resPackage.setName(buffer);
-        Log.d(TAG, "package name %s", ArscUtil.toUTF16String(buffer));
-        resPackage.setResTypePoolOffset(dataInput.readInt());
-        Log.d(TAG, "resType pool offset %d", resPackage.getResTypePoolOffset());
-        resPackage.setLastPublicType(dataInput.readInt());
-        Log.d(TAG, "lastPublicType index %d", resPackage.getLastPublicType());
-        resPackage.setResNamePoolOffset(dataInput.readInt());
-        Log.d(TAG, "resName pool offset %d", resPackage.getResNamePoolOffset());
-        resPackage.setLastPublicName(dataInput.readInt());
-        Log.d(TAG, "lastPublicName index %d", resPackage.getLastPublicName());
-        resPackage.setHeadPaddingSize((int) (resPackage.getHeadSize() + headStart - dataInput.getFilePointer()));
+        resPackage.setResTypePoolOffset(tableBuffer.getInt());
+        resPackage.setLastPublicType(tableBuffer.getInt());
+        resPackage.setResNamePoolOffset(tableBuffer.getInt());
+        resPackage.setLastPublicName(tableBuffer.getInt());
+        resPackage.setHeadPaddingSize(resPackage.getHeadSize() + headStart - tableBuffer.position());
+        Log.d(TAG, "package start %d, type %d, head size %d, chunk size %d, id %d, name %s", headStart, resPackage.getType(), resPackage.getHeadSize(), resPackage.getChunkSize(), resPackage.getId(), ArscUtil.toUTF16String(buffer));
+        Log.d(TAG, "resType pool offset %d, lastPublicType index %d, resName pool offset %d, lastPublicName index %d", resPackage.getResTypePoolOffset(), resPackage.getLastPublicType(), resPackage.getResNamePoolOffset(), resPackage.getLastPublicName());
         if (resPackage.getResTypePoolOffset() > 0) {
-            dataInput.seek(headStart + resPackage.getResTypePoolOffset());
+            tableBuffer.position(headStart + resPackage.getResTypePoolOffset());
             ResStringBlock resTypePool = readStringBlock();
             resPackage.setResTypePool(resTypePool);
         }
         if (resPackage.getResNamePoolOffset() > 0) {
-            dataInput.seek(headStart + resPackage.getResNamePoolOffset());
+            tableBuffer.position(headStart + resPackage.getResNamePoolOffset());
             ResStringBlock resNamePool = readStringBlock();
             resPackage.setResNamePool(resNamePool);
         }
         List<ResChunk> resTypeList = new ArrayList<ResChunk>();
-        while (dataInput.getFilePointer() < (resPackage.getStart() + resPackage.getChunkSize())) {
-            int type = dataInput.readShort();
+        int[] specEntryCounts = new int[256];
+        int packageExpandedSize = expandedSize;
+        int end = headStart + resPackage.getChunkSize();
+        while (tableBuffer.position() < end) {
+            int type = tableBuffer.getShort(tableBuffer.position());
             if (type == ArscConstants.RES_TABLE_TYPE_SPEC_TYPE) {
-                dataInput.seek(dataInput.getFilePointer() - 2);
                 ResTypeSpec resTypeSpec = readResTypeSpec();
+                specEntryCounts[resTypeSpec.getId() & 0xFF] = resTypeSpec.getEntryCount();
                 resTypeList.add(resTypeSpec);
             } else if (type == ArscConstants.RES_TABLE_TYPE_TYPE) {
-                dataInput.seek(dataInput.getFilePointer() - 2);
-                ResType resType = readResType(resPackage);
-                resTypeList.add(resType);
+                resTypeList.add(readResType(specEntryCounts));
+            } else {
+                tableBuffer.position(tableBuffer.position() + 2);
             }
         }
         resPackage.setResTypeArray(resTypeList);
-        resPackage.setChunkPaddingSize((int) (resPackage.getChunkSize() + headStart - dataInput.getFilePointer()));
-        dataInput.seek(resPackage.getStart() + resPackage.getChunkSize());
+        resPackage.setChunkPaddingSize(end - tableBuffer.position());
+        resPackage.setChunkSize(resPackage.getChunkSize() + expandedSize - packageExpandedSize);
+        tableBuffer.position(end);
         return resPackage;
     }
 
     private ResTypeSpec readResTypeSpec() throws IOException {
-        Log.d(TAG, "===========================");
-        long headStart = dataInput.getFilePointer();
+        int headStart = tableBuffer.position();
         ResTypeSpec resTypeSpec = new ResTypeSpec();
         resTypeSpec.setStart(headStart);
-        resTypeSpec.setType(dataInput.readShort());
-        Log.d(TAG, "resTypeSpec type %d", resTypeSpec.getType());
-        resTypeSpec.setHeadSize(dataInput.readShort());
-        Log.d(TAG, "resTypeSpec header size %d", resTypeSpec.getHeadSize());
-        resTypeSpec.setChunkSize(dataInput.readInt());
-        Log.d(TAG, "resTypeSpec chunk size %d", resTypeSpec.getChunkSize());
-        resTypeSpec.setId(dataInput.readByte());
-        Log.d(TAG, "resTypeSpec type id %d", resTypeSpec.getId());
-        resTypeSpec.setReserved0(dataInput.readByte());
-        resTypeSpec.setReserved1(dataInput.readShort());
-        resTypeSpec.setEntryCount(dataInput.readInt());
-        Log.d(TAG, "resTypeSpec entry count %d", resTypeSpec.getEntryCount());
-        resTypeSpec.setHeadPaddingSize((int) (resTypeSpec.getHeadSize() + headStart - dataInput.getFilePointer()));
+        resTypeSpec.setType(tableBuffer.getShort(headStart));
+        resTypeSpec.setHeadSize(tableBuffer.getShort(headStart + 2));
+        resTypeSpec.setChunkSize(tableBuffer.getInt(headStart + 4));
+        resTypeSpec.setId(tableBuffer.get(headStart + 8));
+        resTypeSpec.setReserved0(tableBuffer.get(headStart + 9));
+        resTypeSpec.setReserved1(tableBuffer.getShort(headStart + 10));
+        resTypeSpec.setEntryCount(tableBuffer.getInt(headStart + 12));
+        resTypeSpec.setHeadPaddingSize(resTypeSpec.getHeadSize() - 16);
+        Log.d(TAG, "resTypeSpec type %d, header size %d, chunk size %d, type id %d, entry count %d", resTypeSpec.getType(), resTypeSpec.getHeadSize(), resTypeSpec.getChunkSize(), resTypeSpec.getId(), resTypeSpec.getEntryCount());
+        tableBuffer.position(headStart + 16);
         if (resTypeSpec.getChunkSize() - resTypeSpec.getHeadSize() > 0) {
             byte[] buffer = new byte[resTypeSpec.getChunkSize() - resTypeSpec.getHeadSize()];
-            dataInput.read(buffer);
+            tableBuffer.get(buffer);
             resTypeSpec.setConfigFlags(buffer);
         }
-        resTypeSpec.setChunkPaddingSize((int) (resTypeSpec.getChunkSize() + headStart - dataInput.getFilePointer()));
-        dataInput.seek(headStart + resTypeSpec.getChunkSize());
+        resTypeSpec.setChunkPaddingSize(resTypeSpec.getChunkSize() + headStart - tableBuffer.position());
+        tableBuffer.position(headStart + resTypeSpec.getChunkSize());
         return resTypeSpec;
     }
 
-    private ResType readResType(ResPackage resPackage) throws IOException {
-        Log.d(TAG, "===========================");
-        long headStart = dataInput.getFilePointer();
+    private ResType readResType(int[] specEntryCounts) throws IOException {
+        int headStart = tableBuffer.position();
         ResType resType = new ResType();
         resType.setStart(headStart);
-        resType.setType(dataInput.readShort());
-        Log.d(TAG, "resType type %d", resType.getType());
-        resType.setHeadSize(dataInput.readShort());
-        Log.d(TAG, "resType header size %d", resType.getHeadSize());
-        resType.setChunkSize(dataInput.readInt());
-        Log.d(TAG, "resType chunk size %d", resType.getChunkSize());
-        resType.setId(dataInput.readByte());
-        Log.d(TAG, "resType type id %d", resType.getId());
-        resType.setReserved0(dataInput.readByte());
-        resType.setReserved1(dataInput.readShort());
-        resType.setEntryCount(dataInput.readInt());
-        Log.d(TAG, "resType entry count %d", resType.getEntryCount());
-        resType.setEntryTableOffset(dataInput.readInt());
-        Log.d(TAG, "resType entryTable offset %d", resType.getEntryTableOffset());
+        resType.setType(tableBuffer.getShort(headStart));
+        resType.setHeadSize(tableBuffer.getShort(headStart + 2));
+        resType.setChunkSize(tableBuffer.getInt(headStart + 4));
+        resType.setId(tableBuffer.get(headStart + 8));
+        resType.setReserved0(tableBuffer.get(headStart + 9));
+        resType.setReserved1(tableBuffer.getShort(headStart + 10));
+        resType.setEntryCount(tableBuffer.getInt(headStart + 12));
+        resType.setEntryTableOffset(tableBuffer.getInt(headStart + 16));
+        Log.d(TAG, "resType type %d, header size %d, chunk size %d, type id %d, entry count %d, entryTable offset %d", resType.getType(), resType.getHeadSize(), resType.getChunkSize(), resType.getId(), resType.getEntryCount(), resType.getEntryTableOffset());
+        tableBuffer.position(headStart + 20);
         resType.setResConfigFlags(readResConfig());
-        resType.setHeadPaddingSize((int) (resType.getHeadSize() + headStart - dataInput.getFilePointer()));
-        if (resType.getEntryCount() > 0) {
-            List<Integer> resEntryOffsets = new ArrayList<Integer>();
-            for (int i = 0; i < resType.getEntryCount(); i++) {
-                resEntryOffsets.add(dataInput.readInt());
+        resType.setHeadPaddingSize(resType.getHeadSize() + headStart - tableBuffer.position());
+        int entryCount = resType.getEntryCount();
+        boolean sparse = (resType.getReserved0() & ArscConstants.RES_TABLE_TYPE_FLAG_SPARSE) != 0;
+        if (sparse) {
+            entryCount = readSparseEntryOffsets(resType, specEntryCounts[resType.getId() & 0xFF]);
+        } else if (entryCount > 0) {
+            List<Integer> resEntryOffsets = new ArrayList<Integer>(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                resEntryOffsets.add(tableBuffer.getInt());
             }
             resType.setEntryOffsets(resEntryOffsets);
         }
-        dataInput.seek(headStart + resType.getEntryTableOffset());
-        List<ResEntry> entryTable = new ArrayList<ResEntry>();
-        for (int i = 0; i < resType.getEntryCount(); i++) {
-            if (resType.getEntryOffsets().get(i) != ArscConstants.NO_ENTRY_INDEX) {
-                entryTable.add(readResEntry(resPackage,
-                        headStart + resType.getEntryTableOffset() + resType.getEntryOffsets().get(i)));
+        int entryTableStart = headStart + resType.getEntryTableOffset();
+        tableBuffer.position(entryTableStart);
+        List<ResEntry> entryTable = new ArrayList<ResEntry>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            int offset = resType.getEntryOffsets().get(i);
+            if (offset != ArscConstants.NO_ENTRY_INDEX) {
+                entryTable.add(readResEntry(entryTableStart + offset));
             } else {
                 entryTable.add(null);
             }
         }
         resType.setEntryTable(entryTable);
-        resType.setChunkPaddingSize((int) (resType.getChunkSize() + headStart - dataInput.getFilePointer()));
-        dataInput.seek(headStart + resType.getChunkSize());
+        resType.setChunkPaddingSize(resType.getChunkSize() + headStart - tableBuffer.position());
+        tableBuffer.position(headStart + resType.getChunkSize());
+        if (sparse) {
+            int denseEntryTableOffset = resType.getHeadSize() + entryCount * 4;
+            int growth = denseEntryTableOffset - resType.getEntryTableOffset();
+            resType.setEntryTableOffset(denseEntryTableOffset);
+            resType.setChunkSize(resType.getChunkSize() + growth);
+            expandedSize += growth;
+        }
         return resType;
     }
 
-    @SuppressWarnings("PMD")
-    private ResEntry readResEntry(ResPackage resPackage, long start) throws IOException {
-        //Log.d(TAG, "===========================");
-        dataInput.seek(start);
-        ResEntry resEntry = new ResEntry();
-        resEntry.setSize(dataInput.readShort());
-        //Log.d(TAG, "resEntry size %d", resEntry.getSize());
-        resEntry.setFlag(dataInput.readShort());
-        //Log.d(TAG, "resEntry flag %d", resEntry.getFlag());
-        resEntry.setStringPoolIndex(dataInput.readInt());
+    /*
+     *  turns the index/offset pairs into a dense offset array of the spec entry count, offsets are stored divided by 4
+     */
+    private int readSparseEntryOffsets(ResType resType, int specEntryCount) {
+        int pairCount = resType.getEntryCount();
+        int entryCount = specEntryCount;
+        int[] indexes = new int[pairCount];
+        int[] offsets = new int[pairCount];
+        for (int i = 0; i < pairCount; i++) {
+            indexes[i] = tableBuffer.getShort() & 0xFFFF;
+            offsets[i] = (tableBuffer.getShort() & 0xFFFF) * 4;
+            entryCount = Math.max(entryCount, indexes[i] + 1);
+        }
+        List<Integer> resEntryOffsets = new ArrayList<Integer>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            resEntryOffsets.add(ArscConstants.NO_ENTRY_INDEX);
+        }
+        for (int i = 0; i < pairCount; i++) {
+            resEntryOffsets.set(indexes[i], offsets[i]);
+        }
+        resType.setEntryOffsets(resEntryOffsets);
+        resType.setEntryCount(entryCount);
+        resType.setReserved0((byte) (resType.getReserved0() & ~ArscConstants.RES_TABLE_TYPE_FLAG_SPARSE));
+        Log.d(TAG, "resType %d is sparse, %d entries of %d", resType.getId(), pairCount, entryCount);
+        return entryCount;
+    }
 
-        //Log.d(TAG, "entryName %s", ArscUtil.resolveStringPoolEntry(resPackage.getResNamePool().getStrings().get(resEntry.getStringPoolIndex()).array(), resPackage.getResNamePool().getCharSet()));
+    /*
+     *  only the entry head is decoded, its ResValue or ResMapValues stay as a slice of the table
+     */
+    private ResEntry readResEntry(int start) throws IOException {
+        ResEntry resEntry = new ResEntry();
+        resEntry.setSize(tableBuffer.getShort(start));
+        resEntry.setFlag(tableBuffer.getShort(start + 2));
+        resEntry.setStringPoolIndex(tableBuffer.getInt(start + 4));
+        int payloadStart;
+        int payloadEnd;
         if ((resEntry.getFlag() & ArscConstants.RES_TABLE_ENTRY_FLAG_COMPLEX) == 0) {
-            resEntry.setResValue(readResValue());
+            payloadStart = start + 8;
+            payloadEnd = payloadStart + valueSize(payloadStart);
         } else {
-            resEntry.setParent(dataInput.readInt());
-            resEntry.setPairCount(dataInput.readInt());
-            if (resEntry.getPairCount() > 0) {
-                List<ResMapValue> mapValues = new ArrayList<ResMapValue>();
-                for (int i = 0; i < resEntry.getPairCount(); i++) {
-                    mapValues.add(readResMapValue());
-                }
-                resEntry.setResMapValues(mapValues);
+            resEntry.setParent(tableBuffer.getInt(start + 8));
+            resEntry.setPairCount(tableBuffer.getInt(start + 12));
+            payloadStart = start + 16;
+            payloadEnd = payloadStart;
+            for (int i = 0; i < resEntry.getPairCount(); i++) {
+                payloadEnd += 4;
+                payloadEnd += valueSize(payloadEnd);
             }
         }
+        ByteBuffer payload = tableBuffer.duplicate();
+        payload.limit(payloadEnd).position(payloadStart);
+        resEntry.setPayload(payload.slice());
+        tableBuffer.position(payloadEnd);
         return resEntry;
     }
 
-    private ResValue readResValue() throws IOException {
-        //Log.d(TAG,"===========================");
-        ResValue resValue = new ResValue();
-        resValue.setSize(dataInput.readShort());
-        if (resValue.getSize() > 2) {
-            byte[] content = new byte[resValue.getSize() - 2];
-            dataInput.read(content);
-            resValue.setContent(content);
-        }
-        return resValue;
-    }
-
-    private ResMapValue readResMapValue() throws IOException {
-        //Log.d(TAG, "===========================");
-        ResMapValue resValue = new ResMapValue();
-        resValue.setName(dataInput.readInt());
-        resValue.setResValue(readResValue());
-        return resValue;
+    /*
+     *  bytes taken by the ResValue at the position, a size of 2 or less has no content
+     */
+    private int valueSize(int start) {
+        return Math.max(tableBuffer.getShort(start), 2);
     }
 
     private ResConfig readResConfig() throws IOException {
-        //Log.d(TAG, "===========================");
         ResConfig config = new ResConfig();
-        config.setSize(dataInput.readInt());
-        //Log.d(TAG, "resConfig size %d", config.getSize());
+        config.setSize(tableBuffer.getInt());
         if (config.getSize() > 4) {
             byte[] buffer = new byte[config.getSize() - 4];
-            dataInput.read(buffer);
+            tableBuffer.get(buffer);
             config.setContent(buffer);
         }
         return config;
     }
 
     private ResStringBlock readStringBlock() throws IOException {
-        Log.d(TAG, "===========================");
-        long headStart = dataInput.getFilePointer();
+        int headStart = tableBuffer.position();
         ResStringBlock stringPool = new ResStringBlock();
         stringPool.setStart(headStart);
-        stringPool.setType(dataInput.readShort());
-        Log.d(TAG, "stringPool type %d", stringPool.getType());
-        stringPool.setHeadSize(dataInput.readShort());
-        Log.d(TAG, "stringPool head size %d", stringPool.getHeadSize());
-        stringPool.setChunkSize(dataInput.readInt());
-        Log.d(TAG, "stringPool chunk size %d", stringPool.getChunkSize());
-        stringPool.setStringCount(dataInput.readInt());
-        Log.d(TAG, "stringPool string count %d", stringPool.getStringCount());
-        stringPool.setStyleCount(dataInput.readInt());
-        Log.d(TAG, "stringPool style count %d", stringPool.getStyleCount());
-        stringPool.setFlag(dataInput.readInt());
-        Log.d(TAG, "stringPool flag %d", stringPool.getFlag());
-        stringPool.setStringStart(dataInput.readInt());
-        Log.d(TAG, "stringPool string start %d", stringPool.getStringStart());
-        stringPool.setStyleStart(dataInput.readInt());
-        Log.d(TAG, "stringPool style start %d", stringPool.getStyleStart());
-        stringPool.setHeadPaddingSize((int) (stringPool.getHeadSize() + headStart - dataInput.getFilePointer()));
-        dataInput.seek(headStart + stringPool.getHeadSize());
-        if (stringPool.getStringCount() > 0) {
-            List<Integer> stringOffsets = new ArrayList<Integer>();
-            for (int i = 0; i < stringPool.getStringCount(); i++) {
-                stringOffsets.add(dataInput.readInt());
+        stringPool.setType(tableBuffer.getShort(headStart));
+        stringPool.setHeadSize(tableBuffer.getShort(headStart + 2));
+        stringPool.setChunkSize(tableBuffer.getInt(headStart + 4));
+        stringPool.setStringCount(tableBuffer.getInt(headStart + 8));
+        stringPool.setStyleCount(tableBuffer.getInt(headStart + 12));
+        stringPool.setFlag(tableBuffer.getInt(headStart + 16));
+        stringPool.setStringStart(tableBuffer.getInt(headStart + 20));
+        stringPool.setStyleStart(tableBuffer.getInt(headStart + 24));
+        stringPool.setHeadPaddingSize(stringPool.getHeadSize() - 28);
+        Log.d(TAG, "stringPool type %d, head size %d, chunk size %d, string count %d, style count %d, flag %d, string start %d, style start %d", stringPool.getType(), stringPool.getHeadSize(), stringPool.getChunkSize(), stringPool.getStringCount(), stringPool.getStyleCount(), stringPool.getFlag(), stringPool.getStringStart(), stringPool.getStyleStart());
+        tableBuffer.position(headStart + stringPool.getHeadSize());
+        int stringCount = stringPool.getStringCount();
+        if (stringCount > 0) {
+            List<Integer> stringOffsets = new ArrayList<Integer>(stringCount);
+            for (int i = 0; i < stringCount; i++) {
+                stringOffsets.add(tableBuffer.getInt());
             }
             stringPool.setStringOffsets(stringOffsets);
         }
         if (stringPool.getStyleCount() > 0) {
-            List<Integer> styleOffsets = new ArrayList<Integer>();
+            List<Integer> styleOffsets = new ArrayList<Integer>(stringPool.getStyleCount());
             for (int i = 0; i < stringPool.getStyleCount(); i++) {
-                styleOffsets.add(dataInput.readInt());
+                styleOffsets.add(tableBuffer.getInt());
             }
             stringPool.setStyleOffsets(styleOffsets);
         }
-        dataInput.seek(headStart + stringPool.getStringStart());
-        if (stringPool.getStringCount() > 0) {
-            List<ByteBuffer> strings = new ArrayList<ByteBuffer>();
-            for (int i = 0; i < stringPool.getStringCount(); i++) {
-                byte[] buffer = null;
-                if (i < stringPool.getStringCount() - 1) {
-                    buffer = new byte[stringPool.getStringOffsets().get(i + 1) - stringPool.getStringOffsets().get(i)];
+        tableBuffer.position(headStart + stringPool.getStringStart());
+        if (stringCount > 0) {
+            List<ByteBuffer> strings = new ArrayList<ByteBuffer>(stringCount);
+            for (int i = 0; i < stringCount; i++) {
+                int length;
+                if (i < stringCount - 1) {
+                    length = stringPool.getStringOffsets().get(i + 1) - stringPool.getStringOffsets().get(i);
                 } else {
                     if (stringPool.getStyleCount() > 0) {
-                        buffer = new byte[stringPool.getStyleStart() - (stringPool.getStringOffsets().get(i) + stringPool.getStringStart())];
+                        length = stringPool.getStyleStart() - (stringPool.getStringOffsets().get(i) + stringPool.getStringStart());
                     } else {
-                        buffer = new byte[stringPool.getChunkSize() - stringPool.getStringStart() - stringPool.getStringOffsets().get(i)];
+                        length = stringPool.getChunkSize() - stringPool.getStringStart() - stringPool.getStringOffsets().get(i);
                     }
                 }
-                dataInput.read(buffer);
-                strings.add(ByteBuffer.allocate(buffer.length));
-                strings.get(i).order(ByteOrder.LITTLE_ENDIAN);
-                strings.get(i).clear();
-                strings.get(i).put(buffer);
+                // the strings are handed out through array(), so they are copied out of the table
+                ByteBuffer string = ByteBuffer.allocate(length);
+                string.order(ByteOrder.LITTLE_ENDIAN);
+                tableBuffer.get(string.array());
+                string.position(length);
+                strings.add(string);
             }
             stringPool.setStrings(strings);
         }
         if (stringPool.getStyleCount() > 0) {
             byte[] styleBytes = new byte[stringPool.getChunkSize() - stringPool.getStyleStart()];
-            dataInput.read(styleBytes);
+            tableBuffer.get(styleBytes);
             stringPool.setStyles(styleBytes);
         }
-        stringPool.setChunkPaddingSize((int) (stringPool.getChunkSize() + headStart - dataInput.getFilePointer()));
-        dataInput.seek(headStart + stringPool.getChunkSize());
+        stringPool.setChunkPaddingSize(stringPool.getChunkSize() + headStart - tableBuffer.position());
+        tableBuffer.position(headStart + stringPool.getChunkSize());
         return stringPool;
     }
 }
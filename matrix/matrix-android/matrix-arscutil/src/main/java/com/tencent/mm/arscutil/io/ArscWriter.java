@@ -17,20 +17,49 @@
 package com.tencent.mm.arscutil.io;
 
 import com.tencent.matrix.javalib.util.Log;
+import com.tencent.mm.arscutil.data.ArscConstants;
+import com.tencent.mm.arscutil.data.ResChunk;
+import com.tencent.mm.arscutil.data.ResConfig;
+import com.tencent.mm.arscutil.data.ResEntry;
+import com.tencent.mm.arscutil.data.ResPackage;
+import com.tencent.mm.arscutil.data.ResStringBlock;
 import com.tencent.mm.arscutil.data.ResTable;
+import com.tencent.mm.arscutil.data.ResType;
+import com.tencent.mm.arscutil.data.ResTypeSpec;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
 
 /**
  * Created by jinqiuchen on 18/7/29.
+ *
+ * The chunk sizes are computed in one bottom-up pass over the table, then the chunks are streamed
+ * through a reusable buffer, the bytes are the same as {@link ResTable#toBytes()} of a refreshed table.
+ *
+ * With {@link #setSparseEncoding(boolean)} a ResType is written as FLAG_SPARSE index/offset pairs whenever
+ * that is smaller than the dense offset array, which is only understood by Android O and above.
  */
 
 public class ArscWriter {
 
     private static final String TAG = "ArscUtil.ArscWriter";
 
-    LittleEndianOutputStream dataOutput;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final int MAX_SPARSE_ENTRY_DATA_SIZE = 0xFFFF * 4;  // the offset of a sparse entry is stored divided by 4 in 16 bits
+
+    private final FileOutputStream outputStream;
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+
+    private boolean sparseEncoding;
+    private int sparseTypeCount;
+    private int sparseSavedSize;
 
     public ArscWriter(String arscFile) throws IOException {
         File file = new File(arscFile);
@@ -40,11 +69,429 @@ public class ArscWriter {
         }
         file.getParentFile().mkdirs();
         file.createNewFile();
-        dataOutput = new LittleEndianOutputStream(arscFile);
+        outputStream = new FileOutputStream(file);
+        channel = outputStream.getChannel();
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * The sparse encoding needs minSdkVersion 26, it is off by default.
+     */
+    public void setSparseEncoding(boolean sparseEncoding) {
+        this.sparseEncoding = sparseEncoding;
+    }
+
+    public int getSparseTypeCount() {
+        return sparseTypeCount;
+    }
+
+    /**
+     * @return bytes saved by the sparse encoding compared with writing every type dense
+     */
+    public int getSparseSavedSize() {
+        return sparseSavedSize;
     }
 
     public void writeResTable(ResTable resTable) throws Exception {
-        dataOutput.write(resTable.toBytes());
-        dataOutput.close();
+        try {
+            sparseTypeCount = 0;
+            sparseSavedSize = 0;
+            int denseSize = computeChunkSize(resTable);
+            if (sparseEncoding) {
+                int sparseSize = computeChunkSize(resTable, true, true);
+                writeTable(resTable);
+                // the model stays dense, only the output is sparse
+                computeChunkSize(resTable, false, true);
+                sparseSavedSize = denseSize - sparseSize;
+                Log.i(TAG, "%d types written sparse, %d -> %d bytes, %d bytes saved", sparseTypeCount, denseSize, sparseSize, sparseSavedSize);
+            } else {
+                writeTable(resTable);
+            }
+            flush();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Updates the chunk sizes of the table and all its chunks without encoding them.
+     *
+     * @return the size of the table
+     */
+    public static int computeChunkSize(ResTable resTable) {
+        return computeChunkSize(resTable, false, true);
+    }
+
+    /**
+     * Measures the chunk sizes the same way as {@link #computeChunkSize(ResTable)} but leaves the table unchanged.
+     *
+     * @return the size of the table
+     */
+    public static int measureChunkSize(ResTable resTable) {
+        return computeChunkSize(resTable, false, false);
+    }
+
+    public static int measureChunkSize(ResPackage resPackage) {
+        return computeChunkSize(resPackage, false, false);
+    }
+
+    public static int measureChunkSize(ResStringBlock stringBlock) {
+        return computeChunkSize(stringBlock, false);
+    }
+
+    public static int measureChunkSize(ResTypeSpec resTypeSpec) {
+        return computeChunkSize(resTypeSpec, false);
+    }
+
+    /**
+     * @return 0 for a type without any entry left, it is not written
+     */
+    public static int measureChunkSize(ResType resType) {
+        return computeChunkSize(resType, false, false);
+    }
+
+    private static int computeChunkSize(ResTable resTable, boolean sparse, boolean update) {
+        int chunkSize = resTable.getHeadSize();
+        if (resTable.getGlobalStringPool() != null) {
+            chunkSize += computeChunkSize(resTable.getGlobalStringPool(), update);
+        }
+        if (resTable.getPackages() != null) {
+            for (ResPackage resPackage : resTable.getPackages()) {
+                chunkSize += computeChunkSize(resPackage, sparse, update);
+            }
+        }
+        chunkSize += resTable.getChunkPaddingSize();
+        if (update) {
+            resTable.setChunkSize(chunkSize);
+        }
+        return chunkSize;
+    }
+
+    private static int computeChunkSize(ResPackage resPackage, boolean sparse, boolean update) {
+        int chunkSize = resPackage.getHeadSize();
+        if (resPackage.getResTypePool() != null) {
+            chunkSize += computeChunkSize(resPackage.getResTypePool(), update);
+        }
+        if (resPackage.getResNamePool() != null) {
+            chunkSize += computeChunkSize(resPackage.getResNamePool(), update);
+        }
+        if (resPackage.getResTypeArray() != null) {
+            for (ResChunk resChunk : resPackage.getResTypeArray()) {
+                if (resChunk.getType() == ArscConstants.RES_TABLE_TYPE_TYPE) {
+                    chunkSize += computeChunkSize((ResType) resChunk, sparse, update);
+                } else if (resChunk.getType() == ArscConstants.RES_TABLE_TYPE_SPEC_TYPE) {
+                    chunkSize += computeChunkSize((ResTypeSpec) resChunk, update);
+                }
+            }
+        }
+        chunkSize += resPackage.getChunkPaddingSize();
+        if (update) {
+            resPackage.setChunkSize(chunkSize);
+        }
+        return chunkSize;
+    }
+
+    private static int computeChunkSize(ResStringBlock stringBlock, boolean update) {
+        int chunkSize = stringBlock.getHeadSize();
+        if (stringBlock.getStringOffsets() != null) {
+            chunkSize += stringBlock.getStringOffsets().size() * 4;
+        }
+        if (stringBlock.getStyleOffsets() != null) {
+            chunkSize += stringBlock.getStyleOffsets().size() * 4;
+        }
+        if (stringBlock.getStrings() != null) {
+            for (ByteBuffer string : stringBlock.getStrings()) {
+                chunkSize += string.array().length;
+            }
+        }
+        if (stringBlock.getStyles() != null) {
+            chunkSize += stringBlock.getStyles().length;
+        }
+        chunkSize += stringBlock.getChunkPaddingSize();
+        if (update) {
+            stringBlock.setChunkSize(chunkSize);
+        }
+        return chunkSize;
+    }
+
+    private static int computeChunkSize(ResTypeSpec resTypeSpec, boolean update) {
+        int chunkSize = resTypeSpec.getHeadSize();
+        if (resTypeSpec.getConfigFlags() != null) {
+            chunkSize += resTypeSpec.getConfigFlags().length;
+        }
+        chunkSize += resTypeSpec.getChunkPaddingSize();
+        if (update) {
+            resTypeSpec.setChunkSize(chunkSize);
+        }
+        return chunkSize;
+    }
+
+    /*
+     *  a type without any entry left is dropped, the same as ResType.refresh()
+     */
+    private static int computeChunkSize(ResType resType, boolean sparse, boolean update) {
+        int chunkSize = resType.getHeadSize();
+        int realEntryCount = 0;
+        int entryDataSize = 0;
+        if (resType.getEntryTable() != null) {
+            for (ResEntry entry : resType.getEntryTable()) {
+                if (entry != null) {
+                    realEntryCount++;
+                    entryDataSize += entry.getEncodedSize();
+                }
+            }
+        }
+        chunkSize += entryDataSize;
+        if (sparse && sparseEntryCount(resType) > 0) {
+            chunkSize += realEntryCount * 4;
+        } else if (resType.getEntryOffsets() != null) {
+            chunkSize += resType.getEntryOffsets().size() * 4;
+        }
+        if (realEntryCount == 0) {
+            if (update) {
+                resType.setEntryCount(0);
+            }
+            chunkSize = 0;
+        } else {
+            chunkSize += resType.getChunkPaddingSize();
+        }
+        if (update) {
+            resType.setChunkSize(chunkSize);
+        }
+        return chunkSize;
+    }
+
+    /*
+     *  the number of index/offset pairs if the type can be written sparse and that is smaller, otherwise -1
+     */
+    private static int sparseEntryCount(ResType resType) {
+        List<Integer> entryOffsets = resType.getEntryOffsets();
+        List<ResEntry> entryTable = resType.getEntryTable();
+        if (entryOffsets == null || entryTable == null || entryOffsets.size() > 0x10000) {
+            return -1;
+        }
+        int realEntryCount = 0;
+        int offset = 0;
+        for (ResEntry entry : entryTable) {
+            if (entry == null) {
+                continue;
+            }
+            if (offset > MAX_SPARSE_ENTRY_DATA_SIZE) {
+                return -1;
+            }
+            int size = entry.getEncodedSize();
+            if (size % 4 != 0) {
+                return -1;
+            }
+            realEntryCount++;
+            offset += size;
+        }
+        return realEntryCount > 0 && realEntryCount < entryOffsets.size() ? realEntryCount : -1;
+    }
+
+    private void writeTable(ResTable resTable) throws IOException {
+        ensure(resTable.getHeadSize());
+        buffer.putShort(resTable.getType());
+        buffer.putShort(resTable.getHeadSize());
+        buffer.putInt(resTable.getChunkSize());
+        buffer.putInt(resTable.getPackageCount());
+        putZero(resTable.getHeadPaddingSize());
+        if (resTable.getGlobalStringPool() != null) {
+            writeStringBlock(resTable.getGlobalStringPool());
+        }
+        if (resTable.getPackages() != null) {
+            for (ResPackage resPackage : resTable.getPackages()) {
+                writePackage(resPackage);
+            }
+        }
+        putZero(resTable.getChunkPaddingSize());
+    }
+
+    private void writePackage(ResPackage resPackage) throws IOException {
+        ensure(resPackage.getHeadSize());
+        buffer.putShort(resPackage.getType());
+        buffer.putShort(resPackage.getHeadSize());
+        buffer.putInt(resPackage.getChunkSize());
+        buffer.putInt(resPackage.getId());
+        buffer.put(resPackage.getName());
+        buffer.putInt(resPackage.getResTypePoolOffset());
+        buffer.putInt(resPackage.getLastPublicType());
+        buffer.putInt(resPackage.getResNamePoolOffset());
+        buffer.putInt(resPackage.getLastPublicName());
+        putZero(resPackage.getHeadPaddingSize());
+        if (resPackage.getResTypePool() != null) {
+            writeStringBlock(resPackage.getResTypePool());
+        }
+        if (resPackage.getResNamePool() != null) {
+            writeStringBlock(resPackage.getResNamePool());
+        }
+        if (resPackage.getResTypeArray() != null) {
+            for (ResChunk resChunk : resPackage.getResTypeArray()) {
+                if (resChunk.getChunkSize() <= 0) {
+                    continue;
+                }
+                if (resChunk.getType() == ArscConstants.RES_TABLE_TYPE_TYPE) {
+                    writeResType((ResType) resChunk);
+                } else if (resChunk.getType() == ArscConstants.RES_TABLE_TYPE_SPEC_TYPE) {
+                    writeResTypeSpec((ResTypeSpec) resChunk);
+                }
+            }
+        }
+        putZero(resPackage.getChunkPaddingSize());
+    }
+
+    private void writeStringBlock(ResStringBlock stringBlock) throws IOException {
+        ensure(stringBlock.getHeadSize());
+        buffer.putShort(stringBlock.getType());
+        buffer.putShort(stringBlock.getHeadSize());
+        buffer.putInt(stringBlock.getChunkSize());
+        buffer.putInt(stringBlock.getStringCount());
+        buffer.putInt(stringBlock.getStyleCount());
+        buffer.putInt(stringBlock.getFlag());
+        buffer.putInt(stringBlock.getStringStart());
+        buffer.putInt(stringBlock.getStyleStart());
+        putZero(stringBlock.getHeadPaddingSize());
+        putInts(stringBlock.getStringOffsets());
+        putInts(stringBlock.getStyleOffsets());
+        if (stringBlock.getStrings() != null) {
+            for (ByteBuffer string : stringBlock.getStrings()) {
+                putBytes(string.array());
+            }
+        }
+        if (stringBlock.getStyles() != null) {
+            putBytes(stringBlock.getStyles());
+        }
+        putZero(stringBlock.getChunkPaddingSize());
+    }
+
+    private void writeResTypeSpec(ResTypeSpec resTypeSpec) throws IOException {
+        ensure(16);
+        buffer.putShort(resTypeSpec.getType());
+        buffer.putShort(resTypeSpec.getHeadSize());
+        buffer.putInt(resTypeSpec.getChunkSize());
+        buffer.put(resTypeSpec.getId());
+        buffer.put(resTypeSpec.getReserved0());
+        buffer.putShort(resTypeSpec.getReserved1());
+        buffer.putInt(resTypeSpec.getEntryCount());
+        putZero(resTypeSpec.getHeadPaddingSize());
+        if (resTypeSpec.getConfigFlags() != null) {
+            putBytes(resTypeSpec.getConfigFlags());
+        }
+        putZero(resTypeSpec.getChunkPaddingSize());
+    }
+
+    private void writeResType(ResType resType) throws IOException {
+        int sparseEntryCount = sparseEncoding ? sparseEntryCount(resType) : -1;
+        boolean sparse = sparseEntryCount > 0;
+        ResConfig resConfig = resType.getResConfigFlags();
+        ensure(20 + (resConfig != null ? resConfig.getSize() : 0));
+        buffer.putShort(resType.getType());
+        buffer.putShort(resType.getHeadSize());
+        buffer.putInt(resType.getChunkSize());
+        buffer.put(resType.getId());
+        if (sparse) {
+            buffer.put((byte) (resType.getReserved0() | ArscConstants.RES_TABLE_TYPE_FLAG_SPARSE));
+            buffer.putShort(resType.getReserved1());
+            buffer.putInt(sparseEntryCount);
+            buffer.putInt(resType.getHeadSize() + sparseEntryCount * 4);
+        } else {
+            buffer.put(resType.getReserved0());
+            buffer.putShort(resType.getReserved1());
+            buffer.putInt(resType.getEntryCount());
+            buffer.putInt(resType.getEntryTableOffset());
+        }
+        if (resConfig != null) {
+            int start = buffer.position();
+            buffer.putInt(resConfig.getSize());
+            if (resConfig.getContent() != null) {
+                buffer.put(resConfig.getContent());
+            }
+            fillZero(start + resConfig.getSize());
+        }
+        putZero(resType.getHeadPaddingSize());
+        if (sparse) {
+            int offset = 0;
+            for (int i = 0; i < resType.getEntryTable().size(); i++) {
+                ResEntry entry = resType.getEntryTable().get(i);
+                if (entry != null) {
+                    ensure(4);
+                    buffer.putShort((short) i);
+                    buffer.putShort((short) (offset / 4));
+                    offset += entry.getEncodedSize();
+                }
+            }
+            sparseTypeCount++;
+        } else {
+            putInts(resType.getEntryOffsets());
+        }
+        if (resType.getEntryTable() != null) {
+            for (ResEntry entry : resType.getEntryTable()) {
+                if (entry != null) {
+                    ensure(entry.getEncodedSize());
+                    entry.writeTo(buffer);
+                }
+            }
+        }
+        putZero(resType.getChunkPaddingSize());
+    }
+
+    private void putInts(List<Integer> values) throws IOException {
+        if (values == null) {
+            return;
+        }
+        for (int value : values) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+    }
+
+    /*
+     *  large arrays skip the buffer and go to the channel directly
+     */
+    private void putBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.capacity() / 2) {
+            flush();
+            ByteBuffer data = ByteBuffer.wrap(bytes);
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } else {
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private void putZero(int count) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        ensure(count);
+        fillZero(buffer.position() + count);
+    }
+
+    private void fillZero(int end) {
+        while (buffer.position() < end) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private void ensure(int count) throws IOException {
+        if (buffer.remaining() >= count) {
+            return;
+        }
+        flush();
+        if (buffer.capacity() < count) {
+            buffer = ByteBuffer.allocate(count);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
     }
 }
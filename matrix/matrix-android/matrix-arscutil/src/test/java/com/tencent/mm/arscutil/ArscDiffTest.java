@@ -0,0 +1,128 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.mm.arscutil;
+
+import com.tencent.mm.arscutil.data.ResTable;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Diffs generated tables which differ by removed entries, added entries and an added config.
+ */
+public class ArscDiffTest {
+
+    @Test
+    public void diffLeavesBothTablesUnchanged() throws Exception {
+        for (int seed = 0; seed < 10; seed++) {
+            ResTable oldTable = TestTables.read(TestTables.buildTable(oldTypes(seed)));
+            ResTable newTable = TestTables.read(TestTables.buildTable(newTypes(seed)));
+            String oldDump = TestTables.dump(oldTable);
+            String newDump = TestTables.dump(newTable);
+
+            String format = ArscDiff.diff(oldTable, newTable).format(-1);
+            assertEquals("seed " + seed, oldDump, TestTables.dump(oldTable));
+            assertEquals("seed " + seed, newDump, TestTables.dump(newTable));
+            assertEquals("seed " + seed, format, ArscDiff.diff(oldTable, newTable).format(-1));
+        }
+    }
+
+    @Test
+    public void diffFindsTheChangedEntriesAndConfigs() throws Exception {
+        for (int seed = 0; seed < 10; seed++) {
+            List<TestTables.TypeDef> oldTypes = oldTypes(seed);
+            List<TestTables.TypeDef> newTypes = newTypes(seed);
+            byte[] oldArsc = TestTables.buildTable(oldTypes);
+            byte[] newArsc = TestTables.buildTable(newTypes);
+            ArscDiff arscDiff = ArscDiff.diff(TestTables.read(oldArsc), TestTables.read(newArsc));
+            assertEquals("seed " + seed, oldArsc.length, arscDiff.getOldSize());
+            assertEquals("seed " + seed, newArsc.length, arscDiff.getNewSize());
+            assertEquals("seed " + seed, 1, arscDiff.getPackages().size());
+
+            List<ArscDiff.TypeDiff> typeDiffs = arscDiff.getPackages().get(0).getTypes();
+            assertEquals("seed " + seed, TestTables.TYPE_NAMES.length, typeDiffs.size());
+            for (int t = 0; t < typeDiffs.size(); t++) {
+                ArscDiff.TypeDiff typeDiff = typeDiffs.get(t);
+                Set<String> oldKeys = keys(oldTypes.get(t));
+                Set<String> newKeys = keys(newTypes.get(t));
+                Set<String> added = new HashSet<>(newKeys);
+                added.removeAll(oldKeys);
+                Set<String> removed = new HashSet<>(oldKeys);
+                removed.removeAll(newKeys);
+                String message = "seed " + seed + " " + typeDiff.getName();
+                assertEquals(message, TestTables.TYPE_NAMES[t], typeDiff.getName());
+                assertEquals(message, oldKeys.size(), typeDiff.getOldEntryCount());
+                assertEquals(message, newKeys.size(), typeDiff.getNewEntryCount());
+                assertEquals(message, added, new HashSet<>(typeDiff.getAddedEntries()));
+                assertEquals(message, removed, new HashSet<>(typeDiff.getRemovedEntries()));
+                assertEquals(message, newTypes.get(t).configs.size() - oldTypes.get(t).configs.size(), typeDiff.getAddedConfigCount());
+                assertEquals(message, 0, typeDiff.getRemovedConfigCount());
+            }
+        }
+    }
+
+    private static List<TestTables.TypeDef> oldTypes(int seed) {
+        Random random = new Random(seed);
+        List<TestTables.TypeDef> types = new ArrayList<>();
+        for (String name : TestTables.TYPE_NAMES) {
+            types.add(new TestTables.TypeDef(name, random, 1 + random.nextInt(60), 1 + random.nextInt(3), random.nextInt(4) != 0));
+        }
+        return types;
+    }
+
+    /*
+     *  the layouts lose every third entry, the holes of the dimens are filled and the strings get one more config
+     */
+    private static List<TestTables.TypeDef> newTypes(int seed) {
+        List<TestTables.TypeDef> types = oldTypes(seed);
+        for (byte[][] entries : types.get(2).configs) {
+            for (int i = 1; i < entries.length; i += 3) {
+                entries[i] = null;
+            }
+        }
+        for (byte[][] entries : types.get(4).configs) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] == null) {
+                    entries[i] = TestTables.simpleEntry(i, i);
+                }
+            }
+        }
+        List<byte[][]> stringConfigs = types.get(3).configs;
+        stringConfigs.add(Arrays.copyOf(stringConfigs.get(0), stringConfigs.get(0).length));
+        return types;
+    }
+
+    private static Set<String> keys(TestTables.TypeDef type) {
+        Set<String> keys = new HashSet<>();
+        for (byte[][] entries : type.configs) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] != null) {
+                    keys.add("k" + i);
+                }
+            }
+        }
+        return keys;
+    }
+}
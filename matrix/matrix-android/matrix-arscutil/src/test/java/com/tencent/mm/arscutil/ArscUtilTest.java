@@ -0,0 +1,216 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.mm.arscutil;
+
+import com.tencent.mm.arscutil.data.ArscConstants;
+import com.tencent.mm.arscutil.data.ResChunk;
+import com.tencent.mm.arscutil.data.ResEntry;
+import com.tencent.mm.arscutil.data.ResMapValue;
+import com.tencent.mm.arscutil.data.ResPackage;
+import com.tencent.mm.arscutil.data.ResStringBlock;
+import com.tencent.mm.arscutil.data.ResTable;
+import com.tencent.mm.arscutil.data.ResType;
+import com.tencent.mm.arscutil.data.ResValue;
+import com.tencent.mm.arscutil.io.ArscWriter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Removes resources from generated tables and compacts their string pools.
+ */
+public class ArscUtilTest {
+
+    private static final int LAYOUT_TYPE_ID = 3;
+
+    private final List<File> tempFiles = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (File file : tempFiles) {
+            file.delete();
+        }
+        tempFiles.clear();
+    }
+
+    /*
+     *  the ids include duplicates, entries out of range, a missing type and a missing package
+     */
+    @Test
+    public void batchRemovalMatchesSerialRemoval() throws Exception {
+        for (int seed = 0; seed < 30; seed++) {
+            Random random = new Random(seed);
+            byte[] arsc = tableWithStrings(random);
+            List<Integer> resourceIds = randomIds(random, 40);
+            resourceIds.add(resourceIds.get(0));
+            resourceIds.add(0x7f000000 | (TestTables.TYPE_NAMES.length + 1) << 16);
+            resourceIds.add(0x01000000 | LAYOUT_TYPE_ID << 16);
+
+            ResTable serial = TestTables.read(arsc);
+            for (int resourceId : resourceIds) {
+                ArscUtil.removeResource(serial, resourceId, String.valueOf(resourceId));
+            }
+            ResTable batch = TestTables.read(arsc);
+            ArscUtil.removeResources(batch, resourceIds);
+            assertEquals("seed " + seed, TestTables.dump(serial), TestTables.dump(batch));
+            assertArrayEquals("seed " + seed, write(serial), write(batch));
+        }
+    }
+
+    /*
+     *  every entry left resolves to the same key and value strings, the pools shrink by what is reported saved
+     */
+    @Test
+    public void compactKeepsTheStringsOfTheEntriesLeft() throws Exception {
+        int savedTotal = 0;
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            ResTable resTable = TestTables.read(tableWithStrings(random));
+            ArscUtil.removeResources(resTable, randomIds(random, 30));
+            String before = strings(resTable);
+            byte[] written = write(resTable);
+
+            int saved = ArscUtil.compactStringPools(resTable);
+            byte[] compacted = write(resTable);
+            assertTrue("seed " + seed, saved >= 0);
+            assertEquals("seed " + seed, written.length - compacted.length, saved);
+            assertEquals("seed " + seed, compacted.length, resTable.getChunkSize());
+            assertEquals("seed " + seed, before, strings(resTable));
+            assertEquals("seed " + seed, before, strings(TestTables.read(compacted)));
+            savedTotal += saved;
+        }
+        assertTrue(savedTotal > 0);
+    }
+
+    @Test
+    public void compactDropsTheStringsOfRemovedEntries() throws Exception {
+        ResTable resTable = TestTables.read(tableWithStrings(new Random(3)));
+        List<Integer> resourceIds = new ArrayList<>();
+        for (int entryId = 0; entryId < 60; entryId++) {
+            resourceIds.add(0x7f000000 | LAYOUT_TYPE_ID << 16 | entryId);
+        }
+        ArscUtil.removeResources(resTable, resourceIds);
+        String before = strings(resTable);
+        int originalSize = write(resTable).length;
+
+        int saved = ArscUtil.compactStringPools(resTable);
+        assertEquals(0, resTable.getGlobalStringPool().getStringCount());
+        assertTrue(saved > 0);
+        byte[] compacted = write(resTable);
+        assertEquals(originalSize - compacted.length, saved);
+        assertEquals(before, strings(TestTables.read(compacted)));
+    }
+
+    @Test
+    public void compactTwiceSavesNothing() throws Exception {
+        Random random = new Random(5);
+        ResTable resTable = TestTables.read(tableWithStrings(random));
+        ArscUtil.removeResources(resTable, randomIds(random, 30));
+        ArscUtil.compactStringPools(resTable);
+        byte[] compacted = write(resTable);
+        assertEquals(0, ArscUtil.compactStringPools(resTable));
+        assertEquals(compacted.length, write(resTable).length);
+    }
+
+    /*
+     *  the layouts refer to the global pool, the other types to keys only
+     */
+    private static byte[] tableWithStrings(Random random) throws IOException {
+        List<TestTables.TypeDef> types = new ArrayList<>();
+        for (String name : TestTables.TYPE_NAMES) {
+            types.add(new TestTables.TypeDef(name, random, 1 + random.nextInt(60), 1 + random.nextInt(3), random.nextInt(4) != 0));
+        }
+        for (byte[][] entries : types.get(LAYOUT_TYPE_ID - 1).configs) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] != null) {
+                    entries[i] = TestTables.stringEntry(i, random.nextInt(TestTables.GLOBAL_STRING_COUNT));
+                }
+            }
+        }
+        return TestTables.buildTable(types);
+    }
+
+    private static List<Integer> randomIds(Random random, int count) {
+        List<Integer> resourceIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            resourceIds.add(0x7f000000 | (1 + random.nextInt(TestTables.TYPE_NAMES.length)) << 16 | random.nextInt(60));
+        }
+        return resourceIds;
+    }
+
+    /*
+     *  the key and the string values of every entry, in the order of the types and their entries
+     */
+    private static String strings(ResTable resTable) {
+        StringBuilder builder = new StringBuilder();
+        ResStringBlock globalPool = resTable.getGlobalStringPool();
+        for (ResPackage resPackage : resTable.getPackages()) {
+            for (ResChunk resChunk : resPackage.getResTypeArray()) {
+                if (!(resChunk instanceof ResType)) {
+                    continue;
+                }
+                ResType resType = (ResType) resChunk;
+                for (int i = 0; i < resType.getEntryTable().size(); i++) {
+                    ResEntry entry = resType.getEntryTable().get(i);
+                    if (entry == null) {
+                        continue;
+                    }
+                    builder.append(resType.getId()).append('/').append(i).append(' ').append(resPackage.getResNamePool().getString(entry.getStringPoolIndex()));
+                    if ((entry.getFlag() & ArscConstants.RES_TABLE_ENTRY_FLAG_COMPLEX) == 0) {
+                        appendValue(builder, globalPool, entry.getResValue());
+                    } else if (entry.getResMapValues() != null) {
+                        for (ResMapValue mapValue : entry.getResMapValues()) {
+                            appendValue(builder, globalPool, mapValue.getResValue());
+                        }
+                    }
+                    builder.append('\n');
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void appendValue(StringBuilder builder, ResStringBlock globalPool, ResValue value) {
+        ByteBuffer content = ByteBuffer.wrap(value.getContent()).order(ByteOrder.LITTLE_ENDIAN);
+        builder.append(' ');
+        if (content.get(1) == ArscConstants.RES_VALUE_DATA_TYPE_STRING) {
+            builder.append('"').append(globalPool.getString(content.getInt(2))).append('"');
+        } else {
+            builder.append(content.getInt(2));
+        }
+    }
+
+    private byte[] write(ResTable resTable) throws Exception {
+        File file = File.createTempFile("arsc", ".arsc");
+        tempFiles.add(file);
+        new ArscWriter(file.getAbsolutePath()).writeResTable(resTable);
+        return Files.readAllBytes(file.toPath());
+    }
+}
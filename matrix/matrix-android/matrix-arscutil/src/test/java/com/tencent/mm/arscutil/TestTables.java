@@ -0,0 +1,262 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.mm.arscutil;
+
+import com.tencent.mm.arscutil.data.ArscConstants;
+import com.tencent.mm.arscutil.data.ResChunk;
+import com.tencent.mm.arscutil.data.ResEntry;
+import com.tencent.mm.arscutil.data.ResPackage;
+import com.tencent.mm.arscutil.data.ResTable;
+import com.tencent.mm.arscutil.data.ResType;
+import com.tencent.mm.arscutil.data.ResTypeSpec;
+import com.tencent.mm.arscutil.io.ArscReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generated resource tables shared by the tests, one package 0x7f whose types get ids from 1 in the order given.
+ */
+public final class TestTables {
+
+    private static final int RES_STRING_POOL_TYPE = 0x0001;
+    private static final int RES_TABLE_TYPE = 0x0002;
+    private static final int RES_TABLE_PACKAGE_TYPE = 0x0200;
+    private static final int PACKAGE_HEADER_SIZE = 288;
+    private static final int CONFIG_SIZE = 64;
+    private static final int TYPE_HEADER_SIZE = 20 + CONFIG_SIZE;
+    private static final int TYPE_DATA_INT_DEC = 0x10;
+
+    public static final String[] TYPE_NAMES = {"attr", "drawable", "layout", "string", "dimen", "style"};
+    public static final int GLOBAL_STRING_COUNT = 8;
+
+    private TestTables() {
+    }
+
+    public static ResTable read(byte[] arsc) throws IOException {
+        return new ArscReader(ByteBuffer.wrap(arsc)).readResourceTable();
+    }
+
+    /*
+     *  everything a reader of the table sees: the chunk layout, the configs and every entry as encoded
+     */
+    public static String dump(ResTable resTable) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("table ").append(resTable.getChunkSize()).append(' ').append(resTable.getGlobalStringPool().getStringCount()).append('\n');
+        for (ResPackage resPackage : resTable.getPackages()) {
+            builder.append("package ").append(resPackage.getId()).append(' ').append(resPackage.getChunkSize()).append('\n');
+            for (ResChunk resChunk : resPackage.getResTypeArray()) {
+                if (resChunk instanceof ResTypeSpec) {
+                    ResTypeSpec spec = (ResTypeSpec) resChunk;
+                    builder.append("spec ").append(spec.getId()).append(' ').append(spec.getEntryCount()).append(' ').append(Arrays.toString(spec.getConfigFlags())).append('\n');
+                } else if (resChunk instanceof ResType) {
+                    ResType type = (ResType) resChunk;
+                    builder.append("type ").append(type.getId()).append(' ').append(type.getReserved0()).append(' ').append(type.getEntryCount())
+                        .append(' ').append(type.getEntryTableOffset()).append(' ').append(type.getChunkSize())
+                        .append(' ').append(Arrays.toString(type.getResConfigFlags().getContent())).append('\n');
+                    builder.append(type.getEntryOffsets()).append('\n');
+                    for (ResEntry entry : type.getEntryTable()) {
+                        builder.append(entry == null ? "-" : Arrays.toString(entry.toBytes())).append('\n');
+                    }
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    public static final class TypeDef {
+        public final String name;
+        public final int entryCount;
+        public final List<byte[][]> configs = new ArrayList<>();
+
+        public TypeDef(String name, Random random, int entryCount, int configCount, boolean holes) {
+            this.name = name;
+            this.entryCount = entryCount;
+            boolean complex = "style".equals(name);
+            for (int c = 0; c < configCount; c++) {
+                byte[][] entries = new byte[entryCount][];
+                for (int i = 0; i < entryCount; i++) {
+                    if (holes && random.nextInt(3) == 0) {
+                        continue;
+                    }
+                    entries[i] = complex ? complexEntry(i, random.nextInt(4), random) : simpleEntry(i, random.nextInt());
+                }
+                if (entries[0] == null) {
+                    entries[0] = simpleEntry(0, c);
+                }
+                configs.add(entries);
+            }
+        }
+    }
+
+    /*
+     *  a table of one package, every type gets random entries in up to three configs, some of them with holes
+     */
+    public static byte[] generateTable(Random random, int maxEntries) throws IOException {
+        List<TypeDef> types = new ArrayList<>();
+        for (String name : TYPE_NAMES) {
+            types.add(new TypeDef(name, random, 1 + random.nextInt(maxEntries), 1 + random.nextInt(3), random.nextInt(4) != 0));
+        }
+        return buildTable(types);
+    }
+
+    public static byte[] buildTable(List<TypeDef> types) throws IOException {
+        List<String> typeNames = new ArrayList<>();
+        int keyCount = 0;
+        for (TypeDef type : types) {
+            typeNames.add(type.name);
+            keyCount = Math.max(keyCount, type.entryCount);
+        }
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < keyCount; i++) {
+            keys.add("k" + i);
+        }
+        byte[] typePool = stringPool(typeNames);
+        byte[] keyPool = stringPool(keys);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(typePool);
+        body.write(keyPool);
+        for (int t = 0; t < types.size(); t++) {
+            TypeDef type = types.get(t);
+            ByteBuffer spec = newBuffer(16 + type.entryCount * 4);
+            spec.putShort(ArscConstants.RES_TABLE_TYPE_SPEC_TYPE).putShort((short) 16).putInt(spec.capacity());
+            spec.put((byte) (t + 1)).put((byte) 0).putShort((short) 0).putInt(type.entryCount);
+            body.write(spec.array());
+            for (int c = 0; c < type.configs.size(); c++) {
+                byte[][] entries = type.configs.get(c);
+                int dataSize = 0;
+                for (byte[] entry : entries) {
+                    dataSize += entry == null ? 0 : entry.length;
+                }
+                ByteBuffer chunk = newBuffer(TYPE_HEADER_SIZE + entries.length * 4 + dataSize);
+                chunk.putShort(ArscConstants.RES_TABLE_TYPE_TYPE).putShort((short) TYPE_HEADER_SIZE).putInt(chunk.capacity());
+                chunk.put((byte) (t + 1)).put((byte) 0).putShort((short) 0).putInt(entries.length).putInt(TYPE_HEADER_SIZE + entries.length * 4);
+                chunk.putInt(CONFIG_SIZE);
+                byte[] config = new byte[CONFIG_SIZE - 4];
+                if (c > 0) {
+                    config[4] = (byte) ('a' + c);
+                    config[5] = (byte) ('a' + c);
+                }
+                chunk.put(config);
+                int offset = 0;
+                for (byte[] entry : entries) {
+                    chunk.putInt(entry == null ? ArscConstants.NO_ENTRY_INDEX : offset);
+                    offset += entry == null ? 0 : entry.length;
+                }
+                for (byte[] entry : entries) {
+                    if (entry != null) {
+                        chunk.put(entry);
+                    }
+                }
+                body.write(chunk.array());
+            }
+        }
+
+        ByteBuffer packageHeader = newBuffer(PACKAGE_HEADER_SIZE);
+        packageHeader.putShort((short) RES_TABLE_PACKAGE_TYPE).putShort((short) PACKAGE_HEADER_SIZE).putInt(PACKAGE_HEADER_SIZE + body.size());
+        packageHeader.putInt(0x7f);
+        byte[] name = Arrays.copyOf("com.tencent.matrix.test".getBytes(StandardCharsets.UTF_16LE), 256);
+        packageHeader.put(name);
+        packageHeader.putInt(PACKAGE_HEADER_SIZE).putInt(typeNames.size());
+        packageHeader.putInt(PACKAGE_HEADER_SIZE + typePool.length).putInt(keys.size());
+
+        List<String> globalStrings = new ArrayList<>();
+        for (int i = 0; i < GLOBAL_STRING_COUNT; i++) {
+            globalStrings.add("res/layout/l" + i + ".xml");
+        }
+        byte[] globalPool = stringPool(globalStrings);
+        ByteBuffer tableHeader = newBuffer(12);
+        tableHeader.putShort((short) RES_TABLE_TYPE).putShort((short) 12).putInt(12 + globalPool.length + PACKAGE_HEADER_SIZE + body.size()).putInt(1);
+
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        table.write(tableHeader.array());
+        table.write(globalPool);
+        table.write(packageHeader.array());
+        table.write(body.toByteArray());
+        return table.toByteArray();
+    }
+
+    public static byte[] simpleEntry(int key, int data) {
+        ByteBuffer entry = newBuffer(16);
+        entry.putShort((short) 8).putShort((short) 0).putInt(key);
+        entry.putShort((short) 8).put((byte) 0).put((byte) TYPE_DATA_INT_DEC).putInt(data);
+        return entry.array();
+    }
+
+    /*
+     *  a simple entry whose value is the string at the index of the global pool
+     */
+    public static byte[] stringEntry(int key, int globalIndex) {
+        ByteBuffer entry = newBuffer(16);
+        entry.putShort((short) 8).putShort((short) 0).putInt(key);
+        entry.putShort((short) 8).put((byte) 0).put((byte) ArscConstants.RES_VALUE_DATA_TYPE_STRING).putInt(globalIndex);
+        return entry.array();
+    }
+
+    public static byte[] complexEntry(int key, int pairCount, Random random) {
+        ByteBuffer entry = newBuffer(16 + pairCount * 12);
+        entry.putShort((short) 16).putShort(ArscConstants.RES_TABLE_ENTRY_FLAG_COMPLEX).putInt(key).putInt(0).putInt(pairCount);
+        for (int i = 0; i < pairCount; i++) {
+            entry.putInt(0x01010000 + i);
+            entry.putShort((short) 8).put((byte) 0).put((byte) TYPE_DATA_INT_DEC).putInt(random.nextInt());
+        }
+        return entry.array();
+    }
+
+    /*
+     *  an UTF-8 pool of short strings, padded to 4 bytes
+     */
+    public static byte[] stringPool(List<String> strings) {
+        List<byte[]> encoded = new ArrayList<>();
+        int dataSize = 0;
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            byte[] item = new byte[bytes.length + 3];
+            item[0] = (byte) string.length();
+            item[1] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, item, 2, bytes.length);
+            encoded.add(item);
+            dataSize += item.length;
+        }
+        int stringStart = 28 + strings.size() * 4;
+        ByteBuffer pool = newBuffer((stringStart + dataSize + 3) & ~3);
+        pool.putShort((short) RES_STRING_POOL_TYPE).putShort((short) 28).putInt(pool.capacity());
+        pool.putInt(strings.size()).putInt(0).putInt(ArscConstants.RES_STRING_POOL_UTF8_FLAG).putInt(stringStart).putInt(0);
+        int offset = 0;
+        for (byte[] item : encoded) {
+            pool.putInt(offset);
+            offset += item.length;
+        }
+        for (byte[] item : encoded) {
+            pool.put(item);
+        }
+        return pool.array();
+    }
+
+    private static ByteBuffer newBuffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.mm.arscutil.io;
+
+import com.tencent.mm.arscutil.ArscUtil;
+import com.tencent.mm.arscutil.TestTables;
+import com.tencent.mm.arscutil.data.ArscConstants;
+import com.tencent.mm.arscutil.data.ResChunk;
+import com.tencent.mm.arscutil.data.ResTable;
+import com.tencent.mm.arscutil.data.ResType;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes generated resource tables dense and sparse and reads them back with {@link ArscReader}.
+ */
+public class ArscWriterTest {
+
+    private final List<File> tempFiles = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (File file : tempFiles) {
+            file.delete();
+        }
+        tempFiles.clear();
+    }
+
+    @Test
+    public void denseRoundTrip() throws Exception {
+        for (int seed = 0; seed < 10; seed++) {
+            byte[] arsc = TestTables.generateTable(new Random(seed), 60);
+            ResTable resTable = TestTables.read(arsc);
+            byte[] dense = write(resTable, false);
+            assertArrayEquals("seed " + seed, arsc, dense);
+            assertEquals("seed " + seed, TestTables.dump(resTable), TestTables.dump(TestTables.read(dense)));
+        }
+    }
+
+    @Test
+    public void sparseReadsBackAsTheDenseModel() throws Exception {
+        for (int seed = 0; seed < 10; seed++) {
+            byte[] arsc = TestTables.generateTable(new Random(seed), 60);
+            ArscWriter writer = newWriter();
+            writer.setSparseEncoding(true);
+            writer.writeResTable(TestTables.read(arsc));
+            byte[] sparse = readFile(lastFile());
+            assertTrue("seed " + seed, writer.getSparseTypeCount() > 0);
+            assertEquals("seed " + seed, arsc.length - sparse.length, writer.getSparseSavedSize());
+
+            ResTable sparseTable = TestTables.read(sparse);
+            assertEquals("seed " + seed, TestTables.dump(TestTables.read(arsc)), TestTables.dump(sparseTable));
+            assertArrayEquals("seed " + seed, arsc, write(sparseTable, false));
+        }
+    }
+
+    @Test
+    public void sparseRewriteIsByteIdentical() throws Exception {
+        for (int seed = 0; seed < 10; seed++) {
+            byte[] sparse = write(TestTables.read(TestTables.generateTable(new Random(seed), 60)), true);
+            assertArrayEquals("seed " + seed, sparse, write(TestTables.read(sparse), true));
+        }
+    }
+
+    @Test
+    public void writerKeepsTheModelDense() throws Exception {
+        byte[] arsc = TestTables.generateTable(new Random(1), 60);
+        ResTable resTable = TestTables.read(arsc);
+        String before = TestTables.dump(resTable);
+        write(resTable, true);
+        assertEquals(before, TestTables.dump(resTable));
+    }
+
+    /*
+     *  the task removing unused resources rewrites the source file while the table it read is in use
+     */
+    @Test
+    public void tableOutlivesItsFile() throws Exception {
+        for (int seed = 0; seed < 10; seed++) {
+            byte[] arsc = TestTables.generateTable(new Random(seed), 60);
+            File file = File.createTempFile("arsc", ".arsc");
+            tempFiles.add(file);
+            writeFile(file, arsc);
+            ResTable resTable = new ArscReader(file.getAbsolutePath()).readResourceTable();
+            writeFile(file, new byte[arsc.length]);
+            assertTrue(file.delete());
+
+            ResTable expected = TestTables.read(arsc);
+            List<Integer> resourceIds = new ArrayList<>();
+            Random random = new Random(seed);
+            for (int i = 0; i < 20; i++) {
+                resourceIds.add(0x7f000000 | (1 + random.nextInt(TestTables.TYPE_NAMES.length)) << 16 | random.nextInt(60));
+            }
+            ArscUtil.removeResources(resTable, resourceIds);
+            ArscUtil.removeResources(expected, resourceIds);
+            assertArrayEquals("seed " + seed, write(expected, false), write(resTable, false));
+        }
+    }
+
+    /*
+     *  the sparse offsets are stored divided by 4 in 16 bits, a type with more entry data stays dense
+     */
+    @Test
+    public void largeTypeFallsBackToDense() throws Exception {
+        int largeCount = 0x10000 / 4 + 1024;      // 16 bytes per entry, the last entries start above 0xFFFF * 4
+        List<TestTables.TypeDef> types = new ArrayList<>();
+        types.add(new TestTables.TypeDef("string", new Random(7), 40, 2, false));
+        TestTables.TypeDef large = new TestTables.TypeDef("dimen", new Random(8), largeCount, 1, false);
+        large.configs.get(0)[largeCount - 1] = null;
+        large.configs.get(0)[0] = TestTables.simpleEntry(0, 1);
+        types.add(large);
+        types.get(0).configs.get(0)[0] = null;
+        types.get(0).configs.get(0)[1] = TestTables.simpleEntry(1, 1);
+        byte[] arsc = TestTables.buildTable(types);
+
+        ArscWriter writer = newWriter();
+        writer.setSparseEncoding(true);
+        writer.writeResTable(TestTables.read(arsc));
+        byte[] sparse = readFile(lastFile());
+        assertEquals(1, writer.getSparseTypeCount());
+        assertTrue(sparse.length < arsc.length);
+
+        ResTable sparseTable = TestTables.read(sparse);
+        assertEquals(TestTables.dump(TestTables.read(arsc)), TestTables.dump(sparseTable));
+        ResType largeType = findType(sparseTable, 2);
+        assertEquals(largeCount, largeType.getEntryCount());
+        assertEquals(0, readTypeFlags(sparse, 2, 0) & ArscConstants.RES_TABLE_TYPE_FLAG_SPARSE);
+        assertEquals(ArscConstants.RES_TABLE_TYPE_FLAG_SPARSE, readTypeFlags(sparse, 1, 0) & ArscConstants.RES_TABLE_TYPE_FLAG_SPARSE);
+    }
+
+    private ArscWriter newWriter() throws IOException {
+        File file = File.createTempFile("arsc", ".arsc");
+        tempFiles.add(file);
+        return new ArscWriter(file.getAbsolutePath());
+    }
+
+    private File lastFile() {
+        return tempFiles.get(tempFiles.size() - 1);
+    }
+
+    private byte[] write(ResTable resTable, boolean sparse) throws Exception {
+        ArscWriter writer = newWriter();
+        writer.setSparseEncoding(sparse);
+        writer.writeResTable(resTable);
+        return readFile(lastFile());
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void writeFile(File file, byte[] data) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(data);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static ResType findType(ResTable resTable, int typeId) {
+        for (ResChunk resChunk : resTable.getPackages()[0].getResTypeArray()) {
+            if (resChunk instanceof ResType && ((ResType) resChunk).getId() == typeId) {
+                return (ResType) resChunk;
+            }
+        }
+        return null;
+    }
+
+    /*
+     *  the flags byte of the n-th type chunk with the id, found by walking the chunks of the binary table
+     */
+    private static int readTypeFlags(byte[] arsc, int typeId, int index) {
+        ByteBuffer buffer = ByteBuffer.wrap(arsc).order(ByteOrder.LITTLE_ENDIAN);
+        int packageStart = buffer.getShort(2) + buffer.getInt(buffer.getShort(2) + 4);
+        int position = packageStart + buffer.getInt(packageStart + 276);    // the key pool follows the type pool
+        position += buffer.getInt(position + 4);
+        int end = packageStart + buffer.getInt(packageStart + 4);
+        while (position < end) {
+            if (buffer.getShort(position) == ArscConstants.RES_TABLE_TYPE_TYPE && buffer.get(position + 8) == typeId && index-- == 0) {
+                return buffer.get(position + 9);
+            }
+            position += buffer.getInt(position + 4);
+        }
+        throw new AssertionError("type " + typeId + " not found");
+    }
+}
@@ -16,8 +16,13 @@
 
 package com.android.dexdeps;
 
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
@@ -27,8 +32,11 @@ import java.util.Arrays;
 @SuppressWarnings("PMD")
 public class DexData {
     private RandomAccessFile mDexFile;
+    private ByteBuffer mDexBuffer;          // set instead of mDexFile when mapped
+    private int mBufferPosition;            // read with absolute gets, the buffer position is never moved
     private HeaderItem mHeaderItem;
     private String[] mStrings;              // strings from string_data_*
+    private int[] mStringOffsets;           // string_data_off, for lazy decoding
     private TypeIdItem[] mTypeIds;
     private ProtoIdItem[] mProtoIds;
     private FieldIdItem[] mFieldIds;
@@ -45,6 +53,38 @@ public class DexData {
         mDexFile = raf;
     }
 
+    /**
+     * Constructs a new DexData over a read-only memory mapping of this
+     * file.  Strings are decoded lazily, the first time they are needed.
+     */
+    public DexData(File file) throws IOException {
+        this(map(file));
+    }
+
+    /**
+     * Constructs a new DexData over the contents of a buffer, e.g. a DEX
+     * already held in memory.  The buffer's position and order are not
+     * modified.
+     */
+    public DexData(ByteBuffer buffer) {
+        mDexBuffer = buffer.duplicate();
+        mDexBuffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Maps the whole file read-only.  The mapping stays valid after the
+     * channel is closed.
+     */
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
     /**
      * Loads the contents of the DEX file into our data structures.
      *
@@ -100,6 +140,9 @@ public class DexData {
         } else if (mHeaderItem.endianTag == HeaderItem.REVERSE_ENDIAN_CONSTANT) {
             /* file is big-endian (!), reverse future reads */
             isBigEndian = true;
+            if (mDexBuffer != null) {
+                mDexBuffer.order(ByteOrder.BIG_ENDIAN);
+            }
         } else {
             System.err.println("Endian constant has unexpected value "
                     + Integer.toHexString(mHeaderItem.endianTag));
@@ -135,6 +178,9 @@ public class DexData {
      * First we read all of the string_id_items, then we read all of the
      * string_data_item.  Doing it this way should allow us to avoid
      * seeking around in the file.
+     *
+     * When the file is mapped, only the offsets are read here; the
+     * string data is decoded on first use by {@link #getString(int)}.
      */
     void loadStrings() throws IOException {
         int count = mHeaderItem.stringIdsSize;
@@ -149,6 +195,15 @@ public class DexData {
 
         mStrings = new String[count];
 
+        if (mDexBuffer != null) {
+            mStringOffsets = stringOffsets;
+            return;
+        }
+
+        if (count == 0) {
+            return;
+        }
+
         seek(stringOffsets[0]);
         for (int i = 0; i < count; i++) {
             seek(stringOffsets[i]);         // should be a no-op
@@ -297,7 +352,7 @@ public class DexData {
         }
 
         for (int i = 0; i < mTypeIds.length; i++) {
-            String className = mStrings[mTypeIds[i].descriptorIdx];
+            String className = getString(mTypeIds[i].descriptorIdx);
 
             if (className.length() == 1) {
                 // primitive class
@@ -319,11 +374,32 @@ public class DexData {
      * =======================================================================
      */
 
+    int getStringCount() {
+        return mStrings.length;
+    }
+
+    int getTypeCount() {
+        return mTypeIds.length;
+    }
+
+    /**
+     * Returns the string at the given index into the string_ids table,
+     * decoding it first if the file is mapped and it hasn't been read yet.
+     */
+    String getString(int idx) {
+        String str = mStrings[idx];
+        if (str == null) {
+            str = decodeString(mStringOffsets[idx]);
+            mStrings[idx] = str;
+        }
+        return str;
+    }
+
     /**
      * Returns the class name, given an index into the type_ids table.
      */
-    private String classNameFromTypeIndex(int idx) {
-        return mStrings[mTypeIds[idx].descriptorIdx];
+    String classNameFromTypeIndex(int idx) {
+        return getString(mTypeIds[idx].descriptorIdx);
     }
 
     /**
@@ -335,7 +411,7 @@ public class DexData {
         String[] result = new String[protoId.types.length];
 
         for (int i = 0; i < protoId.types.length; i++) {
-            result[i] = mStrings[mTypeIds[protoId.types[i]].descriptorIdx];
+            result[i] = getString(mTypeIds[protoId.types[i]].descriptorIdx);
         }
 
         return result;
@@ -347,7 +423,7 @@ public class DexData {
      */
     private String returnTypeFromProtoIndex(int idx) {
         ProtoIdItem protoId = mProtoIds[idx];
-        return mStrings[mTypeIds[protoId.returnTypeIdx].descriptorIdx];
+        return getString(mTypeIds[protoId.returnTypeIdx].descriptorIdx);
     }
 
     /**
@@ -365,7 +441,7 @@ public class DexData {
         for (int i = 0; i < mTypeIds.length; i++) {
             if (!mTypeIds[i].internal) {
                 sparseRefs[i] =
-                    new ClassRef(mStrings[mTypeIds[i].descriptorIdx]);
+                    new ClassRef(getString(mTypeIds[i].descriptorIdx));
                 count++;
             }
         }
@@ -399,7 +475,7 @@ public class DexData {
                 FieldRef newFieldRef = new FieldRef(
                         classNameFromTypeIndex(fieldId.classIdx),
                         classNameFromTypeIndex(fieldId.typeIdx),
-                        mStrings[fieldId.nameIdx]);
+                        getString(fieldId.nameIdx));
                 sparseRefs[mFieldIds[i].classIdx].addField(newFieldRef);
             }
         }
@@ -417,7 +493,7 @@ public class DexData {
                         classNameFromTypeIndex(methodId.classIdx),
                         argArrayFromProtoIndex(methodId.protoIdx),
                         returnTypeFromProtoIndex(methodId.protoIdx),
-                        mStrings[methodId.nameIdx]);
+                        getString(methodId.nameIdx));
                 sparseRefs[mMethodIds[i].classIdx].addMethod(newMethodRef);
             }
         }
@@ -439,7 +515,7 @@ public class DexData {
         for (int i = 0; i < mTypeIds.length; i++) {
             if (mTypeIds[i].internal) {
                 sparseRefs[i] =
-                        new ClassRef(mStrings[mTypeIds[i].descriptorIdx]);
+                        new ClassRef(getString(mTypeIds[i].descriptorIdx));
                 count++;
             }
         }
@@ -473,7 +549,7 @@ public class DexData {
                 FieldRef newFieldRef = new FieldRef(
                         classNameFromTypeIndex(fieldId.classIdx),
                         classNameFromTypeIndex(fieldId.typeIdx),
-                        mStrings[fieldId.nameIdx]);
+                        getString(fieldId.nameIdx));
                 sparseRefs[mFieldIds[i].classIdx].addField(newFieldRef);
             }
         }
@@ -491,7 +567,7 @@ public class DexData {
                         classNameFromTypeIndex(methodId.classIdx),
                         argArrayFromProtoIndex(methodId.protoIdx),
                         returnTypeFromProtoIndex(methodId.protoIdx),
-                        mStrings[methodId.nameIdx]);
+                        getString(methodId.nameIdx));
                 sparseRefs[mMethodIds[i].classIdx].addMethod(newMethodRef);
             }
         }
@@ -510,7 +586,7 @@ public class DexData {
                     classNameFromTypeIndex(methodId.classIdx),
                     argArrayFromProtoIndex(methodId.protoIdx),
                     returnTypeFromProtoIndex(methodId.protoIdx),
-                    mStrings[methodId.nameIdx]);
+                    getString(methodId.nameIdx));
         }
         return methodRefs;
     }
@@ -525,7 +601,7 @@ public class DexData {
             fieldRefs[i] = new FieldRef(
                     classNameFromTypeIndex(fieldId.classIdx),
                     classNameFromTypeIndex(fieldId.typeIdx),
-                    mStrings[fieldId.nameIdx]);
+                    getString(fieldId.nameIdx));
         }
         return fieldRefs;
     }
@@ -540,6 +616,13 @@ public class DexData {
      * Seeks the DEX file to the specified absolute position.
      */
     void seek(int position) throws IOException {
+        if (mDexBuffer != null) {
+            if (position < 0 || position > mDexBuffer.limit()) {
+                throw new EOFException();
+            }
+            mBufferPosition = position;
+            return;
+        }
         mDexFile.seek(position);
     }
 
@@ -547,6 +630,16 @@ public class DexData {
      * Fills the buffer by reading bytes from the DEX file.
      */
     void readBytes(byte[] buffer) throws IOException {
+        if (mDexBuffer != null) {
+            if (buffer.length > mDexBuffer.limit() - mBufferPosition) {
+                throw new EOFException();
+            }
+            for (int i = 0; i < buffer.length; i++) {
+                buffer[i] = mDexBuffer.get(mBufferPosition + i);
+            }
+            mBufferPosition += buffer.length;
+            return;
+        }
         mDexFile.readFully(buffer);
     }
 
@@ -554,6 +647,15 @@ public class DexData {
      * Reads a single signed byte value.
      */
     byte readByte() throws IOException {
+        if (mDexBuffer != null) {
+            try {
+                byte value = mDexBuffer.get(mBufferPosition);
+                mBufferPosition += 1;
+                return value;
+            } catch (IndexOutOfBoundsException e) {
+                throw new EOFException();
+            }
+        }
         mDexFile.readFully(tmpBuf, 0, 1);
         return tmpBuf[0];
     }
@@ -562,6 +664,15 @@ public class DexData {
      * Reads a signed 16-bit integer, byte-swapping if necessary.
      */
     short readShort() throws IOException {
+        if (mDexBuffer != null) {
+            try {
+                short value = mDexBuffer.getShort(mBufferPosition);
+                mBufferPosition += 2;
+                return value;
+            } catch (IndexOutOfBoundsException e) {
+                throw new EOFException();
+            }
+        }
         mDexFile.readFully(tmpBuf, 0, 2);
         if (isBigEndian) {
             return (short) ((tmpBuf[1] & 0xff) | ((tmpBuf[0] & 0xff) << 8));
@@ -574,6 +685,15 @@ public class DexData {
      * Reads a signed 32-bit integer, byte-swapping if necessary.
      */
     int readInt() throws IOException {
+        if (mDexBuffer != null) {
+            try {
+                int value = mDexBuffer.getInt(mBufferPosition);
+                mBufferPosition += 4;
+                return value;
+            } catch (IndexOutOfBoundsException e) {
+                throw new EOFException();
+            }
+        }
         mDexFile.readFully(tmpBuf, 0, 4);
 
         if (isBigEndian) {
@@ -627,6 +747,33 @@ public class DexData {
         return new String(inBuf, 0, idx, "UTF-8");
     }
 
+    /**
+     * Decodes the string_data_item at the given offset of the mapped file,
+     * with the same bounds as {@link #readString()}.  Uses absolute reads,
+     * so the buffer position is left alone.
+     */
+    private String decodeString(int offset) {
+        int pos = offset;
+        int utf16len = 0;
+        byte val;
+        do {
+            val = mDexBuffer.get(pos++);
+            utf16len = (utf16len << 7) | (val & 0x7f);
+        } while (val < 0);
+
+        int max = Math.min(utf16len * 3, mDexBuffer.limit() - pos);
+        int len = 0;
+        while (len < max && mDexBuffer.get(pos + len) != 0) {
+            len++;
+        }
+
+        byte[] inBuf = new byte[len];
+        for (int i = 0; i < len; i++) {
+            inBuf[i] = mDexBuffer.get(pos + i);
+        }
+        return new String(inBuf, StandardCharsets.UTF_8);
+    }
+
 
     /*
      * =======================================================================
@@ -0,0 +1,257 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.dexdeps;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Parses a corpus of generated dex files with the RandomAccessFile parser and with the mapped,
+ * lazily decoded one, and compares everything they expose.
+ */
+public class DexDataTest {
+
+    private static final int CORPUS_SIZE = 50;
+    private static final int HEADER_SIZE = 0x70;
+
+    private final List<File> tempFiles = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        tempFiles.clear();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : tempFiles) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void mappedReaderMatchesRandomAccessFileParser() throws IOException {
+        Random random = new Random(20181026);
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            assertSameContents("dex #" + i, writeDex(generateDex(random)));
+        }
+    }
+
+    @Test
+    public void emptyDex() throws IOException {
+        assertSameContents("empty dex", writeDex(buildDex(new ArrayList<String>(), new Random(1), 0, 0, 0, 0, 0)));
+    }
+
+    @Test
+    public void bufferReaderMatchesFileReader() throws IOException {
+        byte[] dex = generateDex(new Random(7));
+        File file = writeDex(dex);
+        DexData fromFile = new DexData(file);
+        fromFile.load();
+        ByteBuffer buffer = ByteBuffer.allocate(dex.length + 3).order(ByteOrder.BIG_ENDIAN);
+        buffer.position(3);
+        buffer.put(dex);
+        buffer.position(3);
+        DexData fromBuffer = new DexData(buffer.slice());
+        fromBuffer.load();
+        assertEquals(dump(fromFile), dump(fromBuffer));
+        assertEquals("buffer order must not change", ByteOrder.BIG_ENDIAN, buffer.order());
+    }
+
+    private void assertSameContents(String message, File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            DexData parsed = new DexData(raf);
+            parsed.load();
+            DexData mapped = new DexData(file);
+            mapped.load();
+            assertEquals(message + " strings", parsed.getStringCount(), mapped.getStringCount());
+            for (int i = 0; i < parsed.getStringCount(); i++) {
+                assertEquals(message + " string " + i, parsed.getString(i), mapped.getString(i));
+            }
+            assertEquals(message + " types", parsed.getTypeCount(), mapped.getTypeCount());
+            for (int i = 0; i < parsed.getTypeCount(); i++) {
+                assertEquals(message + " type " + i, parsed.classNameFromTypeIndex(i), mapped.classNameFromTypeIndex(i));
+            }
+            assertEquals(message, dump(parsed), dump(mapped));
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static String dump(DexData dexData) {
+        StringBuilder builder = new StringBuilder();
+        for (MethodRef methodRef : dexData.getMethodRefs()) {
+            builder.append("method ").append(methodRef.getDeclClassName()).append(' ').append(methodRef.getName())
+                    .append(' ').append(methodRef.getDescriptor()).append('\n');
+        }
+        for (FieldRef fieldRef : dexData.getFieldRefs()) {
+            builder.append("field ").append(fieldRef.getDeclClassName()).append(' ').append(fieldRef.getName())
+                    .append(' ').append(fieldRef.getTypeName()).append('\n');
+        }
+        dumpClasses(builder, "external ", dexData.getExternalReferences());
+        dumpClasses(builder, "internal ", dexData.getInternalReferences());
+        return builder.toString();
+    }
+
+    private static void dumpClasses(StringBuilder builder, String kind, ClassRef[] classRefs) {
+        for (ClassRef classRef : classRefs) {
+            builder.append(kind).append(classRef.getName());
+            for (MethodRef methodRef : classRef.getMethodArray()) {
+                builder.append(' ').append(methodRef.getName()).append(methodRef.getDescriptor());
+            }
+            for (FieldRef fieldRef : classRef.getFieldArray()) {
+                builder.append(' ').append(fieldRef.getName()).append(':').append(fieldRef.getTypeName());
+            }
+            builder.append('\n');
+        }
+    }
+
+    private File writeDex(byte[] dex) throws IOException {
+        File file = File.createTempFile("dexdata", ".dex");
+        tempFiles.add(file);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(dex);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    /*
+     *  random descriptors and names, with multi-byte MUTF-8 characters, array and primitive types
+     */
+    private static byte[] generateDex(Random random) {
+        int stringCount = 1 + random.nextInt(300);
+        List<String> strings = new ArrayList<>(stringCount);
+        for (int i = 0; i < stringCount; i++) {
+            StringBuilder builder = new StringBuilder();
+            boolean isClass = random.nextBoolean();
+            if (random.nextInt(10) == 0) {
+                builder.append('[');
+            }
+            if (isClass) {
+                builder.append('L');
+            }
+            int length = 1 + random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                builder.append((char) (random.nextInt(10) == 0 ? 0x4e00 + random.nextInt(100) : 'a' + random.nextInt(26)));
+            }
+            if (isClass) {
+                builder.append(';');
+            } else if (random.nextInt(5) == 0) {
+                builder.setLength(0);
+                builder.append("VZBSCIJFD".charAt(random.nextInt(9)));
+            }
+            strings.add(builder.toString());
+        }
+        int typeCount = 1 + random.nextInt(100);
+        return buildDex(strings, random, typeCount, 1 + random.nextInt(50), random.nextInt(200),
+                random.nextInt(300), random.nextInt(Math.min(typeCount, 40)));
+    }
+
+    private static byte[] buildDex(List<String> strings, Random random, int typeCount, int protoCount,
+                                   int fieldCount, int methodCount, int classCount) {
+        int stringCount = strings.size();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        int stringIdsOff = HEADER_SIZE;
+        int typeIdsOff = stringIdsOff + 4 * stringCount;
+        int protoIdsOff = typeIdsOff + 4 * typeCount;
+        int fieldIdsOff = protoIdsOff + 12 * protoCount;
+        int methodIdsOff = fieldIdsOff + 8 * fieldCount;
+        int classDefsOff = methodIdsOff + 8 * methodCount;
+        buffer.position(classDefsOff + 32 * classCount);
+
+        for (int i = 0; i < stringCount; i++) {
+            buffer.putInt(stringIdsOff + 4 * i, buffer.position());
+            String string = strings.get(i);
+            int length = string.length();
+            do {
+                int value = length & 0x7f;
+                length >>>= 7;
+                buffer.put((byte) (length != 0 ? value | 0x80 : value));
+            } while (length != 0);
+            buffer.put(string.getBytes(StandardCharsets.UTF_8));
+            buffer.put((byte) 0);
+        }
+        for (int i = 0; i < protoCount; i++) {
+            int parametersOff = 0;
+            if (random.nextBoolean()) {
+                while (buffer.position() % 4 != 0) {
+                    buffer.put((byte) 0);
+                }
+                parametersOff = buffer.position();
+                int size = random.nextInt(5);
+                buffer.putInt(size);
+                for (int j = 0; j < size; j++) {
+                    buffer.putShort((short) random.nextInt(typeCount));
+                }
+            }
+            buffer.putInt(protoIdsOff + 12 * i, random.nextInt(stringCount));
+            buffer.putInt(protoIdsOff + 12 * i + 4, random.nextInt(typeCount));
+            buffer.putInt(protoIdsOff + 12 * i + 8, parametersOff);
+        }
+        int fileSize = buffer.position();
+
+        for (int i = 0; i < typeCount; i++) {
+            buffer.putInt(typeIdsOff + 4 * i, random.nextInt(stringCount));
+        }
+        for (int i = 0; i < fieldCount; i++) {
+            buffer.putShort(fieldIdsOff + 8 * i, (short) random.nextInt(typeCount));
+            buffer.putShort(fieldIdsOff + 8 * i + 2, (short) random.nextInt(typeCount));
+            buffer.putInt(fieldIdsOff + 8 * i + 4, random.nextInt(stringCount));
+        }
+        for (int i = 0; i < methodCount; i++) {
+            buffer.putShort(methodIdsOff + 8 * i, (short) random.nextInt(typeCount));
+            buffer.putShort(methodIdsOff + 8 * i + 2, (short) random.nextInt(protoCount));
+            buffer.putInt(methodIdsOff + 8 * i + 4, random.nextInt(stringCount));
+        }
+        for (int i = 0; i < classCount; i++) {
+            buffer.putInt(classDefsOff + 32 * i, random.nextInt(typeCount));
+        }
+
+        byte[] magic = DexData.HeaderItem.DEX_FILE_MAGIC_v035;
+        for (int i = 0; i < magic.length; i++) {
+            buffer.put(i, magic[i]);
+        }
+        buffer.putInt(32, fileSize);
+        buffer.putInt(36, HEADER_SIZE);
+        buffer.putInt(40, 0x12345678);
+        int[] header = {stringCount, stringIdsOff, typeCount, typeIdsOff, protoCount, protoIdsOff,
+            fieldCount, fieldIdsOff, methodCount, methodIdsOff, classCount, classDefsOff};
+        for (int i = 0; i < header.length; i++) {
+            buffer.putInt(56 + 4 * i, header[i]);
+        }
+        return Arrays.copyOf(buffer.array(), fileSize);
+    }
+}
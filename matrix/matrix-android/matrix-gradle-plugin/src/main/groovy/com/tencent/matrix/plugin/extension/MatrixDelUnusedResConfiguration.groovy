@@ -27,6 +27,7 @@ class MatrixDelUnusedResConfiguration {
     String variant
     boolean needSign
     boolean shrinkArsc
+    // no longer used, the apk is signed in process
     String apksignerPath
     Set<String> unusedResources
     Set<String> ignoreResources
@@ -23,15 +23,15 @@ import com.tencent.mm.arscutil.ArscUtil
 import com.tencent.mm.arscutil.data.ResTable
 import com.tencent.mm.arscutil.io.ArscReader
 import com.tencent.mm.arscutil.io.ArscWriter
+import com.tencent.matrix.plugin.util.ApkSigner
+import com.tencent.matrix.plugin.util.ZipRawCopier
 import org.gradle.api.DefaultTask
 import org.gradle.api.GradleException
 import org.gradle.api.tasks.TaskAction
 import org.gradle.internal.Pair
 
-import java.util.zip.CRC32
 import java.util.zip.ZipEntry
 import java.util.zip.ZipFile
-import java.util.zip.ZipOutputStream
 
 /**
  * Created by jinqiuchen on 17/12/26.
@@ -91,159 +91,134 @@ public class RemoveUnusedResourcesTask extends DefaultTask {
     }
 
     void removeUnusedResources(String originalApk, String rTxtFile, SigningConfig signingConfig) {
-        ZipOutputStream zipOutputStream = null;
         boolean needSign = project.extensions.matrix.removeUnusedResources.needSign;
         boolean shrinkArsc = project.extensions.matrix.removeUnusedResources.shrinkArsc;
-        String apksigner = project.extensions.matrix.removeUnusedResources.apksignerPath;
-        if (needSign) {
-            if (Util.isNullOrNil(apksigner)) {
-                throw new GradleException("need sign apk but apksigner not found!");
-            } else if (! new File(apksigner).exists()) {
-                throw new GradleException( "need sign apk but apksigner " + apksigner + " was not exist!");
-            } else if (signingConfig == null) {
-                throw new GradleException("need sign apk but signingConfig not found!");
-            }
+        if (needSign && signingConfig == null) {
+            throw new GradleException("need sign apk but signingConfig not found!");
         }
         try {
-            try {
-                File inputFile = new File(originalApk);
-                Set<String> ignoreRes = project.extensions.matrix.removeUnusedResources.ignoreResources;
-                for (String res : ignoreRes) {
-                    ignoreResources.add(Util.globToRegexp(res));
-                }
-                Set<String> unusedResources = project.extensions.matrix.removeUnusedResources.unusedResources;
-                Iterator<String> iterator = unusedResources.iterator();
-                String res = null;
-                while (iterator.hasNext()) {
-                    res = iterator.next();
-                    if (ignoreResource(res)) {
-                        iterator.remove();
-                        Log.i(TAG, "ignore unused resources %s", res);
-                    }
+            File inputFile = new File(originalApk);
+            Set<String> ignoreRes = project.extensions.matrix.removeUnusedResources.ignoreResources;
+            for (String res : ignoreRes) {
+                ignoreResources.add(Util.globToRegexp(res));
+            }
+            Set<String> unusedResources = project.extensions.matrix.removeUnusedResources.unusedResources;
+            Iterator<String> iterator = unusedResources.iterator();
+            String res = null;
+            while (iterator.hasNext()) {
+                res = iterator.next();
+                if (ignoreResource(res)) {
+                    iterator.remove();
+                    Log.i(TAG, "ignore unused resources %s", res);
                 }
-                Log.i(TAG, "unused resources count:%d", unusedResources.size());
-
-                String outputApk = inputFile.getParentFile().getAbsolutePath() + "/" + inputFile.getName().substring(0, inputFile.getName().indexOf('.')) + "_shrinked.apk";
+            }
+            Log.i(TAG, "unused resources count:%d", unusedResources.size());
 
-                File outputFile = new File(outputApk);
-                if (outputFile.exists()) {
-                    Log.w(TAG, "output apk file %s is already exists! It will be deleted anyway!", outputApk);
-                    outputFile.delete();
-                    outputFile.createNewFile();
-                }
+            String outputApk = inputFile.getParentFile().getAbsolutePath() + "/" + inputFile.getName().substring(0, inputFile.getName().indexOf('.')) + "_shrinked.apk";
 
-                ZipFile zipInputFile = new ZipFile(inputFile);
+            File outputFile = new File(outputApk);
+            if (outputFile.exists()) {
+                Log.w(TAG, "output apk file %s is already exists! It will be deleted anyway!", outputApk);
+                outputFile.delete();
+                outputFile.createNewFile();
+            }
 
-                zipOutputStream = new ZipOutputStream(new FileOutputStream(outputFile));
+            // the apk is signed in process while it is written, the v1 digests depend on its minSdkVersion
+            ApkSigner signer = null;
+            if (needSign) {
+                signer = ApkSigner.load(signingConfig.storeFile, signingConfig.storeType, signingConfig.storePassword,
+                        signingConfig.keyAlias, signingConfig.keyPassword, ApkSigner.readMinSdkVersion(inputFile));
+            }
 
-                Map<String, Integer> resourceMap = new HashMap();
-                Map<String, Pair<String, Integer>[]> styleableMap = new HashMap();
-                File resTxtFile = new File(rTxtFile);
-                readResourceTxtFile(resTxtFile, resourceMap, styleableMap);
+            Map<String, Integer> resourceMap = new HashMap();
+            Map<String, Pair<String, Integer>[]> styleableMap = new HashMap();
+            File resTxtFile = new File(rTxtFile);
+            readResourceTxtFile(resTxtFile, resourceMap, styleableMap);
 
 
-                Map<String, Integer> removeResources = new HashMap<>();
-                for (String resName : unusedResources) {
-                    if (!ignoreResource(resName)) {
-                        removeResources.put(resName, resourceMap.remove(resName));
-                    }
+            Map<String, Integer> removeResources = new HashMap<>();
+            for (String resName : unusedResources) {
+                if (!ignoreResource(resName)) {
+                    removeResources.put(resName, resourceMap.remove(resName));
                 }
+            }
 
+            Map<Integer, String> removeResourceIds = new HashMap<>();
+            for (Map.Entry<String, Integer> removeResource : removeResources.entrySet()) {
+                if (removeResource.getValue() != null) {
+                    removeResourceIds.put(removeResource.getValue(), removeResource.getKey());
+                }
+            }
 
-                for (ZipEntry zipEntry : zipInputFile.entries()) {
+            // unchanged entries are copied with their compressed bytes and crc, only resources.arsc is recompressed
+            ZipRawCopier zipCopier = new ZipRawCopier(inputFile, outputFile, signer);
+            try {
+                for (ZipRawCopier.Entry zipEntry : zipCopier.getEntries()) {
                     if (zipEntry.name.startsWith("res/")) {
                         String resourceName = entryToResouceName(zipEntry.name);
-                        if (!Util.isNullOrNil(resourceName)) {
-                            if (removeResources.containsKey(resourceName)) {
-                                Log.i(TAG, "remove unused resource %s", resourceName);
-                                continue;
-                            } else {
-                                addZipEntry(zipOutputStream, zipEntry, zipInputFile);
-                            }
-                        } else {
-                            addZipEntry(zipOutputStream, zipEntry, zipInputFile);
-                        }
-                    } else {
-                        if (needSign && zipEntry.name.startsWith("META-INF/")) {
+                        if (!Util.isNullOrNil(resourceName) && removeResources.containsKey(resourceName)) {
+                            Log.i(TAG, "remove unused resource %s", resourceName);
                             continue;
-                        } else {
-                            if (shrinkArsc && zipEntry.name.equalsIgnoreCase("resources.arsc") && unusedResources.size() > 0) {
-                                File srcArscFile = new File(inputFile.getParentFile().getAbsolutePath() + "/resources.arsc");
-                                File destArscFile = new File(inputFile.getParentFile().getAbsolutePath() + "/resources_shrinked.arsc");
-                                if (srcArscFile.exists()) {
-                                    srcArscFile.delete();
-                                    srcArscFile.createNewFile();
-                                }
-                                unzipEntry(zipInputFile, zipEntry, srcArscFile);
-
-                                ArscReader reader = new ArscReader(srcArscFile.getAbsolutePath());
-                                ResTable resTable = reader.readResourceTable();
-                                for (String resName : removeResources.keySet()) {
-                                    ArscUtil.removeResource(resTable, removeResources.get(resName), resName);
-                                }
-                                ArscWriter writer = new ArscWriter(destArscFile.getAbsolutePath());
-                                writer.writeResTable(resTable);
-                                Log.i(TAG, "shrink resources.arsc size %f KB", (srcArscFile.length() - destArscFile.length()) / 1024.0);
-                                addZipEntry(zipOutputStream, zipEntry, destArscFile);
-                            } else {
-                                addZipEntry(zipOutputStream, zipEntry, zipInputFile);
-                            }
                         }
-                    }
-                }
-
-                if (zipOutputStream != null) {
-                    zipOutputStream.close()
-                }
+                        zipCopier.copyEntry(zipEntry);
+                    } else if (needSign && zipEntry.name.startsWith("META-INF/")) {
+                        continue;
+                    } else if (shrinkArsc && zipEntry.name.equalsIgnoreCase("resources.arsc") && unusedResources.size() > 0) {
+                        File srcArscFile = new File(inputFile.getParentFile().getAbsolutePath() + "/resources.arsc");
+                        File destArscFile = new File(inputFile.getParentFile().getAbsolutePath() + "/resources_shrinked.arsc");
+                        if (srcArscFile.exists()) {
+                            srcArscFile.delete();
+                            srcArscFile.createNewFile();
+                        }
+                        ZipFile zipInputFile = new ZipFile(inputFile);
+                        try {
+                            unzipEntry(zipInputFile, zipInputFile.getEntry(zipEntry.name), srcArscFile);
+                        } finally {
+                            zipInputFile.close();
+                        }
 
-                Log.i(TAG, "shrink apk size %f KB", (inputFile.length() - outputFile.length()) / 1024.0);
-                if (needSign) {
-                    Log.i(TAG, "resign apk...");
-                    ProcessBuilder processBuilder = new ProcessBuilder();
-                    processBuilder.command(apksigner, "sign", "-v",
-                            "--ks", signingConfig.storeFile.getAbsolutePath(),
-                            "--ks-pass", "pass:" + signingConfig.storePassword,
-                            "--key-pass", "pass:" + signingConfig.keyPassword,
-                            "--ks-key-alias", signingConfig.keyAlias,
-                            outputFile.getAbsolutePath());
-                    //Log.i(TAG, "%s", processBuilder.command());
-                    Process process = processBuilder.start();
-                    process.waitFor();
-                    if (process.exitValue() != 0) {
-                        throw new GradleException(process.getErrorStream().text);
+                        ArscReader reader = new ArscReader(srcArscFile.getAbsolutePath());
+                        ResTable resTable = reader.readResourceTable();
+                        ArscUtil.removeResources(resTable, removeResourceIds.keySet());
+                        ArscUtil.compactStringPools(resTable);
+                        ArscWriter writer = new ArscWriter(destArscFile.getAbsolutePath());
+                        writer.writeResTable(resTable);
+                        Log.i(TAG, "shrink resources.arsc size %f KB", (srcArscFile.length() - destArscFile.length()) / 1024.0);
+                        zipCopier.writeEntry(zipEntry, readFileContent(new FileInputStream(destArscFile)));
+                    } else {
+                        zipCopier.copyEntry(zipEntry);
                     }
                 }
-                String backApk = inputFile.getParentFile().getAbsolutePath() + "/" + inputFile.getName().substring(0, inputFile.getName().indexOf('.')) + "_back.apk";
-                inputFile.renameTo(new File(backApk));
-                outputFile.renameTo(new File(originalApk));
+            } finally {
+                zipCopier.close();
+            }
 
-                //modify R.txt to delete the removed resources
-                if (!removeResources.isEmpty()) {
-                    Iterator<String> styleableItera =  styleableMap.keySet().iterator();
-                    while (styleableItera.hasNext()) {
-                        String styleable = styleableItera.next();
-                        Pair<String, Integer>[] attrs = styleableMap.get(styleable);
-                        int i = 0;
-                        for (i = 0; i < attrs.length; i++) {
-                            if (!removeResources.containsValue(attrs[i].right)) {
-                                break
-                            }
-                        }
-                        if (attrs.length > 0 && i == attrs.length) {
-                            Log.i(TAG, "removed styleable " + styleable);
-                            styleableItera.remove();
+            Log.i(TAG, "shrink apk size %f KB", (inputFile.length() - outputFile.length()) / 1024.0);
+            String backApk = inputFile.getParentFile().getAbsolutePath() + "/" + inputFile.getName().substring(0, inputFile.getName().indexOf('.')) + "_back.apk";
+            inputFile.renameTo(new File(backApk));
+            outputFile.renameTo(new File(originalApk));
+
+            //modify R.txt to delete the removed resources
+            if (!removeResources.isEmpty()) {
+                Iterator<String> styleableItera =  styleableMap.keySet().iterator();
+                while (styleableItera.hasNext()) {
+                    String styleable = styleableItera.next();
+                    Pair<String, Integer>[] attrs = styleableMap.get(styleable);
+                    int i = 0;
+                    for (i = 0; i < attrs.length; i++) {
+                        if (!removeResourceIds.containsKey(attrs[i].right)) {
+                            break
                         }
                     }
-                    //Log.d(TAG, "styleable %s", styleableMap.keySet().size());
-                    String newResTxtFile = resTxtFile.getParentFile().getAbsolutePath() + "/" + resTxtFile.getName().substring(0, resTxtFile.getName().indexOf('.')) + "_shrinked.txt";
-                    shrinkResourceTxtFile(newResTxtFile, resourceMap, styleableMap);
-                    new File(newResTxtFile).renameTo(resTxtFile);
-                }
-
-            } finally {
-                if (zipOutputStream != null) {
-                    zipOutputStream.close()
+                    if (attrs.length > 0 && i == attrs.length) {
+                        Log.i(TAG, "removed styleable " + styleable);
+                        styleableItera.remove();
+                    }
                 }
+                //Log.d(TAG, "styleable %s", styleableMap.keySet().size());
+                String newResTxtFile = resTxtFile.getParentFile().getAbsolutePath() + "/" + resTxtFile.getName().substring(0, resTxtFile.getName().indexOf('.')) + "_shrinked.txt";
+                shrinkResourceTxtFile(newResTxtFile, resourceMap, styleableMap);
+                new File(newResTxtFile).renameTo(resTxtFile);
             }
         } catch (Exception e) {
             Log.printErrStackTrace(TAG, e, "remove unused resources occur error!")
@@ -387,40 +362,4 @@ public class RemoveUnusedResourcesTask extends DefaultTask {
         outputStream.write(readFileContent(inputStream));
         outputStream.close();
     }
-
-    void addZipEntry(ZipOutputStream zipOutputStream, ZipEntry zipEntry, File file) {
-        ZipEntry writeEntry = new ZipEntry(zipEntry.getName());
-        InputStream inputStream = new FileInputStream(file);
-        byte[] content = readFileContent(inputStream);
-        if (zipEntry.getMethod() == ZipEntry.DEFLATED) {
-            writeEntry.setMethod(ZipEntry.DEFLATED);
-        } else {
-            writeEntry.setMethod(ZipEntry.STORED);
-            CRC32 crc32 = new CRC32();
-            crc32.update(content);
-            writeEntry.setCrc(crc32.getValue());
-        }
-        writeEntry.setSize(content.length);
-        zipOutputStream.putNextEntry(writeEntry);
-        zipOutputStream.write(content);
-        zipOutputStream.flush();
-        zipOutputStream.closeEntry();
-    }
-
-    void addZipEntry(ZipOutputStream zipOutputStream, ZipEntry zipEntry, ZipFile zipFile) throws IOException {
-        ZipEntry writeEntry = new ZipEntry(zipEntry.getName());
-        InputStream inputStream = zipFile.getInputStream(zipEntry);
-        byte[] content = readFileContent(inputStream);
-        if (zipEntry.getMethod() == ZipEntry.DEFLATED) {
-            writeEntry.setMethod(ZipEntry.DEFLATED);
-        } else {
-            writeEntry.setMethod(ZipEntry.STORED);
-            writeEntry.setCrc(zipEntry.getCrc().longValue());
-            writeEntry.setSize(zipEntry.size);
-        }
-        zipOutputStream.putNextEntry(writeEntry);
-        zipOutputStream.write(content);
-        zipOutputStream.flush();
-        zipOutputStream.closeEntry();
-    }
 }
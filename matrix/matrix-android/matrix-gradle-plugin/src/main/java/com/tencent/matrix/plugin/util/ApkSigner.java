@@ -0,0 +1,522 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.plugin.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Signs an apk with the v1 (jar) and v2 schemes while {@link ZipRawCopier} writes it.
+ *
+ * The copier reports the content digest of every entry and streams the bytes of the entries section,
+ * so the signature files and the APK Signing Block are produced without reading the output again.
+ * The v1 digests follow the minSdkVersion of the apk: Android verifies SHA-256 v1 signatures since API 18
+ * (DSA since API 21), older platforms get SHA-1, and ECDSA keys are rejected below API 18. The v2 scheme
+ * is only verified since API 24 and always uses SHA-256.
+ */
+
+public final class ApkSigner {
+
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+    private static final String SIGNER_NAME = "META-INF/CERT";
+    private static final String CREATED_BY = "Matrix";
+    private static final String ANDROID_MANIFEST_NAME = "AndroidManifest.xml";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String V1_SHA1_DIGEST_ALGORITHM = "SHA-1";
+    private static final String V1_SHA1_DIGEST_ATTRIBUTE = "SHA1-Digest";
+    private static final String V1_SHA256_DIGEST_ATTRIBUTE = "SHA-256-Digest";
+    private static final int MIN_SDK_SHA256_RSA_EC = 18;
+    private static final int MIN_SDK_SHA256_DSA = 21;
+    private static final int MAX_MANIFEST_LINE = 72;
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int APK_SIGNATURE_SCHEME_V2_BLOCK_ID = 0x7109871a;
+    private static final byte[] APK_SIGNING_BLOCK_MAGIC = "APK Sig Block 42".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int SIGNATURE_RSA_PKCS1_V1_5_WITH_SHA256 = 0x0103;
+    private static final int SIGNATURE_ECDSA_WITH_SHA256 = 0x0201;
+    private static final int SIGNATURE_DSA_WITH_SHA256 = 0x0301;
+
+    private static final byte[] OID_SIGNED_DATA = {0x06, 0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x0d, 0x01, 0x07, 0x02};
+    private static final byte[] OID_DATA = {0x06, 0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x0d, 0x01, 0x07, 0x01};
+    private static final byte[] OID_SHA256 = {0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65, 0x03, 0x04, 0x02, 0x01};
+    private static final byte[] OID_SHA1 = {0x06, 0x05, 0x2b, 0x0e, 0x03, 0x02, 0x1a};
+    private static final byte[] OID_RSA = {0x06, 0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x0d, 0x01, 0x01, 0x01};
+    private static final byte[] OID_EC = {0x06, 0x07, 0x2a, (byte) 0x86, 0x48, (byte) 0xce, 0x3d, 0x02, 0x01};
+    private static final byte[] OID_DSA = {0x06, 0x07, 0x2a, (byte) 0x86, 0x48, (byte) 0xce, 0x38, 0x04, 0x01};
+    private static final byte[] DER_NULL = {0x05, 0x00};
+
+    private static final int DER_INTEGER = 0x02;
+    private static final int DER_OCTET_STRING = 0x04;
+    private static final int DER_SEQUENCE = 0x30;
+    private static final int DER_SET = 0x31;
+    private static final int DER_CONTEXT_0 = 0xa0;
+
+    private static final int AXML_START_ELEMENT_TYPE = 0x0102;
+    private static final int AXML_RESOURCE_MAP_TYPE = 0x0180;
+    private static final int ATTR_MIN_SDK_VERSION = 0x0101020c;
+    private static final int TYPE_STRING = 0x03;
+    private static final int TYPE_FIRST_INT = 0x10;
+    private static final int TYPE_LAST_INT = 0x1f;
+
+    private final PrivateKey privateKey;
+    private final X509Certificate certificate;
+    private final String keyAlgorithm;
+    private final boolean v1Sha1;
+    private final Map<String, byte[]> entryDigests = new TreeMap<String, byte[]>();
+
+    /* the chunk digests of the entries section, the current chunk is buffered until it is full */
+    private final List<byte[]> contentChunkDigests = new ArrayList<byte[]>();
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkLength;
+
+    /**
+     * @param minSdkVersion the minSdkVersion of the signed apk, see {@link #readMinSdkVersion(File)}
+     * @throws IllegalArgumentException if the key can not sign an apk that old devices verify
+     */
+    public ApkSigner(PrivateKey privateKey, X509Certificate certificate, int minSdkVersion) {
+        this.privateKey = privateKey;
+        this.certificate = certificate;
+        this.keyAlgorithm = privateKey.getAlgorithm().toUpperCase(Locale.US);
+        if ("RSA".equals(keyAlgorithm)) {
+            v1Sha1 = minSdkVersion < MIN_SDK_SHA256_RSA_EC;
+        } else if ("EC".equals(keyAlgorithm)) {
+            if (minSdkVersion < MIN_SDK_SHA256_RSA_EC) {
+                throw new IllegalArgumentException("ECDSA signatures are only verified since API " + MIN_SDK_SHA256_RSA_EC
+                        + ", minSdkVersion is " + minSdkVersion);
+            }
+            v1Sha1 = false;
+        } else if ("DSA".equals(keyAlgorithm)) {
+            v1Sha1 = minSdkVersion < MIN_SDK_SHA256_DSA;
+        } else {
+            throw new IllegalArgumentException("unsupported key algorithm " + privateKey.getAlgorithm());
+        }
+    }
+
+    /**
+     * Loads the signing key and certificate from a keystore, storeType may be null for the default type.
+     */
+    public static ApkSigner load(File storeFile, String storeType, String storePassword, String keyAlias, String keyPassword,
+                                 int minSdkVersion) throws IOException {
+        try {
+            KeyStore keyStore = KeyStore.getInstance(storeType == null || storeType.isEmpty() ? KeyStore.getDefaultType() : storeType);
+            InputStream inputStream = new FileInputStream(storeFile);
+            try {
+                keyStore.load(inputStream, storePassword == null ? null : storePassword.toCharArray());
+            } finally {
+                inputStream.close();
+            }
+            KeyStore.Entry entry = keyStore.getEntry(keyAlias, new KeyStore.PasswordProtection(keyPassword == null ? new char[0] : keyPassword.toCharArray()));
+            if (!(entry instanceof KeyStore.PrivateKeyEntry)) {
+                throw new IOException("key " + keyAlias + " not found in " + storeFile.getAbsolutePath());
+            }
+            Certificate certificate = ((KeyStore.PrivateKeyEntry) entry).getCertificate();
+            if (!(certificate instanceof X509Certificate)) {
+                throw new IOException("certificate of " + keyAlias + " is not X.509");
+            }
+            return new ApkSigner(((KeyStore.PrivateKeyEntry) entry).getPrivateKey(), (X509Certificate) certificate, minSdkVersion);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("load key " + keyAlias + " from " + storeFile.getAbsolutePath() + " failed", e);
+        }
+    }
+
+    /**
+     * Reads the minSdkVersion from the binary AndroidManifest.xml of the apk, 1 if uses-sdk does not set it.
+     */
+    public static int readMinSdkVersion(File apkFile) throws IOException {
+        byte[] manifest;
+        ZipFile zipFile = new ZipFile(apkFile);
+        try {
+            ZipEntry entry = zipFile.getEntry(ANDROID_MANIFEST_NAME);
+            if (entry == null) {
+                throw new IOException(ANDROID_MANIFEST_NAME + " not found in " + apkFile.getAbsolutePath());
+            }
+            InputStream inputStream = zipFile.getInputStream(entry);
+            try {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int length;
+                while ((length = inputStream.read(buffer)) > 0) {
+                    content.write(buffer, 0, length);
+                }
+                manifest = content.toByteArray();
+            } finally {
+                inputStream.close();
+            }
+        } finally {
+            zipFile.close();
+        }
+        try {
+            return readMinSdkVersion(ByteBuffer.wrap(manifest).order(ByteOrder.LITTLE_ENDIAN));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("bad " + ANDROID_MANIFEST_NAME + " in " + apkFile.getAbsolutePath(), e);
+        }
+    }
+
+    /*
+     *  the attribute is matched by its resource id, the names in the string pool are not decoded
+     */
+    private static int readMinSdkVersion(ByteBuffer manifest) throws IOException {
+        int[] resourceIds = new int[0];
+        int position = manifest.getShort(2) & 0xffff;
+        while (position < manifest.limit()) {
+            int type = manifest.getShort(position) & 0xffff;
+            int headerSize = manifest.getShort(position + 2) & 0xffff;
+            int chunkSize = manifest.getInt(position + 4);
+            if (chunkSize < 8) {
+                throw new IOException("bad chunk size " + chunkSize + " at " + position);
+            }
+            if (type == AXML_RESOURCE_MAP_TYPE) {
+                resourceIds = new int[(chunkSize - headerSize) / 4];
+                for (int i = 0; i < resourceIds.length; i++) {
+                    resourceIds[i] = manifest.getInt(position + headerSize + i * 4);
+                }
+            } else if (type == AXML_START_ELEMENT_TYPE) {
+                int attributeStart = position + headerSize + (manifest.getShort(position + headerSize + 8) & 0xffff);
+                int attributeSize = manifest.getShort(position + headerSize + 10) & 0xffff;
+                int attributeCount = manifest.getShort(position + headerSize + 12) & 0xffff;
+                for (int i = 0; i < attributeCount; i++) {
+                    int attribute = attributeStart + i * attributeSize;
+                    int name = manifest.getInt(attribute + 4);
+                    if (name >= 0 && name < resourceIds.length && resourceIds[name] == ATTR_MIN_SDK_VERSION) {
+                        int dataType = manifest.get(attribute + 15) & 0xff;
+                        if (dataType >= TYPE_FIRST_INT && dataType <= TYPE_LAST_INT) {
+                            return manifest.getInt(attribute + 16);
+                        } else if (dataType == TYPE_STRING) {
+                            // the codename of a preview platform, which is newer than any api level checked here
+                            return Integer.MAX_VALUE;
+                        }
+                        throw new IOException("bad minSdkVersion type " + dataType);
+                    }
+                }
+            }
+            position += chunkSize;
+        }
+        return 1;
+    }
+
+    /**
+     * @return the digest of the v2 scheme
+     */
+    public static MessageDigest newDigest() {
+        return newDigest(DIGEST_ALGORITHM);
+    }
+
+    /**
+     * @return the digest of the entries in the v1 manifest
+     */
+    public MessageDigest newEntryDigest() {
+        return newDigest(v1Sha1 ? V1_SHA1_DIGEST_ALGORITHM : DIGEST_ALGORITHM);
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return whether the entry is covered by the v1 signature, directories and signature files are not
+     */
+    public static boolean isSignedEntry(String name) {
+        if (name.endsWith("/")) {
+            return false;
+        }
+        String upperName = name.toUpperCase(Locale.US);
+        if (upperName.startsWith("META-INF/") && upperName.indexOf('/', "META-INF/".length()) < 0) {
+            return !(upperName.equals(MANIFEST_NAME) || upperName.endsWith(".SF") || upperName.endsWith(".RSA")
+                    || upperName.endsWith(".DSA") || upperName.endsWith(".EC") || upperName.startsWith("META-INF/SIG-"));
+        }
+        return true;
+    }
+
+    /**
+     * Records the digest of the uncompressed content of an entry for the v1 manifest.
+     */
+    public void addEntryDigest(String name, byte[] digest) {
+        entryDigests.put(name, digest);
+    }
+
+    /**
+     * Feeds the bytes of the zip entries section, in the order they are written.
+     */
+    public void updateContents(byte[] buffer, int offset, int length) {
+        while (length > 0) {
+            int count = Math.min(length, CHUNK_SIZE - chunkLength);
+            System.arraycopy(buffer, offset, chunk, chunkLength, count);
+            chunkLength += count;
+            offset += count;
+            length -= count;
+            if (chunkLength == CHUNK_SIZE) {
+                contentChunkDigests.add(chunkDigest(chunk, 0, chunkLength));
+                chunkLength = 0;
+            }
+        }
+    }
+
+    /**
+     * @return the v1 signature files by name, MANIFEST.MF first
+     */
+    public Map<String, byte[]> generateV1SignatureFiles() throws IOException {
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+        writeAttribute(manifest, "Manifest-Version", "1.0");
+        writeAttribute(manifest, "Created-By", CREATED_BY);
+        manifest.write('\r');
+        manifest.write('\n');
+
+        String digestAttribute = v1Sha1 ? V1_SHA1_DIGEST_ATTRIBUTE : V1_SHA256_DIGEST_ATTRIBUTE;
+        ByteArrayOutputStream signatureFile = new ByteArrayOutputStream();
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        for (Map.Entry<String, byte[]> entry : entryDigests.entrySet()) {
+            section.reset();
+            writeAttribute(section, "Name", entry.getKey());
+            writeAttribute(section, digestAttribute, base64(entry.getValue()));
+            section.write('\r');
+            section.write('\n');
+            section.writeTo(manifest);
+
+            writeAttribute(signatureFile, "Name", entry.getKey());
+            writeAttribute(signatureFile, digestAttribute, base64(newEntryDigest().digest(section.toByteArray())));
+            signatureFile.write('\r');
+            signatureFile.write('\n');
+        }
+        byte[] manifestBytes = manifest.toByteArray();
+
+        ByteArrayOutputStream signatureHeader = new ByteArrayOutputStream();
+        writeAttribute(signatureHeader, "Signature-Version", "1.0");
+        writeAttribute(signatureHeader, "Created-By", CREATED_BY);
+        writeAttribute(signatureHeader, digestAttribute + "-Manifest", base64(newEntryDigest().digest(manifestBytes)));
+        // tells v2 aware verifiers the v2 signature must not be stripped
+        writeAttribute(signatureHeader, "X-Android-APK-Signed", "2");
+        signatureHeader.write('\r');
+        signatureHeader.write('\n');
+        signatureFile.writeTo(signatureHeader);
+        byte[] signatureFileBytes = signatureHeader.toByteArray();
+
+        Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+        files.put(MANIFEST_NAME, manifestBytes);
+        files.put(SIGNER_NAME + ".SF", signatureFileBytes);
+        files.put(SIGNER_NAME + "." + keyAlgorithm, signedData(sign(signatureFileBytes, v1Sha1)));
+        return files;
+    }
+
+    /**
+     * Builds the APK Signing Block once all the entries were fed to {@link #updateContents}.
+     *
+     * @param centralDirectory the central directory that follows the block
+     * @param eocd             the end of central directory record, its central directory offset must be the offset of the block
+     */
+    public byte[] generateSigningBlock(byte[] centralDirectory, byte[] eocd) throws IOException {
+        if (chunkLength > 0) {
+            contentChunkDigests.add(chunkDigest(chunk, 0, chunkLength));
+            chunkLength = 0;
+        }
+        List<byte[]> chunkDigests = new ArrayList<byte[]>(contentChunkDigests);
+        addChunkDigests(chunkDigests, centralDirectory);
+        addChunkDigests(chunkDigests, eocd);
+        MessageDigest digest = newDigest();
+        digest.update((byte) 0x5a);
+        digest.update(intToBytes(chunkDigests.size()));
+        for (byte[] chunkDigest : chunkDigests) {
+            digest.update(chunkDigest);
+        }
+        int signatureAlgorithm = signatureAlgorithmId();
+
+        byte[] certificateBytes;
+        try {
+            certificateBytes = certificate.getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("encode certificate failed", e);
+        }
+        byte[] signedData = concat(
+                lengthPrefixed(lengthPrefixed(concat(intToBytes(signatureAlgorithm), lengthPrefixed(digest.digest())))),
+                lengthPrefixed(lengthPrefixed(certificateBytes)),
+                lengthPrefixed(new byte[0]));
+        byte[] signatures = lengthPrefixed(lengthPrefixed(concat(intToBytes(signatureAlgorithm), lengthPrefixed(sign(signedData, false)))));
+        byte[] signer = concat(lengthPrefixed(signedData), signatures, lengthPrefixed(certificate.getPublicKey().getEncoded()));
+        byte[] value = lengthPrefixed(lengthPrefixed(signer));
+
+        /* size, (length, id, value) pairs, size, magic; the sizes exclude the leading size field */
+        long blockSize = 8 + 4 + value.length + 8 + APK_SIGNING_BLOCK_MAGIC.length;
+        ByteBuffer block = ByteBuffer.allocate((int) (8 + blockSize)).order(ByteOrder.LITTLE_ENDIAN);
+        block.putLong(blockSize);
+        block.putLong(4 + value.length);
+        block.putInt(APK_SIGNATURE_SCHEME_V2_BLOCK_ID);
+        block.put(value);
+        block.putLong(blockSize);
+        block.put(APK_SIGNING_BLOCK_MAGIC);
+        return block.array();
+    }
+
+    private static void addChunkDigests(List<byte[]> chunkDigests, byte[] section) {
+        for (int offset = 0; offset < section.length; offset += CHUNK_SIZE) {
+            chunkDigests.add(chunkDigest(section, offset, Math.min(CHUNK_SIZE, section.length - offset)));
+        }
+    }
+
+    private static byte[] chunkDigest(byte[] buffer, int offset, int length) {
+        MessageDigest digest = newDigest();
+        digest.update((byte) 0xa5);
+        digest.update(intToBytes(length));
+        digest.update(buffer, offset, length);
+        return digest.digest();
+    }
+
+    private int signatureAlgorithmId() {
+        if ("RSA".equals(keyAlgorithm)) {
+            return SIGNATURE_RSA_PKCS1_V1_5_WITH_SHA256;
+        } else if ("EC".equals(keyAlgorithm)) {
+            return SIGNATURE_ECDSA_WITH_SHA256;
+        }
+        return SIGNATURE_DSA_WITH_SHA256;
+    }
+
+    private byte[] sign(byte[] data, boolean sha1) throws IOException {
+        String algorithm = (sha1 ? "SHA1with" : "SHA256with") + ("EC".equals(keyAlgorithm) ? "ECDSA" : keyAlgorithm);
+        try {
+            Signature signature = Signature.getInstance(algorithm);
+            signature.initSign(privateKey);
+            signature.update(data);
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("sign with " + algorithm + " failed", e);
+        }
+    }
+
+    /*
+     *  a detached PKCS#7 SignedData without authenticated attributes, the signature is over the .SF file
+     */
+    private byte[] signedData(byte[] signature) throws IOException {
+        byte[] certificateBytes;
+        try {
+            certificateBytes = certificate.getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("encode certificate failed", e);
+        }
+        byte[] keyAlgorithmIdentifier;
+        if ("RSA".equals(keyAlgorithm)) {
+            keyAlgorithmIdentifier = der(DER_SEQUENCE, OID_RSA, DER_NULL);
+        } else if ("EC".equals(keyAlgorithm)) {
+            keyAlgorithmIdentifier = der(DER_SEQUENCE, OID_EC);
+        } else {
+            keyAlgorithmIdentifier = der(DER_SEQUENCE, OID_DSA);
+        }
+        byte[] digestAlgorithmIdentifier = der(DER_SEQUENCE, v1Sha1 ? OID_SHA1 : OID_SHA256, DER_NULL);
+        byte[] version = der(DER_INTEGER, new byte[]{1});
+        byte[] signerInfo = der(DER_SEQUENCE,
+                version,
+                der(DER_SEQUENCE, certificate.getIssuerX500Principal().getEncoded(), der(DER_INTEGER, certificate.getSerialNumber().toByteArray())),
+                digestAlgorithmIdentifier,
+                keyAlgorithmIdentifier,
+                der(DER_OCTET_STRING, signature));
+        byte[] signedData = der(DER_SEQUENCE,
+                version,
+                der(DER_SET, digestAlgorithmIdentifier),
+                der(DER_SEQUENCE, OID_DATA),
+                der(DER_CONTEXT_0, certificateBytes),
+                der(DER_SET, signerInfo));
+        return der(DER_SEQUENCE, OID_SIGNED_DATA, der(DER_CONTEXT_0, signedData));
+    }
+
+    private static byte[] der(int tag, byte[]... contents) {
+        byte[] content = concat(contents);
+        int length = content.length;
+        int lengthBytes = length < 0x80 ? 0 : length < 0x100 ? 1 : length < 0x10000 ? 2 : length < 0x1000000 ? 3 : 4;
+        byte[] result = new byte[2 + lengthBytes + length];
+        result[0] = (byte) tag;
+        if (lengthBytes == 0) {
+            result[1] = (byte) length;
+        } else {
+            result[1] = (byte) (0x80 | lengthBytes);
+            for (int i = 0; i < lengthBytes; i++) {
+                result[2 + i] = (byte) (length >>> (8 * (lengthBytes - 1 - i)));
+            }
+        }
+        System.arraycopy(content, 0, result, 2 + lengthBytes, length);
+        return result;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+
+    private static byte[] lengthPrefixed(byte[] data) {
+        return concat(intToBytes(data.length), data);
+    }
+
+    private static byte[] intToBytes(int value) {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    }
+
+    private static String base64(byte[] data) {
+        return Base64.getEncoder().encodeToString(data);
+    }
+
+    /*
+     *  manifest lines are at most 72 bytes, longer ones continue on lines starting with a space
+     */
+    private static void writeAttribute(ByteArrayOutputStream output, String name, String value) {
+        byte[] line = (name + ": " + value).getBytes(StandardCharsets.UTF_8);
+        int offset = 0;
+        while (offset < line.length) {
+            int length = Math.min(line.length - offset, offset == 0 ? MAX_MANIFEST_LINE : MAX_MANIFEST_LINE - 1);
+            if (offset > 0) {
+                output.write(' ');
+            }
+            output.write(line, offset, length);
+            output.write('\r');
+            output.write('\n');
+            offset += length;
+        }
+    }
+}
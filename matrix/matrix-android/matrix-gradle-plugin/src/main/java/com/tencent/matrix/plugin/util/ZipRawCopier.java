@@ -0,0 +1,462 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tencent.matrix.plugin.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Rewrites a zip, copying the unchanged entries as they are: compressed bytes, crc and sizes are taken from
+ * the source without inflating them, only the entries written with {@link #writeEntry} are compressed.
+ *
+ * Stored entries are aligned to 4 bytes with a padded extra field as zipalign does. Zip64 is not supported.
+ * With an {@link ApkSigner} the output is signed while it is written, see {@link #close()}.
+ */
+
+public final class ZipRawCopier implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int VERSION = 20;
+    private static final int STORED_ALIGNMENT = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /* 1980-01-01 00:00, the time of the generated signature files */
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = (1 << 5) | 1;
+
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    public static final class Entry {
+        private String name;
+        private byte[] nameBytes;
+        private int flags;
+        private int method;
+        private int time;
+        private int date;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private int externalAttributes;
+        private long localHeaderOffset;
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    private final RandomAccessFile source;
+    private final FileChannel sourceChannel;
+    private final List<Entry> entries;
+    private final OutputStream output;
+    private final ApkSigner signer;
+    private final List<Entry> writtenEntries = new ArrayList<Entry>();
+    private long position;
+    private boolean closed;
+
+    public ZipRawCopier(File sourceFile, File outputFile) throws IOException {
+        this(sourceFile, outputFile, null);
+    }
+
+    /**
+     * @param signer signs the output with v1 and v2 schemes, the source signature files should not be copied
+     */
+    public ZipRawCopier(File sourceFile, File outputFile, ApkSigner signer) throws IOException {
+        this.signer = signer;
+        source = new RandomAccessFile(sourceFile, "r");
+        try {
+            sourceChannel = source.getChannel();
+            entries = Collections.unmodifiableList(readCentralDirectory(sourceChannel));
+            output = new BufferedOutputStream(new FileOutputStream(outputFile), BUFFER_SIZE);
+        } catch (IOException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the entries of the source zip in central directory order
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Copies the entry of the source zip without recompressing it.
+     */
+    public void copyEntry(Entry entry) throws IOException {
+        ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(sourceChannel, localHeader, entry.localHeaderOffset);
+        if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("bad local header of " + entry.name);
+        }
+        long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE
+                + (localHeader.getShort(26) & 0xffff) + (localHeader.getShort(28) & 0xffff);
+        Entry written = copyOf(entry);
+        writeLocalHeader(written);
+        /* the v1 manifest needs the digest of the uncompressed content, it is inflated but never deflated again */
+        MessageDigest digest = null;
+        Inflater inflater = null;
+        byte[] inflated = null;
+        if (signer != null && ApkSigner.isSignedEntry(entry.name)) {
+            digest = signer.newEntryDigest();
+            if (entry.method != METHOD_STORED) {
+                inflater = new Inflater(true);
+                inflated = new byte[BUFFER_SIZE];
+            }
+        }
+        try {
+            long remaining = entry.compressedSize;
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(remaining, 1)));
+            long offset = dataOffset;
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                int read = sourceChannel.read(buffer, offset);
+                if (read < 0) {
+                    throw new IOException("unexpected end of zip file in " + entry.name);
+                }
+                write(buffer.array(), 0, read);
+                if (inflater != null) {
+                    inflater.setInput(buffer.array(), 0, read);
+                    int length;
+                    while ((length = inflater.inflate(inflated)) > 0) {
+                        digest.update(inflated, 0, length);
+                    }
+                } else if (digest != null) {
+                    digest.update(buffer.array(), 0, read);
+                }
+                offset += read;
+                remaining -= read;
+            }
+            if (inflater != null && inflater.getBytesWritten() != entry.size) {
+                throw new IOException("bad compressed data of " + entry.name);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("bad compressed data of " + entry.name, e);
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+        if (digest != null) {
+            signer.addEntryDigest(entry.name, digest.digest());
+        }
+        writtenEntries.add(written);
+    }
+
+    /**
+     * Writes new content for the entry, compressed with the method of the original entry.
+     */
+    public void writeEntry(Entry entry, byte[] content) throws IOException {
+        writeEntry(copyOf(entry), entry.method, content);
+    }
+
+    /**
+     * Adds a new entry, method is {@link #METHOD_STORED} or {@link #METHOD_DEFLATED}.
+     */
+    public void writeEntry(String name, int method, byte[] content) throws IOException {
+        Entry entry = new Entry();
+        entry.name = name;
+        entry.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        entry.flags = FLAG_UTF8;
+        entry.time = DOS_TIME;
+        entry.date = DOS_DATE;
+        writeEntry(entry, method, content);
+    }
+
+    private void writeEntry(Entry written, int method, byte[] content) throws IOException {
+        if (signer != null && ApkSigner.isSignedEntry(written.name)) {
+            signer.addEntryDigest(written.name, signer.newEntryDigest().digest(content));
+        }
+        written.method = method;
+        CRC32 crc32 = new CRC32();
+        crc32.update(content);
+        written.crc = crc32.getValue();
+        written.size = content.length;
+        byte[] data = content;
+        int dataLength = content.length;
+        if (method == METHOD_DEFLATED) {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+            try {
+                deflater.setInput(content);
+                deflater.finish();
+                byte[] buffer = new byte[Math.max(content.length + content.length / 1000 + 64, 64)];
+                dataLength = 0;
+                while (!deflater.finished()) {
+                    if (dataLength == buffer.length) {
+                        byte[] larger = new byte[buffer.length * 2];
+                        System.arraycopy(buffer, 0, larger, 0, dataLength);
+                        buffer = larger;
+                    }
+                    dataLength += deflater.deflate(buffer, dataLength, buffer.length - dataLength);
+                }
+                data = buffer;
+            } finally {
+                deflater.end();
+            }
+        } else {
+            written.method = METHOD_STORED;
+        }
+        written.compressedSize = dataLength;
+        writeLocalHeader(written);
+        write(data, 0, dataLength);
+        writtenEntries.add(written);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            try {
+                if (signer != null) {
+                    for (Map.Entry<String, byte[]> signatureFile : signer.generateV1SignatureFiles().entrySet()) {
+                        writeEntry(signatureFile.getKey(), METHOD_DEFLATED, signatureFile.getValue());
+                    }
+                }
+                writeCentralDirectory();
+            } finally {
+                output.close();
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    private static Entry copyOf(Entry entry) {
+        Entry copy = new Entry();
+        copy.name = entry.name;
+        copy.nameBytes = entry.nameBytes;
+        copy.flags = entry.flags & ~FLAG_DATA_DESCRIPTOR;
+        copy.method = entry.method;
+        copy.time = entry.time;
+        copy.date = entry.date;
+        copy.crc = entry.crc;
+        copy.compressedSize = entry.compressedSize;
+        copy.size = entry.size;
+        copy.externalAttributes = entry.externalAttributes;
+        return copy;
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        if (position + entry.compressedSize > 0xffffffffL) {
+            throw new IOException("zip64 is not supported, " + entry.name);
+        }
+        entry.localHeaderOffset = position;
+        int padding = 0;
+        if (entry.method == METHOD_STORED) {
+            long dataOffset = position + LOCAL_HEADER_SIZE + entry.nameBytes.length;
+            padding = (int) ((STORED_ALIGNMENT - dataOffset % STORED_ALIGNMENT) % STORED_ALIGNMENT);
+        }
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + entry.nameBytes.length + padding).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) VERSION);
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putShort((short) entry.time);
+        header.putShort((short) entry.date);
+        header.putInt((int) entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.nameBytes.length);
+        header.putShort((short) padding);
+        header.put(entry.nameBytes);
+        write(header.array(), 0, header.capacity());
+    }
+
+    private void write(byte[] buffer, int offset, int length) throws IOException {
+        output.write(buffer, offset, length);
+        if (signer != null) {
+            signer.updateContents(buffer, offset, length);
+        }
+        position += length;
+    }
+
+    /*
+     *  the APK Signing Block goes between the entries and the central directory, whose offset in the
+     *  end of central directory record is the offset of the block while the v2 digest is computed
+     */
+    private void writeCentralDirectory() throws IOException {
+        if (writtenEntries.size() > 0xffff) {
+            throw new IOException("zip64 is not supported, " + writtenEntries.size() + " entries");
+        }
+        long directoryOffset = position;
+        ByteArrayOutputStream directory = new ByteArrayOutputStream();
+        for (Entry entry : writtenEntries) {
+            ByteBuffer header = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + entry.nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(CENTRAL_HEADER_SIGNATURE);
+            header.putShort((short) VERSION);
+            header.putShort((short) VERSION);
+            header.putShort((short) entry.flags);
+            header.putShort((short) entry.method);
+            header.putShort((short) entry.time);
+            header.putShort((short) entry.date);
+            header.putInt((int) entry.crc);
+            header.putInt((int) entry.compressedSize);
+            header.putInt((int) entry.size);
+            header.putShort((short) entry.nameBytes.length);
+            header.putShort((short) 0);         // extra
+            header.putShort((short) 0);         // comment
+            header.putShort((short) 0);         // disk
+            header.putShort((short) 0);         // internal attributes
+            header.putInt(entry.externalAttributes);
+            header.putInt((int) entry.localHeaderOffset);
+            header.put(entry.nameBytes);
+            directory.write(header.array());
+        }
+        byte[] directoryBytes = directory.toByteArray();
+        byte[] signingBlock = null;
+        if (signer != null) {
+            signingBlock = signer.generateSigningBlock(directoryBytes, endOfCentralDirectory(directoryBytes.length, directoryOffset));
+            directoryOffset += signingBlock.length;
+        }
+        if (directoryOffset + directoryBytes.length > 0xffffffffL) {
+            throw new IOException("zip64 is not supported, central directory at " + directoryOffset);
+        }
+        if (signingBlock != null) {
+            output.write(signingBlock);
+        }
+        output.write(directoryBytes);
+        output.write(endOfCentralDirectory(directoryBytes.length, directoryOffset));
+        position = directoryOffset + directoryBytes.length + EOCD_SIZE;
+    }
+
+    private byte[] endOfCentralDirectory(int directorySize, long directoryOffset) {
+        ByteBuffer eocd = ByteBuffer.allocate(EOCD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        eocd.putInt(EOCD_SIGNATURE);
+        eocd.putShort((short) 0);
+        eocd.putShort((short) 0);
+        eocd.putShort((short) writtenEntries.size());
+        eocd.putShort((short) writtenEntries.size());
+        eocd.putInt(directorySize);
+        eocd.putInt((int) directoryOffset);
+        eocd.putShort((short) 0);
+        return eocd.array();
+    }
+
+    private static List<Entry> readCentralDirectory(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < EOCD_SIZE) {
+            throw new IOException("not a zip file");
+        }
+        int tailSize = (int) Math.min(fileSize, EOCD_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, tail, fileSize - tailSize);
+        int eocd = -1;
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE && i + EOCD_SIZE + (tail.getShort(i + 20) & 0xffff) <= tailSize) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("end of central directory not found");
+        }
+        int count = tail.getShort(eocd + 10) & 0xffff;
+        long size = tail.getInt(eocd + 12) & 0xffffffffL;
+        long offset = tail.getInt(eocd + 16) & 0xffffffffL;
+        if (offset + size > fileSize) {
+            throw new IOException("bad central directory offset " + offset + ", size " + size);
+        }
+        ByteBuffer directory = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, directory, offset);
+        List<Entry> entries = new ArrayList<Entry>(count);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("bad central directory entry at " + position);
+            }
+            Entry entry = new Entry();
+            entry.flags = directory.getShort(position + 8) & 0xffff;
+            entry.method = directory.getShort(position + 10) & 0xffff;
+            entry.time = directory.getShort(position + 12) & 0xffff;
+            entry.date = directory.getShort(position + 14) & 0xffff;
+            entry.crc = directory.getInt(position + 16) & 0xffffffffL;
+            entry.compressedSize = directory.getInt(position + 20) & 0xffffffffL;
+            entry.size = directory.getInt(position + 24) & 0xffffffffL;
+            int nameLength = directory.getShort(position + 28) & 0xffff;
+            int extraLength = directory.getShort(position + 30) & 0xffff;
+            int commentLength = directory.getShort(position + 32) & 0xffff;
+            entry.externalAttributes = directory.getInt(position + 38);
+            entry.localHeaderOffset = directory.getInt(position + 42) & 0xffffffffL;
+            entry.nameBytes = new byte[nameLength];
+            System.arraycopy(directory.array(), position + CENTRAL_HEADER_SIZE, entry.nameBytes, 0, nameLength);
+            entry.name = new String(entry.nameBytes, StandardCharsets.UTF_8);
+            entries.add(entry);
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("unexpected end of zip file");
+            }
+        }
+        buffer.flip();
+    }
+}
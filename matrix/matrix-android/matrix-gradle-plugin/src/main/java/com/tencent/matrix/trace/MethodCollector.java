@@ -23,7 +23,6 @@ import com.tencent.matrix.trace.retrace.MappingCollector;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
@@ -45,6 +44,12 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -54,6 +59,11 @@ import java.util.zip.ZipFile;
  * <p>
  * collect all methods need to hook,and export the trace mapping<Method ID,Method Name> file.
  * </p>
+ * <p>
+ * Classes are read in parallel, each of them into its own {@link CollectedClass}. The results are merged
+ * on the calling thread in the order of the inputs, and the new methods are sorted by name before they get
+ * their ids, so the mapping does not depend on the thread scheduling nor on the order of listFiles.
+ * </p>
  */
 
 public class MethodCollector {
@@ -91,10 +101,12 @@ public class MethodCollector {
         Log.i(TAG, "[collect] %s method from %s", mCollectedMethodMap.size(), mTraceConfig.getBaseMethodMap());
         retraceMethodMap(mMappingCollector, mCollectedMethodMap);
 
-        collectMethodFromSrc(srcFolderList, true);
-        collectMethodFromJar(dependencyJarList, true);
-        collectMethodFromSrc(srcFolderList, false);
-        collectMethodFromJar(dependencyJarList, false);
+        List<CollectedClass> collectedClasses = collectClasses(srcFolderList, dependencyJarList);
+        // every super class must be known before looking for the activities
+        for (CollectedClass collectedClass : collectedClasses) {
+            mCollectedClassExtendMap.put(collectedClass.className, collectedClass.superName);
+        }
+        mergeCollectedClasses(collectedClasses);
         Log.i(TAG, "[collect] incrementCount:%s ignoreMethodCount:%s", mIncrementCount, mIgnoreCount);
 
         saveCollectedMethod(mMappingCollector);
@@ -136,14 +148,16 @@ public class MethodCollector {
         Collections.sort(ignoreMethodList, new Comparator<TraceMethod>() {
             @Override
             public int compare(TraceMethod o1, TraceMethod o2) {
-                return o1.className.compareTo(o2.className);
+                int result = o1.className.compareTo(o2.className);
+                return result != 0 ? result : o1.getMethodName().compareTo(o2.getMethodName());
             }
         });
 
         Collections.sort(blackMethodList, new Comparator<TraceMethod>() {
             @Override
             public int compare(TraceMethod o1, TraceMethod o2) {
-                return o1.className.compareTo(o2.className);
+                int result = o1.className.compareTo(o2.className);
+                return result != 0 ? result : o1.getMethodName().compareTo(o2.getMethodName());
             }
         });
 
@@ -213,22 +227,92 @@ public class MethodCollector {
     }
 
 
-    private void collectMethodFromSrc(List<File> srcFolderList, boolean isSingle) {
+    /*
+     *  one task per class file and per jar, the classes come back in the order of the inputs
+     */
+    private List<CollectedClass> collectClasses(List<File> srcFolderList, List<File> dependencyJarList) {
+        List<File> classFileList = new ArrayList<>();
         if (null != srcFolderList) {
             for (File srcFile : srcFolderList) {
-                innerCollectMethodFromSrc(srcFile, isSingle);
+                if (srcFile.isDirectory()) {
+                    listClassFiles(classFileList, srcFile);
+                } else {
+                    classFileList.add(srcFile);
+                }
             }
         }
-    }
+        List<File> jarFileList = null == dependencyJarList ? Collections.<File>emptyList() : dependencyJarList;
 
+        List<Future<List<CollectedClass>>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(classFileList.size() + jarFileList.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            for (final File classFile : classFileList) {
+                futures.add(executor.submit(new Callable<List<CollectedClass>>() {
+                    @Override
+                    public List<CollectedClass> call() {
+                        return innerCollectMethodFromSrc(classFile);
+                    }
+                }));
+            }
+            for (final File jarFile : jarFileList) {
+                futures.add(executor.submit(new Callable<List<CollectedClass>>() {
+                    @Override
+                    public List<CollectedClass> call() {
+                        return innerCollectMethodFromJar(jarFile);
+                    }
+                }));
+            }
+            List<CollectedClass> collectedClasses = new ArrayList<>();
+            for (Future<List<CollectedClass>> future : futures) {
+                collectedClasses.addAll(future.get());
+            }
+            return collectedClasses;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-    private void collectMethodFromJar(List<File> dependencyJarList, boolean isSingle) {
-        if (null != dependencyJarList) {
-            for (File jarFile : dependencyJarList) {
-                innerCollectMethodFromJar(jarFile, isSingle);
+    private void mergeCollectedClasses(List<CollectedClass> collectedClasses) {
+        TreeMap<String, TraceMethod> incrementMethodMap = new TreeMap<>();
+        List<TraceMethod> windowFocusMethodList = new ArrayList<>();
+        for (CollectedClass collectedClass : collectedClasses) {
+            for (TraceMethod traceMethod : collectedClass.ignoreMethods) {
+                mIgnoreCount++;
+                mCollectedIgnoreMethodMap.put(traceMethod.getMethodName(), traceMethod);
+            }
+            for (TraceMethod traceMethod : collectedClass.traceMethods) {
+                if (!mCollectedMethodMap.containsKey(traceMethod.getMethodName()) && !incrementMethodMap.containsKey(traceMethod.getMethodName())) {
+                    incrementMethodMap.put(traceMethod.getMethodName(), traceMethod);
+                }
+            }
+            for (TraceMethod traceMethod : collectedClass.blackMethods) {
+                if (!mCollectedBlackMethodMap.containsKey(traceMethod.className)) {
+                    mIgnoreCount++;
+                    mCollectedBlackMethodMap.put(traceMethod.getMethodName(), traceMethod);
+                }
+            }
+            // collect Activity#onWindowFocusChange
+            if (!collectedClass.hasWindowFocusMethod && collectedClass.isNeedTrace
+                    && mTraceConfig.isActivityOrSubClass(collectedClass.className, mCollectedClassExtendMap)) {
+                windowFocusMethodList.add(TraceMethod.create(-1, Opcodes.ACC_PUBLIC, collectedClass.className,
+                        TraceBuildConstants.MATRIX_TRACE_ON_WINDOW_FOCUS_METHOD, TraceBuildConstants.MATRIX_TRACE_ON_WINDOW_FOCUS_METHOD_ARGS));
             }
         }
 
+        // ids are given in the order of the method names, the same inputs always get the same ids
+        for (TraceMethod traceMethod : incrementMethodMap.values()) {
+            traceMethod.id = mMethodId.incrementAndGet();
+            mCollectedMethodMap.put(traceMethod.getMethodName(), traceMethod);
+        }
+        mIncrementCount = incrementMethodMap.size();
+        for (TraceMethod traceMethod : windowFocusMethodList) {
+            mCollectedMethodMap.put(traceMethod.getMethodName(), traceMethod);
+        }
     }
 
     private void getMethodFromBaseMethod(File baseMethodFile) {
@@ -275,40 +359,26 @@ public class MethodCollector {
     }
 
 
-    private void innerCollectMethodFromSrc(File srcFile, boolean isSingle) {
-        ArrayList<File> classFileList = new ArrayList<>();
-        if (srcFile.isDirectory()) {
-            listClassFiles(classFileList, srcFile);
-        } else {
-            classFileList.add(srcFile);
-        }
-
-        for (File classFile : classFileList) {
-            InputStream is = null;
+    private List<CollectedClass> innerCollectMethodFromSrc(File classFile) {
+        List<CollectedClass> collectedClasses = new ArrayList<>(1);
+        InputStream is = null;
+        try {
+            is = new FileInputStream(classFile);
+            collectClass(new ClassReader(is), collectedClasses);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
             try {
-                is = new FileInputStream(classFile);
-                ClassReader classReader = new ClassReader(is);
-                ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
-                ClassVisitor visitor;
-                if (isSingle) {
-                    visitor = new SingleTraceClassAdapter(Opcodes.ASM5, classWriter);
-                } else {
-                    visitor = new TraceClassAdapter(Opcodes.ASM5, classWriter);
-                }
-                classReader.accept(visitor, 0);
+                is.close();
             } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                try {
-                    is.close();
-                } catch (Exception e) {
-                    // ignore
-                }
+                // ignore
             }
         }
+        return collectedClasses;
     }
 
-    private void innerCollectMethodFromJar(File fromJar, boolean isSingle) {
+    private List<CollectedClass> innerCollectMethodFromJar(File fromJar) {
+        List<CollectedClass> collectedClasses = new ArrayList<>();
         ZipFile zipFile = null;
 
         try {
@@ -319,15 +389,7 @@ public class MethodCollector {
                 String zipEntryName = zipEntry.getName();
                 if (mTraceConfig.isNeedTraceClass(zipEntryName)) {
                     InputStream inputStream = zipFile.getInputStream(zipEntry);
-                    ClassReader classReader = new ClassReader(inputStream);
-                    ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
-                    ClassVisitor visitor;
-                    if (isSingle) {
-                        visitor = new SingleTraceClassAdapter(Opcodes.ASM5, classWriter);
-                    } else {
-                        visitor = new TraceClassAdapter(Opcodes.ASM5, classWriter);
-                    }
-                    classReader.accept(visitor, 0);
+                    collectClass(new ClassReader(inputStream), collectedClasses);
                 }
             }
         } catch (Exception e) {
@@ -339,10 +401,17 @@ public class MethodCollector {
                 Log.e(TAG, "close stream err! fromJar:%s", fromJar.getAbsolutePath());
             }
         }
+        return collectedClasses;
     }
 
+    private void collectClass(ClassReader classReader, List<CollectedClass> collectedClasses) {
+        CollectedClass collectedClass = new CollectedClass();
+        // only the opcodes are looked at, debug info and frames are skipped
+        classReader.accept(new TraceClassAdapter(Opcodes.ASM5, collectedClass), ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        collectedClasses.add(collectedClass);
+    }
 
-    private void listClassFiles(ArrayList<File> classFiles, File folder) {
+    private void listClassFiles(List<File> classFiles, File folder) {
         File[] files = folder.listFiles();
         if (null == files) {
             Log.e(TAG, "[listClassFiles] files is null! %s", folder.getAbsolutePath());
@@ -363,39 +432,37 @@ public class MethodCollector {
         }
     }
 
-    private class SingleTraceClassAdapter extends ClassVisitor {
-
-        SingleTraceClassAdapter(int i, ClassVisitor classVisitor) {
-            super(i, classVisitor);
-        }
-
-        @Override
-        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-            super.visit(version, access, name, signature, superName, interfaces);
-            mCollectedClassExtendMap.put(name, superName);
-        }
-
+    /*
+     *  what a class contributes to the collection, filled by a worker thread and merged on the calling one
+     */
+    private static class CollectedClass {
+        private String className;
+        private String superName;
+        private boolean isNeedTrace;
+        private boolean hasWindowFocusMethod;
+        private final List<TraceMethod> traceMethods = new ArrayList<>();
+        private final List<TraceMethod> ignoreMethods = new ArrayList<>();
+        private final List<TraceMethod> blackMethods = new ArrayList<>();
     }
 
-
     private class TraceClassAdapter extends ClassVisitor {
-        private String className;
+        private final CollectedClass collectedClass;
         private boolean isABSClass = false;
-        private boolean hasWindowFocusMethod = false;
 
-        TraceClassAdapter(int i, ClassVisitor classVisitor) {
-            super(i, classVisitor);
+        TraceClassAdapter(int i, CollectedClass collectedClass) {
+            super(i);
+            this.collectedClass = collectedClass;
         }
 
         @Override
         public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
             super.visit(version, access, name, signature, superName, interfaces);
-            this.className = name;
+            collectedClass.className = name;
+            collectedClass.superName = superName;
+            collectedClass.isNeedTrace = mTraceConfig.isNeedTrace(name.replace("/", "."), mMappingCollector);
             if ((access & Opcodes.ACC_ABSTRACT) > 0 || (access & Opcodes.ACC_INTERFACE) > 0) {
                 this.isABSClass = true;
             }
-            mCollectedClassExtendMap.put(className, superName);
-
         }
 
         @Override
@@ -404,61 +471,46 @@ public class MethodCollector {
             if (isABSClass) {
                 return super.visitMethod(access, name, desc, signature, exceptions);
             } else {
-                if (!hasWindowFocusMethod) {
-                    hasWindowFocusMethod = mTraceConfig.isWindowFocusChangeMethod(name, desc);
+                if (!collectedClass.hasWindowFocusMethod) {
+                    collectedClass.hasWindowFocusMethod = mTraceConfig.isWindowFocusChangeMethod(name, desc);
                 }
-                return new CollectMethodNode(className, access, name, desc, signature, exceptions);
-            }
-        }
-
-        @Override
-        public void visitEnd() {
-            super.visitEnd();
-            // collect Activity#onWindowFocusChange
-            TraceMethod traceMethod = TraceMethod.create(-1, Opcodes.ACC_PUBLIC, className,
-                    TraceBuildConstants.MATRIX_TRACE_ON_WINDOW_FOCUS_METHOD, TraceBuildConstants.MATRIX_TRACE_ON_WINDOW_FOCUS_METHOD_ARGS);
-            if (!hasWindowFocusMethod && mTraceConfig.isActivityOrSubClass(className, mCollectedClassExtendMap) && mTraceConfig.isNeedTrace(traceMethod.className, mMappingCollector)) {
-                mCollectedMethodMap.put(traceMethod.getMethodName(), traceMethod);
+                return new CollectMethodNode(collectedClass, access, name, desc, signature, exceptions);
             }
         }
 
     }
 
     private class CollectMethodNode extends MethodNode {
-        private String className;
+        private final CollectedClass collectedClass;
         private boolean isConstructor;
 
 
-        CollectMethodNode(String className, int access, String name, String desc,
+        CollectMethodNode(CollectedClass collectedClass, int access, String name, String desc,
                           String signature, String[] exceptions) {
             super(Opcodes.ASM5, access, name, desc, signature, exceptions);
-            this.className = className;
+            this.collectedClass = collectedClass;
         }
 
         @Override
         public void visitEnd() {
             super.visitEnd();
-            TraceMethod traceMethod = TraceMethod.create(0, access, className, name, desc);
+            TraceMethod traceMethod = TraceMethod.create(0, access, collectedClass.className, name, desc);
 
             if ("<init>".equals(name) /*|| "<clinit>".equals(name)*/) {
                 isConstructor = true;
             }
             // filter simple methods
             if ((isEmptyMethod() || isGetSetMethod() || isSingleMethod())
-                    && mTraceConfig.isNeedTrace(traceMethod.className, mMappingCollector)) {
-                mIgnoreCount++;
-                mCollectedIgnoreMethodMap.put(traceMethod.getMethodName(), traceMethod);
+                    && collectedClass.isNeedTrace) {
+                collectedClass.ignoreMethods.add(traceMethod);
                 return;
             }
 
-            if (mTraceConfig.isNeedTrace(traceMethod.className, mMappingCollector) && !mCollectedMethodMap.containsKey(traceMethod.getMethodName())) {
-                traceMethod.id = mMethodId.incrementAndGet();
-                mCollectedMethodMap.put(traceMethod.getMethodName(), traceMethod);
-                mIncrementCount++;
-            } else if (!mTraceConfig.isNeedTrace(traceMethod.className, mMappingCollector)
-                    && !mCollectedBlackMethodMap.containsKey(traceMethod.className)) {
-                mIgnoreCount++;
-                mCollectedBlackMethodMap.put(traceMethod.getMethodName(), traceMethod);
+            // the id is given while merging
+            if (collectedClass.isNeedTrace) {
+                collectedClass.traceMethods.add(traceMethod);
+            } else {
+                collectedClass.blackMethods.add(traceMethod);
             }
 
         }
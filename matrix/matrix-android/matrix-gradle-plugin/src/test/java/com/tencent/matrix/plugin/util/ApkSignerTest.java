@@ -0,0 +1,467 @@
+/*
+ * Tencent is pleased to support the open source community by making wechat-matrix available.
+ * Copyright (C) 2018 THL A29 Limited, a Tencent company. All rights reserved.
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.matrix.plugin.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Signs small zips through {@link ZipRawCopier} with keys generated by keytool and verifies both schemes.
+ */
+public class ApkSignerTest {
+
+    private static final String STORE_PASSWORD = "matrix";
+    private static final String KEY_ALIAS = "test";
+    private static final int APK_SIGNATURE_SCHEME_V2_BLOCK_ID = 0x7109871a;
+    private static final byte[] OID_SHA1 = {0x06, 0x05, 0x2b, 0x0e, 0x03, 0x02, 0x1a};
+
+    private File tempDir;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = File.createTempFile("apksigner", "");
+        assertTrue(tempDir.delete() && tempDir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = tempDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        tempDir.delete();
+    }
+
+    @Test
+    public void readMinSdkVersion() throws Exception {
+        assertEquals(15, ApkSigner.readMinSdkVersion(createApk("min15.apk", 15)));
+        assertEquals(24, ApkSigner.readMinSdkVersion(createApk("min24.apk", 24)));
+        assertEquals(1, ApkSigner.readMinSdkVersion(createApk("none.apk", -1)));
+    }
+
+    @Test
+    public void rsaSignsV1WithSha256() throws Exception {
+        File signed = sign(createApk("in.apk", 21), generateKeyStore("RSA"), 21);
+        verifyV1WithJarFile(signed);
+        String manifest = readEntry(signed, "META-INF/MANIFEST.MF");
+        assertTrue(manifest.contains("SHA-256-Digest: "));
+        assertFalse(manifest.contains("SHA1-Digest"));
+        verifyV2(signed);
+    }
+
+    @Test
+    public void ecSignsV1WithSha256() throws Exception {
+        File signed = sign(createApk("in.apk", 18), generateKeyStore("EC"), 18);
+        verifyV1WithJarFile(signed);
+        assertNotNull(readEntry(signed, "META-INF/CERT.EC"));
+        verifyV2(signed);
+    }
+
+    /*
+     *  the jdk refuses SHA-1 signed jars without a timestamp, so the v1 chain is checked here step by step
+     */
+    @Test
+    public void rsaBelowApi18SignsV1WithSha1() throws Exception {
+        File signed = sign(createApk("in.apk", 15), generateKeyStore("RSA"), 15);
+        verifyV1Sha1(signed);
+        assertFalse(readEntry(signed, "META-INF/MANIFEST.MF").contains("SHA-256-Digest"));
+        verifyV2(signed);
+    }
+
+    @Test
+    public void ecBelowApi18Fails() throws Exception {
+        File keyStore = generateKeyStore("EC");
+        try {
+            ApkSigner.load(keyStore, "JKS", STORE_PASSWORD, KEY_ALIAS, STORE_PASSWORD, 17);
+            fail("ECDSA v1 signature accepted for minSdkVersion 17");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("17"));
+        }
+    }
+
+    private File generateKeyStore(String keyAlgorithm) throws Exception {
+        File keyStore = new File(tempDir, keyAlgorithm.toLowerCase() + ".jks");
+        Process process = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/keytool").getAbsolutePath(),
+                "-genkeypair", "-keystore", keyStore.getAbsolutePath(), "-storetype", "JKS",
+                "-storepass", STORE_PASSWORD, "-keypass", STORE_PASSWORD, "-alias", KEY_ALIAS,
+                "-keyalg", keyAlgorithm, "-keysize", "RSA".equals(keyAlgorithm) ? "2048" : "256",
+                "-validity", "1", "-dname", "CN=Matrix Test")
+                .redirectErrorStream(true).start();
+        String output = new String(readAll(process.getInputStream()), StandardCharsets.UTF_8);
+        assertEquals(output, 0, process.waitFor());
+        return keyStore;
+    }
+
+    /*
+     *  copies every entry and rewrites one, so both digest paths of the copier are signed
+     */
+    private File sign(File apk, File keyStore, int minSdkVersion) throws Exception {
+        assertEquals(minSdkVersion, ApkSigner.readMinSdkVersion(apk));
+        ApkSigner signer = ApkSigner.load(keyStore, "JKS", STORE_PASSWORD, KEY_ALIAS, STORE_PASSWORD, ApkSigner.readMinSdkVersion(apk));
+        File output = new File(tempDir, "signed.apk");
+        ZipRawCopier copier = new ZipRawCopier(apk, output, signer);
+        try {
+            for (ZipRawCopier.Entry entry : copier.getEntries()) {
+                if (entry.getName().equals("resources.arsc")) {
+                    copier.writeEntry(entry, "rewritten".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    copier.copyEntry(entry);
+                }
+            }
+        } finally {
+            copier.close();
+        }
+        return output;
+    }
+
+    private static void verifyV1WithJarFile(File apk) throws IOException {
+        JarFile jarFile = new JarFile(apk, true);
+        try {
+            int signedCount = 0;
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                readAll(jarFile.getInputStream(entry));
+                if (ApkSigner.isSignedEntry(entry.getName())) {
+                    assertNotNull(entry.getName(), entry.getCodeSigners());
+                    signedCount++;
+                }
+            }
+            assertEquals(4, signedCount);
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    private static void verifyV1Sha1(File apk) throws Exception {
+        ZipFile zipFile = new ZipFile(apk);
+        try {
+            byte[] manifestBytes = readAll(zipFile.getInputStream(zipFile.getEntry("META-INF/MANIFEST.MF")));
+            byte[] signatureFileBytes = readAll(zipFile.getInputStream(zipFile.getEntry("META-INF/CERT.SF")));
+            byte[] signatureBlock = readAll(zipFile.getInputStream(zipFile.getEntry("META-INF/CERT.RSA")));
+            Manifest manifest = new Manifest(new ByteArrayInputStream(manifestBytes));
+            Manifest signatureFile = new Manifest(new ByteArrayInputStream(signatureFileBytes));
+
+            int signedCount = 0;
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (ApkSigner.isSignedEntry(entry.getName())) {
+                    Attributes attributes = manifest.getAttributes(entry.getName());
+                    assertNotNull(entry.getName(), attributes);
+                    assertEquals(entry.getName(), sha1(readAll(zipFile.getInputStream(entry))), attributes.getValue("SHA1-Digest"));
+                    signedCount++;
+                }
+            }
+            assertEquals(4, signedCount);
+
+            assertEquals(sha1(manifestBytes), signatureFile.getMainAttributes().getValue("SHA1-Digest-Manifest"));
+            String manifestText = new String(manifestBytes, StandardCharsets.UTF_8);
+            String[] sections = manifestText.split("\r\n\r\n");
+            assertEquals(signedCount + 1, sections.length);
+            for (int i = 1; i < sections.length; i++) {
+                String name = sections[i].substring("Name: ".length(), sections[i].indexOf("\r\n"));
+                byte[] section = (sections[i] + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+                assertEquals(name, sha1(section), signatureFile.getAttributes(name).getValue("SHA1-Digest"));
+            }
+
+            /* ContentInfo, [0] SignedData, the certificate and the single SignerInfo */
+            List<byte[]> signedData = derChildren(derChildren(derChildren(signatureBlock).get(1)).get(0));
+            X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                    .generateCertificate(new ByteArrayInputStream(derContent(signedData.get(3))));
+            List<byte[]> signerInfo = derChildren(derChildren(signedData.get(4)).get(0));
+            assertArrayEquals(OID_SHA1, derChildren(signerInfo.get(2)).get(0));
+            Signature signature = Signature.getInstance("SHA1withRSA");
+            signature.initVerify(certificate.getPublicKey());
+            signature.update(signatureFileBytes);
+            assertTrue(signature.verify(derContent(signerInfo.get(4))));
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /*
+     *  checks the signature and the chunked content digest of the v2 block, the central directory
+     *  offset in the end of central directory record is replaced by the offset of the block
+     */
+    private static void verifyV2(File apk) throws Exception {
+        byte[] file = readFile(apk);
+        ByteBuffer zip = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = file.length - 22;
+        int directoryOffset = zip.getInt(eocd + 16);
+        assertEquals("APK Sig Block 42", new String(file, directoryOffset - 16, 16, StandardCharsets.US_ASCII));
+        long blockSize = zip.getLong(directoryOffset - 24);
+        int blockStart = (int) (directoryOffset - blockSize - 8);
+        assertEquals(blockSize, zip.getLong(blockStart));
+
+        ByteBuffer pairs = slice(zip, blockStart + 8, (int) blockSize - 24);
+        ByteBuffer v2 = null;
+        while (pairs.hasRemaining()) {
+            long length = pairs.getLong();
+            int id = pairs.getInt();
+            ByteBuffer value = slice(pairs, pairs.position(), (int) length - 4);
+            pairs.position(pairs.position() + (int) length - 4);
+            if (id == APK_SIGNATURE_SCHEME_V2_BLOCK_ID) {
+                v2 = value;
+            }
+        }
+        assertNotNull(v2);
+
+        ByteBuffer signer = lengthPrefixed(lengthPrefixed(v2));
+        ByteBuffer signedData = lengthPrefixed(signer);
+        byte[] signedDataBytes = bytes(signedData.duplicate());
+        ByteBuffer signatures = lengthPrefixed(signer);
+        byte[] publicKey = bytes(lengthPrefixed(signer));
+        ByteBuffer digest = lengthPrefixed(lengthPrefixed(signedData));
+        int digestAlgorithm = digest.getInt();
+        byte[] contentDigest = bytes(lengthPrefixed(digest));
+        byte[] certificateBytes = bytes(lengthPrefixed(lengthPrefixed(signedData)));
+        X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(certificateBytes));
+        assertArrayEquals(certificate.getPublicKey().getEncoded(), publicKey);
+
+        ByteBuffer signature = lengthPrefixed(signatures);
+        assertEquals(digestAlgorithm, signature.getInt());
+        String algorithm = digestAlgorithm == 0x0103 ? "SHA256withRSA" : digestAlgorithm == 0x0201 ? "SHA256withECDSA" : "SHA256withDSA";
+        Signature verifier = Signature.getInstance(algorithm);
+        verifier.initVerify(certificate.getPublicKey());
+        verifier.update(signedDataBytes);
+        assertTrue(verifier.verify(bytes(lengthPrefixed(signature))));
+
+        byte[] eocdBytes = Arrays.copyOfRange(file, eocd, file.length);
+        ByteBuffer.wrap(eocdBytes).order(ByteOrder.LITTLE_ENDIAN).putInt(16, blockStart);
+        List<byte[]> sections = Arrays.asList(Arrays.copyOfRange(file, 0, blockStart), Arrays.copyOfRange(file, directoryOffset, eocd), eocdBytes);
+        ByteArrayOutputStream chunkDigests = new ByteArrayOutputStream();
+        int chunkCount = 0;
+        for (byte[] section : sections) {
+            for (int offset = 0; offset < section.length; offset += 1024 * 1024) {
+                int length = Math.min(1024 * 1024, section.length - offset);
+                MessageDigest chunkDigest = MessageDigest.getInstance("SHA-256");
+                chunkDigest.update((byte) 0xa5);
+                chunkDigest.update(intToBytes(length));
+                chunkDigest.update(section, offset, length);
+                chunkDigests.write(chunkDigest.digest());
+                chunkCount++;
+            }
+        }
+        MessageDigest topDigest = MessageDigest.getInstance("SHA-256");
+        topDigest.update((byte) 0x5a);
+        topDigest.update(intToBytes(chunkCount));
+        topDigest.update(chunkDigests.toByteArray());
+        assertArrayEquals(topDigest.digest(), contentDigest);
+    }
+
+    /*
+     *  a zip with the entries of a small apk, the binary manifest only holds uses-sdk
+     */
+    private File createApk(String name, int minSdkVersion) throws IOException {
+        File apk = new File(tempDir, name);
+        Random random = new Random(minSdkVersion);
+        byte[] stored = new byte[1000];
+        random.nextBytes(stored);
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(apk));
+        try {
+            putEntry(output, "AndroidManifest.xml", binaryManifest(minSdkVersion), false);
+            putEntry(output, "classes.dex", new byte[4096], false);
+            output.putNextEntry(new ZipEntry("res/"));
+            output.closeEntry();
+            putEntry(output, "res/raw/random.bin", stored, true);
+            putEntry(output, "resources.arsc", new byte[128], true);
+        } finally {
+            output.close();
+        }
+        return apk;
+    }
+
+    private static void putEntry(ZipOutputStream output, String name, byte[] content, boolean stored) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        output.putNextEntry(entry);
+        output.write(content);
+        output.closeEntry();
+    }
+
+    /*
+     *  xml header, string pool, resource map and the start of a uses-sdk element, without uses-sdk if minSdkVersion < 0
+     */
+    private static byte[] binaryManifest(int minSdkVersion) {
+        ByteBuffer pool = newBuffer(28 + 8 + 28);
+        pool.putShort((short) 0x0001).putShort((short) 28).putInt(pool.capacity());
+        pool.putInt(2).putInt(0).putInt(0x100).putInt(28 + 8).putInt(0);
+        pool.putInt(0).putInt(16);
+        pool.put((byte) 13).put((byte) 13).put("minSdkVersion".getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+        pool.put((byte) 8).put((byte) 8).put("uses-sdk".getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+
+        ByteBuffer resourceMap = newBuffer(12);
+        resourceMap.putShort((short) 0x0180).putShort((short) 8).putInt(12).putInt(0x0101020c);
+
+        ByteBuffer element = newBuffer(16 + 20 + (minSdkVersion < 0 ? 0 : 20));
+        element.putShort((short) 0x0102).putShort((short) 16).putInt(element.capacity()).putInt(1).putInt(-1);
+        element.putInt(-1).putInt(1).putShort((short) 20).putShort((short) 20).putShort((short) (minSdkVersion < 0 ? 0 : 1))
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        if (minSdkVersion >= 0) {
+            element.putInt(-1).putInt(0).putInt(-1).putShort((short) 8).put((byte) 0).put((byte) 0x10).putInt(minSdkVersion);
+        }
+
+        ByteBuffer xml = newBuffer(8 + pool.capacity() + resourceMap.capacity() + element.capacity());
+        xml.putShort((short) 0x0003).putShort((short) 8).putInt(xml.capacity());
+        xml.put(pool.array()).put(resourceMap.array()).put(element.array());
+        return xml.array();
+    }
+
+    private static List<byte[]> derChildren(byte[] der) {
+        byte[] content = derContent(der);
+        List<byte[]> children = new ArrayList<byte[]>();
+        int offset = 0;
+        while (offset < content.length) {
+            int length = derLength(content, offset);
+            children.add(Arrays.copyOfRange(content, offset, offset + length));
+            offset += length;
+        }
+        return children;
+    }
+
+    private static byte[] derContent(byte[] der) {
+        int header = (der[1] & 0x80) == 0 ? 2 : 2 + (der[1] & 0x7f);
+        return Arrays.copyOfRange(der, header, derLength(der, 0));
+    }
+
+    private static int derLength(byte[] der, int offset) {
+        int first = der[offset + 1] & 0xff;
+        if ((first & 0x80) == 0) {
+            return 2 + first;
+        }
+        int length = 0;
+        for (int i = 0; i < (first & 0x7f); i++) {
+            length = (length << 8) | (der[offset + 2 + i] & 0xff);
+        }
+        return 2 + (first & 0x7f) + length;
+    }
+
+    private static ByteBuffer lengthPrefixed(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        ByteBuffer result = slice(buffer, buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return result;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+
+    private static ByteBuffer newBuffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static byte[] intToBytes(int value) {
+        return newBuffer(4).putInt(value).array();
+    }
+
+    private static String sha1(byte[] data) throws Exception {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1").digest(data));
+    }
+
+    private static String readEntry(File apk, String name) throws IOException {
+        ZipFile zipFile = new ZipFile(apk);
+        try {
+            ZipEntry entry = zipFile.getEntry(name);
+            return entry == null ? null : new String(readAll(zipFile.getInputStream(entry)), StandardCharsets.UTF_8);
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = inputStream.read(buffer)) > 0) {
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+}